@@ -0,0 +1,96 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of the memory allocated per record by
+	//	       the filter loop
+        //       HAS: a SeqRecordFilter with every sample decider mapped to
+	//	       an output file, synthetic record texts, and a
+	//	       RecordTextReader
+        //      DOES: loads each record into the SeqRecord and runs
+	//	       SeqRecordFilter.processRecord() on it, loading either
+	//	       through a new BufferedReader over a StringReader per
+	//	       record (reader=fresh, as the filter did before) or
+	//	       through the reused RecordTextReader (reader=recycled,
+	//	       as it does now)
+        // Implementation: run with JMH's allocation profiler,
+	//	         ant bench -Dbench.args="AllocationBenchmark -prof gc"
+	//	       gc.alloc.rate.norm is then the bytes allocated per
+	//	       record. What remains with reader=recycled is allocated
+	//	       by SeqRecord.readText() and the deciders themselves.
+	//	       For a whole run, including the splitting of input
+	//	       chunks, run FilterRunBenchmark with -prof gc
+
+	@Setup
+	public void setup() throws Exception
+	{
+		this.scratch = BenchmarkFiles.scratchDir("allocation");
+		this.texts = BenchmarkRecords.texts(this.format, RECORDS);
+		this.rec = BenchmarkRecords.newRecord(this.format);
+		this.recycled = "recycled".equals(this.reader);
+
+		SeqDecider[] deciders = BenchmarkRecords.deciders(this.format);
+		String[] args = new String[deciders.length * 3];
+		for(int i = 0; i < deciders.length; i++)
+		{
+			args[3 * i] = "--" + deciders[i].getName();
+			args[3 * i + 1] = "-o";
+			args[3 * i + 2] = new File(this.scratch,
+				deciders[i].getName()).getPath();
+		}
+		this.filter = new SeqRecordFilter(deciders, args,
+			new File(this.scratch, "log").getPath(), this.rec);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		this.filter.closeOutputs();
+		BenchmarkFiles.delete(this.scratch);
+	}
+
+	@Benchmark
+	public SeqRecord loadAndProcess() throws Exception
+	{
+		String text = this.texts[this.next++ % RECORDS];
+		if(this.recycled)
+		{
+			this.rec.readText(this.recordReader.set(text));
+		}
+		else
+		{
+			BenchmarkRecords.parse(this.rec, text);
+		}
+		this.filter.processRecord();
+		return this.rec;
+	}
+
+	// distinct records cycled through
+	static final int RECORDS = 1000;
+
+	@Param({ BenchmarkRecords.GENBANK, BenchmarkRecords.SWISSPROT })
+	public String format;
+
+	@Param({ "fresh", "recycled" })
+	public String reader;
+
+	private File scratch;
+	private String[] texts;
+	private SeqRecord rec;
+	private SeqRecordFilter filter;
+	private boolean recycled;
+	private RecordTextReader recordReader = new RecordTextReader();
+	private int next = 0;
+}
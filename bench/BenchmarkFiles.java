@@ -0,0 +1,35 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+class BenchmarkFiles
+{
+	//Concept:
+        //        IS: scratch file handling for the benchmarks
+        //       HAS: nothing
+        //      DOES: creates and removes scratch directories
+        // Implementation: scratch directories go under java.io.tmpdir
+
+	static File scratchDir(String name) throws IOException
+		// Purpose: create an empty scratch directory
+	{
+		File d = File.createTempFile("seqfilter-bench-" + name, "");
+		d.delete();
+		if(!d.mkdirs())
+		{
+			throw new IOException("Cannot create " + d);
+		}
+		return d;
+	}
+
+	static void delete(File f)
+		// Purpose: remove 'f' and, if a directory, everything in it
+	{
+		File[] children = f.listFiles();
+		for(int i = 0; children != null && i < children.length; i++)
+		{
+			delete(children[i]);
+		}
+		f.delete();
+	}
+}
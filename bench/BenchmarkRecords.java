@@ -0,0 +1,57 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class BenchmarkRecords
+{
+	//Concept:
+        //        IS: the setup shared by the benchmarks
+        //       HAS: nothing
+        //      DOES: creates SeqRecord objects and deciders for a record
+	//	       format, and parses synthetic records
+        // Implementation: the SeqRecord classes are named rather than
+	//	       referenced so any seqrecord release can be measured
+
+	static final String GENBANK = "genbank";
+	static final String SWISSPROT = "swissprot";
+
+	static SeqRecord newRecord(String format) throws Exception
+		// Purpose: create an empty SeqRecord for 'format'
+	{
+		String name = GENBANK.equals(format) ?
+			"org.jax.mgi.bio.seqrecord.GBSeqRecord" :
+			"org.jax.mgi.bio.seqrecord.SPSeqRecord";
+		return (SeqRecord)Class.forName(name).getDeclaredConstructor().
+			newInstance();
+	}
+
+	static SeqDecider[] deciders(String format)
+		// Purpose: the sample deciders for 'format'
+	{
+		return GENBANK.equals(format) ? SampleGBDecider.all() :
+			SampleSPDecider.all();
+	}
+
+	static String[] texts(String format, int count)
+		// Purpose: create 'count' synthetic records in 'format'
+	{
+		SyntheticRecordGenerator g = new SyntheticRecordGenerator(SEED);
+		String[] texts = new String[count];
+		for(int i = 0; i < count; i++)
+		{
+			texts[i] = GENBANK.equals(format) ? g.genBankRecord(i) :
+				g.swissProtRecord(i);
+		}
+		return texts;
+	}
+
+	static void parse(SeqRecord rec, String text) throws Exception
+		// Purpose: load 'text' into 'rec'
+	{
+		rec.readText(new BufferedReader(new StringReader(text)));
+	}
+
+	// the same records for every benchmark and every run
+	static final long SEED = 20240101L;
+}
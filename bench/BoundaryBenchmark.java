@@ -0,0 +1,103 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BoundaryBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of finding the records in a chunk of
+	//	       input
+        //       HAS: a chunk of synthetic records as ISO-8859-1 bytes
+        //      DOES: finds the end of every record in the chunk, either
+	//	       with RecordBoundaries.recordEnds() (scanner=word) or
+	//	       with a byte at a time state machine (scanner=bytewise),
+	//	       as the filter did before
+        // Implementation: the score is chunks per second; times the
+	//	       chunk's size (logged at setup) it is the scan rate
+
+	@Setup
+	public void setup() throws Exception
+	{
+		String[] texts = BenchmarkRecords.texts(this.format, RECORDS);
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		for(int i = 0; i < texts.length; i++)
+		{
+			b.write(texts[i].getBytes("ISO-8859-1"));
+		}
+		this.chunk = b.toByteArray();
+		System.out.println("chunk of " + this.chunk.length + " bytes");
+	}
+
+	@Benchmark
+	public int[] recordEnds()
+	{
+		return "word".equals(this.scanner) ?
+			RecordBoundaries.recordEnds(this.chunk, this.chunk.length) :
+			bytewiseEnds(this.chunk, this.chunk.length);
+	}
+
+	private static int[] bytewiseEnds(byte[] bytes, int len)
+		// Purpose: the record ends, found a byte at a time
+	{
+		int[] ends = new int[16];
+		int n = 0;
+		int state = LINE_START;
+		for(int i = 0; i < len; i++)
+		{
+			byte c = bytes[i];
+			switch(state)
+			{
+				case LINE_START:
+					state = c == '/' ? ONE_SLASH :
+						c == '\n' ? LINE_START : MID_LINE;
+					break;
+				case ONE_SLASH:
+					state = c == '/' ? TERMINATOR :
+						c == '\n' ? LINE_START : MID_LINE;
+					break;
+				case TERMINATOR:
+					if(c == '\n')
+					{
+						if(n == ends.length)
+						{
+							ends = Arrays.copyOf(ends,
+								2 * n);
+						}
+						ends[n++] = i + 1;
+						state = LINE_START;
+					}
+					break;
+				default:
+					state = c == '\n' ? LINE_START :
+						MID_LINE;
+			}
+		}
+		return Arrays.copyOf(ends, n);
+	}
+
+	// records in the chunk
+	static final int RECORDS = 5000;
+
+	// states of the bytewise recogniser
+	private static final int LINE_START = 0;
+	private static final int ONE_SLASH = 1;
+	private static final int TERMINATOR = 2;
+	private static final int MID_LINE = 3;
+
+	@Param({ BenchmarkRecords.GENBANK, BenchmarkRecords.SWISSPROT })
+	public String format;
+
+	@Param({ "bytewise", "word" })
+	public String scanner;
+
+	private byte[] chunk;
+}
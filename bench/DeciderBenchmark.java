@@ -0,0 +1,66 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeciderBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of SeqDecider.isA() throughput
+        //       HAS: a set of pre-parsed synthetic records and the sample
+	//	       deciders for one record format
+        //      DOES: applies each decider to each record in turn; the
+	//	       score is decider evaluations per second
+        // Implementation: parsing is done once in setup so only isA is
+	//	       measured
+
+	@Setup
+	public void setup() throws Exception
+	{
+		String[] texts = BenchmarkRecords.texts(this.format, RECORDS);
+		this.records = new SeqRecord[RECORDS];
+		for(int i = 0; i < RECORDS; i++)
+		{
+			this.records[i] = BenchmarkRecords.newRecord(this.format);
+			BenchmarkRecords.parse(this.records[i], texts[i]);
+		}
+		this.deciders = BenchmarkRecords.deciders(this.format);
+	}
+
+	@Benchmark
+	public boolean isA()
+	{
+		SeqRecord r = this.records[this.next % RECORDS];
+		SeqDecider d = this.deciders[this.next % this.deciders.length];
+		this.next++;
+		return d.isA(r);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean isAContended()
+		// Purpose: the same evaluations from four threads at once,
+		//	    which exercises the shared decider counters
+	{
+		int n = ThreadLocalRandom.current().nextInt(RECORDS);
+		return this.deciders[n % this.deciders.length].isA(
+			this.records[n]);
+	}
+
+	// records parsed in setup
+	static final int RECORDS = 1000;
+
+	@Param({ BenchmarkRecords.GENBANK, BenchmarkRecords.SWISSPROT })
+	public String format;
+
+	private SeqRecord[] records;
+	private SeqDecider[] deciders;
+	private int next = 0;
+}
@@ -0,0 +1,90 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class DecisionsBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of a SeqRecordFilter run that re-runs
+	//	       input it has decided before
+        //       HAS: a synthetic GenBank file, and the decisions a
+	//	       --save-decisions run saved for it
+        //      DOES: filters the file to one -o output per sample
+	//	       decider, either parsing and deciding every record
+	//	       (source=parse) or answering the deciders from the saved
+	//	       decisions (source=decisions)
+        // Implementation: both write the records' input bytes, so the
+	//	       outputs are the same; the score is runs per second.
+	//	       The decisions are saved once, at setup.
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		this.scratch = BenchmarkFiles.scratchDir("decisions");
+		this.input = new File(this.scratch, "input.gb");
+		new SyntheticRecordGenerator(BenchmarkRecords.SEED).writeFile(
+			this.input, true, RECORDS);
+		this.decisions = new File(this.scratch, "decisions");
+		this.outputs = new File(this.scratch, "out");
+		this.outputs.mkdirs();
+		run(new String[] { "--save-decisions",
+			this.decisions.getPath() });
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		BenchmarkFiles.delete(this.scratch);
+	}
+
+	@Benchmark
+	public void go() throws Exception
+	{
+		run("parse".equals(this.source) ?
+			new String[] { "--passthrough" } :
+			new String[] { "--decisions", this.decisions.getPath() });
+	}
+
+	private void run(String[] options) throws Exception
+		// Purpose: filter the input with 'options' to an -o file per
+		//	    decider
+	{
+		SeqDecider[] deciders = BenchmarkRecords.deciders(
+			BenchmarkRecords.GENBANK);
+		String[] args = new String[options.length + 2 +
+			3 * deciders.length];
+		System.arraycopy(options, 0, args, 0, options.length);
+		int n = options.length;
+		args[n++] = "-i";
+		args[n++] = this.input.getPath();
+		for(int i = 0; i < deciders.length; i++)
+		{
+			args[n++] = "--" + deciders[i].getName();
+			args[n++] = "-o";
+			args[n++] = new File(this.outputs,
+				deciders[i].getName()).getPath();
+		}
+		new SeqRecordFilter(deciders, args,
+			new File(this.scratch, "log").getPath(),
+			BenchmarkRecords.newRecord(BenchmarkRecords.GENBANK)).go();
+	}
+
+	// records in the input file
+	static final int RECORDS = 20000;
+
+	@Param({ "parse", "decisions" })
+	public String source;
+
+	private File scratch;
+	private File input;
+	private File decisions;
+	private File outputs;
+}
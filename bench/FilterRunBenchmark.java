@@ -0,0 +1,103 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterRunBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of a whole SeqRecordFilter.go() run
+        //       HAS: a synthetic flat file and an output mode
+        //      DOES: filters the file with every sample decider sent to
+	//	       -a, -o or -d outputs; besides runs per second, JMH
+	//	       reports the records and megabytes counters of Throughput
+	//	       as records/s and MB/s
+        // Implementation: each invocation gets fresh, empty outputs so
+	//	       append mode does not grow from run to run
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Throughput
+	{
+		// records and megabytes read by the measured runs
+		public long records;
+		public double megabytes;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		this.scratch = BenchmarkFiles.scratchDir("go");
+		this.input = new File(this.scratch, "input." + this.format);
+		this.inputBytes = new SyntheticRecordGenerator(
+			BenchmarkRecords.SEED).writeFile(this.input,
+			BenchmarkRecords.GENBANK.equals(this.format), RECORDS);
+	}
+
+	@Setup(Level.Invocation)
+	public void freshOutputs() throws Exception
+	{
+		this.outputs = new File(this.scratch, "out");
+		BenchmarkFiles.delete(this.outputs);
+		this.outputs.mkdirs();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		BenchmarkFiles.delete(this.scratch);
+	}
+
+	@Benchmark
+	public void go(Throughput t) throws Exception
+	{
+		SeqDecider[] deciders = BenchmarkRecords.deciders(this.format);
+		int n = 4 + 3 * deciders.length;
+		String[] args = new String[n];
+		args[0] = "-i";
+		args[1] = this.input.getPath();
+		args[2] = "--threads";
+		args[3] = Integer.toString(this.threads);
+		for(int i = 0; i < deciders.length; i++)
+		{
+			File out = new File(this.outputs, deciders[i].getName());
+			if("d".equals(this.mode))
+			{
+				out.mkdirs();
+			}
+			args[4 + 3 * i] = "--" + deciders[i].getName();
+			args[5 + 3 * i] = "-" + this.mode;
+			args[6 + 3 * i] = out.getPath();
+		}
+		new SeqRecordFilter(deciders, args,
+			new File(this.outputs, "log").getPath(),
+			BenchmarkRecords.newRecord(this.format)).go();
+
+		t.records += RECORDS;
+		t.megabytes += this.inputBytes / (1024.0 * 1024.0);
+	}
+
+	// records in the input file
+	static final int RECORDS = 20000;
+
+	@Param({ BenchmarkRecords.GENBANK, BenchmarkRecords.SWISSPROT })
+	public String format;
+
+	@Param({ "a", "o", "d" })
+	public String mode;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private File scratch;
+	private File input;
+	private long inputBytes;
+	private File outputs;
+}
@@ -0,0 +1,95 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PatternBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of the cost per record of many
+	//	       "field holds a string" deciders
+        //       HAS: pre-parsed synthetic GenBank records, and 'deciders'
+	//	       deciders over the organism, keywords, definition and
+	//	       locus lines
+        //      DOES: applies every decider to one record per invocation,
+	//	       either SampleGBDeciders, each scanning the text for its
+	//	       own string (engine=scan), or PatternDeciders bound to
+	//	       one PatternMatcher (engine=automaton), as
+	//	       SeqRecordFilter binds them
+        // Implementation: the score is the time to decide one record with
+	//	       all the deciders; with engine=scan it grows with the
+	//	       deciders, with engine=automaton it should stay near
+	//	       flat. Most strings are chosen not to match, as most of
+	//	       a run's deciders reject most records.
+
+	@Setup
+	public void setup() throws Exception
+	{
+		String[] texts = BenchmarkRecords.texts(BenchmarkRecords.GENBANK,
+			RECORDS);
+		this.records = new SeqRecord[RECORDS];
+		for(int i = 0; i < RECORDS; i++)
+		{
+			this.records[i] = BenchmarkRecords.newRecord(
+				BenchmarkRecords.GENBANK);
+			BenchmarkRecords.parse(this.records[i], texts[i]);
+		}
+
+		String[] organisms = SyntheticRecordGenerator.ORGANISMS;
+		this.all = new SeqDecider[this.deciders];
+		List<SeqDecider> used = new ArrayList<SeqDecider>();
+		for(int i = 0; i < this.deciders; i++)
+		{
+			String prefix = PREFIXES[i % PREFIXES.length];
+			String string = i < organisms.length ? organisms[i] :
+				organisms[i % organisms.length] + " " + i;
+			this.all[i] = "scan".equals(this.engine) ?
+				new SampleGBDecider("d" + i, prefix, string) :
+				new PatternDecider("d" + i, prefix,
+				EnumSet.of(RecordSection.HEADER), string);
+			used.add(this.all[i]);
+		}
+		PatternMatcher.bind(used);
+	}
+
+	@Benchmark
+	public int decideAll()
+	{
+		SeqRecord r = this.records[this.next++ % RECORDS];
+		SeqDecider.recordLoaded();
+		int passed = 0;
+		for(int i = 0; i < this.all.length; i++)
+		{
+			if(this.all[i].isA(r))
+			{
+				passed++;
+			}
+		}
+		return passed;
+	}
+
+	// records parsed in setup
+	static final int RECORDS = 1000;
+
+	// the fields the deciders look at, in turn
+	private static final String[] PREFIXES = {
+		"  ORGANISM", "KEYWORDS", "DEFINITION", "LOCUS" };
+
+	@Param({ "4", "16", "64", "256" })
+	public int deciders;
+
+	@Param({ "scan", "automaton" })
+	public String engine;
+
+	private SeqRecord[] records;
+	private SeqDecider[] all;
+	private int next = 0;
+}
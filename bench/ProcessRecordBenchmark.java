@@ -0,0 +1,80 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessRecordBenchmark
+{
+	//Concept:
+        //        IS: a JMH benchmark of the per record cost of the filter
+	//	       loop
+        //       HAS: a SeqRecordFilter with every sample decider mapped to
+	//	       an output file, and synthetic record texts
+        //      DOES: measures parse alone, and parse plus
+	//	       SeqRecordFilter.processRecord(); the difference is the
+	//	       cost of deciding and writing one record
+        // Implementation: outputs go to a scratch directory that is
+	//	       removed at teardown
+
+	@Setup
+	public void setup() throws Exception
+	{
+		this.scratch = BenchmarkFiles.scratchDir("processRecord");
+		this.texts = BenchmarkRecords.texts(this.format, RECORDS);
+		this.rec = BenchmarkRecords.newRecord(this.format);
+
+		SeqDecider[] deciders = BenchmarkRecords.deciders(this.format);
+		String[] args = new String[deciders.length * 3];
+		for(int i = 0; i < deciders.length; i++)
+		{
+			args[3 * i] = "--" + deciders[i].getName();
+			args[3 * i + 1] = "-o";
+			args[3 * i + 2] = new File(this.scratch,
+				deciders[i].getName()).getPath();
+		}
+		this.filter = new SeqRecordFilter(deciders, args,
+			new File(this.scratch, "log").getPath(), this.rec);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		this.filter.closeOutputs();
+		BenchmarkFiles.delete(this.scratch);
+	}
+
+	@Benchmark
+	public SeqRecord parse() throws Exception
+	{
+		BenchmarkRecords.parse(this.rec, this.texts[this.next++ % RECORDS]);
+		return this.rec;
+	}
+
+	@Benchmark
+	public SeqRecord parseAndProcess() throws Exception
+	{
+		BenchmarkRecords.parse(this.rec, this.texts[this.next++ % RECORDS]);
+		this.filter.processRecord();
+		return this.rec;
+	}
+
+	// distinct records cycled through
+	static final int RECORDS = 1000;
+
+	@Param({ BenchmarkRecords.GENBANK, BenchmarkRecords.SWISSPROT })
+	public String format;
+
+	private File scratch;
+	private String[] texts;
+	private SeqRecord rec;
+	private SeqRecordFilter filter;
+	private int next = 0;
+}
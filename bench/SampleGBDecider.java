@@ -0,0 +1,117 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class SampleGBDecider extends GBSeqDecider
+{
+	//Concept:
+        //        IS: a GenBank decider for the benchmarks that is true when
+	//	       a line starting with a given prefix contains a given
+	//	       string
+        //       HAS: the line prefix and the string
+        //      DOES: see superclass
+        // Implementation: works on SeqRecord.getText() only, so it needs
+	//	       nothing from the interrogator; it stands in for the
+	//	       deciders of the applications that use this library
+
+	//
+	//constructors
+	//
+
+	public SampleGBDecider(String name, String linePrefix, String contains)
+	{
+		super(name);
+		this.linePrefix = linePrefix;
+		this.contains = contains;
+	}
+
+	//
+	//methods:
+	//
+
+	public boolean isA(SeqRecord s)
+	{
+		incrementAllCtr();
+		if(lineContains(s.getText(), this.linePrefix, this.contains))
+		{
+			incrementTrueCtr();
+			return true;
+		}
+		return false;
+	}
+
+	static boolean lineContains(String text, String linePrefix,
+		String contains)
+		// Purpose: report whether a line of 'text' starting with
+		//	    'linePrefix' holds 'contains'
+	{
+		int from = 0;
+		int start = text.startsWith(linePrefix) ? 0 : -1;
+		while(start >= 0 || (start = indexOfLine(text, linePrefix,
+			from)) >= 0)
+		{
+			int end = text.indexOf('\n', start + 1);
+			if(end < 0)
+			{
+				end = text.length();
+			}
+			int hit = text.indexOf(contains, start + 1);
+			if(hit >= 0 && hit < end)
+			{
+				return true;
+			}
+			from = end;
+			start = -1;
+		}
+		return false;
+	}
+
+	private static int indexOfLine(String text, String linePrefix,
+		int from)
+		// Purpose: find the next line at or after 'from' that starts
+		//	    with 'linePrefix'
+	{
+		int i = from;
+		while((i = text.indexOf(linePrefix, i)) > 0)
+		{
+			if(text.charAt(i - 1) == '\n')
+			{
+				return i;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: the sample deciders only read the record's text
+	{
+		return true;
+	}
+
+	public Set<RecordSection> getRequiredSections()
+		// Purpose: the sample deciders only look at header lines
+	{
+		return EnumSet.of(RecordSection.HEADER);
+	}
+
+	public static SeqDecider[] all()
+		// Purpose: the GenBank sample deciders, one of each kind of
+		//	    check the real deciders make
+	{
+		return new SeqDecider[] {
+			new SampleGBDecider("gbMouse", "  ORGANISM", "Mus musculus"),
+			new SampleGBDecider("gbRodent", "LOCUS", " ROD "),
+			new SampleGBDecider("gbEST", "KEYWORDS", "EST"),
+			new SampleGBDecider("gbPatent", "LOCUS", " PAT ") };
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private String linePrefix;
+	private String contains;
+}
@@ -0,0 +1,70 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class SampleSPDecider extends SPSeqDecider
+{
+	//Concept:
+        //        IS: a SwissProt decider for the benchmarks; see
+	//	       SampleGBDecider
+        //       HAS: the line prefix and the string
+        //      DOES: see superclass
+        // Implementation:
+
+	//
+	//constructors
+	//
+
+	public SampleSPDecider(String name, String linePrefix, String contains)
+	{
+		super(name);
+		this.linePrefix = linePrefix;
+		this.contains = contains;
+	}
+
+	//
+	//methods:
+	//
+
+	public boolean isA(SeqRecord s)
+	{
+		incrementAllCtr();
+		if(SampleGBDecider.lineContains(s.getText(), this.linePrefix,
+			this.contains))
+		{
+			incrementTrueCtr();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: the sample deciders only read the record's text
+	{
+		return true;
+	}
+
+	public Set<RecordSection> getRequiredSections()
+		// Purpose: the sample deciders only look at header lines
+	{
+		return EnumSet.of(RecordSection.HEADER);
+	}
+
+	public static SeqDecider[] all()
+		// Purpose: the SwissProt sample deciders
+	{
+		return new SeqDecider[] {
+			new SampleSPDecider("spMouse", "OS", "Mus musculus"),
+			new SampleSPDecider("spRodent", "OC", "Rodentia"),
+			new SampleSPDecider("spReviewed", "ID", "Reviewed") };
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private String linePrefix;
+	private String contains;
+}
@@ -0,0 +1,194 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+
+public class SyntheticRecordGenerator
+{
+	//Concept:
+        //        IS: a source of made-up GenBank and SwissProt flat file
+	//	       records for the benchmarks
+        //       HAS: a seeded random number generator, so every run of a
+	//	       benchmark sees the same records
+        //      DOES: creates single records or whole flat files with a mix
+	//	       of organisms, divisions and keywords and sequence
+	//	       lengths
+        // Implementation: records follow the real line layouts closely
+	//	       enough for the seqrecord parsers; sequence lengths are
+	//	       drawn from a skewed distribution so a few large records
+	//	       appear among many small ones, as in a real division
+
+	//
+	//constructors
+	//
+
+	public SyntheticRecordGenerator(long seed)
+	{
+		this.random = new Random(seed);
+	}
+
+	//
+	//methods:
+	//
+
+	public String genBankRecord(int ordinal)
+		// Purpose: create the text of one GenBank record
+	{
+		int o = this.random.nextInt(ORGANISMS.length);
+		int len = sequenceLength();
+		String acc = "BM" + (100000 + ordinal);
+		String div = DIVISIONS[this.random.nextInt(DIVISIONS.length)];
+		String kw = KEYWORDS[this.random.nextInt(KEYWORDS.length)];
+
+		StringBuffer b = new StringBuffer(len + 1024);
+		b.append("LOCUS       ").append(pad(acc, 16)).append(' ').
+			append(pad(Integer.toString(len), -11)).
+			append(" bp    mRNA    linear   ").append(div).
+			append(" 01-JAN-2024\n");
+		b.append("DEFINITION  ").append(ORGANISMS[o]).
+			append(" synthetic clone ").append(ordinal).
+			append(", mRNA sequence.\n");
+		b.append("ACCESSION   ").append(acc).append('\n');
+		b.append("VERSION     ").append(acc).append(".1\n");
+		b.append("KEYWORDS    ").append(kw).append(".\n");
+		b.append("SOURCE      ").append(ORGANISMS[o]).append('\n');
+		b.append("  ORGANISM  ").append(ORGANISMS[o]).append('\n');
+		b.append("            ").append(LINEAGES[o]).append('\n');
+		b.append("FEATURES             Location/Qualifiers\n");
+		b.append("     source          1..").append(len).append('\n');
+		b.append("                     /organism=\"").
+			append(ORGANISMS[o]).append("\"\n");
+		b.append("ORIGIN      \n");
+		appendGenBankSequence(b, len);
+		b.append("//\n");
+		return b.toString();
+	}
+
+	public String swissProtRecord(int ordinal)
+		// Purpose: create the text of one SwissProt record
+	{
+		int o = this.random.nextInt(ORGANISMS.length);
+		int len = sequenceLength() / 3 + 1;
+		String acc = "Q" + (10000 + ordinal);
+
+		StringBuffer b = new StringBuffer(len + 1024);
+		b.append("ID   SYN").append(ordinal).
+			append("_SYNTH   Reviewed;   ").append(len).
+			append(" AA.\n");
+		b.append("AC   ").append(acc).append(";\n");
+		b.append("DT   01-JAN-2024, sequence version 1.\n");
+		b.append("DE   RecName: Full=Synthetic protein ").
+			append(ordinal).append(";\n");
+		b.append("OS   ").append(ORGANISMS[o]).append(".\n");
+		b.append("OC   ").append(LINEAGES[o]).append('\n');
+		b.append("KW   ").append(KEYWORDS[this.random.nextInt(
+			KEYWORDS.length)]).append(".\n");
+		b.append("SQ   SEQUENCE   ").append(len).append(" AA;\n");
+		for(int i = 0; i < len; i += 60)
+		{
+			b.append("    ");
+			for(int j = i; j < Math.min(len, i + 60); j++)
+			{
+				if((j - i) % 10 == 0)
+				{
+					b.append(' ');
+				}
+				b.append(AMINO_ACIDS.charAt(this.random.nextInt(
+					AMINO_ACIDS.length())));
+			}
+			b.append('\n');
+		}
+		b.append("//\n");
+		return b.toString();
+	}
+
+	public long writeFile(File f, boolean genBank, int records)
+		throws IOException
+		// Purpose: write a flat file of 'records' records
+		// Returns: the size of the file in bytes
+	{
+		Writer w = new BufferedWriter(new FileWriter(f), 1 << 16);
+		try
+		{
+			for(int i = 0; i < records; i++)
+			{
+				w.write(genBank ? genBankRecord(i) :
+					swissProtRecord(i));
+			}
+		}
+		finally
+		{
+			w.close();
+		}
+		return f.length();
+	}
+
+	private int sequenceLength()
+		// Purpose: draw a sequence length; most are a few hundred
+		//	    bases, about one in fifty is tens of kilobases
+	{
+		if(this.random.nextInt(50) == 0)
+		{
+			return 10000 + this.random.nextInt(90000);
+		}
+		return 200 + this.random.nextInt(1800);
+	}
+
+	private void appendGenBankSequence(StringBuffer b, int len)
+	{
+		for(int i = 0; i < len; i += 60)
+		{
+			b.append(pad(Integer.toString(i + 1), -9));
+			for(int j = i; j < Math.min(len, i + 60); j++)
+			{
+				if((j - i) % 10 == 0)
+				{
+					b.append(' ');
+				}
+				b.append(BASES[this.random.nextInt(4)]);
+			}
+			b.append('\n');
+		}
+	}
+
+	private static String pad(String s, int width)
+		// Purpose: pad 's' with blanks to 'width'; on the left if
+		//	    'width' is negative
+	{
+		StringBuffer b = new StringBuffer();
+		for(int i = s.length(); i < Math.abs(width); i++)
+		{
+			b.append(' ');
+		}
+		return width < 0 ? b.append(s).toString() : s + b;
+	}
+
+	//
+	//instance variables:
+	//
+
+	static final String[] ORGANISMS = {
+		"Mus musculus", "Homo sapiens", "Rattus norvegicus",
+		"Mus spretus", "Bos taurus", "Danio rerio" };
+
+	private static final String[] LINEAGES = {
+		"Eukaryota; Metazoa; Chordata; Mammalia; Rodentia; Muridae; Mus.",
+		"Eukaryota; Metazoa; Chordata; Mammalia; Primates; Homo.",
+		"Eukaryota; Metazoa; Chordata; Mammalia; Rodentia; Rattus.",
+		"Eukaryota; Metazoa; Chordata; Mammalia; Rodentia; Muridae; Mus.",
+		"Eukaryota; Metazoa; Chordata; Mammalia; Bovidae; Bos.",
+		"Eukaryota; Metazoa; Chordata; Actinopteri; Danio." };
+
+	private static final String[] DIVISIONS = {
+		"ROD", "ROD", "ROD", "PRI", "MAM", "EST", "GSS", "PAT" };
+
+	private static final String[] KEYWORDS = {
+		"", "EST", "HTG", "full-length cDNA", "Patent" };
+
+	private static final char[] BASES = { 'a', 'c', 'g', 't' };
+
+	private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+	// see the constructor
+	private Random random;
+}
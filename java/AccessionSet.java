@@ -0,0 +1,502 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+public class AccessionSet
+{
+	//Concept:
+        //        IS: a set of accession ids (or seqid.versions) too large to
+	//	       hold as Java objects, e.g. a 50 million entry load or
+	//	       exclusion list
+        //       HAS: a set file, memory mapped
+        //      DOES: answers whether an id is in the set; builds a set
+	//	       file from a text list of ids
+        // Implementation: an open addressing hash table with linear
+	//	       probing, laid out in the set file and read through
+	//	       MappedByteBuffers, so the set costs no Java heap and
+	//	       opening it costs no hashing; pages are loaded by the OS
+	//	       as lookups touch them and shared between processes.
+	//	       The file is a 64 byte header, an optional Bloom filter,
+	//	       the table and the ids:
+	//	         header: magic, format, id count, table slots (a power
+	//	           of two), Bloom filter bits (0 for none) and hashes,
+	//	           bytes of ids
+	//	         Bloom filter: bits as longs
+	//	         table: one long per slot, 0 if empty, otherwise the
+	//	           top 24 bits of the id's hash above the id's offset
+	//	           in the ids plus one (40 bits)
+	//	         ids: each a length byte and ISO-8859-1 bytes
+	//	       The table is at most half full, so a lookup of an absent
+	//	       id usually ends at the first or second slot, and the
+	//	       hash bits in the slot spare comparing ids that differ.
+	//	       The Bloom filter, about 10 bits per id, is smaller than
+	//	       the table and so more often in memory; it turns away
+	//	       most absent ids before the table is read. Lookups only
+	//	       read, so one AccessionSet may be shared by threads.
+	//	       The file is mapped in segments of SEGMENT bytes, since
+	//	       one mapping cannot exceed 2GB; longs are 8 byte aligned
+	//	       and so never span two segments.
+
+	//
+	//constructors
+	//
+
+	private AccessionSet(File file, FileChannel ch, boolean writable)
+		throws IOException
+		// Purpose: map the set file 'file' opened as 'ch'
+	{
+		this.file = file;
+		long size = ch.size();
+		int n = (int)((size + SEGMENT - 1) / SEGMENT);
+		this.segments = new MappedByteBuffer[n];
+		for(int i = 0; i < n; i++)
+		{
+			long start = (long)i * SEGMENT;
+			this.segments[i] = ch.map(writable ?
+				FileChannel.MapMode.READ_WRITE :
+				FileChannel.MapMode.READ_ONLY, start,
+				Math.min(SEGMENT, size - start));
+		}
+	}
+
+	//
+	//methods:
+	//
+
+	public static AccessionSet open(File file) throws IOException
+	{
+	// Purpose: open the set file 'file', made by build()
+	// Returns: the set
+	// Throws: IOException if 'file' is not a set file
+
+		FileChannel ch = FileChannel.open(file.toPath());
+		AccessionSet set;
+		try
+		{
+			if(ch.size() < HEADER_SIZE)
+			{
+				throw new IOException(file + " is not an " +
+					"accession set");
+			}
+			set = new AccessionSet(file, ch, false);
+		}
+		finally
+		{
+			// the mappings stay valid
+			ch.close();
+		}
+		set.readHeader();
+		return set;
+	}
+
+	public static AccessionSet load(File file) throws IOException
+	{
+	// Purpose: open 'file' if it is a set file, otherwise build a set
+	//	    with a Bloom filter from 'file' as a list of ids
+	// Returns: the set
+	// Notes: a set built from a list lives in a temporary file, removed
+	//	  when the JVM exits; build the set file once with build() to
+	//	  spare each run the hashing
+	// Throws: IOException
+
+		if(isSetFile(file))
+		{
+			return open(file);
+		}
+		File tmp = File.createTempFile("accessions", SUFFIX);
+		tmp.deleteOnExit();
+		build(file, tmp, true);
+		return open(tmp);
+	}
+
+	public static boolean isSetFile(File file) throws IOException
+		// Purpose: report whether 'file' begins as a set file does
+	{
+		DataInputStream in = new DataInputStream(
+			new FileInputStream(file));
+		try
+		{
+			return in.readInt() == MAGIC;
+		}
+		catch(EOFException e)
+		{
+			return false;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	public static void build(File list, File out, boolean bloom)
+		throws IOException
+	{
+	// Purpose: build the set file 'out' from 'list'
+	// Assumes: 'list' has one id per line, the first word of the line;
+	//	    blank lines and lines starting with '#' are skipped
+	// Effects: reads 'list' twice, the first time to size the table;
+	//	    ids are written straight to the mapped file, so building
+	//	    takes no more heap than lookups do. Repeated ids are
+	//	    stored once. With 'bloom', a Bloom filter of about 10 bits
+	//	    per id is built in front of the table
+	// Throws: IOException if an id is longer than 255 characters
+
+		long ids = 0;
+		long idBytes = 0;
+		BufferedReader in = openList(list);
+		try
+		{
+			String id;
+			while((id = nextId(in)) != null)
+			{
+				if(id.length() > 255)
+				{
+					throw new IOException("Id longer than 255 " +
+						"characters in " + list + ": " + id);
+				}
+				ids++;
+				idBytes += 1 + id.length();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		long slots = 16;
+		while(slots < 2 * ids)
+		{
+			slots <<= 1;
+		}
+		long bloomBits = 0;
+		if(bloom)
+		{
+			bloomBits = 64;
+			while(bloomBits < BLOOM_BITS_PER_ID * ids)
+			{
+				bloomBits <<= 1;
+			}
+		}
+		long keysAt = HEADER_SIZE + bloomBits / 8 + slots * 8;
+		if(idBytes >= (1L << 40))
+		{
+			throw new IOException("Too many ids in " + list);
+		}
+
+		RandomAccessFile f = new RandomAccessFile(out, "rw");
+		AccessionSet set;
+		try
+		{
+			f.setLength(0);
+			f.setLength(keysAt + idBytes);
+			set = new AccessionSet(out, f.getChannel(), true);
+		}
+		finally
+		{
+			f.close();
+		}
+		set.count = 0;
+		set.slotMask = slots - 1;
+		set.bloomBits = bloomBits;
+		set.bloomHashes = bloomBits == 0 ? 0 : BLOOM_HASHES;
+		set.layout();
+
+		long end = 0;
+		in = openList(list);
+		try
+		{
+			String id;
+			while((id = nextId(in)) != null)
+			{
+				long h = hash(id);
+				long slot = find(set, id, h);
+				if(slot < 0)
+				{
+					// already in the set
+					continue;
+				}
+				set.putLong(set.slotsAt + slot * 8,
+					((h >>> 40) << 40) | (end + 1));
+				long at = set.keysAt + end;
+				set.putByte(at, (byte)id.length());
+				for(int i = 0; i < id.length(); i++)
+				{
+					set.putByte(at + 1 + i, (byte)id.charAt(i));
+				}
+				end += 1 + id.length();
+				set.addToBloom(h);
+				set.count++;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		set.putInt(0, MAGIC);
+		set.putInt(4, FORMAT);
+		set.putLong(8, set.count);
+		set.putLong(16, slots);
+		set.putLong(24, bloomBits);
+		set.putInt(32, set.bloomHashes);
+		set.putLong(40, end);
+		for(int i = 0; i < set.segments.length; i++)
+		{
+			set.segments[i].force();
+		}
+		set.close();
+	}
+
+	public boolean contains(String id)
+	{
+	// Purpose: report whether 'id' is in the set
+	// Notes: ids are compared as ISO-8859-1 bytes, case sensitively
+
+		if(id == null || id.length() > 255)
+		{
+			return false;
+		}
+		long h = hash(id);
+		if(this.bloomBits != 0 && !inBloom(h))
+		{
+			return false;
+		}
+		return find(this, id, h) < 0;
+	}
+
+	public long size()
+		// Purpose: the number of ids in the set
+	{
+		return this.count;
+	}
+
+	public File getFile()
+	{
+		return this.file;
+	}
+
+	public void close()
+		// Purpose: let go of the mappings; they are unmapped when
+		//	    collected
+	{
+		this.segments = new MappedByteBuffer[0];
+	}
+
+	private static long find(AccessionSet set, String id, long h)
+		// Purpose: probe for 'id', whose hash is 'h'
+		// Returns: -1 if it is in the set, otherwise the empty slot
+		//	    where it would go
+	{
+		long tag = h >>> 40;
+		long slot = h & set.slotMask;
+		while(true)
+		{
+			long v = set.getLong(set.slotsAt + slot * 8);
+			if(v == 0)
+			{
+				return slot;
+			}
+			if((v >>> 40) == tag && set.idEquals(
+				(v & OFFSET_MASK) - 1, id))
+			{
+				return -1;
+			}
+			slot = (slot + 1) & set.slotMask;
+		}
+	}
+
+	private boolean idEquals(long offset, String id)
+		// Purpose: compare the stored id at 'offset' with 'id'
+	{
+		long at = this.keysAt + offset;
+		if((getByte(at) & 0xff) != id.length())
+		{
+			return false;
+		}
+		for(int i = 0; i < id.length(); i++)
+		{
+			if(getByte(at + 1 + i) != (byte)id.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean inBloom(long h)
+	{
+		long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+		long mask = this.bloomBits - 1;
+		for(int i = 0; i < this.bloomHashes; i++)
+		{
+			long bit = (h + i * h2) & mask;
+			if((getLong(HEADER_SIZE + (bit >>> 6) * 8) &
+				(1L << (bit & 63))) == 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addToBloom(long h)
+	{
+		long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+		long mask = this.bloomBits - 1;
+		for(int i = 0; i < this.bloomHashes; i++)
+		{
+			long bit = (h + i * h2) & mask;
+			long at = HEADER_SIZE + (bit >>> 6) * 8;
+			putLong(at, getLong(at) | (1L << (bit & 63)));
+		}
+	}
+
+	private static long hash(String id)
+		// Purpose: a 64 bit hash of 'id' as ISO-8859-1 bytes
+	{
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < id.length(); i++)
+		{
+			h = (h ^ (id.charAt(i) & 0xff)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h)
+		// Purpose: spread the bits of 'h' (MurmurHash3's finalizer)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private void readHeader() throws IOException
+	{
+		if(getInt(0) != MAGIC || getInt(4) != FORMAT)
+		{
+			throw new IOException(this.file + " is not an accession " +
+				"set");
+		}
+		this.count = getLong(8);
+		this.slotMask = getLong(16) - 1;
+		this.bloomBits = getLong(24);
+		this.bloomHashes = getInt(32);
+		layout();
+	}
+
+	private void layout()
+		// Purpose: find the table and the ids from the header fields
+	{
+		this.slotsAt = HEADER_SIZE + this.bloomBits / 8;
+		this.keysAt = this.slotsAt + (this.slotMask + 1) * 8;
+	}
+
+	private static BufferedReader openList(File list) throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(
+			new FileInputStream(list), RecordIndex.LATIN1), 256 * 1024);
+	}
+
+	private static String nextId(BufferedReader in) throws IOException
+		// Purpose: read the next id from a list; see build()
+		// Returns: null at the end
+	{
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			line = line.trim();
+			if(line.length() == 0 || line.charAt(0) == '#')
+			{
+				continue;
+			}
+			int end = 0;
+			while(end < line.length() && line.charAt(end) > ' ')
+			{
+				end++;
+			}
+			return line.substring(0, end);
+		}
+		return null;
+	}
+
+	private long getLong(long at)
+	{
+		return this.segments[(int)(at >>> SEGMENT_SHIFT)].getLong(
+			(int)(at & (SEGMENT - 1)));
+	}
+
+	private int getInt(long at)
+	{
+		return this.segments[(int)(at >>> SEGMENT_SHIFT)].getInt(
+			(int)(at & (SEGMENT - 1)));
+	}
+
+	private byte getByte(long at)
+	{
+		return this.segments[(int)(at >>> SEGMENT_SHIFT)].get(
+			(int)(at & (SEGMENT - 1)));
+	}
+
+	private void putLong(long at, long v)
+	{
+		this.segments[(int)(at >>> SEGMENT_SHIFT)].putLong(
+			(int)(at & (SEGMENT - 1)), v);
+	}
+
+	private void putInt(long at, int v)
+	{
+		this.segments[(int)(at >>> SEGMENT_SHIFT)].putInt(
+			(int)(at & (SEGMENT - 1)), v);
+	}
+
+	private void putByte(long at, byte v)
+	{
+		this.segments[(int)(at >>> SEGMENT_SHIFT)].put(
+			(int)(at & (SEGMENT - 1)), v);
+	}
+
+	//
+	//instance variables:
+	//
+
+	// usual suffix of set files
+	public static final String SUFFIX = ".aset";
+
+	// "SQAS" and the format version, at the start of every set file
+	static final int MAGIC = 0x53514153;
+	static final int FORMAT = 1;
+
+	// bytes before the Bloom filter
+	private static final int HEADER_SIZE = 64;
+
+	// Bloom filter size and hashes: about a 1% false positive rate
+	private static final int BLOOM_BITS_PER_ID = 10;
+	private static final int BLOOM_HASHES = 7;
+
+	// bytes of the file in each mapping
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT = 1L << SEGMENT_SHIFT;
+
+	// the id offset bits of a table slot
+	private static final long OFFSET_MASK = (1L << 40) - 1;
+
+	// see the constructor
+	private File file;
+	private MappedByteBuffer[] segments;
+
+	// from the header
+	private long count;
+	private long slotMask;
+	private long bloomBits;
+	private int bloomHashes;
+
+	// where the table and the ids start in the file
+	private long slotsAt;
+	private long keysAt;
+}
@@ -0,0 +1,92 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class AccessionSetDecider extends SeqDecider
+{
+	//Concept:
+        //        IS: a SeqDecider whose predicate is "the record is in this
+	//	       list", for GenBank and SwissProt records
+        //       HAS: an AccessionSet
+        //      DOES: decides true if the record's seqid.version or any of
+	//	       its seqids (primary and secondary accessions) is in the
+	//	       set, so a list may hold either
+        // Implementation: the set is memory mapped (see AccessionSet), so
+	//	       even a very large list costs little heap; ids are found
+	//	       in the header lines alone
+
+	//
+	//constructors
+	//
+
+	public AccessionSetDecider(String name, AccessionSet set)
+		// Purpose: Construct a decider named 'name' over 'set'
+	{
+		super(name);
+		this.set = set;
+	}
+
+	public AccessionSetDecider(String name, File file) throws IOException
+		// Purpose: Construct a decider named 'name' over the set file
+		//	    or list 'file' (see AccessionSet.load())
+		// Throws: IOException if 'file' cannot be read
+	{
+		this(name, AccessionSet.load(file));
+	}
+
+	//
+	//methods:
+	//
+
+	public boolean isA(SeqRecord s)
+	{
+		incrementAllCtr();
+		if(this.set.contains(s.getVersion()) || anyIn(s.getSeqIds()))
+		{
+			incrementTrueCtr();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: an AccessionSetDecider is: its set is read only
+	{
+		return true;
+	}
+
+	public Set<RecordSection> getRequiredSections()
+	{
+		return EnumSet.of(RecordSection.HEADER);
+	}
+
+	public AccessionSet getSet()
+	{
+		return this.set;
+	}
+
+	private boolean anyIn(Vector<?> seqIds)
+	{
+		if(seqIds == null)
+		{
+			return false;
+		}
+		for(int i = 0; i < seqIds.size(); i++)
+		{
+			if(this.set.contains((String)seqIds.get(i)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private AccessionSet set;
+}
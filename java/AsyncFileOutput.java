@@ -0,0 +1,376 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class AsyncFileOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: a -a or -o output location written by its own thread
+        //       HAS: a FileChannel open on the output file, a writer
+	//	       thread, and a fixed set of large direct buffers
+        //      DOES: copies records into the current buffer on the calling
+	//	       thread and hands full buffers to the writer thread,
+	//	       which writes them to the file; a slow file (e.g. on NFS)
+	//	       holds up its own writer, not the deciders or the other
+	//	       outputs, until all its buffers are full
+        // Implementation: there are BUFFERS buffers of BUFFER_SIZE bytes.
+	//	       A buffer is either the caller's current buffer, queued
+	//	       for writing, or free; the caller blocks for a free one
+	//	       when all are queued, which bounds the memory an output
+	//	       uses and is the backpressure on a slow destination.
+	//	       The writer takes every queued buffer at once and writes
+	//	       them with one gathering write (a group commit), so
+	//	       records of any size reach the file in a few large
+	//	       sequential writes. sync() queues a marker the writer
+	//	       answers by forcing the file to disk. A write failure is
+	//	       kept and thrown as an IOException from the caller's
+	//	       next write(), sync() or close(); after a failure the
+	//	       writer only frees buffers, so the caller never blocks on
+	//	       it. A writer that is interrupted frees what it holds and
+	//	       stops, and a caller waiting on it checks for the failure
+	//	       every POLL_MILLIS. Records are written from one thread
+	//	       at a time (the single threaded loop, or the output's
+	//	       OutputStage).
+
+	//
+	//constructors
+	//
+
+	AsyncFileOutput(String fileName, boolean append) throws IOException
+	{
+		this.path = fileName;
+		this.channel = FileChannel.open(Paths.get(fileName),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			append ? StandardOpenOption.APPEND :
+			StandardOpenOption.TRUNCATE_EXISTING);
+		for(int i = 0; i < BUFFERS; i++)
+		{
+			this.free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		this.current = this.free.poll();
+		this.encoder = RecordIndex.LATIN1.newEncoder();
+		this.writer = new Thread("seqfilter-writer " + fileName)
+		{
+			public void run()
+			{
+				writeQueued();
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+		checkFailure();
+		if(r.text != null)
+		{
+			encode(r.text);
+		}
+		else
+		{
+			copy(r.span.bytes());
+		}
+	}
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		for(int i = 0; i < records.size(); i++)
+		{
+			write(records.get(i));
+		}
+	}
+
+	public long sync() throws IOException, InterruptedException
+	{
+		checkFailure();
+		if(this.current.position() > 0)
+		{
+			handOff();
+		}
+		this.queued.put(SYNC);
+		while(!this.synced.tryAcquire(POLL_MILLIS,
+			TimeUnit.MILLISECONDS))
+		{
+			// the writer may have stopped without answering
+			checkFailure();
+		}
+		checkFailure();
+		return this.channel.size();
+	}
+
+	public void close() throws IOException, InterruptedException
+	{
+		try
+		{
+			if(this.writer.isAlive())
+			{
+				if(this.current.position() > 0)
+				{
+					this.current.flip();
+					this.queued.put(this.current);
+				}
+				this.queued.put(END);
+				this.writer.join();
+			}
+		}
+		finally
+		{
+			this.channel.close();
+		}
+		checkFailure();
+	}
+
+	private void encode(String text)
+		throws IOException, InterruptedException
+		// Purpose: add 'text' to the buffers as ISO-8859-1 bytes
+		// Throws: CharacterCodingException if 'text' has a character
+		//	   ISO-8859-1 cannot hold; record text read as
+		//	   ISO-8859-1 never does
+		// Notes: the text is encoded from a reused character array, a
+		//	  piece at a time, rather than from a CharBuffer made
+		//	  for each record
+	{
+		int length = text.length();
+		this.encoder.reset();
+		int from = 0;
+		do
+		{
+			int to = Math.min(length, from + this.chars.length);
+			if(to < length && Character.isHighSurrogate(
+				text.charAt(to - 1)))
+			{
+				// keep a surrogate pair in one piece
+				to--;
+			}
+			text.getChars(from, to, this.chars, 0);
+			this.charBuffer.clear();
+			this.charBuffer.limit(to - from);
+			CoderResult result;
+			while((result = this.encoder.encode(this.charBuffer,
+				this.current, to == length)).isOverflow())
+			{
+				handOff();
+			}
+			if(result.isError())
+			{
+				result.throwException();
+			}
+			from = to;
+		}
+		while(from < length);
+	}
+
+	private void copy(ByteBuffer src)
+		throws IOException, InterruptedException
+		// Purpose: add the bytes of 'src' to the buffers
+	{
+		while(src.remaining() > this.current.remaining())
+		{
+			ByteBuffer part = src.duplicate();
+			part.limit(part.position() + this.current.remaining());
+			this.current.put(part);
+			src.position(part.position());
+			handOff();
+		}
+		this.current.put(src);
+	}
+
+	private void handOff() throws IOException, InterruptedException
+		// Purpose: queue the current buffer for writing and take a free
+		//	    one, waiting while every buffer is queued
+	{
+		this.current.flip();
+		this.queued.put(this.current);
+		ByteBuffer b;
+		while((b = this.free.poll(POLL_MILLIS,
+			TimeUnit.MILLISECONDS)) == null)
+		{
+			// the writer may have stopped without freeing any
+			checkFailure();
+		}
+		this.current = b;
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException
+		// Throws: IOException if the writer has failed
+	{
+		IOException f = this.failure;
+		if(f != null)
+		{
+			IOException e = new IOException("Error writing " +
+				this.path + ": " + f.getMessage());
+			e.initCause(f);
+			throw e;
+		}
+	}
+
+	private void writeQueued()
+		// Purpose: the writer thread; write queued buffers until the
+		//	    end marker
+	{
+		List<ByteBuffer> taken = new ArrayList<ByteBuffer>(BUFFERS + 2);
+		try
+		{
+			while(true)
+			{
+				taken.add(this.queued.take());
+				this.queued.drainTo(taken);
+
+				// write the buffers between markers together
+				int i = 0;
+				while(i < taken.size())
+				{
+					int j = i;
+					while(j < taken.size() &&
+						taken.get(j) != SYNC &&
+						taken.get(j) != END)
+					{
+						j++;
+					}
+					if(j > i)
+					{
+						commit(taken.subList(i, j));
+					}
+					if(j == taken.size())
+					{
+						break;
+					}
+					if(taken.get(j) == END)
+					{
+						return;
+					}
+					force();
+					this.synced.release();
+					i = j + 1;
+				}
+				taken.clear();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			this.failure = new IOException("writer interrupted");
+
+			// free what was never written and answer the sync()
+			// markers, so no caller waits on a writer that is gone
+			this.queued.drainTo(taken);
+			for(int i = 0; i < taken.size(); i++)
+			{
+				ByteBuffer b = taken.get(i);
+				if(b == SYNC)
+				{
+					this.synced.release();
+				}
+				else if(b != END)
+				{
+					b.clear();
+					this.free.add(b);
+				}
+			}
+		}
+	}
+
+	private void commit(List<ByteBuffer> bufs)
+		// Purpose: write 'bufs' in one gathering write and free them
+	{
+		if(this.failure == null)
+		{
+			ByteBuffer[] all = bufs.toArray(new ByteBuffer[bufs.size()]);
+			ByteBuffer last = all[all.length - 1];
+			try
+			{
+				while(last.hasRemaining())
+				{
+					this.channel.write(all);
+				}
+			}
+			catch(IOException e)
+			{
+				this.failure = e;
+			}
+		}
+		for(int i = 0; i < bufs.size(); i++)
+		{
+			bufs.get(i).clear();
+			this.free.add(bufs.get(i));
+		}
+	}
+
+	private void force()
+		// Purpose: answer a sync() marker
+	{
+		if(this.failure == null)
+		{
+			try
+			{
+				this.channel.force(false);
+			}
+			catch(IOException e)
+			{
+				this.failure = e;
+			}
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// buffers per output, and their size
+	private static final int BUFFERS = 8;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	// how often a caller waiting on the writer checks for a failure
+	private static final long POLL_MILLIS = 100;
+
+	// characters encoded at a time
+	private static final int CHARS_SIZE = 64 * 1024;
+
+	// markers queued by sync() and close(); compared by identity
+	private static final ByteBuffer SYNC = ByteBuffer.allocate(0);
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	// see the constructor
+	private String path;
+
+	// the output file
+	private FileChannel channel;
+
+	// the buffer being filled by the caller, and its encoder
+	private ByteBuffer current;
+	private CharsetEncoder encoder;
+
+	// the piece of a record's text being encoded, and a buffer over it
+	private char[] chars = new char[CHARS_SIZE];
+	private CharBuffer charBuffer = CharBuffer.wrap(this.chars);
+
+	// buffers waiting to be written, with markers; and free buffers.
+	// Neither can hold more than BUFFERS buffers, so puts and adds
+	// never block or fail
+	private BlockingQueue<ByteBuffer> queued =
+		new LinkedBlockingQueue<ByteBuffer>();
+	private BlockingQueue<ByteBuffer> free =
+		new LinkedBlockingQueue<ByteBuffer>();
+
+	// released by the writer for each sync() marker
+	private Semaphore synced = new Semaphore(0);
+
+	// the writer thread
+	private Thread writer;
+
+	// the first write failure
+	private volatile IOException failure;
+}
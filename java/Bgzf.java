@@ -0,0 +1,187 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.zip.*;
+
+class Bgzf
+{
+	//Concept:
+        //        IS: the BGZF (blocked gzip) format used by samtools and
+	//	       tabix
+        //       HAS: nothing
+        //      DOES: recognises gzip and BGZF streams, and compresses and
+	//	       decompresses single BGZF blocks
+        // Implementation: a BGZF file is a series of gzip members, each
+	//	       holding at most 64KB of data and carrying its own
+	//	       compressed size in a "BC" extra field, so the members
+	//	       can be found without inflating and then inflated
+	//	       independently on different threads. Any gzip reader
+	//	       can read BGZF. Deflaters and Inflaters are kept per
+	//	       thread and reset for each block.
+
+	static boolean isGzip(byte[] header, int n)
+		// Purpose: report whether 'header' starts a gzip stream
+	{
+		return n >= 2 && (header[0] & 0xff) == 0x1f &&
+			(header[1] & 0xff) == 0x8b;
+	}
+
+	static boolean isBgzf(byte[] header, int n)
+		// Purpose: report whether 'header' starts a BGZF block
+	{
+		return n >= HEADER_SIZE && isGzip(header, n) &&
+			(header[3] & FEXTRA) != 0 &&
+			(header[12] & 0xff) == 'B' && (header[13] & 0xff) == 'C' &&
+			uint16(header, 14) == 2;
+	}
+
+	static int blockSize(byte[] header)
+		// Purpose: the total size of the block 'header' starts
+	{
+		return uint16(header, 16) + 1;
+	}
+
+	static byte[] inflate(byte[] block) throws IOException
+		// Purpose: decompress one whole BGZF block
+		// Returns: the block's data
+		// Throws: IOException if the block is corrupt
+	{
+		int cdataLen = block.length - HEADER_SIZE - FOOTER_SIZE;
+		int isize = int32(block, block.length - 4);
+		byte[] data = new byte[isize];
+		Inflater inf = INFLATER.get();
+		inf.reset();
+		inf.setInput(block, HEADER_SIZE, cdataLen);
+		try
+		{
+			int n = 0;
+			while(n < isize && !inf.finished())
+			{
+				int k = inf.inflate(data, n, isize - n);
+				if(k == 0 && (inf.needsInput() ||
+					inf.needsDictionary()))
+				{
+					break;
+				}
+				n += k;
+			}
+			if(n != isize)
+			{
+				throw new IOException("Corrupt BGZF block: " +
+					"expected " + isize + " bytes, got " + n);
+			}
+		}
+		catch(DataFormatException e)
+		{
+			throw new IOException("Corrupt BGZF block: " +
+				e.getMessage());
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, isize);
+		if((int)crc.getValue() != int32(block, block.length - 8))
+		{
+			throw new IOException("BGZF block fails its CRC check");
+		}
+		return data;
+	}
+
+	static byte[] deflate(byte[] data, int len)
+		// Purpose: compress 'len' bytes of 'data' into one BGZF block
+		// Assumes: 'len' is at most MAX_DATA
+	{
+		Deflater def = DEFLATER.get();
+		def.reset();
+		def.setInput(data, 0, len);
+		def.finish();
+		byte[] out = new byte[MAX_BLOCK];
+		int n = HEADER_SIZE;
+		while(!def.finished())
+		{
+			int room = MAX_BLOCK - FOOTER_SIZE - n;
+			if(room == 0)
+			{
+				// cannot happen for len <= MAX_DATA
+				throw new IllegalStateException(
+					"BGZF block overflow");
+			}
+			n += def.deflate(out, n, room);
+		}
+
+		System.arraycopy(BLOCK_HEADER, 0, out, 0, HEADER_SIZE);
+		putUint16(out, 16, n + FOOTER_SIZE - 1);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, len);
+		putInt32(out, n, (int)crc.getValue());
+		putInt32(out, n + 4, len);
+
+		byte[] block = new byte[n + FOOTER_SIZE];
+		System.arraycopy(out, 0, block, 0, block.length);
+		return block;
+	}
+
+	private static int uint16(byte[] b, int i)
+	{
+		return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8;
+	}
+
+	private static int int32(byte[] b, int i)
+	{
+		return uint16(b, i) | uint16(b, i + 2) << 16;
+	}
+
+	private static void putUint16(byte[] b, int i, int v)
+	{
+		b[i] = (byte)v;
+		b[i + 1] = (byte)(v >>> 8);
+	}
+
+	private static void putInt32(byte[] b, int i, int v)
+	{
+		putUint16(b, i, v);
+		putUint16(b, i + 2, v >>> 16);
+	}
+
+	//
+	//instance variables:
+	//
+
+	// gzip header with the BGZF extra field, footer (CRC32 and ISIZE)
+	static final int HEADER_SIZE = 18;
+	static final int FOOTER_SIZE = 8;
+
+	// most data per block, as samtools writes, so the compressed block
+	// stays under MAX_BLOCK even for incompressible data
+	static final int MAX_DATA = 65280;
+	static final int MAX_BLOCK = 65536;
+
+	private static final int FEXTRA = 4;
+
+	// the fixed part of every block header; BSIZE is filled in
+	private static final byte[] BLOCK_HEADER = {
+		31, (byte)139, 8, FEXTRA, 0, 0, 0, 0, 0, (byte)255, 6, 0,
+		'B', 'C', 2, 0, 0, 0 };
+
+	// the empty block that ends a BGZF file
+	static final byte[] EOF_BLOCK = {
+		31, (byte)139, 8, 4, 0, 0, 0, 0, 0, (byte)255, 6, 0, 66, 67, 2, 0,
+		27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+	private static final ThreadLocal<Inflater> INFLATER =
+		new ThreadLocal<Inflater>()
+		{
+			protected Inflater initialValue()
+			{
+				return new Inflater(true);
+			}
+		};
+
+	private static final ThreadLocal<Deflater> DEFLATER =
+		new ThreadLocal<Deflater>()
+		{
+			protected Deflater initialValue()
+			{
+				return new Deflater(Deflater.DEFAULT_COMPRESSION,
+					true);
+			}
+		};
+}
@@ -0,0 +1,178 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class BgzfInputStream extends InputStream
+{
+	//Concept:
+        //        IS: an InputStream of the data in a BGZF file
+        //       HAS: the compressed stream, a thread pool, and a window of
+	//	       blocks being inflated ahead of the reader
+        //      DOES: reads compressed blocks in order, inflates up to
+	//	       'window' of them at once on the pool, and returns their
+	//	       data in order
+        // Implementation: reading the compressed blocks is cheap and stays
+	//	       on the calling thread; only inflating is handed out.
+	//	       The window bounds the memory held in inflated blocks.
+
+	//
+	//constructors
+	//
+
+	BgzfInputStream(InputStream in, ExecutorService pool, int window)
+	{
+		this.in = in;
+		this.pool = pool;
+		this.window = window;
+	}
+
+	//
+	//methods:
+	//
+
+	public int read() throws IOException
+	{
+		byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : (one[0] & 0xff);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		while(this.pos == this.data.length)
+		{
+			if(!nextBlock())
+			{
+				return -1;
+			}
+		}
+		int n = Math.min(len, this.data.length - this.pos);
+		System.arraycopy(this.data, this.pos, b, off, n);
+		this.pos += n;
+		return n;
+	}
+
+	public void close() throws IOException
+	{
+		for(Future<byte[]> f : this.inflating)
+		{
+			f.cancel(false);
+		}
+		this.inflating.clear();
+		this.in.close();
+	}
+
+	private boolean nextBlock() throws IOException
+		// Purpose: make the next inflated block current
+		// Returns: false at the end of the stream
+	{
+		while(!this.eof && this.inflating.size() < this.window)
+		{
+			final byte[] block = readBlock();
+			if(block == null)
+			{
+				this.eof = true;
+				break;
+			}
+			this.inflating.add(this.pool.submit(new Callable<byte[]>()
+			{
+				public byte[] call() throws IOException
+				{
+					return Bgzf.inflate(block);
+				}
+			}));
+		}
+		if(this.inflating.isEmpty())
+		{
+			return false;
+		}
+		try
+		{
+			this.data = this.inflating.remove().get();
+			this.pos = 0;
+			return true;
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException(
+				"Interrupted while inflating BGZF input");
+		}
+		catch(ExecutionException e)
+		{
+			Throwable t = e.getCause();
+			if(t instanceof IOException)
+			{
+				throw (IOException)t;
+			}
+			IOException e1 = new IOException(t.toString());
+			e1.initCause(t);
+			throw e1;
+		}
+	}
+
+	private byte[] readBlock() throws IOException
+		// Purpose: read the next whole compressed block
+		// Returns: the block, or null at the end of the stream
+	{
+		byte[] header = new byte[Bgzf.HEADER_SIZE];
+		int n = readFully(header, 0, header.length);
+		if(n == 0)
+		{
+			return null;
+		}
+		if(!Bgzf.isBgzf(header, n))
+		{
+			throw new IOException("Input is not BGZF after block " +
+				this.blocks);
+		}
+		byte[] block = new byte[Bgzf.blockSize(header)];
+		System.arraycopy(header, 0, block, 0, header.length);
+		if(readFully(block, header.length, block.length - header.length)
+			!= block.length - header.length)
+		{
+			throw new IOException("BGZF input ends inside block " +
+				this.blocks);
+		}
+		this.blocks++;
+		return block;
+	}
+
+	private int readFully(byte[] b, int off, int len) throws IOException
+	{
+		int n = 0;
+		while(n < len)
+		{
+			int k = this.in.read(b, off + n, len - n);
+			if(k < 0)
+			{
+				break;
+			}
+			n += k;
+		}
+		return n;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private InputStream in;
+	private ExecutorService pool;
+	private int window;
+
+	// blocks being inflated, in stream order
+	private ArrayDeque<Future<byte[]>> inflating =
+		new ArrayDeque<Future<byte[]>>();
+
+	// the current block's data and the next byte to return from it
+	private byte[] data = new byte[0];
+	private int pos = 0;
+
+	// blocks read so far, for messages
+	private long blocks = 0;
+
+	// true once the compressed stream has ended
+	private boolean eof = false;
+}
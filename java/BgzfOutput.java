@@ -0,0 +1,178 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class BgzfOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: a -a or -o output location written as BGZF (--bgzf)
+        //       HAS: a FileChannel on the output file, the block being
+	//	       filled, and a window of blocks being compressed
+        //      DOES: packs records into 64KB blocks, compresses up to
+	//	       'window' blocks at once on a shared thread pool, and
+	//	       writes the compressed blocks in order
+        // Implementation: the file is readable by gunzip and zcat as well
+	//	       as by BGZF aware tools. Appending (-a) adds blocks after
+	//	       the existing file's end-of-file block, which readers
+	//	       treat as an empty member. A record may span blocks.
+
+	//
+	//constructors
+	//
+
+	BgzfOutput(String fileName, boolean append, ExecutorService pool,
+		int window) throws IOException
+	{
+		this.channel = FileChannel.open(Paths.get(fileName),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			append ? StandardOpenOption.APPEND :
+			StandardOpenOption.TRUNCATE_EXISTING);
+		this.pool = pool;
+		this.window = window;
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+		if(r.span != null)
+		{
+			ByteBuffer b = r.span.bytes();
+			while(b.hasRemaining())
+			{
+				int n = Math.min(b.remaining(),
+					Bgzf.MAX_DATA - this.filled);
+				b.get(this.block, this.filled, n);
+				this.filled += n;
+				if(this.filled == Bgzf.MAX_DATA)
+				{
+					submitBlock();
+				}
+			}
+		}
+		else
+		{
+			String text = r.text;
+			int len = text.length();
+			for(int i = 0; i < len; i++)
+			{
+				char c = text.charAt(i);
+				this.block[this.filled++] =
+					(byte)(c < 256 ? c : '?');
+				if(this.filled == Bgzf.MAX_DATA)
+				{
+					submitBlock();
+				}
+			}
+		}
+	}
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		for(int i = 0; i < records.size(); i++)
+		{
+			write(records.get(i));
+		}
+	}
+
+	public long sync() throws IOException, InterruptedException
+		// Notes: ends the current block early, so the file is whole
+		//	  BGZF blocks up to the returned length
+	{
+		flushBlocks();
+		this.channel.force(false);
+		return this.channel.size();
+	}
+
+	public void close() throws IOException, InterruptedException
+	{
+		flushBlocks();
+		writeFully(ByteBuffer.wrap(Bgzf.EOF_BLOCK));
+		this.channel.close();
+	}
+
+	private void flushBlocks() throws IOException, InterruptedException
+		// Purpose: compress and write everything written so far
+	{
+		if(this.filled > 0)
+		{
+			submitBlock();
+		}
+		while(!this.compressing.isEmpty())
+		{
+			writeNextBlock();
+		}
+	}
+
+	private void submitBlock() throws IOException, InterruptedException
+		// Purpose: hand the filled block to the pool and start a new
+		//	    one; write finished blocks while the window is full
+	{
+		final byte[] data = this.block;
+		final int len = this.filled;
+		while(this.compressing.size() >= this.window)
+		{
+			writeNextBlock();
+		}
+		this.compressing.add(this.pool.submit(new Callable<byte[]>()
+		{
+			public byte[] call()
+			{
+				return Bgzf.deflate(data, len);
+			}
+		}));
+		// the pool owns 'data' now
+		this.block = new byte[Bgzf.MAX_DATA];
+		this.filled = 0;
+	}
+
+	private void writeNextBlock() throws IOException, InterruptedException
+		// Purpose: wait for the oldest block and write it
+	{
+		try
+		{
+			writeFully(ByteBuffer.wrap(this.compressing.remove().get()));
+		}
+		catch(ExecutionException e)
+		{
+			IOException e1 = new IOException(
+				"BGZF compression failed: " + e.getCause());
+			e1.initCause(e.getCause());
+			throw e1;
+		}
+	}
+
+	private void writeFully(ByteBuffer b) throws IOException
+	{
+		while(b.hasRemaining())
+		{
+			this.channel.write(b);
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private FileChannel channel;
+	private ExecutorService pool;
+	private int window;
+
+	// the block being filled
+	private byte[] block = new byte[Bgzf.MAX_DATA];
+	private int filled = 0;
+
+	// blocks being compressed, in output order
+	private ArrayDeque<Future<byte[]>> compressing =
+		new ArrayDeque<Future<byte[]>>();
+}
@@ -0,0 +1,234 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+class ByteStreamRecordSource implements RecordSource
+{
+	//Concept:
+        //        IS: a RecordSource over a byte stream: stdin for
+	//	       --passthrough runs without -i files, or a decompressed
+	//	       -i file
+        //       HAS: the stream and the bytes read past the last whole
+	//	       record
+        //      DOES: reads the stream in large blocks and hands out each
+	//	       block, cut after its last "//" terminator line, as a
+	//	       chunk of whole records
+        // Implementation: the stream is read as bytes, not through a
+	//	       Reader, so each record's original bytes are available
+	//	       to the outputs. A record longer than a block grows the
+	//	       block until its terminator is found, unless it is a
+	//	       giant record (see setGiantSize()), which goes to a
+	//	       temporary file instead, so a record of any size needs
+	//	       no more memory than the giant size.
+
+	//
+	//constructors
+	//
+
+	ByteStreamRecordSource(InputStream in, int blockSize,
+		boolean keepSpans)
+	{
+		this.in = in;
+		this.block = new byte[blockSize];
+		this.keepSpans = keepSpans;
+	}
+
+	//
+	//methods:
+	//
+
+	public RecordBatch nextBatch(int seq) throws IOException
+	{
+		while(true)
+		{
+			int end = this.eof ? this.filled :
+				RecordBoundaries.lastRecordEnd(this.block, 0,
+				this.filled);
+			if(end > 0 || (this.eof && this.filled > 0))
+			{
+				if(end <= 0)
+				{
+					end = this.filled;
+				}
+				byte[] chunk = Arrays.copyOf(this.block, end);
+				System.arraycopy(this.block, end, this.block, 0,
+					this.filled - end);
+				this.filled -= end;
+				this.consumed += end;
+				return new RecordBatch(seq, ByteBuffer.wrap(chunk),
+					null, -1, this.keepSpans, this.giantSize);
+			}
+			if(this.eof)
+			{
+				return null;
+			}
+			if(this.giantSize > 0 && this.filled >= this.giantSize)
+			{
+				// the block holds the start of one giant record
+				return spill(seq);
+			}
+			if(this.filled == this.block.length)
+			{
+				this.block = Arrays.copyOf(this.block,
+					2 * this.block.length);
+			}
+			fill();
+		}
+	}
+
+	void setGiantSize(int giantSize)
+		// Purpose: see MappedRecordSource.setGiantSize(); a record
+		//	    found to be over 'giantSize' bytes while it is read is
+		//	    spilled to a temporary file rather than held in memory
+		// Assumes: no batch has been read yet
+	{
+		this.giantSize = giantSize;
+	}
+
+	private RecordBatch spill(int seq) throws IOException
+		// Purpose: copy the record the block starts with to a temporary
+		//	    file, reading the stream on to its terminator, and
+		//	    return a batch of just that record, mapped from the
+		//	    file
+		// Notes: only whole lines are written, so a terminator line is
+		//	  always found whole at the start of the block
+	{
+		Path file = Files.createTempFile("seqfilter-giant", ".seq");
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.DELETE_ON_CLOSE);
+		this.spills.add(ch);
+		long written = 0;
+		while(true)
+		{
+			int end = RecordBoundaries.nextRecordEnd(this.block, 0,
+				this.filled);
+			if(end >= 0 || this.eof)
+			{
+				written += writeSpill(ch, end >= 0 ? end :
+					this.filled);
+				break;
+			}
+			int last = RecordBoundaries.lastLineStart(this.block, 0,
+				this.filled);
+			if(last > 0)
+			{
+				written += writeSpill(ch, last);
+			}
+			else if(this.filled == this.block.length)
+			{
+				// one line fills the block
+				this.block = Arrays.copyOf(this.block,
+					2 * this.block.length);
+			}
+			fill();
+		}
+		if(written > Integer.MAX_VALUE)
+		{
+			throw new IOException("Record at byte " + this.consumed +
+				" of the input is larger than 2GB and cannot be " +
+				"mapped");
+		}
+		this.consumed += written;
+		return new RecordBatch(seq, ch.map(FileChannel.MapMode.READ_ONLY,
+			0, written), ch, 0, this.keepSpans, this.giantSize);
+	}
+
+	private int writeSpill(FileChannel ch, int n) throws IOException
+		// Purpose: move the first 'n' bytes of the block to 'ch'
+		// Returns: 'n'
+	{
+		ByteBuffer b = ByteBuffer.wrap(this.block, 0, n);
+		while(b.hasRemaining())
+		{
+			ch.write(b);
+		}
+		System.arraycopy(this.block, n, this.block, 0, this.filled - n);
+		this.filled -= n;
+		return n;
+	}
+
+	public InputPosition position()
+	{
+		return new InputPosition(0, this.consumed);
+	}
+
+	public void seek(InputPosition p) throws IOException
+		// Notes: a stream cannot seek, so the bytes before 'p' are
+		//	  read and dropped, unparsed
+	{
+		if(p.file != 0)
+		{
+			throw new IOException("Cannot seek a stream to " + p);
+		}
+		long skip = p.offset - this.consumed;
+		while(skip > 0)
+		{
+			int n = this.in.read(this.block, 0,
+				(int)Math.min(skip, this.block.length));
+			if(n < 0)
+			{
+				throw new IOException("Input ended before " + p);
+			}
+			skip -= n;
+		}
+		this.consumed = p.offset;
+	}
+
+	public void close() throws IOException
+		// Notes: also removes the spilled records' files
+	{
+		this.in.close();
+		for(int i = 0; i < this.spills.size(); i++)
+		{
+			this.spills.get(i).close();
+		}
+	}
+
+	private void fill() throws IOException
+		// Purpose: read until the block is full or the stream ends
+	{
+		while(this.filled < this.block.length)
+		{
+			int n = this.in.read(this.block, this.filled,
+				this.block.length - this.filled);
+			if(n < 0)
+			{
+				this.eof = true;
+				return;
+			}
+			this.filled += n;
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the stream
+	private InputStream in;
+
+	// bytes read and not yet handed out are block[0, filled)
+	private byte[] block;
+	private int filled = 0;
+
+	// bytes handed out in batches, or skipped by seek()
+	private long consumed = 0;
+
+	// true once the stream has ended
+	private boolean eof = false;
+
+	// make a RecordSpan per record, for --passthrough
+	private boolean keepSpans;
+
+	// see setGiantSize(); 0 for none
+	private int giantSize = 0;
+
+	// the files of the records spilled so far; open, since outputs
+	// may copy from them until the run ends, and removed on closing
+	private List<FileChannel> spills = new ArrayList<FileChannel>();
+}
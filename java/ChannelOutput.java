@@ -0,0 +1,145 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+class ChannelOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: a -a or -o output location for --passthrough runs
+        //       HAS: a FileChannel open on the output file
+        //      DOES: writes each record's original input bytes
+        // Implementation: records from a -i input file are copied with
+	//	       FileChannel.transferTo, which lets the kernel copy
+	//	       from the input file's page cache without the bytes
+	//	       entering the JVM; runs of records that were adjacent in
+	//	       the input go in a single transfer. Records from a stream
+	//	       are written with gathering writes of their buffer views.
+	//	       Neither path makes a String or encodes anything.
+
+	//
+	//constructors
+	//
+
+	ChannelOutput(String fileName, boolean append) throws IOException
+	{
+		this.channel = FileChannel.open(Paths.get(fileName),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			append ? StandardOpenOption.APPEND :
+			StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r) throws IOException
+	{
+		write(Collections.singletonList(r));
+	}
+
+	public void write(List<FilteredRecord> records) throws IOException
+	{
+		int n = records.size();
+		int i = 0;
+		while(i < n)
+		{
+			FilteredRecord r = records.get(i);
+			if(r.span == null)
+			{
+				// fails rather than replace a character
+				// ISO-8859-1 cannot hold
+				writeFully(new ByteBuffer[] { RecordIndex.LATIN1.
+					newEncoder().encode(CharBuffer.wrap(r.text)) });
+				i++;
+			}
+			else if(r.span.channel != null)
+			{
+				// extend over following records that continue
+				// this one in the same input file
+				FileChannel src = r.span.channel;
+				long start = r.span.position;
+				long end = start + r.span.length();
+				int j = i + 1;
+				while(j < n && records.get(j).span != null &&
+					records.get(j).span.channel == src &&
+					records.get(j).span.position == end)
+				{
+					end += records.get(j).span.length();
+					j++;
+				}
+				transfer(src, start, end - start);
+				i = j;
+			}
+			else
+			{
+				int j = i;
+				while(j < n && j - i < MAX_GATHER &&
+					records.get(j).span != null &&
+					records.get(j).span.channel == null)
+				{
+					j++;
+				}
+				ByteBuffer[] bufs = new ByteBuffer[j - i];
+				for(int k = i; k < j; k++)
+				{
+					bufs[k - i] = records.get(k).span.bytes();
+				}
+				writeFully(bufs);
+				i = j;
+			}
+		}
+	}
+
+	public long sync() throws IOException
+	{
+		this.channel.force(false);
+		return this.channel.size();
+	}
+
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+
+	private void transfer(FileChannel src, long position, long count)
+		throws IOException
+		// Purpose: copy 'count' bytes at 'position' of 'src' to the
+		//	    output
+	{
+		while(count > 0)
+		{
+			long n = src.transferTo(position, count, this.channel);
+			if(n <= 0)
+			{
+				throw new IOException("Input ended while " +
+					"copying a record at byte " + position);
+			}
+			position += n;
+			count -= n;
+		}
+	}
+
+	private void writeFully(ByteBuffer[] bufs) throws IOException
+	{
+		ByteBuffer last = bufs[bufs.length - 1];
+		while(last.hasRemaining())
+		{
+			this.channel.write(bufs);
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// most buffers in one gathering write (the usual IOV_MAX)
+	private static final int MAX_GATHER = 1024;
+
+
+	// the output file
+	private FileChannel channel;
+}
@@ -0,0 +1,317 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+class Checkpoint
+{
+	//Concept:
+        //        IS: the saved state of a filter run at a point in its
+	//	       input, from which a failed run can be resumed
+	//	       (--checkpoint, --resume)
+        //       HAS: a checkpoint file, holding the input position, each
+	//	       output file's length and each decider's counters at
+	//	       that point
+        //      DOES: writes the file when the run starts and every so many
+	//	       seconds while it goes on; loads it when the run is restarted so the
+	//	       outputs can be cut back to their checkpoint lengths and
+	//	       the input moved forward to the checkpoint position
+        // Implementation: the file is a java.util.Properties text file.
+	//	       It is written to a temporary file, forced to disk and
+	//	       renamed over the old one, so a crash while writing
+	//	       leaves the previous checkpoint. A checkpoint is only
+	//	       taken between records, once every record before it has
+	//	       been written and forced to disk by its outputs (see
+	//	       RecordOutput.sync()) and no record after it has been
+	//	       counted by the deciders. The file records the inputs,
+	//	       outputs and deciders by name, so a restart with a
+	//	       different command line is refused.
+
+	//
+	//constructors
+	//
+
+	Checkpoint(File file, int everySeconds)
+	{
+		this.file = file;
+		this.everyNanos = everySeconds * 1000000000L;
+	}
+
+	//
+	//methods:
+	//
+
+	boolean load() throws IOException
+	{
+	// Purpose: read the checkpoint file
+	// Returns: false if there is none
+	// Throws: IOException if it cannot be read or is not a checkpoint
+
+		if(!this.file.exists())
+		{
+			return false;
+		}
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(this.file);
+		try
+		{
+			p.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		try
+		{
+			this.inputs = list(p, "input");
+			this.position = new InputPosition(
+				Integer.parseInt(get(p, "position.file")),
+				Long.parseLong(get(p, "position.offset")));
+			this.outputs = list(p, "output");
+			this.outputLengths = new long[this.outputs.size()];
+			for(int i = 0; i < this.outputLengths.length; i++)
+			{
+				this.outputLengths[i] = Long.parseLong(
+					get(p, "output." + i + ".length"));
+			}
+			this.deciders = list(p, "decider");
+			this.allCounts = new long[this.deciders.size()];
+			this.trueCounts = new long[this.deciders.size()];
+			for(int i = 0; i < this.allCounts.length; i++)
+			{
+				this.allCounts[i] = Long.parseLong(
+					get(p, "decider." + i + ".all"));
+				this.trueCounts[i] = Long.parseLong(
+					get(p, "decider." + i + ".true"));
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException(this.file + " is not a " +
+				"checkpoint: " + e.getMessage());
+		}
+		return true;
+	}
+
+	void verify(List<File> inputFiles, List<String> outputPaths,
+		List<SeqDecider> runDeciders) throws IOException
+	{
+	// Purpose: check that the loaded checkpoint was taken by a run with
+	//	    the same inputs, outputs and deciders
+	// Throws: IOException naming the first difference
+
+		match("input files", this.inputs, absolute(inputFiles));
+		match("output locations", this.outputs,
+			absolute(toFiles(outputPaths)));
+		List<String> names = new ArrayList<String>();
+		for(int i = 0; i < runDeciders.size(); i++)
+		{
+			names.add(runDeciders.get(i).getName());
+		}
+		match("deciders", this.deciders, names);
+	}
+
+	InputPosition getPosition()
+		// Purpose: the input position of the loaded checkpoint
+	{
+		return this.position;
+	}
+
+	long getOutputLength(int i)
+		// Purpose: the length of output 'i' at the loaded checkpoint;
+		//	    -1 for a directory
+	{
+		return this.outputLengths[i];
+	}
+
+	void restoreCounts(List<SeqDecider> runDeciders)
+		// Purpose: carry the loaded decider counters over to this run
+		// Assumes: verify() has passed
+	{
+		for(int i = 0; i < runDeciders.size(); i++)
+		{
+			runDeciders.get(i).addCounts(this.allCounts[i],
+				this.trueCounts[i]);
+		}
+	}
+
+	void start(List<File> inputFiles, Vector<RecordOutput> seqOutput,
+		List<String> outputPaths, List<SeqDecider> runDeciders,
+		InputPosition from) throws IOException, InterruptedException
+		// Purpose: start taking checkpoints of a run over these inputs,
+		//	    outputs (RecordOutputs and their paths) and deciders,
+		//	    starting at 'from'
+		// Effects: takes the first checkpoint at 'from' before any
+		//	    record is read, so a run that fails before the
+		//	    next one is resumed with its -a outputs cut back to
+		//	    the lengths they had, rather than started over and
+		//	    the records appended twice
+	{
+		this.inputs = absolute(inputFiles);
+		this.outputs = absolute(toFiles(outputPaths));
+		this.seqOutput = seqOutput;
+		this.deciders = new ArrayList<String>();
+		for(int i = 0; i < runDeciders.size(); i++)
+		{
+			this.deciders.add(runDeciders.get(i).getName());
+		}
+		this.runDeciders = runDeciders;
+		write(from);
+	}
+
+	boolean due()
+		// Purpose: report whether it is time for the next checkpoint
+	{
+		return System.nanoTime() - this.nextDue >= 0;
+	}
+
+	void write(InputPosition at) throws IOException, InterruptedException
+	{
+	// Purpose: take a checkpoint at 'at'
+	// Assumes: every record before 'at' has been decided and handed to
+	//	    the outputs, and no record after it has been decided
+	// Effects: forces the outputs to disk and replaces the checkpoint
+	//	    file
+	// Throws: IOException, InterruptedException
+
+		Properties p = new Properties();
+		putList(p, "input", this.inputs);
+		p.setProperty("position.file", String.valueOf(at.file));
+		p.setProperty("position.offset", String.valueOf(at.offset));
+		putList(p, "output", this.outputs);
+		for(int i = 0; i < this.seqOutput.size(); i++)
+		{
+			p.setProperty("output." + i + ".length", String.valueOf(
+				this.seqOutput.get(i).sync()));
+		}
+		putList(p, "decider", this.deciders);
+		for(int i = 0; i < this.runDeciders.size(); i++)
+		{
+			SeqDecider d = this.runDeciders.get(i);
+			p.setProperty("decider." + i + ".all",
+				String.valueOf(d.getAllCount()));
+			p.setProperty("decider." + i + ".true",
+				String.valueOf(d.getTrueCount()));
+		}
+
+		File tmp = new File(this.file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try
+		{
+			p.store(out, "SeqRecordFilter checkpoint");
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(tmp.toPath(), this.file.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+		this.nextDue = System.nanoTime() + this.everyNanos;
+	}
+
+	void delete() throws IOException
+		// Purpose: remove the checkpoint file once the run is complete
+	{
+		Files.deleteIfExists(this.file.toPath());
+	}
+
+	File getFile()
+	{
+		return this.file;
+	}
+
+	private void match(String what, List<String> saved,
+		List<String> now) throws IOException
+	{
+		if(!saved.equals(now))
+		{
+			throw new IOException("Checkpoint " + this.file +
+				" was taken with " + what + " " + saved +
+				", not " + now);
+		}
+	}
+
+	private static String get(Properties p, String key)
+		throws NumberFormatException
+	{
+		String v = p.getProperty(key);
+		if(v == null)
+		{
+			throw new NumberFormatException("no " + key);
+		}
+		return v;
+	}
+
+	private static List<String> list(Properties p, String key)
+	{
+		int n = Integer.parseInt(get(p, key + "s"));
+		List<String> l = new ArrayList<String>(n);
+		for(int i = 0; i < n; i++)
+		{
+			l.add(get(p, key + "." + i));
+		}
+		return l;
+	}
+
+	private static void putList(Properties p, String key, List<String> l)
+	{
+		p.setProperty(key + "s", String.valueOf(l.size()));
+		for(int i = 0; i < l.size(); i++)
+		{
+			p.setProperty(key + "." + i, l.get(i));
+		}
+	}
+
+	private static List<File> toFiles(List<String> paths)
+	{
+		List<File> l = new ArrayList<File>();
+		for(int i = 0; i < paths.size(); i++)
+		{
+			l.add(new File(paths.get(i)));
+		}
+		return l;
+	}
+
+	private static List<String> absolute(List<File> files)
+	{
+		List<String> l = new ArrayList<String>();
+		for(int i = 0; i < files.size(); i++)
+		{
+			l.add(files.get(i).getAbsolutePath());
+		}
+		return l;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// default seconds between checkpoints (--checkpoint-every)
+	static final int DEFAULT_EVERY_SECONDS = 300;
+
+	// see the constructor
+	private File file;
+	private long everyNanos;
+
+	// System.nanoTime() when the next checkpoint is due
+	private long nextDue;
+
+	// the run's input files, output paths and decider names, as
+	// absolute paths; loaded, or set by start()
+	private List<String> inputs;
+	private List<String> outputs;
+	private List<String> deciders;
+
+	// the loaded checkpoint
+	private InputPosition position;
+	private long[] outputLengths;
+	private long[] allCounts;
+	private long[] trueCounts;
+
+	// the run being checkpointed; see start()
+	private Vector<RecordOutput> seqOutput;
+	private List<SeqDecider> runDeciders;
+}
@@ -0,0 +1,595 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class DeciderExpression extends SeqDecider
+{
+	//Concept:
+        //        IS: a SeqDecider whose predicate is a boolean combination
+	//	       of other SeqDeciders, e.g.
+	//	       "mouse AND EST AND NOT patent" or
+	//	       "(mouse OR rat) AND NOT (patent OR htg)"
+        //       HAS: the expression text as its name, and the compiled
+	//	       expression tree
+        //      DOES: evaluates the tree with short-circuiting, and from
+	//	       time to time reorders the terms of every AND and OR so
+	//	       the terms expected to settle the result most cheaply
+	//	       are tried first
+        // Implementation: NOT binds tighter than AND, which binds tighter
+	//	       than OR; parentheses group. Operators are the words
+	//	       AND, OR, NOT in any case, or &&, ||, !.
+	//	       Each AND or OR samples the time its terms take (one
+	//	       evaluation in SAMPLE_EVERY) and, every REORDER_EVERY
+	//	       samples, sorts its terms by expected cost per decisive
+	//	       result: cost / P(false) for AND, cost / P(true) for OR.
+	//	       P(true) of a decider term is the true/all ratio of its
+	//	       SeqDecider counters; of a nested term, the ratio of the
+	//	       node's own counters. The order is published through a
+	//	       volatile array, so evaluating threads never lock.
+	//	       Deciders are applied through DecisionMemo, so a decider
+	//	       also named on its own is evaluated once per record.
+	//	       From saved decisions (see DecisionIndex) the tree is
+	//	       evaluated for every record at once instead, as
+	//	       intersections, unions and complements of the named
+	//	       deciders' bitmaps.
+
+	//
+	//constructors
+	//
+
+	private DeciderExpression(String text, Node root,
+		Set<RecordSection> sections, List<SeqDecider> deciders)
+	{
+		super(text);
+		this.root = root;
+		this.sections = sections;
+		this.deciders = deciders;
+	}
+
+	//
+	//methods:
+	//
+
+	public static DeciderExpression compile(String text, SeqDecider[] sd)
+		throws IOException
+	{
+	// Purpose: compile 'text' into an expression over the deciders in
+	//	    'sd', referred to by name
+	// Returns: the expression
+	// Assumes: nothing
+	// Effects: nothing
+	// Throws: IOException if 'text' is not a valid expression or names
+	//	   a decider that is not in 'sd'
+
+		Parser p = new Parser(text, sd);
+		Node root = p.parseOr();
+		if(p.peek() != null)
+		{
+			throw p.error("unexpected '" + p.peek() + "'");
+		}
+		return new DeciderExpression(text.trim(), root, p.sections,
+			new ArrayList<SeqDecider>(p.named));
+	}
+
+	public boolean isA(SeqRecord s)
+		// Purpose: evaluate the expression for 's'
+		// Notes: each named decider is applied at most once per
+		//	  record; a SeqRecord object loaded again by readText()
+		//	  is a new record (see DecisionMemo)
+	{
+		incrementAllCtr();
+		if(this.root.isA(s))
+		{
+			incrementTrueCtr();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: an expression is: it keeps no state per record,
+		//	    and its deciders are applied through DecisionMemo,
+		//	    which serializes those that are not
+	{
+		return true;
+	}
+
+	public Set<RecordSection> getRequiredSections()
+		// Purpose: the sections required by any decider named in the
+		//	    expression
+	{
+		return EnumSet.copyOf(this.sections);
+	}
+
+	DecisionBitmap decide(DecisionIndex decisions) throws IOException
+		// Purpose: the records of 'decisions' this expression is true
+		//	    for, from the saved results of the deciders it names
+		// Assumes: they were all saved (see DecisionIndex.check())
+	{
+		return this.root.decide(decisions);
+	}
+
+	static List<SeqDecider> withMembers(SeqDecider[] deciders, int n)
+		// Purpose: list every decider a run applies
+		// Returns: the first 'n' of 'deciders' followed by the
+		//	    deciders named in those that are expressions, each
+		//	    decider once
+	{
+		Set<SeqDecider> all = Collections.newSetFromMap(
+			new IdentityHashMap<SeqDecider, Boolean>());
+		List<SeqDecider> list = new ArrayList<SeqDecider>();
+		for(int i = 0; i < n; i++)
+		{
+			if(all.add(deciders[i]))
+			{
+				list.add(deciders[i]);
+			}
+		}
+		for(int i = 0; i < n; i++)
+		{
+			if(deciders[i] instanceof DeciderExpression)
+			{
+				List<SeqDecider> named =
+					((DeciderExpression)deciders[i]).deciders;
+				for(int j = 0; j < named.size(); j++)
+				{
+					if(all.add(named.get(j)))
+					{
+						list.add(named.get(j));
+					}
+				}
+			}
+		}
+		return list;
+	}
+
+	public String getEvaluationOrder()
+		// Purpose: describe the expression with its terms in their
+		//	    current evaluation order
+	{
+		return this.root.toString();
+	}
+
+	//
+	// expression tree
+	//
+
+	private abstract static class Node extends SeqDecider
+	{
+		Node(String name)
+		{
+			super(name);
+		}
+
+		abstract DecisionBitmap decide(DecisionIndex decisions)
+			throws IOException;
+			// Purpose: see DeciderExpression.decide()
+
+		double trueRatio()
+			// Purpose: estimate the probability this node is true;
+			//	    counts start from one of each so an unseen
+			//	    node is a coin toss
+		{
+			return (getTrueCount() + 1.0) / (getAllCount() + 2.0);
+		}
+	}
+
+	private static class Leaf extends Node
+	{
+		Leaf(SeqDecider d)
+		{
+			super(d.getName());
+			this.d = d;
+		}
+
+		public boolean isA(SeqRecord s)
+		{
+			// the decider keeps its own counts
+			return DecisionMemo.isA(this.d, s);
+		}
+
+		DecisionBitmap decide(DecisionIndex decisions)
+			throws IOException
+		{
+			return decisions.decide(this.d);
+		}
+
+		double trueRatio()
+		{
+			return (this.d.getTrueCount() + 1.0) /
+				(this.d.getAllCount() + 2.0);
+		}
+
+		public String toString()
+		{
+			return getName();
+		}
+
+		private SeqDecider d;
+	}
+
+	private static class Not extends Node
+	{
+		Not(Node term)
+		{
+			super("NOT " + term.getName());
+			this.term = term;
+		}
+
+		public boolean isA(SeqRecord s)
+		{
+			incrementAllCtr();
+			if(!this.term.isA(s))
+			{
+				incrementTrueCtr();
+				return true;
+			}
+			return false;
+		}
+
+		DecisionBitmap decide(DecisionIndex decisions)
+			throws IOException
+		{
+			return this.term.decide(decisions).complement(
+				decisions.size());
+		}
+
+		public String toString()
+		{
+			return "NOT " + this.term;
+		}
+
+		private Node term;
+	}
+
+	private static class Junction extends Node
+	{
+		Junction(boolean isAnd, List<Node> terms)
+		{
+			super(isAnd ? "AND" : "OR");
+			this.isAnd = isAnd;
+			this.order = new Term[terms.size()];
+			for(int i = 0; i < this.order.length; i++)
+			{
+				this.order[i] = new Term(terms.get(i));
+			}
+		}
+
+		public boolean isA(SeqRecord s)
+		{
+			// an AND is settled by the first false term, an OR by
+			// the first true one
+			boolean settledBy = !this.isAnd;
+			boolean result = this.isAnd;
+			Term[] terms = this.order;
+			boolean sample = ThreadLocalRandom.current().nextInt(
+				SAMPLE_EVERY) == 0;
+
+			incrementAllCtr();
+			for(int i = 0; i < terms.length; i++)
+			{
+				boolean r;
+				if(sample)
+				{
+					long start = System.nanoTime();
+					r = terms[i].node.isA(s);
+					terms[i].nanos.add(System.nanoTime() - start);
+					terms[i].samples.increment();
+				}
+				else
+				{
+					r = terms[i].node.isA(s);
+				}
+				if(r == settledBy)
+				{
+					result = settledBy;
+					break;
+				}
+			}
+			if(result)
+			{
+				incrementTrueCtr();
+			}
+			if(sample && this.sampleCtr.incrementAndGet() %
+				REORDER_EVERY == 0)
+			{
+				reorder();
+			}
+			return result;
+		}
+
+		DecisionBitmap decide(DecisionIndex decisions)
+			throws IOException
+		{
+			Term[] terms = this.order;
+			DecisionBitmap result = terms[0].node.decide(decisions);
+			for(int i = 1; i < terms.length; i++)
+			{
+				if(this.isAnd && result.cardinality() == 0)
+				{
+					// settled
+					break;
+				}
+				DecisionBitmap b = terms[i].node.decide(decisions);
+				result = this.isAnd ? result.and(b) : result.or(b);
+			}
+			return result;
+		}
+
+		private void reorder()
+			// Purpose: sort the terms by expected cost per decisive
+			//	    result and publish the new order
+		{
+			if(!this.reordering.compareAndSet(false, true))
+			{
+				return;
+			}
+			try
+			{
+				Term[] terms = this.order.clone();
+				for(int i = 0; i < terms.length; i++)
+				{
+					double p = terms[i].node.trueRatio();
+					double decisive = this.isAnd ? 1.0 - p : p;
+					terms[i].rank = terms[i].cost() /
+						Math.max(decisive, MIN_RATIO);
+				}
+				Arrays.sort(terms, new Comparator<Term>()
+				{
+					public int compare(Term a, Term b)
+					{
+						return Double.compare(a.rank, b.rank);
+					}
+				});
+				this.order = terms;
+			}
+			finally
+			{
+				this.reordering.set(false);
+			}
+		}
+
+		public String toString()
+		{
+			Term[] terms = this.order;
+			StringBuffer b = new StringBuffer("(");
+			for(int i = 0; i < terms.length; i++)
+			{
+				if(i > 0)
+				{
+					b.append(this.isAnd ? " AND " : " OR ");
+				}
+				b.append(terms[i].node);
+			}
+			return b.append(')').toString();
+		}
+
+		// true for AND, false for OR
+		private boolean isAnd;
+
+		// the terms in evaluation order
+		private volatile Term[] order;
+
+		// samples taken since construction
+		private AtomicLong sampleCtr = new AtomicLong();
+
+		// set while one thread reorders
+		private AtomicBoolean reordering = new AtomicBoolean(false);
+	}
+
+	private static class Term
+	{
+		Term(Node node)
+		{
+			this.node = node;
+		}
+
+		double cost()
+			// Purpose: average sampled nanoseconds per evaluation;
+			//	    1 until the term has been sampled
+		{
+			long n = this.samples.sum();
+			return n == 0 ? 1.0 : Math.max(1.0,
+				(double)this.nanos.sum() / n);
+		}
+
+		final Node node;
+		final LongAdder nanos = new LongAdder();
+		final LongAdder samples = new LongAdder();
+
+		// sort key, only used inside reorder()
+		double rank;
+	}
+
+	//
+	// parser
+	//
+
+	private static class Parser
+	{
+		Parser(String text, SeqDecider[] sd)
+		{
+			this.text = text;
+			this.sd = sd;
+			tokenize();
+		}
+
+		Node parseOr() throws IOException
+		{
+			List<Node> terms = new ArrayList<Node>();
+			terms.add(parseAnd());
+			while("OR".equals(peek()))
+			{
+				this.pos++;
+				terms.add(parseAnd());
+			}
+			return terms.size() == 1 ? terms.get(0) :
+				new Junction(false, terms);
+		}
+
+		private Node parseAnd() throws IOException
+		{
+			List<Node> terms = new ArrayList<Node>();
+			terms.add(parseNot());
+			while("AND".equals(peek()))
+			{
+				this.pos++;
+				terms.add(parseNot());
+			}
+			return terms.size() == 1 ? terms.get(0) :
+				new Junction(true, terms);
+		}
+
+		private Node parseNot() throws IOException
+		{
+			String t = next();
+			if("NOT".equals(t))
+			{
+				return new Not(parseNot());
+			}
+			if("(".equals(t))
+			{
+				Node n = parseOr();
+				if(!")".equals(next()))
+				{
+					throw error("missing ')'");
+				}
+				return n;
+			}
+			if(t == null || OPERATORS.contains(t))
+			{
+				throw error(t == null ? "unexpected end" :
+					"unexpected '" + t + "'");
+			}
+			for(int i = 0; i < this.sd.length; i++)
+			{
+				if(this.sd[i].getName().trim().equals(t))
+				{
+					this.sections.addAll(
+						this.sd[i].getRequiredSections());
+					this.named.add(this.sd[i]);
+					return new Leaf(this.sd[i]);
+				}
+			}
+			throw error("no decider named '" + t + "'");
+		}
+
+		String peek()
+		{
+			return this.pos < this.tokens.size() ?
+				this.tokens.get(this.pos) : null;
+		}
+
+		private String next()
+		{
+			String t = peek();
+			this.pos++;
+			return t;
+		}
+
+		IOException error(String msg)
+		{
+			return new IOException("Error in decider expression \"" +
+				this.text + "\": " + msg);
+		}
+
+		private void tokenize()
+			// Purpose: split the text into names, parentheses and
+			//	    operators; operators are stored as AND, OR, NOT
+		{
+			int i = 0;
+			int n = this.text.length();
+			while(i < n)
+			{
+				char c = this.text.charAt(i);
+				if(Character.isWhitespace(c))
+				{
+					i++;
+				}
+				else if(c == '(' || c == ')')
+				{
+					this.tokens.add(String.valueOf(c));
+					i++;
+				}
+				else if(c == '!')
+				{
+					this.tokens.add("NOT");
+					i++;
+				}
+				else if(this.text.startsWith("&&", i))
+				{
+					this.tokens.add("AND");
+					i += 2;
+				}
+				else if(this.text.startsWith("||", i))
+				{
+					this.tokens.add("OR");
+					i += 2;
+				}
+				else
+				{
+					int start = i;
+					while(i < n && !Character.isWhitespace(
+						this.text.charAt(i)) &&
+						"()!&|".indexOf(this.text.charAt(i)) < 0)
+					{
+						i++;
+					}
+					if(i == start)
+					{
+						// a lone '&' or '|'
+						i++;
+					}
+					String word = this.text.substring(start, i);
+					String upper = word.toUpperCase();
+					this.tokens.add(OPERATORS.contains(upper) ?
+						upper : word);
+				}
+			}
+		}
+
+		private String text;
+		private SeqDecider[] sd;
+		private List<String> tokens = new ArrayList<String>();
+		private int pos = 0;
+
+		// union of the sections the named deciders require
+		Set<RecordSection> sections =
+			EnumSet.noneOf(RecordSection.class);
+
+		// the deciders named so far
+		Set<SeqDecider> named = new LinkedHashSet<SeqDecider>();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// one evaluation of an AND or OR in this many is timed
+	static final int SAMPLE_EVERY = 64;
+
+	// an AND or OR reorders its terms after this many timed evaluations
+	static final int REORDER_EVERY = 256;
+
+	// floor for P(decisive) so a term that never settles the result
+	// sorts last rather than dividing by zero
+	private static final double MIN_RATIO = 1e-6;
+
+	private static final Set<String> OPERATORS =
+		new HashSet<String>(Arrays.asList(
+			new String[] { "AND", "OR", "NOT" }));
+
+	// the compiled expression
+	private Node root;
+
+	// see getRequiredSections()
+	private Set<RecordSection> sections;
+
+	// the deciders named in the expression, each once, in order of
+	// first appearance
+	private List<SeqDecider> deciders;
+}
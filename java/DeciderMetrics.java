@@ -0,0 +1,77 @@
+package org.jax.mgi.bio.seqfilter;
+
+class DeciderMetrics implements DeciderMetricsMBean
+{
+	//Concept:
+        //        IS: the metrics of one decider in a filter run
+        //       HAS: the decider
+        //      DOES: reads the decider's counters and latency histogram
+	//	       for JMX and the progress line (see FilterMetrics)
+        // Implementation: holds no counts of its own, so it costs nothing
+	//	       until it is read
+
+	//
+	//constructors
+	//
+
+	DeciderMetrics(SeqDecider decider)
+	{
+		this.decider = decider;
+	}
+
+	//
+	//methods:
+	//
+
+	public String getName()
+	{
+		return this.decider.getName();
+	}
+
+	public long getRecords()
+	{
+		return this.decider.getAllCount();
+	}
+
+	public long getTrueRecords()
+	{
+		return this.decider.getTrueCount();
+	}
+
+	public long getMeanNanos()
+	{
+		return this.decider.latency.meanNanos();
+	}
+
+	public long getP50Nanos()
+	{
+		return this.decider.latency.percentileNanos(0.50);
+	}
+
+	public long getP90Nanos()
+	{
+		return this.decider.latency.percentileNanos(0.90);
+	}
+
+	public long getP99Nanos()
+	{
+		return this.decider.latency.percentileNanos(0.99);
+	}
+
+	public long getMaxNanos()
+	{
+		return this.decider.latency.maxNanos();
+	}
+
+	public long[] getLatencyBuckets()
+	{
+		return this.decider.latency.buckets();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the decider measured
+	private final SeqDecider decider;
+}
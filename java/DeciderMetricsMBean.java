@@ -0,0 +1,39 @@
+package org.jax.mgi.bio.seqfilter;
+
+public interface DeciderMetricsMBean
+{
+	//Concept:
+        //        IS: the JMX view of one decider of a running filter
+        //       HAS: see DeciderMetrics
+        //      DOES: reports the decider's counters and isA() latency
+        // Implementation: a standard MBean interface; JMX requires it to be
+	//	       public and named after its implementing class
+
+	String getName();
+		// Purpose: the decider's name
+
+	long getRecords();
+		// Purpose: records the decider has been applied to
+
+	long getTrueRecords();
+		// Purpose: records for which the decider was true
+
+	long getMeanNanos();
+		// Purpose: mean time of one isA() call
+
+	long getP50Nanos();
+		// Purpose: median isA() time, within a factor of two
+
+	long getP90Nanos();
+		// Purpose: 90th percentile isA() time, within a factor of two
+
+	long getP99Nanos();
+		// Purpose: 99th percentile isA() time, within a factor of two
+
+	long getMaxNanos();
+		// Purpose: longest isA() call
+
+	long[] getLatencyBuckets();
+		// Purpose: calls per bucket; bucket i counts calls taking
+		//	    [2^(i-1), 2^i) nanoseconds
+}
@@ -0,0 +1,483 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+
+class DecisionBitmap
+{
+	//Concept:
+        //        IS: a compressed set of record ordinals, e.g. the records
+	//	       of an input that a decider passed
+        //       HAS: a container for each block of 65536 ordinals that
+	//	       holds any
+        //      DOES: adds ordinals in increasing order; makes the
+	//	       intersection, union and difference of two sets and the
+	//	       complement of one; finds the next ordinal in the set;
+	//	       writes and reads itself
+        // Implementation: a roaring bitmap. The high 16 bits of an ordinal
+	//	       pick its container, kept in key order; the low 16 bits
+	//	       are stored in the container, as a sorted char[] while
+	//	       it holds at most ARRAY_MAX of them, otherwise as a
+	//	       1024 long bitmap. So a container never takes more than
+	//	       8K, a sparse one two bytes an ordinal, and a block with
+	//	       none takes nothing. The operations merge the two key
+	//	       lists and combine the containers with equal keys: two
+	//	       arrays by merging them, otherwise a word at a time,
+	//	       turning a result back into an array if it has become
+	//	       small and dropping it if it is empty. A result never
+	//	       shares a container with its operands.
+
+	//
+	//constructors
+	//
+
+	DecisionBitmap()
+		// Purpose: create an empty set
+	{
+		this.keys = new char[4];
+		this.containers = new Object[4];
+		this.cards = new int[4];
+	}
+
+	//
+	//methods:
+	//
+
+	void add(int x)
+		// Purpose: add ordinal 'x'
+		// Assumes: 'x' is not negative and greater than every ordinal
+		//	    added before
+	{
+		char key = (char)(x >>> 16);
+		char low = (char)x;
+		if(this.n == 0 || this.keys[this.n - 1] != key)
+		{
+			append(key, new char[4], 0);
+		}
+		int c = this.n - 1;
+		int card = this.cards[c];
+		if(this.containers[c] instanceof long[])
+		{
+			long[] words = (long[])this.containers[c];
+			words[low >>> 6] |= 1L << low;
+		}
+		else if(card < ARRAY_MAX)
+		{
+			char[] a = (char[])this.containers[c];
+			if(card == a.length)
+			{
+				a = Arrays.copyOf(a, Math.min(2 * card, ARRAY_MAX));
+				this.containers[c] = a;
+			}
+			a[card] = low;
+		}
+		else
+		{
+			long[] words = words(this.containers[c], card);
+			words[low >>> 6] |= 1L << low;
+			this.containers[c] = words;
+		}
+		this.cards[c] = card + 1;
+	}
+
+	long cardinality()
+		// Purpose: the number of ordinals in the set
+	{
+		long total = 0;
+		for(int c = 0; c < this.n; c++)
+		{
+			total += this.cards[c];
+		}
+		return total;
+	}
+
+	int nextSetBit(int from)
+		// Purpose: find the least ordinal in the set not less than
+		//	    'from'
+		// Returns: it, or -1 if there is none
+	{
+		if(from < 0)
+		{
+			from = 0;
+		}
+		char key = (char)(from >>> 16);
+		int c = Arrays.binarySearch(this.keys, 0, this.n, key);
+		int low = from & 0xffff;
+		if(c < 0)
+		{
+			// the first container after 'from', from its start
+			c = -c - 1;
+			low = 0;
+		}
+		for(; c < this.n; c++, low = 0)
+		{
+			int found = next(this.containers[c], this.cards[c], low);
+			if(found >= 0)
+			{
+				return (this.keys[c] << 16) | found;
+			}
+		}
+		return -1;
+	}
+
+	DecisionBitmap and(DecisionBitmap other)
+		// Purpose: the ordinals in both this set and 'other'
+	{
+		return combine(this, other, AND);
+	}
+
+	DecisionBitmap or(DecisionBitmap other)
+		// Purpose: the ordinals in this set, 'other' or both
+	{
+		return combine(this, other, OR);
+	}
+
+	DecisionBitmap andNot(DecisionBitmap other)
+		// Purpose: the ordinals in this set that are not in 'other'
+	{
+		return combine(this, other, AND_NOT);
+	}
+
+	DecisionBitmap complement(int size)
+		// Purpose: the ordinals from 0 to 'size' - 1 that are not in
+		//	    this set
+	{
+		return range(size).andNot(this);
+	}
+
+	static DecisionBitmap range(int size)
+		// Purpose: the set of the ordinals from 0 to 'size' - 1
+	{
+		DecisionBitmap b = new DecisionBitmap();
+		for(int key = 0; ((long)key << 16) < size; key++)
+		{
+			int count = (int)Math.min(BLOCK, size - ((long)key << 16));
+			long[] words = new long[WORDS];
+			for(int w = 0; w < count >>> 6; w++)
+			{
+				words[w] = -1L;
+			}
+			if((count & 63) != 0)
+			{
+				words[count >>> 6] = (1L << count) - 1;
+			}
+			b.append((char)key, container(words, count), count);
+		}
+		return b;
+	}
+
+	long serializedSize()
+		// Purpose: the bytes write() writes
+	{
+		long size = 4;
+		for(int c = 0; c < this.n; c++)
+		{
+			size += 6 + (this.cards[c] <= ARRAY_MAX ?
+				2L * this.cards[c] : 8L * WORDS);
+		}
+		return size;
+	}
+
+	void write(DataOutput out) throws IOException
+		// Purpose: write the set: the number of containers, then for
+		//	    each its key (a char) and number of ordinals (an
+		//	    int), followed by that many chars if it holds at
+		//	    most ARRAY_MAX, or else its 1024 longs
+	{
+		out.writeInt(this.n);
+		for(int c = 0; c < this.n; c++)
+		{
+			int card = this.cards[c];
+			out.writeChar(this.keys[c]);
+			out.writeInt(card);
+			Object o = this.containers[c];
+			if(card <= ARRAY_MAX)
+			{
+				char[] a = o instanceof char[] ? (char[])o :
+					array((long[])o, card);
+				for(int i = 0; i < card; i++)
+				{
+					out.writeChar(a[i]);
+				}
+			}
+			else
+			{
+				long[] words = words(o, card);
+				for(int w = 0; w < WORDS; w++)
+				{
+					out.writeLong(words[w]);
+				}
+			}
+		}
+	}
+
+	static DecisionBitmap read(DataInput in) throws IOException
+		// Purpose: read a set written by write()
+		// Throws: IOException if what is read is not a set
+	{
+		DecisionBitmap b = new DecisionBitmap();
+		int containers = in.readInt();
+		for(int c = 0; c < containers; c++)
+		{
+			char key = in.readChar();
+			int card = in.readInt();
+			if(card <= 0 || card > BLOCK ||
+				(c > 0 && key <= b.keys[c - 1]))
+			{
+				throw new IOException("Not a decision bitmap");
+			}
+			if(card <= ARRAY_MAX)
+			{
+				char[] a = new char[card];
+				for(int i = 0; i < card; i++)
+				{
+					a[i] = in.readChar();
+				}
+				b.append(key, a, card);
+			}
+			else
+			{
+				long[] words = new long[WORDS];
+				for(int w = 0; w < WORDS; w++)
+				{
+					words[w] = in.readLong();
+				}
+				b.append(key, words, card);
+			}
+		}
+		return b;
+	}
+
+	private void append(char key, Object container, int card)
+		// Purpose: add a container after the last
+	{
+		if(this.n == this.keys.length)
+		{
+			int size = 2 * this.n;
+			this.keys = Arrays.copyOf(this.keys, size);
+			this.containers = Arrays.copyOf(this.containers, size);
+			this.cards = Arrays.copyOf(this.cards, size);
+		}
+		this.keys[this.n] = key;
+		this.containers[this.n] = container;
+		this.cards[this.n] = card;
+		this.n++;
+	}
+
+	private static DecisionBitmap combine(DecisionBitmap a,
+		DecisionBitmap b, int op)
+		// Purpose: the result of 'op' on 'a' and 'b'
+	{
+		DecisionBitmap r = new DecisionBitmap();
+		int i = 0;
+		int j = 0;
+		while(i < a.n || j < b.n)
+		{
+			int c = i == a.n ? 1 : j == b.n ? -1 :
+				a.keys[i] - b.keys[j];
+			if(c < 0)
+			{
+				// only in 'a'
+				if(op != AND)
+				{
+					r.append(a.keys[i], copy(a.containers[i]),
+						a.cards[i]);
+				}
+				i++;
+			}
+			else if(c > 0)
+			{
+				// only in 'b'
+				if(op == OR)
+				{
+					r.append(b.keys[j], copy(b.containers[j]),
+						b.cards[j]);
+				}
+				j++;
+			}
+			else
+			{
+				r.appendCombined(a.keys[i], a.containers[i],
+					a.cards[i], b.containers[j], b.cards[j], op);
+				i++;
+				j++;
+			}
+		}
+		return r;
+	}
+
+	private void appendCombined(char key, Object x, int xCard, Object y,
+		int yCard, int op)
+		// Purpose: append the container that is the result of 'op' on
+		//	    'x' and 'y', unless it is empty
+	{
+		if(x instanceof char[] && y instanceof char[])
+		{
+			char[] a = (char[])x;
+			char[] b = (char[])y;
+			char[] out = new char[op == OR ? xCard + yCard :
+				op == AND ? Math.min(xCard, yCard) : xCard];
+			int k = 0;
+			int i = 0;
+			int j = 0;
+			while(i < xCard || j < yCard)
+			{
+				int c = i == xCard ? 1 : j == yCard ? -1 :
+					a[i] - b[j];
+				if(c < 0)
+				{
+					if(op != AND)
+					{
+						out[k++] = a[i];
+					}
+					i++;
+				}
+				else if(c > 0)
+				{
+					if(op == OR)
+					{
+						out[k++] = b[j];
+					}
+					j++;
+				}
+				else
+				{
+					if(op != AND_NOT)
+					{
+						out[k++] = a[i];
+					}
+					i++;
+					j++;
+				}
+			}
+			if(k > ARRAY_MAX)
+			{
+				append(key, words(out, k), k);
+			}
+			else if(k > 0)
+			{
+				append(key, Arrays.copyOf(out, k), k);
+			}
+			return;
+		}
+		long[] a = words(x, xCard);
+		long[] b = y instanceof long[] ? (long[])y : words(y, yCard);
+		int card = 0;
+		for(int w = 0; w < WORDS; w++)
+		{
+			long v = op == AND ? a[w] & b[w] : op == OR ?
+				a[w] | b[w] : a[w] & ~b[w];
+			a[w] = v;
+			card += Long.bitCount(v);
+		}
+		if(card > 0)
+		{
+			append(key, container(a, card), card);
+		}
+	}
+
+	private static int next(Object container, int card, int low)
+		// Purpose: find the least value in 'container' not less than
+		//	    'low'
+		// Returns: it, or -1 if there is none
+	{
+		if(container instanceof char[])
+		{
+			char[] a = (char[])container;
+			int i = Arrays.binarySearch(a, 0, card, (char)low);
+			if(i < 0)
+			{
+				i = -i - 1;
+			}
+			return i < card ? a[i] : -1;
+		}
+		long[] words = (long[])container;
+		int w = low >>> 6;
+		long word = words[w] & (-1L << low);
+		while(true)
+		{
+			if(word != 0)
+			{
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			}
+			if(++w == WORDS)
+			{
+				return -1;
+			}
+			word = words[w];
+		}
+	}
+
+	private static long[] words(Object container, int card)
+		// Purpose: a new bitmap of the values in 'container'
+	{
+		if(container instanceof long[])
+		{
+			return ((long[])container).clone();
+		}
+		char[] a = (char[])container;
+		long[] words = new long[WORDS];
+		for(int i = 0; i < card; i++)
+		{
+			words[a[i] >>> 6] |= 1L << a[i];
+		}
+		return words;
+	}
+
+	private static char[] array(long[] words, int card)
+		// Purpose: the values set in 'words', in order
+	{
+		char[] a = new char[card];
+		int k = 0;
+		for(int w = 0; w < WORDS; w++)
+		{
+			long word = words[w];
+			while(word != 0)
+			{
+				a[k++] = (char)((w << 6) +
+					Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return a;
+	}
+
+	private static Object container(long[] words, int card)
+		// Purpose: 'words' as a bitmap container, or as an array if
+		//	    it holds few enough values
+	{
+		return card <= ARRAY_MAX ? (Object)array(words, card) : words;
+	}
+
+	private static Object copy(Object container)
+	{
+		return container instanceof char[] ?
+			(Object)((char[])container).clone() :
+			((long[])container).clone();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// ordinals in a container, and longs in a bitmap container
+	private static final int BLOCK = 1 << 16;
+	private static final int WORDS = BLOCK / 64;
+
+	// the most ordinals an array container holds; at this size the
+	// array takes as many bytes as a bitmap
+	static final int ARRAY_MAX = 4096;
+
+	// the operations of combine()
+	private static final int AND = 0;
+	private static final int OR = 1;
+	private static final int AND_NOT = 2;
+
+	// the containers in key order: the high 16 bits of their ordinals,
+	// the container (a char[] or long[]), and its number of ordinals;
+	// the first 'n' entries are used
+	private char[] keys;
+	private Object[] containers;
+	private int[] cards;
+	private int n = 0;
+}
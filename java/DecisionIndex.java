@@ -0,0 +1,374 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+class DecisionIndex
+{
+	//Concept:
+        //        IS: the decisions a --save-decisions run saved, opened by
+	//	       a later run over the same input (--decisions)
+        //       HAS: a directory holding decisions.properties (the input
+	//	       files, the saved deciders and where each one's bitmap
+	//	       starts), bitmaps (a DecisionBitmap per decider, of the
+	//	       ordinals of the records it passed), records (an entry
+	//	       per record) and versions (the records' seqid.versions)
+        //      DOES: answers a decider, or a DeciderExpression over saved
+	//	       deciders, with the bitmap of the records it passes,
+	//	       using bitmap operations only; hands out a record by
+	//	       ordinal as a FilteredRecord whose span is its bytes in
+	//	       its input file, so the outputs copy it as they would
+	//	       for --passthrough. No record is read whole or parsed.
+        // Implementation: a records entry is ENTRY_SIZE bytes: the
+	//	       record's offset in its input file (a long), its length
+	//	       (an int), the input file's index (an int), and where
+	//	       its version starts in the versions file (a long) and
+	//	       its length (an int, -1 for none), all big-endian, so
+	//	       the entry of ordinal i is at i * ENTRY_SIZE. Records are
+	//	       handed out in increasing ordinal order, so entries and
+	//	       versions are read a block at a time and the input files
+	//	       are mapped a window at a time, each used for the records
+	//	       it holds. The input files are recognised by path,
+	//	       length and modification time; decisions saved from any
+	//	       other input are refused. See DecisionIndexWriter for
+	//	       how the directory is written.
+
+	//
+	//constructors
+	//
+
+	DecisionIndex(File dir) throws IOException
+		// Purpose: open the decisions in 'dir'
+		// Throws: IOException if there are none or they cannot be read
+	{
+		this.dir = dir;
+		File props = new File(dir, PROPERTIES);
+		if(!props.exists())
+		{
+			throw new IOException("Error in getargs(): " + dir +
+				" holds no saved decisions");
+		}
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(props);
+		try
+		{
+			p.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		try
+		{
+			if(Integer.parseInt(get(p, "format")) != FORMAT)
+			{
+				throw new NumberFormatException("format " +
+					get(p, "format"));
+			}
+			this.size = Integer.parseInt(get(p, "records"));
+			int inputs = Integer.parseInt(get(p, "inputs"));
+			this.inputs = new ArrayList<String>();
+			this.inputLengths = new long[inputs];
+			this.inputModified = new long[inputs];
+			for(int i = 0; i < inputs; i++)
+			{
+				this.inputs.add(get(p, "input." + i));
+				this.inputLengths[i] = Long.parseLong(
+					get(p, "input." + i + ".length"));
+				this.inputModified[i] = Long.parseLong(
+					get(p, "input." + i + ".modified"));
+			}
+			int deciders = Integer.parseInt(get(p, "deciders"));
+			for(int i = 0; i < deciders; i++)
+			{
+				this.offsets.put(get(p, "decider." + i),
+					Long.valueOf(get(p, "decider." + i +
+					".offset")));
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException(props + " does not describe " +
+				"saved decisions: " + e.getMessage());
+		}
+		this.records = new Block(new File(dir, RECORDS));
+		this.versions = new Block(new File(dir, VERSIONS));
+		this.channels = new FileChannel[this.inputs.size()];
+	}
+
+	//
+	//methods:
+	//
+
+	int size()
+		// Purpose: the number of records the decisions were saved for
+	{
+		return this.size;
+	}
+
+	void verify(List<File> inputFiles) throws IOException
+		// Purpose: check that 'inputFiles' are the files the decisions
+		//	    were saved from, unchanged
+		// Throws: IOException naming the first difference
+	{
+		List<String> now = new ArrayList<String>();
+		for(int i = 0; i < inputFiles.size(); i++)
+		{
+			now.add(inputFiles.get(i).getAbsolutePath());
+		}
+		if(!now.equals(this.inputs))
+		{
+			throw new IOException("Error in getargs(): the " +
+				"decisions in " + this.dir + " were saved from " +
+				"input files " + this.inputs + ", not " + now);
+		}
+		for(int i = 0; i < inputFiles.size(); i++)
+		{
+			File f = inputFiles.get(i);
+			if(f.length() != this.inputLengths[i] ||
+				f.lastModified() != this.inputModified[i])
+			{
+				throw new IOException("Error in getargs(): " + f +
+					" has changed since the decisions in " +
+					this.dir + " were saved");
+			}
+		}
+	}
+
+	void check(List<SeqDecider> runDeciders) throws IOException
+		// Purpose: check that the decisions can answer every decider
+		//	    a run applies (see DeciderExpression.withMembers())
+		// Throws: IOException naming the first that was not saved
+	{
+		for(int i = 0; i < runDeciders.size(); i++)
+		{
+			SeqDecider d = runDeciders.get(i);
+			if(!(d instanceof DeciderExpression) &&
+				!this.offsets.containsKey(d.getName().trim()))
+			{
+				throw new IOException("Error in getargs(): the " +
+					"decisions in " + this.dir + " have no " +
+					"results for " + d.getName().trim());
+			}
+		}
+	}
+
+	DecisionBitmap decide(SeqDecider d) throws IOException
+		// Purpose: the records 'd' passes
+		// Assumes: check() has passed for 'd'
+	{
+		if(d instanceof DeciderExpression)
+		{
+			return ((DeciderExpression)d).decide(this);
+		}
+		String name = d.getName().trim();
+		DecisionBitmap b = this.loaded.get(name);
+		if(b == null)
+		{
+			FileInputStream in = new FileInputStream(
+				new File(this.dir, BITMAPS));
+			try
+			{
+				in.getChannel().position(
+					this.offsets.get(name).longValue());
+				b = DecisionBitmap.read(new DataInputStream(
+					new BufferedInputStream(in)));
+			}
+			finally
+			{
+				in.close();
+			}
+			this.loaded.put(name, b);
+		}
+		return b;
+	}
+
+	FilteredRecord record(int ordinal) throws IOException
+		// Purpose: the record 'ordinal' as its seqid.version and its
+		//	    bytes in its input file
+		// Assumes: 'ordinal' is greater than that of the record handed
+		//	    out before
+		// Notes: the record's bytes are a view of a mapped window of
+		//	  the input, which the outputs may copy after the next
+		//	  record is asked for
+	{
+		ByteBuffer e = this.records.at((long)ordinal * ENTRY_SIZE,
+			ENTRY_SIZE);
+		long offset = e.getLong();
+		int length = e.getInt();
+		int file = e.getInt();
+		long versionStart = e.getLong();
+		int versionLength = e.getInt();
+
+		String version = null;
+		if(versionLength >= 0)
+		{
+			ByteBuffer v = this.versions.at(versionStart,
+				versionLength);
+			byte[] b = new byte[versionLength];
+			v.get(b);
+			version = new String(b, RecordIndex.LATIN1);
+		}
+
+		if(file != this.windowFile || offset < this.windowStart ||
+			offset + length > this.windowStart +
+			this.window.capacity())
+		{
+			mapWindow(file, offset, length);
+		}
+		ByteBuffer bytes = this.window.duplicate();
+		bytes.position((int)(offset - this.windowStart));
+		bytes.limit(bytes.position() + length);
+		return new FilteredRecord(version, null, new RecordSpan(
+			bytes.slice().asReadOnlyBuffer(), this.channels[file],
+			offset, file));
+	}
+
+	void close() throws IOException
+		// Purpose: close the decisions and the input files
+		// Assumes: the outputs have written every record handed out
+	{
+		this.records.close();
+		this.versions.close();
+		for(int i = 0; i < this.channels.length; i++)
+		{
+			if(this.channels[i] != null)
+			{
+				this.channels[i].close();
+			}
+		}
+	}
+
+	private void mapWindow(int file, long offset, int length)
+		throws IOException
+		// Purpose: map the window of input file 'file' that starts
+		//	    with the record at 'offset'
+	{
+		if(this.channels[file] == null)
+		{
+			this.channels[file] = FileChannel.open(
+				new File(this.inputs.get(file)).toPath());
+		}
+		FileChannel ch = this.channels[file];
+		long size = Math.max(length, Math.min(WINDOW_SIZE,
+			ch.size() - offset));
+		this.window = ch.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		this.windowFile = file;
+		this.windowStart = offset;
+	}
+
+	private static String get(Properties p, String key)
+		throws NumberFormatException
+	{
+		String v = p.getProperty(key);
+		if(v == null)
+		{
+			throw new NumberFormatException("no " + key);
+		}
+		return v;
+	}
+
+	//
+	// a file read a block at a time
+	//
+
+	private static class Block
+	{
+		Block(File f) throws IOException
+		{
+			this.channel = FileChannel.open(f.toPath());
+		}
+
+		ByteBuffer at(long position, int length) throws IOException
+			// Purpose: the 'length' bytes at 'position', from the
+			//	    block held if it has them, else from a new
+			//	    block starting at 'position'
+			// Returns: a buffer positioned at them
+		{
+			if(position < this.start || position + length >
+				this.start + this.buffer.limit())
+			{
+				if(length > this.buffer.capacity())
+				{
+					this.buffer = ByteBuffer.allocate(length);
+				}
+				this.buffer.clear();
+				long left = this.channel.size() - position;
+				if(left < this.buffer.capacity())
+				{
+					this.buffer.limit((int)Math.max(left, length));
+				}
+				RecordIndex.readFully(this.channel, this.buffer,
+					position);
+				this.buffer.flip();
+				this.start = position;
+			}
+			this.buffer.position((int)(position - this.start));
+			return this.buffer;
+		}
+
+		void close() throws IOException
+		{
+			this.channel.close();
+		}
+
+		private FileChannel channel;
+
+		// the bytes from 'start'; empty until the first read
+		private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE).
+			limit(0);
+		private long start = 0;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// files in the decisions directory
+	static final String PROPERTIES = "decisions.properties";
+	static final String BITMAPS = "bitmaps";
+	static final String RECORDS = "records";
+	static final String VERSIONS = "versions";
+
+	// the version of the directory's layout
+	static final int FORMAT = 1;
+
+	// bytes in a records entry
+	static final int ENTRY_SIZE = 28;
+
+	// bytes read from records and versions at a time
+	private static final int BLOCK_SIZE = 256 * 1024;
+
+	// bytes of an input file mapped at a time
+	private static final int WINDOW_SIZE =
+		MappedRecordSource.DEFAULT_CHUNK_SIZE;
+
+	// see the constructor
+	private File dir;
+
+	// records saved, and the input files' paths, lengths and times
+	private int size;
+	private List<String> inputs;
+	private long[] inputLengths;
+	private long[] inputModified;
+
+	// where each saved decider's bitmap starts in the bitmaps file, by
+	// name, and the bitmaps read so far
+	private Map<String, Long> offsets = new HashMap<String, Long>();
+	private Map<String, DecisionBitmap> loaded =
+		new HashMap<String, DecisionBitmap>();
+
+	// the records and versions files
+	private Block records;
+	private Block versions;
+
+	// the input files, opened as records are first wanted from them
+	private FileChannel[] channels;
+
+	// the mapped window of an input file, and where it starts in it
+	private ByteBuffer window;
+	private int windowFile = -1;
+	private long windowStart = 0;
+}
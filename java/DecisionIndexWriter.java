@@ -0,0 +1,270 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class DecisionIndexWriter
+{
+	//Concept:
+        //        IS: the builder of the decisions a --save-decisions run
+	//	       leaves for later runs over the same input (see
+	//	       DecisionIndex)
+        //       HAS: the decisions directory, the record entries and
+	//	       versions being written to it, and a DecisionBitmap for
+	//	       each saved decider
+        //      DOES: applies every saved decider to each record; takes
+	//	       the records in input order and notes each one's input
+	//	       file, offset, length and seqid.version, and its ordinal
+	//	       in the bitmap of every saved decider it passed; at
+	//	       finish() writes the bitmaps and the properties that
+	//	       describe them
+        // Implementation: entries and versions go to their files as the
+	//	       records go by, so only the bitmaps are held in memory,
+	//	       and they are compressed. Everything is written under a
+	//	       temporary name and renamed into place by finish(),
+	//	       decisions.properties last; the old properties are
+	//	       removed before anything else, so a run that fails
+	//	       leaves no decisions that could be taken for complete.
+	//	       A record's place in the input is taken from its
+	//	       RecordSpan, so the input must be uncompressed -i files.
+
+	//
+	//constructors
+	//
+
+	DecisionIndexWriter(File dir, List<File> inputs,
+		List<SeqDecider> deciders) throws IOException
+		// Purpose: start the decisions of 'deciders' over 'inputs' in
+		//	    'dir', creating the directory if need be
+		// Throws: IOException if an input is compressed or 'dir'
+		//	   cannot be written
+	{
+		for(int i = 0; i < inputs.size(); i++)
+		{
+			if(isCompressed(inputs.get(i)))
+			{
+				throw new IOException("Error in getargs(): " +
+					"--save-decisions needs the records' " +
+					"offsets in their input files, but " +
+					inputs.get(i) + " is compressed");
+			}
+		}
+		if(!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Cannot create " + dir);
+		}
+		this.dir = dir;
+		this.inputs = new ArrayList<File>(inputs);
+		this.deciders = new ArrayList<SeqDecider>(deciders);
+		this.bitmaps = new DecisionBitmap[deciders.size()];
+		for(int i = 0; i < this.bitmaps.length; i++)
+		{
+			this.bitmaps[i] = new DecisionBitmap();
+		}
+		this.words = (deciders.size() + 63) / 64;
+
+		Files.deleteIfExists(new File(dir,
+			DecisionIndex.PROPERTIES).toPath());
+		this.records = open(DecisionIndex.RECORDS);
+		this.versions = open(DecisionIndex.VERSIONS);
+	}
+
+	//
+	//methods:
+	//
+
+	List<SeqDecider> getDeciders()
+		// Purpose: the deciders whose results are saved
+	{
+		return this.deciders;
+	}
+
+	long[] decide(SeqRecord s)
+		// Purpose: apply every saved decider to 's'
+		// Returns: the results, bit i of word i / 64 set if decider i
+		//	    passed it
+		// Assumes: SeqDecider.recordLoaded() has been called for 's',
+		//	    so a decider the run has already applied is not
+		//	    applied again; may be called from several threads
+	{
+		long[] results = new long[this.words];
+		for(int i = 0; i < this.deciders.size(); i++)
+		{
+			if(DecisionMemo.isA(this.deciders.get(i), s))
+			{
+				results[i >>> 6] |= 1L << i;
+			}
+		}
+		return results;
+	}
+
+	void add(RecordSpan span, String version, long[] results)
+		throws IOException
+		// Purpose: note the next record in input order, with the
+		//	    results decide() returned for it
+		// Assumes: called from one thread at a time, in input order
+		// Throws: IOException if the record is not in an -i file or
+		//	   there are too many records
+	{
+		if(span == null || span.file < 0 || span.channel == null)
+		{
+			throw new IOException("--save-decisions found a record " +
+				"that is not in an uncompressed -i file");
+		}
+		if(this.count == Integer.MAX_VALUE)
+		{
+			throw new IOException("--save-decisions supports at " +
+				"most " + Integer.MAX_VALUE + " records");
+		}
+		byte[] v = version == null ? null :
+			version.getBytes(RecordIndex.LATIN1);
+		this.records.writeLong(span.position);
+		this.records.writeInt(span.length());
+		this.records.writeInt(span.file);
+		this.records.writeLong(this.versionBytes);
+		this.records.writeInt(v == null ? -1 : v.length);
+		if(v != null)
+		{
+			this.versions.write(v);
+			this.versionBytes += v.length;
+		}
+		for(int i = 0; i < this.bitmaps.length; i++)
+		{
+			if((results[i >>> 6] & (1L << i)) != 0)
+			{
+				this.bitmaps[i].add(this.count);
+			}
+		}
+		this.count++;
+	}
+
+	int getRecords()
+		// Purpose: the records added so far
+	{
+		return this.count;
+	}
+
+	void finish() throws IOException
+		// Purpose: write the bitmaps and properties, and put the
+		//	    decisions in place
+	{
+		this.records.close();
+		this.versions.close();
+
+		Properties p = new Properties();
+		p.setProperty("format", String.valueOf(DecisionIndex.FORMAT));
+		p.setProperty("records", String.valueOf(this.count));
+		p.setProperty("inputs", String.valueOf(this.inputs.size()));
+		for(int i = 0; i < this.inputs.size(); i++)
+		{
+			File f = this.inputs.get(i);
+			p.setProperty("input." + i, f.getAbsolutePath());
+			p.setProperty("input." + i + ".length",
+				String.valueOf(f.length()));
+			p.setProperty("input." + i + ".modified",
+				String.valueOf(f.lastModified()));
+		}
+
+		DataOutputStream out = open(DecisionIndex.BITMAPS);
+		long offset = 0;
+		try
+		{
+			p.setProperty("deciders",
+				String.valueOf(this.deciders.size()));
+			for(int i = 0; i < this.bitmaps.length; i++)
+			{
+				p.setProperty("decider." + i,
+					this.deciders.get(i).getName().trim());
+				p.setProperty("decider." + i + ".offset",
+					String.valueOf(offset));
+				p.setProperty("decider." + i + ".true", String.
+					valueOf(this.bitmaps[i].cardinality()));
+				this.bitmaps[i].write(out);
+				offset += this.bitmaps[i].serializedSize();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		File props = tempFile(DecisionIndex.PROPERTIES);
+		OutputStream pout = new FileOutputStream(props);
+		try
+		{
+			p.store(pout, "SeqRecordFilter decisions");
+		}
+		finally
+		{
+			pout.close();
+		}
+		String[] names = { DecisionIndex.RECORDS,
+			DecisionIndex.VERSIONS, DecisionIndex.BITMAPS,
+			DecisionIndex.PROPERTIES };
+		for(int i = 0; i < names.length; i++)
+		{
+			Files.move(tempFile(names[i]).toPath(),
+				new File(this.dir, names[i]).toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	private DataOutputStream open(String name) throws IOException
+		// Purpose: create the temporary file for 'name'
+	{
+		return new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(tempFile(name)), BUFFER_SIZE));
+	}
+
+	private File tempFile(String name)
+	{
+		return new File(this.dir, name + ".new");
+	}
+
+	private static boolean isCompressed(File f) throws IOException
+		// Purpose: report whether 'f' is gzip or BGZF compressed
+	{
+		FileChannel ch = FileChannel.open(f.toPath());
+		try
+		{
+			byte[] header = new byte[Bgzf.HEADER_SIZE];
+			int n = ch.read(ByteBuffer.wrap(header), 0);
+			return Bgzf.isGzip(header, n);
+		}
+		finally
+		{
+			ch.close();
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// buffer size of each file being written
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	// see the constructor
+	private File dir;
+	private List<File> inputs;
+	private List<SeqDecider> deciders;
+
+	// the records each decider passed, by ordinal
+	private DecisionBitmap[] bitmaps;
+
+	// longs in a result of decide()
+	private int words;
+
+	// the entries and versions files being written
+	private DataOutputStream records;
+	private DataOutputStream versions;
+
+	// records added, and bytes written to 'versions'
+	private int count = 0;
+	private long versionBytes = 0;
+}
@@ -0,0 +1,109 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class DecisionMemo
+{
+	//Concept:
+        //        IS: the record of which deciders have already been applied
+	//	       to the record the current thread is processing
+        //       HAS: one decider to result map per thread, and the record
+	//	       and record text the results belong to
+        //      DOES: applies a decider at most once per record, so a
+	//	       decider that is named on its own and also used in a
+	//	       DeciderExpression is evaluated and counted once;
+	//	       times each evaluation for the decider's latency
+	//	       histogram (see FilterMetrics); applies the deciders
+	//	       that are not thread safe one at a time (see
+	//	       SeqDecider.isThreadSafe())
+        // Implementation: thread confined through a ThreadLocal, so the
+	//	       pipeline's workers need no locking. begin() is called
+	//	       through SeqDecider.recordLoaded() each time a new record
+	//	       has been read. Like RecordFeatureCache, the results are
+	//	       also dropped when a different SeqRecord object is asked
+	//	       about, or the same one with a different text String,
+	//	       since SeqRecord.readText() makes a new one for each
+	//	       record; so an application that applies a
+	//	       DeciderExpression to records of its own gets fresh leaf
+	//	       results, even when it reuses one SeqRecord object.
+
+	static void begin()
+		// Purpose: forget the results for the previous record
+	{
+		DecisionMemo m = MEMO.get();
+		m.results.clear();
+		m.record = null;
+		m.text = null;
+	}
+
+	static boolean isA(SeqDecider d, SeqRecord s)
+		// Purpose: apply 'd' to 's' unless it has already been applied
+		//	    since the last begin()
+		// Returns: the decider's result
+	{
+		DecisionMemo m = MEMO.get();
+		String text = s.getText();
+		if(m.record != s || m.text != text)
+		{
+			// another record, or the same object reloaded
+			m.results.clear();
+			m.record = s;
+			m.text = text;
+		}
+		IdentityHashMap<SeqDecider, Boolean> results = m.results;
+		Boolean r = results.get(d);
+		if(r == null)
+		{
+			if(d.isThreadSafe())
+			{
+				r = Boolean.valueOf(timedIsA(d, s));
+			}
+			else
+			{
+				synchronized(SERIAL)
+				{
+					r = Boolean.valueOf(timedIsA(d, s));
+				}
+			}
+			results.put(d, r);
+		}
+		return r.booleanValue();
+	}
+
+	private static boolean timedIsA(SeqDecider d, SeqRecord s)
+		// Purpose: apply 'd' to 's', recording the time it takes
+	{
+		long start = System.nanoTime();
+		boolean r = d.isA(s);
+		d.latency.record(System.nanoTime() - start);
+		return r;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// held while a decider that is not thread safe is applied; one
+	// for all of them, in every run in the JVM, since the static
+	// interrogators they may use are shared by all of them
+	private static final Object SERIAL = new Object();
+
+	private static final ThreadLocal<DecisionMemo> MEMO =
+		new ThreadLocal<DecisionMemo>()
+		{
+			protected DecisionMemo initialValue()
+			{
+				return new DecisionMemo();
+			}
+		};
+
+	// the record the results were found for, and its text when they
+	// were; compared by identity
+	private SeqRecord record;
+	private String text;
+
+	// results for the current record, keyed by decider identity
+	private IdentityHashMap<SeqDecider, Boolean> results =
+		new IdentityHashMap<SeqDecider, Boolean>();
+}
@@ -0,0 +1,321 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class DirectoryOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: the output location of a decider given with -d
+        //       HAS: a directory, writer threads, and the number of levels
+	//	       of hashed subdirectories to spread files over
+        //      DOES: writes each passing record to its own file named
+	//	       seqid.version, on a writer thread, so the caller does
+	//	       not wait for the create, write and close; when records
+	//	       share a version, the last one in input order wins
+        // Implementation: each writer thread encodes into its own reusable
+	//	       direct buffer and writes it with one FileChannel.write.
+	//	       With a fan-out of n, a record's file is placed n levels
+	//	       down, each level a two hex digit directory (256 ways)
+	//	       taken from a hash of the version, so no directory gets
+	//	       more than a small share of millions of files.
+	//	       Subdirectories are created once and remembered.
+	//	       A record goes to the writer chosen by the same hash,
+	//	       and each writer takes its records in turn, so every
+	//	       file is written by one thread, in input order.
+	//	       A --passthrough record's bytes are written as they are.
+	//	       Writes are submitted behind a semaphore so at most
+	//	       MAX_PENDING records wait in memory. The first failure of
+	//	       any write is rethrown by the next write() or by close().
+
+	//
+	//constructors
+	//
+
+	DirectoryOutput(File dir, int fanout, int writerCount)
+	{
+		this.dir = dir;
+		this.fanout = fanout;
+		ThreadFactory factory = new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "seqfilter-dir-writer");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		this.writers = new ExecutorService[writerCount];
+		for(int i = 0; i < writerCount; i++)
+		{
+			this.writers[i] = Executors.newSingleThreadExecutor(
+				factory);
+		}
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		for(int i = 0; i < records.size(); i++)
+		{
+			write(records.get(i));
+		}
+	}
+
+	public void write(final FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+	// Purpose: write the record to the file for its version
+	// Returns: nothing
+	// Assumes: records are written in input order
+	// Effects: blocks while MAX_PENDING writes are outstanding
+	// Throws: IOException if an earlier write failed,
+	//	   InterruptedException
+	// Notes: a null version is written to a file named "null"
+
+		checkFailure();
+		final String name = String.valueOf(r.version);
+		final int h = hash(name);
+		this.pending.acquire();
+		try
+		{
+			this.writers[(h & 0x7fffffff) % this.writers.length].
+				execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						writeFile(r, fileFor(name, h));
+					}
+					catch(Throwable t)
+					{
+						synchronized(DirectoryOutput.this)
+						{
+							if(failure == null)
+							{
+								failure = t;
+							}
+						}
+					}
+					finally
+					{
+						pending.release();
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			this.pending.release();
+			throw new IOException("Write to " + this.dir +
+				" after close");
+		}
+	}
+
+	public long sync() throws IOException, InterruptedException
+		// Purpose: wait for all submitted writes
+		// Returns: -1
+		// Throws: IOException if any write failed
+		// Notes: the files are not forced to disk; a resumed run
+		//	  rewrites every file after the checkpoint
+	{
+		this.pending.acquire(MAX_PENDING);
+		this.pending.release(MAX_PENDING);
+		checkFailure();
+		return -1;
+	}
+
+	public void close() throws IOException, InterruptedException
+		// Purpose: wait for all submitted writes and stop the writers
+		// Throws: IOException if any write failed
+	{
+		for(int i = 0; i < this.writers.length; i++)
+		{
+			this.writers[i].shutdown();
+		}
+		for(int i = 0; i < this.writers.length; i++)
+		{
+			while(!this.writers[i].awaitTermination(1,
+				TimeUnit.MINUTES))
+			{
+				// keep waiting; a slow file system is not a
+				// failure
+			}
+		}
+		checkFailure();
+	}
+
+	private File fileFor(String name, int h)
+		// Purpose: return the path of the file 'name', whose hash is
+		//	    'h'
+	{
+		File d = this.dir;
+		for(int level = 0; level < this.fanout; level++)
+		{
+			d = new File(d, HEX[(h >>> (8 * level)) & 0xff]);
+		}
+		return new File(d, name);
+	}
+
+	private void writeFile(FilteredRecord r, File f) throws IOException
+		// Purpose: create and write 'f' with 'r' on this writer
+		//	    thread
+	{
+		File parent = f.getParentFile();
+		if(this.fanout > 0 && !this.createdDirs.containsKey(parent))
+		{
+			if(!parent.mkdirs() && !parent.isDirectory())
+			{
+				throw new IOException("Cannot create directory " +
+					parent);
+			}
+			this.createdDirs.put(parent, Boolean.TRUE);
+		}
+
+		ByteBuffer buf = r.span != null ? r.span.bytes() : encode(r.text);
+		FileChannel ch = FileChannel.open(f.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			while(buf.hasRemaining())
+			{
+				ch.write(buf);
+			}
+		}
+		finally
+		{
+			ch.close();
+		}
+	}
+
+	private ByteBuffer encode(String text) throws IOException
+		// Purpose: encode 'text' into this thread's reusable buffer
+		// Returns: the buffer, flipped for writing
+		// Throws: CharacterCodingException if 'text' has a character
+		//	   ISO-8859-1 cannot hold; record text read as
+		//	   ISO-8859-1 never does
+	{
+		ByteBuffer buf = BUFFER.get();
+		if(buf.capacity() < text.length())
+		{
+			// flat files are one byte per char; grow to fit
+			buf = ByteBuffer.allocateDirect(
+				Math.max(text.length(), 2 * buf.capacity()));
+			BUFFER.set(buf);
+		}
+		buf.clear();
+		CharsetEncoder enc = ENCODER.get();
+		enc.reset();
+		CoderResult result = enc.encode(CharBuffer.wrap(text), buf, true);
+		if(result.isError())
+		{
+			result.throwException();
+		}
+		enc.flush(buf);
+		buf.flip();
+		return buf;
+	}
+
+	private void checkFailure() throws IOException
+	{
+		Throwable t;
+		synchronized(this)
+		{
+			t = this.failure;
+		}
+		if(t instanceof IOException)
+		{
+			throw (IOException)t;
+		}
+		if(t != null)
+		{
+			IOException e = new IOException(t.toString());
+			e.initCause(t);
+			throw e;
+		}
+	}
+
+	static int hash(String version)
+		// Purpose: hash 'version' for choosing its subdirectories
+		//	    and its writer
+		// Notes: String.hashCode() is fixed by the language spec, so
+		//	  a record lands in the same subdirectory on every run;
+		//	  the finalizer spreads its low bits
+	{
+		int h = version.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// default number of writer threads per directory
+	static final int DEFAULT_WRITERS = 4;
+
+	// most records waiting to be written at one time
+	static final int MAX_PENDING = 1024;
+
+	// starting size of each writer thread's buffer
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String[] HEX = new String[256];
+	static
+	{
+		for(int i = 0; i < 256; i++)
+		{
+			HEX[i] = (i < 16 ? "0" : "") + Integer.toHexString(i);
+		}
+	}
+
+	// per writer thread buffer and encoder, reused for every file
+	private static final ThreadLocal<ByteBuffer> BUFFER =
+		new ThreadLocal<ByteBuffer>()
+		{
+			protected ByteBuffer initialValue()
+			{
+				return ByteBuffer.allocateDirect(BUFFER_SIZE);
+			}
+		};
+	private static final ThreadLocal<CharsetEncoder> ENCODER =
+		new ThreadLocal<CharsetEncoder>()
+		{
+			protected CharsetEncoder initialValue()
+			{
+				return RecordIndex.LATIN1.newEncoder();
+			}
+		};
+
+	// see the constructor
+	private File dir;
+	private int fanout;
+
+	// one thread each; a record goes to the one its hash chooses
+	private ExecutorService[] writers;
+
+	// permits for records submitted but not yet written
+	private Semaphore pending = new Semaphore(MAX_PENDING);
+
+	// subdirectories known to exist
+	private ConcurrentMap<File, Boolean> createdDirs =
+		new ConcurrentHashMap<File, Boolean>();
+
+	// the first failed write
+	private Throwable failure;
+}
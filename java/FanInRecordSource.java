@@ -0,0 +1,367 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class FanInRecordSource implements RecordSource
+{
+	//Concept:
+        //        IS: a RecordSource over many input files read at the same
+	//	       time, e.g. the division files of a GenBank release
+        //       HAS: a MappedRecordSource per file, a pool of reader
+	//	       threads, and queues of batches read ahead
+        //      DOES: reads several files at once, one reader thread per
+	//	       file, and hands out their batches either in file order
+	//	       (ordered) or as they are read (unordered)
+        // Implementation: the files wait in one queue in -i order; each
+	//	       reader thread claims the next file when it finishes its
+	//	       last, so a few large files do not leave threads idle
+	//	       while small ones wait, and each thread reads whole
+	//	       files, which a gzip file requires. The work a batch
+	//	       holds (splitting, parsing, deciding) is spread over all
+	//	       the workers whichever file it came from.
+	//	       Ordered, each file has its own bounded queue and
+	//	       batches are taken from the first unfinished file's
+	//	       queue; the files after it are read ahead until their
+	//	       queues fill. Since files are claimed in order, the
+	//	       first unfinished file always has a reader. Each batch
+	//	       carries the position after it, so position() and
+	//	       seek() work as for a MappedRecordSource and an ordered
+	//	       run can be checkpointed.
+	//	       Unordered, all readers share one bounded queue and
+	//	       batches come out as they are read; there is then no
+	//	       single input position, so position() returns null.
+	//	       A reader's failure is handed out in place of a batch
+	//	       and thrown from nextBatch().
+
+	//
+	//constructors
+	//
+
+	FanInRecordSource(
+		List<File> files,	// the -i files, in order
+		int readers,		// files read at the same time
+		boolean ordered,	// hand out batches in file order
+		int chunkSize,		// see MappedRecordSource
+		boolean passthrough,
+		ExecutorService inflaters)
+	{
+		this.files = new ArrayList<File>(files);
+		this.readers = Math.max(1, Math.min(readers, files.size()));
+		this.ordered = ordered;
+		this.chunkSize = chunkSize;
+		this.passthrough = passthrough;
+		this.inflaters = inflaters;
+		this.sources = new MappedRecordSource[files.size()];
+		this.fileQueues = new ArrayList<BlockingQueue<Read>>();
+		for(int i = 0; i < files.size(); i++)
+		{
+			this.fileQueues.add(new ArrayBlockingQueue<Read>(
+				READ_AHEAD));
+		}
+		this.shared = new ArrayBlockingQueue<Read>(
+			READ_AHEAD * this.readers);
+	}
+
+	//
+	//methods:
+	//
+
+	public RecordBatch nextBatch(int seq) throws IOException
+	{
+		try
+		{
+			if(this.pool == null)
+			{
+				start();
+			}
+			Read r;
+			while(true)
+			{
+				if(this.ordered)
+				{
+					if(this.current >= this.files.size())
+					{
+						return null;
+					}
+					r = this.fileQueues.get(this.current).take();
+					if(r == END_OF_FILE)
+					{
+						this.current++;
+						continue;
+					}
+				}
+				else
+				{
+					if(this.filesLeft == 0)
+					{
+						return null;
+					}
+					r = this.shared.take();
+					if(r == END_OF_FILE)
+					{
+						this.filesLeft--;
+						continue;
+					}
+				}
+				break;
+			}
+			if(r.failure != null)
+			{
+				throw r.failure;
+			}
+			r.batch.seq = seq;
+			this.position = r.after;
+			return r.batch;
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException("Interrupted while " +
+				"reading input");
+		}
+	}
+
+	void setRange(long firstStart, long lastEnd)
+		// Purpose: see MappedRecordSource.setRange()
+	{
+		this.firstStart = firstStart;
+		this.lastEnd = lastEnd;
+	}
+
+	void setGiantSize(int giantSize)
+		// Purpose: see MappedRecordSource.setGiantSize()
+	{
+		this.giantSize = giantSize;
+	}
+
+	public InputPosition position()
+	{
+		return this.ordered ? this.position : null;
+	}
+
+	public void seek(InputPosition p) throws IOException
+	{
+		if(!this.ordered)
+		{
+			throw new IOException("An unordered run cannot seek");
+		}
+		if(p.file >= this.files.size())
+		{
+			throw new IOException("Input ended before " + p);
+		}
+		// the files before 'p' are done
+		this.current = p.file;
+		this.next = p.file;
+		this.sources[p.file] = open(p.file);
+		this.sources[p.file].seek(new InputPosition(0, p.offset));
+		this.position = p;
+	}
+
+	public void close() throws IOException
+	{
+		if(this.pool != null)
+		{
+			this.pool.shutdownNow();
+		}
+		IOException first = null;
+		synchronized(this.sources)
+		{
+			this.closed = true;
+			for(int i = 0; i < this.sources.length; i++)
+			{
+				if(this.sources[i] == null)
+				{
+					continue;
+				}
+				try
+				{
+					this.sources[i].close();
+				}
+				catch(IOException e)
+				{
+					if(first == null)
+					{
+						first = e;
+					}
+				}
+			}
+		}
+		if(first != null)
+		{
+			throw first;
+		}
+	}
+
+	private void start()
+		// Purpose: start the reader threads
+	{
+		this.filesLeft = this.files.size() - this.next;
+		this.pool = Executors.newFixedThreadPool(this.readers,
+			new ThreadFactory()
+			{
+				private int n = 0;
+
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r,
+						"seqfilter-input-" + n++);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		for(int i = 0; i < this.readers; i++)
+		{
+			this.pool.execute(new Runnable()
+			{
+				public void run()
+				{
+					readFiles();
+				}
+			});
+		}
+	}
+
+	private void readFiles()
+		// Purpose: a reader thread; claim files in order and read each
+		//	    to its end
+	{
+	    try
+	    {
+		int f;
+		while((f = claim()) >= 0)
+		{
+			BlockingQueue<Read> q = this.ordered ?
+				this.fileQueues.get(f) : this.shared;
+			try
+			{
+				MappedRecordSource src;
+				synchronized(this.sources)
+				{
+					if(this.closed)
+					{
+						return;
+					}
+					if(this.sources[f] == null)
+					{
+						this.sources[f] = open(f);
+					}
+					src = this.sources[f];
+				}
+				RecordBatch b;
+				while((b = src.nextBatch(0)) != null)
+				{
+					// its source knows the file as file 0
+					b.file = f;
+					q.put(new Read(b, new InputPosition(f,
+						src.position().offset), null));
+				}
+				if(!src.keepsFiles())
+				{
+					// nothing of the file is needed now
+					synchronized(this.sources)
+					{
+						src.close();
+						this.sources[f] = null;
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				q.put(new Read(null, null, e));
+			}
+			q.put(END_OF_FILE);
+		}
+	    }
+	    catch(InterruptedException e)
+	    {
+		// closed
+	    }
+	}
+
+	private synchronized int claim()
+		// Purpose: take the next file to read
+		// Returns: its index, or -1 when every file is taken
+	{
+		return this.next < this.files.size() ? this.next++ : -1;
+	}
+
+	private MappedRecordSource open(int f)
+	{
+		MappedRecordSource src = new MappedRecordSource(
+			Collections.singletonList(this.files.get(f)),
+			this.chunkSize, this.passthrough, this.inflaters);
+		src.setRange(f == 0 ? this.firstStart : 0,
+			f == this.files.size() - 1 ? this.lastEnd : -1);
+		src.setGiantSize(this.giantSize);
+		return src;
+	}
+
+	//
+	// a batch read, with the position after it, or a failure
+	//
+
+	private static class Read
+	{
+		Read(RecordBatch batch, InputPosition after, IOException failure)
+		{
+			this.batch = batch;
+			this.after = after;
+			this.failure = failure;
+		}
+
+		final RecordBatch batch;
+		final InputPosition after;
+		final IOException failure;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// batches read ahead per file (ordered) or per reader (unordered)
+	private static final int READ_AHEAD = 2;
+
+	// queued after a file's last batch; compared by identity
+	private static final Read END_OF_FILE = new Read(null, null, null);
+
+	// see the constructor
+	private List<File> files;
+	private int readers;
+	private boolean ordered;
+	private int chunkSize;
+	private boolean passthrough;
+	private ExecutorService inflaters;
+
+	// the source of each file from when it is claimed until its last
+	// batch is read, or until close() if it keeps its files for the
+	// outputs (see MappedRecordSource.keepsFiles()). Guarded by
+	// itself
+	private MappedRecordSource[] sources;
+	private boolean closed = false;
+
+	// ordered: a queue per file, and the file being handed out
+	private List<BlockingQueue<Read>> fileQueues;
+	private int current = 0;
+
+	// unordered: the queue all readers share, and the files not yet
+	// finished
+	private BlockingQueue<Read> shared;
+	private int filesLeft;
+
+	// the next file to claim
+	private int next = 0;
+
+	// the reader threads; null until the first nextBatch()
+	private ExecutorService pool;
+
+	// the position after the last batch handed out
+	private InputPosition position = InputPosition.START;
+
+	// see setRange()
+	private long firstStart = 0;
+	private long lastEnd = -1;
+
+	// see setGiantSize(); 0 for none
+	private int giantSize = 0;
+}
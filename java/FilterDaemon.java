@@ -0,0 +1,338 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class FilterDaemon
+{
+	//Concept:
+        //        IS: a long running server for SeqRecordFilter jobs, so that
+	//	       many small jobs do not each pay for starting a JVM,
+	//	       loading classes and compiling the deciders
+        //       HAS: a server socket on the loopback interface, the secret
+	//	       token clients must send, a factory for the
+	//	       application's deciders, the SeqRecord class records
+	//	       are parsed into, and a pool of job threads
+        //      DOES: takes one job per connection. The client sends the
+	//	       token on the first line, then the job's arguments, as
+	//	       getArgs() takes them, one per line, then an empty line;
+	//	       the daemon runs the job as
+	//	       SeqRecordFilter would and sends back the job's log as
+	//	       it is written, including the logStats() counts, then a
+	//	       last line: "OK", or "ERROR " and the error
+        // Implementation: each job gets new deciders from the factory,
+	//	       since a decider counts the records it sees, and a new
+	//	       SeqRecord; the classes, the static interrogators and the
+	//	       compiled code are shared by every job and stay warm, so
+	//	       deciders that are not thread safe are applied one at a
+	//	       time across all jobs (see SeqDecider.isThreadSafe());
+	//	       those that query GBSeqDecider.interrogator() or
+	//	       SPSeqDecider.interrogator() get one per job thread and
+	//	       need not be.
+	//	       At most 'jobs' jobs run at once; later connections wait
+	//	       in the pool's queue. A job reads -i and --inputs files
+	//	       only, and relative paths are taken from the daemon's
+	//	       working directory. A job's failure, even an Error thrown
+	//	       by a decider, is sent to its client and never stops
+	//	       the daemon. A client that does not send the token and
+	//	       its arguments within HANDSHAKE_MILLIS is dropped, so
+	//	       idle connections cannot hold every job thread. There are no Unix domain socket channels
+	//	       before Java 16, so the daemon listens on a TCP port of
+	//	       the loopback interface, which keeps it local to the
+	//	       host. A job reads and writes files with the daemon
+	//	       user's permissions, so any local user who can connect
+	//	       could read what the daemon user can read and overwrite
+	//	       what it can write; the token keeps them out. It is read
+	//	       at start up from the first line of a file that only its
+	//	       owner may read or write (mode 0600), and the daemon will
+	//	       not start if others may. A connection whose first line
+	//	       is not the token gets "ERROR not authorized" and no job
+	//	       is run. Paths are not restricted: a client holding the
+	//	       token may do whatever the daemon user may. From a shell:
+	//		 (umask 077; head -c 24 /dev/urandom | base64 \
+	//		     > ~/.seqfilter-token)
+	//		 { cat ~/.seqfilter-token
+	//		   printf '%s\n' -i /data/sub1.gb --mouse -o sub1.mouse ''
+	//		 } | nc localhost 7070
+	//	       An application starts it from its main(), e.g.
+	//		 new FilterDaemon(new Supplier<SeqDecider[]>()
+	//		     {
+	//			public SeqDecider[] get()
+	//			{
+	//			    return new SeqDecider[] { new MouseDecider(),
+	//				new HumanDecider() };
+	//			}
+	//		     }, new GBSeqRecord(), 7070, 8,
+	//		     new File(home, ".seqfilter-token")).serve();
+
+	//
+	//constructors
+	//
+
+	public FilterDaemon(
+		Supplier<SeqDecider[]> deciders, // makes a new set of all
+					// possible Deciders for each job
+		SeqRecord prototype,	// jobs parse records into new
+					// instances of its class, which
+					// must have a public no-arg
+					// constructor
+		int port,		// 0 for any free port
+		int jobs,		// jobs run at once
+		File token)		// holds the secret clients must
+					// send; see Concept
+		throws IOException
+	{
+		this.token = readToken(token);
+		this.deciders = deciders;
+		this.prototype = prototype;
+		this.server = new ServerSocket(port, BACKLOG,
+			InetAddress.getLoopbackAddress());
+		this.pool = Executors.newFixedThreadPool(Math.max(1, jobs),
+			new ThreadFactory()
+			{
+				private int n = 0;
+
+				public synchronized Thread newThread(Runnable r)
+				{
+					return new Thread(r,
+						"seqfilter-job-" + n++);
+				}
+			});
+	}
+
+	//
+	//methods:
+	//
+
+	public void serve() throws IOException
+	{
+	// Purpose: take jobs until close() is called
+	// Throws: IOException if the server socket fails
+
+		while(true)
+		{
+			final Socket client;
+			try
+			{
+				client = this.server.accept();
+			}
+			catch(SocketException e)
+			{
+				if(this.server.isClosed())
+				{
+					return;
+				}
+				throw e;
+			}
+			this.pool.execute(new Runnable()
+			{
+				public void run()
+				{
+					runJob(client);
+				}
+			});
+		}
+	}
+
+	public int getPort()
+		// Purpose: the port the daemon listens on
+	{
+		return this.server.getLocalPort();
+	}
+
+	public void close() throws IOException
+		// Purpose: stop taking jobs; jobs already taken still run
+	{
+		this.server.close();
+		this.pool.shutdown();
+	}
+
+	private void runJob(Socket client)
+		// Purpose: run the job sent on 'client' and send back its log
+		//	    and status
+	{
+	    try
+	    {
+		try
+		{
+			// a client must send the token and arguments
+			// promptly, or it would hold a job thread
+			client.setSoTimeout(HANDSHAKE_MILLIS);
+			BufferedReader in = new BufferedReader(
+				new InputStreamReader(client.getInputStream(),
+				LATIN1));
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+				client.getOutputStream(), LATIN1));
+			String first;
+			try
+			{
+				first = in.readLine();
+			}
+			catch(SocketTimeoutException e)
+			{
+				first = null;
+			}
+			if(first == null || !MessageDigest.isEqual(
+				first.trim().getBytes(LATIN1), this.token))
+			{
+				out.write("ERROR not authorized\n");
+				out.flush();
+				return;
+			}
+			String status;
+			try
+			{
+				String[] args = readArgs(in);
+				client.setSoTimeout(0);
+				SeqRecordFilter job = new SeqRecordFilter(
+					this.deciders.get(), args, new JobLog(out),
+					FilterPipeline.newSeqRecord(this.prototype));
+				job.run();
+				status = "OK";
+			}
+			catch(IOException e)
+			{
+				status = "ERROR " + e.getMessage();
+			}
+			catch(InterruptedException e)
+			{
+				status = "ERROR interrupted";
+			}
+			catch(Throwable e)
+			{
+				// even an Error from a decider, e.g. a
+				// LinkageError, is the job's and not the daemon's
+				status = "ERROR " + e;
+			}
+			out.write(status + "\n");
+			out.flush();
+		}
+		finally
+		{
+			client.close();
+		}
+	    }
+	    catch(IOException e)
+	    {
+		// the client has gone; there is no one to tell
+	    }
+	}
+
+	private static byte[] readToken(File f) throws IOException
+		// Purpose: read the token from the first line of 'f'
+		// Throws: IOException if 'f' cannot be read, its token is
+		//	   shorter than MIN_TOKEN, or anyone but its owner may
+		//	   read or write it
+	{
+		Set<PosixFilePermission> perms;
+		try
+		{
+			perms = Files.getPosixFilePermissions(f.toPath());
+		}
+		catch(UnsupportedOperationException e)
+		{
+			throw new IOException("Cannot check who may read the " +
+				"token file " + f);
+		}
+		perms.retainAll(EnumSet.of(PosixFilePermission.GROUP_READ,
+			PosixFilePermission.GROUP_WRITE,
+			PosixFilePermission.OTHERS_READ,
+			PosixFilePermission.OTHERS_WRITE));
+		if(!perms.isEmpty())
+		{
+			throw new IOException("The token file " + f + " may be " +
+				"read or written by users other than its owner; " +
+				"it must be mode 0600");
+		}
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+			new FileInputStream(f), LATIN1));
+		String line;
+		try
+		{
+			line = in.readLine();
+		}
+		finally
+		{
+			in.close();
+		}
+		if(line == null || line.trim().length() < MIN_TOKEN)
+		{
+			throw new IOException("The token file " + f + " must " +
+				"hold a token of at least " + MIN_TOKEN +
+				" characters on its first line");
+		}
+		return line.trim().getBytes(LATIN1);
+	}
+
+	private static String[] readArgs(BufferedReader in) throws IOException
+		// Purpose: read a job's arguments, up to the empty line
+		// Throws: IOException if the connection ends before it
+	{
+		List<String> args = new ArrayList<String>();
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			if(line.length() == 0)
+			{
+				return args.toArray(new String[args.size()]);
+			}
+			args.add(line);
+		}
+		throw new IOException("The job's arguments did not end with " +
+			"an empty line");
+	}
+
+	//
+	// a job's log: the client connection, which closing the log must
+	// leave open for the status line
+	//
+
+	private static class JobLog extends FilterWriter
+	{
+		JobLog(Writer out)
+		{
+			super(out);
+		}
+
+		public void close() throws IOException
+		{
+			flush();
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// connections waiting to be accepted
+	private static final int BACKLOG = 50;
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	// time allowed for a client to send the token and arguments
+	static final int HANDSHAKE_MILLIS = 30 * 1000;
+
+	// shortest token accepted
+	static final int MIN_TOKEN = 16;
+
+	// the token clients must send
+	private byte[] token;
+
+	// see the constructor
+	private Supplier<SeqDecider[]> deciders;
+	private SeqRecord prototype;
+
+	// listens on the loopback interface
+	private ServerSocket server;
+
+	// runs the jobs
+	private ExecutorService pool;
+}
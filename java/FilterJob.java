@@ -0,0 +1,243 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class FilterJob
+{
+	//Concept:
+        //        IS: a filter run embedded in an application: what
+	//	       SeqRecordFilter does for a command line, without the
+	//	       command line, stdin, the log or System.exit()
+        //       HAS: deciders, each with the RecordSink its passing records
+	//	       go to; the SeqRecord class records are parsed into; a
+	//	       number of worker threads
+        //      DOES: reads records from an InputStream, from files, or from
+	//	       a Flow.Publisher of record texts; applies every decider
+	//	       to each record; writes each passing record to the
+	//	       decider's sink, in input order; and reports how the run
+	//	       ended both to its caller, by returning or throwing, and
+	//	       to every sink, by RecordSink.close() or fail()
+        // Implementation: the run is a FilterPipeline whose outputs are
+	//	       the sinks. Its queues are bounded, so a sink that blocks
+	//	       (see PublisherSink) slows the reading of the input, and
+	//	       a Flow.Publisher input is only asked for records as the
+	//	       pipeline takes them (see PublisherRecordSource). A job
+	//	       owns its threads and shares no state with other jobs,
+	//	       so one JVM may run many at once, provided each has its
+	//	       own deciders: a decider counts the records it sees.
+	//	       Deciders that are not thread safe are applied one at a
+	//	       time across all jobs (see SeqDecider.isThreadSafe()). As
+	//	       in SeqRecordFilter, only the record sections the
+	//	       deciders need are parsed, and the PatternDeciders share
+	//	       one pass over each record. A job runs once.
+
+	//
+	//constructors
+	//
+
+	public FilterJob(
+		SeqRecord prototype)	// records are parsed into new
+					// instances of its class, which
+					// must have a public no-arg
+					// constructor
+	{
+		this.prototype = prototype;
+	}
+
+	//
+	//methods:
+	//
+
+	public void add(SeqDecider decider, RecordSink sink)
+	{
+	// Purpose: write the records that pass 'decider' to 'sink'; like
+	//	    --decider -o on the command line
+	// Assumes: 'decider' is used by no other job running at the same
+	//	    time
+
+		if(this.deciderCtr == this.deciders.length)
+		{
+			this.deciders = Arrays.copyOf(this.deciders,
+				this.deciders.length * 2);
+		}
+		this.deciders[this.deciderCtr++] = decider;
+		this.outputs.add(new SinkOutput(sink));
+	}
+
+	public void setThreads(int threads)
+		// Purpose: parse and decide records on 'threads' worker threads
+		//	    (see --threads); the default is 1
+	{
+		this.workerCount = Math.max(1, threads);
+	}
+
+	public void run(InputStream in) throws IOException, InterruptedException
+	{
+	// Purpose: filter the GenBank or SwissProt flat file records read
+	//	    from 'in', then close it
+	// Throws: IOException if reading, deciding or a sink fails, and
+	//	   InterruptedException if the calling thread is interrupted;
+	//	   either way every sink not yet closed is failed and the
+	//	   job's threads are stopped
+
+		begin();
+		run(new ByteStreamRecordSource(in, STREAM_BLOCK_SIZE, false));
+	}
+
+	public void run(List<File> files)
+		throws IOException, InterruptedException
+	{
+	// Purpose: filter the records of 'files' in order, reading several
+	//	    at once (see FanInRecordSource); each may be gzip or BGZF
+	//	    compressed, as with -i
+	// Throws: as run(InputStream)
+
+		begin();
+		this.inflaters = Executors.newFixedThreadPool(INFLATE_THREADS,
+			new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "seqfilter-codec");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		if(files.size() > 1)
+		{
+			run(new FanInRecordSource(files, INFLATE_THREADS, true,
+				MappedRecordSource.DEFAULT_CHUNK_SIZE, false,
+				this.inflaters));
+		}
+		else
+		{
+			run(new MappedRecordSource(files,
+				MappedRecordSource.DEFAULT_CHUNK_SIZE, false,
+				this.inflaters));
+		}
+	}
+
+	public void run(Flow.Publisher<String> records)
+		throws IOException, InterruptedException
+	{
+	// Purpose: filter the records 'records' publishes, each the text of
+	//	    one flat file record ending with its "//" line; the
+	//	    publisher is asked for records only as the job takes them
+	// Throws: as run(InputStream); IOException also if the publisher
+	//	   signals an error
+
+		begin();
+		PublisherRecordSource source = new PublisherRecordSource();
+		records.subscribe(source);
+		run(source);
+	}
+
+	private void begin() throws IOException
+		// Purpose: check that the job can run
+		// Throws: IOException if it has no deciders or has run before
+	{
+		if(this.started)
+		{
+			throw new IOException("A FilterJob runs once");
+		}
+		if(this.deciderCtr == 0)
+		{
+			throw new IOException("A FilterJob needs a decider");
+		}
+		this.started = true;
+	}
+
+	private void run(RecordSource source)
+		throws IOException, InterruptedException
+	{
+	// Purpose: filter every record of 'source', then close or fail the
+	//	    sinks and release the job's resources
+
+		PatternMatcher.bind(DeciderExpression.withMembers(this.deciders,
+			this.deciderCtr));
+		FilterPipeline pipeline = new FilterPipeline(this.prototype,
+			this.deciders, this.deciderCtr, this.outputs,
+			RecordProjector.forDeciders(this.deciders,
+			this.deciderCtr), this.workerCount, null, null, null,
+			null, true);
+		try
+		{
+			pipeline.run(source);
+			for(int i = 0; i < this.deciderCtr; i++)
+			{
+				((SinkOutput)this.outputs.get(i)).close();
+			}
+		}
+		catch(IOException e)
+		{
+			failSinks(e);
+			throw e;
+		}
+		catch(InterruptedException e)
+		{
+			failSinks(e);
+			throw e;
+		}
+		catch(RuntimeException e)
+		{
+			failSinks(e);
+			throw e;
+		}
+		finally
+		{
+			try
+			{
+				source.close();
+			}
+			catch(IOException e)
+			{
+				// every record has been read or the run has
+				// failed already; the input no longer matters
+			}
+			if(this.inflaters != null)
+			{
+				this.inflaters.shutdownNow();
+			}
+		}
+	}
+
+	private void failSinks(Throwable cause)
+		// Purpose: tell every sink not yet closed that the job failed
+	{
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			((SinkOutput)this.outputs.get(i)).fail(cause);
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// bytes read from an InputStream at a time
+	private static final int STREAM_BLOCK_SIZE = 4 * 1024 * 1024;
+
+	// threads inflating BGZF input, and files read at once
+	private static final int INFLATE_THREADS =
+		Runtime.getRuntime().availableProcessors();
+
+	// see the constructor
+	private SeqRecord prototype;
+
+	// the deciders, and SinkOutputs parallel to them
+	private SeqDecider[] deciders = new SeqDecider[4];
+	private int deciderCtr = 0;
+	private Vector<RecordOutput> outputs = new Vector<RecordOutput>();
+
+	// see setThreads()
+	private int workerCount = 1;
+
+	// inflates BGZF files; null unless the job reads files
+	private ExecutorService inflaters;
+
+	// true once run() has been called
+	private boolean started = false;
+}
@@ -0,0 +1,354 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+class FilterMetrics implements FilterMetricsMBean
+{
+	//Concept:
+        //        IS: the live metrics of one filter run
+        //       HAS: input counters, the run's deciders and output
+	//	       locations, and while the run is multi-threaded its
+	//	       FilterPipeline
+        //      DOES: publishes itself, a DeciderMetrics per decider and
+	//	       the MeteredOutputs as JMX MBeans; writes a progress line
+	//	       to the filter's log every few seconds
+        // Implementation: the counters are kept by the code that does the
+	//	       work (LongAdders in SeqDecider, LatencyHistogram,
+	//	       MeteredOutput and here) and only summed when read, so
+	//	       leaving the metrics on costs a few increments and two
+	//	       System.nanoTime() calls per decider per record.
+	//	       MBeans are named
+	//	       org.jax.mgi.bio.seqfilter:type=...,run=n,name=...
+	//	       where n numbers the runs in this JVM. The progress line
+	//	       is written by a daemon Timer thread; BufferedWriter
+	//	       serializes it with the filter's own log writes.
+
+	//
+	//constructors
+	//
+
+	FilterMetrics(
+		SeqDecider[] deciders,	// decidersForThisFilterRun
+		int deciderCtr,		// number of entries in 'deciders'
+		Vector<RecordOutput> seqOutput, // parallel to 'deciders'
+		int workerCount)	// --threads
+	{
+		this.deciders = Arrays.copyOf(deciders, deciderCtr);
+		this.workerCount = workerCount;
+		for(int i = 0; i < seqOutput.size(); i++)
+		{
+			if(seqOutput.get(i) instanceof MeteredOutput)
+			{
+				this.outputs.add((MeteredOutput)seqOutput.get(i));
+			}
+		}
+		this.lastOutputRecords = new long[this.outputs.size()];
+		this.lastOutputBytes = new long[this.outputs.size()];
+	}
+
+	//
+	//methods:
+	//
+
+	void start(final Writer log, int progressSeconds)
+	{
+	// Purpose: start the run's clock, register the MBeans and start
+	//	    the progress line
+	// Effects: a failure to register is noted in 'log'; the run goes
+	//	    on without JMX
+	// Notes: no progress line is written if 'progressSeconds' is 0
+
+		this.started = System.nanoTime();
+		this.lastTime = this.started;
+		this.log = log;
+		try
+		{
+			register();
+		}
+		catch(JMException e)
+		{
+			writeLog("Metrics not published through JMX: " +
+				e.getMessage());
+		}
+		if(progressSeconds > 0)
+		{
+			this.timer = new Timer("seqfilter-progress", true);
+			this.timer.scheduleAtFixedRate(new TimerTask()
+				{
+					public void run()
+					{
+						writeLog(progressLine());
+					}
+				}, progressSeconds * 1000L, progressSeconds * 1000L);
+		}
+	}
+
+	void stop()
+		// Purpose: stop the progress line and unregister the MBeans
+	{
+		if(this.timer != null)
+		{
+			this.timer.cancel();
+			this.timer = null;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(int i = 0; i < this.registered.size(); i++)
+		{
+			try
+			{
+				server.unregisterMBean(this.registered.get(i));
+			}
+			catch(JMException e)
+			{
+				// already gone
+			}
+		}
+		this.registered.clear();
+	}
+
+	void recordsRead(int records, long bytes)
+		// Purpose: count records read and parsed
+	{
+		this.inputRecords.add(records);
+		this.inputBytes.add(bytes);
+	}
+
+	void setPipeline(FilterPipeline pipeline)
+		// Purpose: report the queues of 'pipeline'; null when it is
+		//	    done
+	{
+		this.pipeline = pipeline;
+	}
+
+	String progressLine()
+	{
+	// Purpose: describe the run's progress in one line
+	// Returns: the totals so far, the rates since the previous line,
+	//	    the pipeline's queue depths, each decider's true count and
+	//	    isA() latency, and each output's rates
+
+		long now = System.nanoTime();
+		double seconds = Math.max(now - this.lastTime, 1) / 1e9;
+		long records = getInputRecords();
+		long bytes = getInputBytes();
+
+		StringBuilder b = new StringBuilder();
+		b.append("Progress at ").append(getElapsedSeconds()).
+			append("s: ").append(records).append(" records, ").
+			append(mb(bytes)).append(" MB read (").
+			append(Math.round((records - this.lastRecords) / seconds)).
+			append(" records/s, ").
+			append(mb((long)((bytes - this.lastBytes) / seconds))).
+			append(" MB/s)");
+		if(this.pipeline != null)
+		{
+			b.append("; batches in flight ").
+				append(getBatchesInFlight()).
+				append(", awaiting workers ").
+				append(getBatchesAwaitingWorkers()).
+				append(", output queues ").
+				append(Arrays.toString(getOutputQueueDepths()));
+		}
+		for(int i = 0; i < this.deciders.length; i++)
+		{
+			LatencyHistogram h = this.deciders[i].latency;
+			b.append("; ").append(this.deciders[i].getName()).
+				append(' ').append(this.deciders[i].getTrueCount()).
+				append(" true, mean ").append(time(h.meanNanos())).
+				append(" p99 ").append(time(h.percentileNanos(0.99)));
+		}
+		for(int i = 0; i < this.outputs.size(); i++)
+		{
+			MeteredOutput o = this.outputs.get(i);
+			long r = o.getRecords();
+			long n = o.getBytes();
+			b.append("; ").append(o.getLocation()).append(' ').
+				append(Math.round((r - this.lastOutputRecords[i]) /
+				seconds)).append(" records/s ").
+				append(mb((long)((n - this.lastOutputBytes[i]) /
+				seconds))).append(" MB/s");
+			this.lastOutputRecords[i] = r;
+			this.lastOutputBytes[i] = n;
+		}
+		this.lastTime = now;
+		this.lastRecords = records;
+		this.lastBytes = bytes;
+		return b.toString();
+	}
+
+	public long getElapsedSeconds()
+	{
+		return (System.nanoTime() - this.started) / 1000000000L;
+	}
+
+	public long getInputRecords()
+	{
+		return this.inputRecords.sum();
+	}
+
+	public long getInputBytes()
+	{
+		return this.inputBytes.sum();
+	}
+
+	public double getInputRecordsPerSecond()
+	{
+		return getInputRecords() / secondsRunning();
+	}
+
+	public double getInputBytesPerSecond()
+	{
+		return getInputBytes() / secondsRunning();
+	}
+
+	public int getWorkerThreads()
+	{
+		return this.workerCount;
+	}
+
+	public int getBatchesInFlight()
+	{
+		FilterPipeline p = this.pipeline;
+		return p == null ? 0 : p.batchesInFlight();
+	}
+
+	public int getBatchesAwaitingWorkers()
+	{
+		FilterPipeline p = this.pipeline;
+		return p == null ? 0 : p.batchesAwaitingWorkers();
+	}
+
+	public int[] getOutputQueueDepths()
+	{
+		FilterPipeline p = this.pipeline;
+		return p == null ? new int[this.outputs.size()] :
+			p.outputQueueDepths();
+	}
+
+	private void register() throws JMException
+		// Purpose: register this object, a DeciderMetrics for every
+		//	    decider used (including those named in expressions)
+		//	    and the outputs with the platform MBean server
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String prefix = DOMAIN + ":type=%s,run=" + RUNS.incrementAndGet();
+
+		register(server, this, ObjectName.getInstance(
+			String.format(prefix, "Filter")));
+
+		List<SeqDecider> used = DeciderExpression.withMembers(
+			this.deciders, this.deciders.length);
+		for(int i = 0; i < used.size(); i++)
+		{
+			register(server, new DeciderMetrics(used.get(i)),
+				named(prefix, "Decider", used.get(i).getName()));
+		}
+
+		for(int i = 0; i < this.outputs.size(); i++)
+		{
+			register(server, this.outputs.get(i), named(prefix,
+				"Output", this.outputs.get(i).getLocation()));
+		}
+	}
+
+	private void register(MBeanServer server, Object mbean,
+		ObjectName name) throws JMException
+	{
+		this.registered.add(server.registerMBean(mbean, name).
+			getObjectName());
+	}
+
+	private static ObjectName named(String prefix, String type,
+		String name) throws JMException
+	{
+		return ObjectName.getInstance(String.format(prefix, type) +
+			",name=" + ObjectName.quote(name));
+	}
+
+	private void writeLog(String s)
+		// Purpose: write 's' as a line of the log and flush it, so the
+		//	    log can be followed while the filter runs
+	{
+		try
+		{
+			this.log.write(s + "\n");
+			this.log.flush();
+		}
+		catch(IOException e)
+		{
+			// the log is closed or unwritable; the filter reports
+			// that itself when it next writes
+		}
+	}
+
+	private double secondsRunning()
+	{
+		return Math.max(System.nanoTime() - this.started, 1) / 1e9;
+	}
+
+	private static String mb(long bytes)
+	{
+		return String.format("%.1f", bytes / (1024.0 * 1024.0));
+	}
+
+	private static String time(long nanos)
+	{
+		if(nanos < 10000)
+		{
+			return nanos + "ns";
+		}
+		if(nanos < 10000000)
+		{
+			return (nanos / 1000) + "us";
+		}
+		return (nanos / 1000000) + "ms";
+	}
+
+	//
+	//instance variables:
+	//
+
+	// default seconds between progress lines (--progress)
+	static final int DEFAULT_PROGRESS_SECONDS = 60;
+
+	// JMX domain of the MBeans
+	private static final String DOMAIN = "org.jax.mgi.bio.seqfilter";
+
+	// runs started in this JVM; numbers each run's MBeans
+	private static final AtomicInteger RUNS = new AtomicInteger();
+
+	// see the constructor
+	private SeqDecider[] deciders;
+	private List<MeteredOutput> outputs = new ArrayList<MeteredOutput>();
+	private int workerCount;
+
+	// records and bytes read so far
+	private final LongAdder inputRecords = new LongAdder();
+	private final LongAdder inputBytes = new LongAdder();
+
+	// the running pipeline; null for a single threaded run
+	private volatile FilterPipeline pipeline;
+
+	// System.nanoTime() at start()
+	private volatile long started;
+
+	// the log the progress line goes to
+	private Writer log;
+
+	// writes the progress line; null if there is none
+	private Timer timer;
+
+	// names of the MBeans to unregister at stop()
+	private List<ObjectName> registered = new ArrayList<ObjectName>();
+
+	// totals at the previous progress line, for its rates
+	private long lastTime;
+	private long lastRecords;
+	private long lastBytes;
+	private long[] lastOutputRecords;
+	private long[] lastOutputBytes;
+}
@@ -0,0 +1,41 @@
+package org.jax.mgi.bio.seqfilter;
+
+public interface FilterMetricsMBean
+{
+	//Concept:
+        //        IS: the JMX view of a running filter as a whole
+        //       HAS: see FilterMetrics
+        //      DOES: reports input progress and how full the pipeline's
+	//	       queues are
+        // Implementation: a standard MBean interface; JMX requires it to be
+	//	       public and named after its implementing class
+
+	long getElapsedSeconds();
+		// Purpose: seconds since the run started
+
+	long getInputRecords();
+		// Purpose: records read and parsed
+
+	long getInputBytes();
+		// Purpose: bytes (characters of record text) read
+
+	double getInputRecordsPerSecond();
+		// Purpose: records read per second since the run started
+
+	double getInputBytesPerSecond();
+		// Purpose: bytes read per second since the run started
+
+	int getWorkerThreads();
+		// Purpose: threads parsing and deciding records (--threads)
+
+	int getBatchesInFlight();
+		// Purpose: batches read but not yet handed to the outputs;
+		//	    0 when the run is single threaded
+
+	int getBatchesAwaitingWorkers();
+		// Purpose: batches read and waiting for a worker thread
+
+	int[] getOutputQueueDepths();
+		// Purpose: batches of passing records waiting to be written,
+		//	    per output location in command line order
+}
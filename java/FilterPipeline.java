@@ -0,0 +1,639 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class FilterPipeline
+{
+	//Concept:
+        //        IS: the multi-threaded engine behind SeqRecordFilter.go()
+	//	       when more than one worker thread is requested
+        //       HAS: a reader stage, a pool of worker threads, one
+	//	       OutputStage per output location, and bounded queues
+	//	       between them
+        //      DOES: the reader splits the input into batches of record
+	//	       text; workers parse each record with their own
+	//	       SeqRecord and apply every decider; the calling thread
+	//	       puts finished batches back in input order and hands
+	//	       passing records to the output stages
+        // Implementation: at most BATCHES_PER_WORKER batches per worker
+	//	       exist between the reader and the output stages at any
+	//	       time (a semaphore taken by the reader and given back by
+	//	       the dispatcher), and the output queues are bounded, so
+	//	       memory stays bounded whichever stage is slowest.
+	//	       The first failure in any stage stops all stages and is
+	//	       rethrown from run().
+	//	       When a checkpoint is due the reader queues a marker
+	//	       behind its last batch and waits; the dispatcher takes
+	//	       the checkpoint once every batch before the marker is
+	//	       written, then lets the reader go on.
+	//	       With a VersionStore, workers skip the records it holds
+	//	       unchanged without parsing them; the dispatcher reports
+	//	       every record's version to the store in input order.
+	//	       With --save-decisions, workers also apply the saved
+	//	       deciders, and the dispatcher hands every record's
+	//	       results to the DecisionIndexWriter in input order.
+	//	       An unordered pipeline (--unordered) skips the reordering
+	//	       and hands each batch to the output stages as soon as it
+	//	       is decided; the end marker's sequence number tells the
+	//	       dispatcher how many batches to wait for.
+
+	//
+	//constructors
+	//
+
+	FilterPipeline(
+		SeqRecord prototype,	// records are parsed into new
+					// instances of this class
+		SeqDecider[] deciders,	// decidersForThisFilterRun
+		int deciderCtr,		// number of entries in 'deciders'
+		Vector<RecordOutput> seqOutput, // parallel to
+					// 'deciders'
+		RecordProjector projector, // cuts records down before
+					// parsing; null to parse them whole
+		int workerCount,	// number of worker threads
+		FilterMetrics metrics,	// counts the input and reports the
+					// queues; may be null
+		Checkpoint checkpoint,	// taken when due; may be null
+		VersionStore store,	// --store; may be null
+		DecisionIndexWriter decisions, // --save-decisions; may
+					// be null
+		boolean ordered)	// false to write batches as they are
+					// decided (--unordered)
+	{
+		this.store = store;
+		this.decisions = decisions;
+		this.ordered = ordered;
+		this.checkpoint = checkpoint;
+		this.projector = projector;
+		this.metrics = metrics;
+		this.prototype = prototype;
+		this.deciders = deciders;
+		this.deciderCtr = deciderCtr;
+		this.seqOutput = seqOutput;
+		this.workerCount = workerCount;
+		this.inFlight = new Semaphore(workerCount * BATCHES_PER_WORKER);
+		this.work = new ArrayBlockingQueue<RecordBatch>(
+			workerCount * BATCHES_PER_WORKER);
+	}
+
+	//
+	//methods:
+	//
+
+	void run(final RecordSource in)
+		throws IOException, InterruptedException
+	{
+	// Purpose: filter every record in 'in'
+	// Returns: nothing
+	// Assumes: nothing; deciders are applied through DecisionMemo, so
+	//	    those that are not thread safe are applied one at a
+	//	    time (see SeqDecider.isThreadSafe())
+	// Effects: writes passing records to the output locations, in input
+	//	    order for file outputs unless the pipeline is unordered
+	// Throws: IOException if any stage fails, InterruptedException
+
+		// create the worker record objects up front so a SeqRecord
+		// class without a no-arg constructor fails before any reading
+		SeqRecord[] workerRecs = new SeqRecord[this.workerCount];
+		for(int i = 0; i < this.workerCount; i++)
+		{
+			workerRecs[i] = newSeqRecord(this.prototype);
+		}
+
+		this.dispatcher = Thread.currentThread();
+		this.outputs = new OutputStage[this.deciderCtr];
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			this.outputs[i] = new OutputStage(this, i,
+				this.seqOutput.get(i));
+			this.outputs[i].start();
+		}
+
+		this.workers = new Thread[this.workerCount];
+		for(int i = 0; i < this.workerCount; i++)
+		{
+			final SeqRecord rec = workerRecs[i];
+			this.workers[i] = new Thread("seqfilter-worker-" + i)
+			{
+				public void run()
+				{
+					work(rec);
+				}
+			};
+			this.workers[i].setDaemon(true);
+			this.workers[i].start();
+		}
+
+		this.reader = new Thread("seqfilter-reader")
+		{
+			public void run()
+			{
+				read(in);
+			}
+		};
+		this.reader.setDaemon(true);
+		this.reader.start();
+
+		if(this.metrics != null)
+		{
+			this.metrics.setPipeline(this);
+		}
+		try
+		{
+			dispatch();
+			for(int i = 0; i < this.deciderCtr; i++)
+			{
+				this.outputs[i].finish();
+			}
+			for(int i = 0; i < this.deciderCtr; i++)
+			{
+				this.outputs[i].join();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			// interrupted by fail(); the failure is reported below
+			if(this.failure == null)
+			{
+				// the caller gave up on the run; do not leave
+				// the stages running
+				stopAll();
+				throw e;
+			}
+		}
+		finally
+		{
+			if(this.metrics != null)
+			{
+				this.metrics.setPipeline(null);
+			}
+			// no interrupt from fail() can follow this
+			synchronized(this)
+			{
+				this.finished = true;
+			}
+		}
+		if(this.failure != null)
+		{
+			stopAll();
+			// clear an interrupt from fail() that arrived after the
+			// dispatcher stopped waiting
+			Thread.interrupted();
+			throw asIOException(this.failure);
+		}
+	}
+
+	int batchesInFlight()
+		// Purpose: report the batches read but not yet handed to the
+		//	    output stages
+	{
+		return this.workerCount * BATCHES_PER_WORKER -
+			this.inFlight.availablePermits();
+	}
+
+	int batchesAwaitingWorkers()
+		// Purpose: report the batches waiting for a worker
+	{
+		return this.work.size();
+	}
+
+	int[] outputQueueDepths()
+		// Purpose: report each output stage's queued batches
+	{
+		OutputStage[] o = this.outputs;
+		int[] depths = new int[this.deciderCtr];
+		for(int i = 0; o != null && i < o.length; i++)
+		{
+			depths[i] = o[i].queueDepth();
+		}
+		return depths;
+	}
+
+	void fail(Throwable t)
+		// Purpose: record the first failure of any stage and wake the
+		//	    dispatcher so run() can report it
+	{
+		synchronized(this)
+		{
+			if(this.failure != null)
+			{
+				return;
+			}
+			this.failure = t;
+			this.done.offer(FAILED);
+			// the dispatcher may be blocked on a full output queue
+			if(!this.finished)
+			{
+				this.dispatcher.interrupt();
+			}
+		}
+	}
+
+	private void read(RecordSource in)
+		// Purpose: the reader stage; take batches of records from 'in'
+		//	    and queue them for the workers
+	{
+	    try
+	    {
+		int seq = 0;
+		while(true)
+		{
+			// wait for room before reading, so a mapped chunk is
+			// not held while the pipeline is full
+			this.inFlight.acquire();
+			RecordBatch batch = in.nextBatch(seq);
+			if(batch == null)
+			{
+				this.inFlight.release();
+				break;
+			}
+			this.work.put(batch);
+			seq++;
+			if(this.checkpoint != null && this.checkpoint.due())
+			{
+				RecordBatch mark = RecordBatch.checkpoint(seq,
+					in.position());
+				this.done.put(mark);
+				seq++;
+				mark.checkpointTaken.await();
+			}
+		}
+		// the end marker is ordered behind the last real batch by
+		// the dispatcher, so it needs no worker
+		this.done.put(RecordBatch.end(seq));
+		for(int i = 0; i < this.workerCount; i++)
+		{
+			this.work.put(NO_MORE_WORK);
+		}
+	    }
+	    catch(Throwable t)
+	    {
+		fail(t);
+	    }
+	}
+
+	private void work(SeqRecord rec)
+		// Purpose: a worker; parse each record of each batch into 'rec'
+		//	    and apply the deciders to it
+	{
+	    try
+	    {
+		RecordTextReader reader = new RecordTextReader();
+		RecordBatch batch;
+		while((batch = this.work.take()) != NO_MORE_WORK)
+		{
+			decide(rec, reader, batch);
+			this.done.put(batch);
+		}
+	    }
+	    catch(Throwable t)
+	    {
+		fail(t);
+	    }
+	}
+
+	private void decide(SeqRecord rec, RecordTextReader reader,
+		RecordBatch batch) throws IOException, InterruptedException
+		// Purpose: fill in batch.passed, loading each record into 'rec'
+		//	    through 'reader'; see SeqRecordFilter.processRecord()
+	{
+		List<String> records = batch.records();
+		List<RecordSpan> spans = batch.spans();
+		batch.passed = newPassedLists(this.deciderCtr);
+		if(this.store != null || this.decisions != null)
+		{
+			batch.versions = new ArrayList<String>(records.size());
+			batch.results = new long[records.size()];
+		}
+		if(this.decisions != null)
+		{
+			batch.decisions = new long[records.size()][];
+		}
+		long bytes = 0;
+		for(int r = 0; r < records.size(); r++)
+		{
+			String text = records.get(r);
+			RecordSpan span = spans == null ? null : spans.get(r);
+			bytes += span != null ? span.length() : text.length();
+			String version = null;
+			if(this.store != null)
+			{
+				version = VersionStore.versionOf(text);
+				long stored = version == null ? -1 :
+					this.store.unchanged(version);
+				if(stored >= 0)
+				{
+					// written by an earlier run
+					batch.versions.add(version);
+					batch.results[r] = stored;
+					continue;
+				}
+			}
+			rec.readText(reader.set(this.projector == null ? text :
+				this.projector.project(text)));
+			SeqDecider.recordLoaded();
+			FilteredRecord passed = null;
+			long results = 0;
+			for(int i = 0; i < this.deciderCtr; i++)
+			{
+				if(DecisionMemo.isA(this.deciders[i], rec))
+				{
+					results |= 1L << i;
+					// one FilteredRecord serves every output
+					if(passed == null)
+					{
+						passed = span == null ?
+						    new FilteredRecord(rec.getVersion(),
+							this.projector == null ?
+							rec.getText() : text, null) :
+						    new FilteredRecord(rec.getVersion(),
+							null, span);
+					}
+					batch.passed[i].add(passed);
+				}
+			}
+			if(this.decisions != null)
+			{
+				batch.decisions[r] = this.decisions.decide(rec);
+			}
+			if(this.store != null || this.decisions != null)
+			{
+				batch.versions.add(version != null ? version :
+					rec.getVersion());
+				batch.results[r] = results;
+			}
+		}
+		if(this.metrics != null)
+		{
+			this.metrics.recordsRead(records.size(), bytes);
+		}
+		// the texts are no longer needed; let them go before the batch
+		// waits in the reorder buffer
+		batch.records = Collections.<String>emptyList();
+	}
+
+	private void dispatch() throws InterruptedException
+		// Purpose: take decided batches as the workers finish them and
+		//	    hand them to the output stages, in input order unless
+		//	    the pipeline is unordered
+	{
+		Map<Integer, RecordBatch> pending =
+			new HashMap<Integer, RecordBatch>();
+		int next = 0;
+
+		// unordered: batches handed out, and all there are once the
+		// end marker arrives
+		int handedOut = 0;
+		int total = -1;
+
+		while(true)
+		{
+			RecordBatch batch = this.done.take();
+			if(batch == FAILED)
+			{
+				return;
+			}
+			if(!this.ordered)
+			{
+				if(batch.isEnd())
+				{
+					total = batch.seq;
+				}
+				else
+				{
+					handOut(batch);
+					handedOut++;
+				}
+				if(handedOut == total)
+				{
+					return;
+				}
+				continue;
+			}
+			pending.put(batch.seq, batch);
+
+			while((batch = pending.remove(next)) != null)
+			{
+				if(batch.isEnd())
+				{
+					return;
+				}
+				if(batch.isCheckpoint())
+				{
+					takeCheckpoint(batch);
+					next++;
+					continue;
+				}
+				handOut(batch);
+				next++;
+			}
+		}
+	}
+
+	private void handOut(RecordBatch batch) throws InterruptedException
+		// Purpose: queue the passing records of 'batch' for the output
+		//	    stages, and let the reader have its permit back
+	{
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			if(batch.passed[i].size() > 0)
+			{
+				this.outputs[i].put(batch.passed[i]);
+			}
+		}
+		if(this.store != null)
+		{
+			noteSeen(batch);
+		}
+		if(this.decisions != null)
+		{
+			noteDecisions(batch);
+		}
+		this.inFlight.release();
+	}
+
+	private void takeCheckpoint(RecordBatch mark)
+		throws InterruptedException
+		// Purpose: wait for the output stages to write every batch
+		//	    before 'mark', take the checkpoint, and release the
+		//	    reader
+		// Notes: the workers are idle, since the reader has queued
+		//	  nothing after the marker
+	{
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			this.outputs[i].drain();
+		}
+		try
+		{
+			this.checkpoint.write(mark.checkpointAt);
+		}
+		catch(IOException e)
+		{
+			// reported by run(); stop dispatching
+			fail(e);
+			throw new InterruptedException("checkpoint failed");
+		}
+		mark.checkpointTaken.countDown();
+	}
+
+	private void noteSeen(RecordBatch batch) throws InterruptedException
+		// Purpose: report the versions of 'batch' to the store
+	{
+		try
+		{
+			for(int r = 0; r < batch.versions.size(); r++)
+			{
+				this.store.seen(batch.versions.get(r),
+					batch.results[r]);
+			}
+		}
+		catch(IOException e)
+		{
+			// reported by run(); stop dispatching
+			fail(e);
+			throw new InterruptedException("version store failed");
+		}
+	}
+
+	private void noteDecisions(RecordBatch batch)
+		throws InterruptedException
+		// Purpose: hand the saved deciders' results for the records of
+		//	    'batch' to the DecisionIndexWriter
+	{
+		try
+		{
+			List<RecordSpan> spans = batch.spans();
+			for(int r = 0; r < batch.versions.size(); r++)
+			{
+				this.decisions.add(spans == null ? null :
+					spans.get(r), batch.versions.get(r),
+					batch.decisions[r]);
+			}
+		}
+		catch(IOException e)
+		{
+			// reported by run(); stop dispatching
+			fail(e);
+			throw new InterruptedException("saving decisions failed");
+		}
+	}
+
+	private void stopAll()
+		// Purpose: interrupt every stage after a failure
+	{
+		if(this.reader != null)
+		{
+			this.reader.interrupt();
+		}
+		for(int i = 0; this.workers != null && i < this.workers.length;
+			i++)
+		{
+			this.workers[i].interrupt();
+		}
+		for(int i = 0; this.outputs != null && i < this.outputs.length;
+			i++)
+		{
+			this.outputs[i].interrupt();
+		}
+	}
+
+	static SeqRecord newSeqRecord(SeqRecord prototype) throws IOException
+		// Purpose: create an empty SeqRecord of the prototype's class,
+		//	    for a worker or a FilterDaemon job
+		// Throws: IOException if the class has no public no-arg
+		//	   constructor
+	{
+		try
+		{
+			return (SeqRecord)prototype.getClass().
+				getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e)
+		{
+			IOException e1 = new IOException("Cannot create a " +
+				prototype.getClass().getName() + ": " +
+				e.getMessage());
+			e1.initCause(e);
+			throw e1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<FilteredRecord>[] newPassedLists(int n)
+	{
+		List<FilteredRecord>[] lists =
+			(List<FilteredRecord>[])new List<?>[n];
+		for(int i = 0; i < n; i++)
+		{
+			lists[i] = new ArrayList<FilteredRecord>();
+		}
+		return lists;
+	}
+
+	private static IOException asIOException(Throwable t)
+	{
+		if(t instanceof IOException)
+		{
+			return (IOException)t;
+		}
+		IOException e = new IOException(t.toString());
+		e.initCause(t);
+		return e;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// records per batch
+	static final int BATCH_SIZE = 64;
+
+	// batches allowed in flight for each worker thread
+	static final int BATCHES_PER_WORKER = 4;
+
+	// queued once per worker after the last batch
+	private static final RecordBatch NO_MORE_WORK = RecordBatch.end(-1);
+
+	// queued on the done queue by fail()
+	private static final RecordBatch FAILED = RecordBatch.end(-2);
+
+	// see the constructor
+	private SeqRecord prototype;
+	private SeqDecider[] deciders;
+	private int deciderCtr;
+	private Vector<RecordOutput> seqOutput;
+	private RecordProjector projector;
+	private int workerCount;
+	private FilterMetrics metrics;
+	private Checkpoint checkpoint;
+	private VersionStore store;
+	private DecisionIndexWriter decisions;
+	private boolean ordered;
+
+	// permits for batches between the reader and the output stages
+	private Semaphore inFlight;
+
+	// batches waiting for a worker
+	private BlockingQueue<RecordBatch> work;
+
+	// decided batches waiting to be put back in order; never holds
+	// more than the in-flight limit plus the end and failure markers
+	private BlockingQueue<RecordBatch> done =
+		new LinkedBlockingQueue<RecordBatch>();
+
+	// the stages; the dispatcher is the thread that called run()
+	private Thread dispatcher;
+	private Thread reader;
+	private Thread[] workers;
+	private volatile OutputStage[] outputs;
+
+	// the first failure in any stage
+	private volatile Throwable failure;
+
+	// true once run() no longer waits on anything; guarded by this
+	private boolean finished = false;
+}
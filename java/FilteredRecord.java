@@ -0,0 +1,49 @@
+package org.jax.mgi.bio.seqfilter;
+
+class FilteredRecord
+{
+	//Concept:
+        //        IS: a sequence record that has passed a decider and is
+	//	       waiting to be written to that decider's output location
+        //       HAS: the record's seqid.version and either its text or,
+	//	       with --passthrough, its original input bytes
+        //      DOES: nothing; a value object handed to a RecordOutput
+        // Implementation:
+
+	//
+	//constructors
+	//
+
+	FilteredRecord(String version, String text, RecordSpan span)
+	{
+		this.version = version;
+		this.text = text;
+		this.span = span;
+	}
+
+	//
+	//methods:
+	//
+
+	int size()
+		// Purpose: return the bytes the record takes in an -a or -o
+		//	    file; flat file text is one byte per character
+	{
+		return this.span != null ? this.span.length() :
+			this.text.length();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// seqid.version; names the record's file in directory output
+	final String version;
+
+	// the record text as returned by SeqRecord.getText(); null when
+	// the record is passed through as bytes
+	final String text;
+
+	// the record's input bytes; null unless passing through
+	final RecordSpan span;
+}
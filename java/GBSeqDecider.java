@@ -9,8 +9,12 @@ public abstract class  GBSeqDecider extends SeqDecider
 	//	      seqRecords
 	//	      Concrete subclasses of this class must
 	//	      define an isA method - see superclass 
-        //       HAS: a Genbank interrogator object that can be used by the isA
-	//	      method to determine if a predicate is true
+        //       HAS: a Genbank interrogator object per thread that can be
+	//	      used by the isA method to determine if a predicate is
+	//	      true (see interrogator()). Interrogator
+	//	      queries wrapped in feature()/booleanFeature() (see
+	//	      superclass) run once per record however many deciders
+	//	      make them
         //      DOES: see superclass
         // Implementation:
 
@@ -24,10 +28,36 @@ public abstract class  GBSeqDecider extends SeqDecider
 		super(s);
 	}
 	
+	//
+	//methods:
+	//
+
+	protected static GBSeqInterrogator interrogator()
+		// Purpose: return the calling thread's own interrogator
+		// Notes: every worker thread of a run, and every FilterDaemon
+		//	  job, gets its own, so a decider that queries this one
+		//	  rather than 'si' may return true from isThreadSafe()
+	{
+		return INTERROGATOR.get();
+	}
+
 	//
 	//instance variables:
 	//
 
-	// determines if a predicate is true. 	
+	// determines if a predicate is true. Shared by every thread, so
+	// deciders that use it are applied one at a time (see
+	// SeqDecider.isThreadSafe()); kept for deciders written before
+	// interrogator()
 	protected static GBSeqInterrogator si = new GBSeqInterrogator();
+
+	// see interrogator()
+	private static final ThreadLocal<GBSeqInterrogator> INTERROGATOR =
+		new ThreadLocal<GBSeqInterrogator>()
+		{
+			protected GBSeqInterrogator initialValue()
+			{
+				return new GBSeqInterrogator();
+			}
+		};
 }
@@ -0,0 +1,84 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+
+class IndexingOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: an -a or -o output location written with --index
+        //       HAS: the output it writes to, the output file's length so
+	//	       far, and a RecordIndexWriter
+        //      DOES: notes each record's seqid.version, offset and length
+	//	       as it is written, and writes the output's RecordIndex
+	//	       when the output is closed
+        // Implementation: offsets are counted rather than asked of the
+	//	       output, one byte per character of record text (flat
+	//	       files are ASCII) or the passthrough byte count, so the
+	//	       writers need no changes. Not for BGZF outputs, whose
+	//	       offsets in the compressed file are only known after
+	//	       compression.
+
+	//
+	//constructors
+	//
+
+	IndexingOutput(String fileName, boolean append, RecordOutput output)
+		throws IOException
+		// Purpose: index 'output', just opened on 'fileName'
+	{
+		this.output = output;
+		this.position = append ? new File(fileName).length() : 0;
+		this.index = new RecordIndexWriter(new File(fileName), append);
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+		this.output.write(r);
+		add(r);
+	}
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		this.output.write(records);
+		for(int i = 0; i < records.size(); i++)
+		{
+			add(records.get(i));
+		}
+	}
+
+	public long sync() throws IOException, InterruptedException
+	{
+		return this.output.sync();
+	}
+
+	public void close() throws IOException, InterruptedException
+	{
+		this.output.close();
+		this.index.finish();
+	}
+
+	private void add(FilteredRecord r) throws IOException
+	{
+		int size = r.size();
+		this.index.add(r.version, this.position, size);
+		this.position += size;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private RecordOutput output;
+	private RecordIndexWriter index;
+
+	// offset in the output file of the next record
+	private long position;
+}
@@ -0,0 +1,45 @@
+package org.jax.mgi.bio.seqfilter;
+
+class InputPosition
+{
+	//Concept:
+        //        IS: a point in a filter run's input between two records
+        //       HAS: the index of an input file (0 for stdin) and a byte
+	//	       offset in it
+        //      DOES: nothing; recorded in a Checkpoint and handed back to
+	//	       RecordSource.seek() on resume
+        // Implementation: the offset of a gzip or BGZF file counts
+	//	       decompressed bytes
+
+	//
+	//constructors
+	//
+
+	InputPosition(int file, long offset)
+	{
+		this.file = file;
+		this.offset = offset;
+	}
+
+	//
+	//methods:
+	//
+
+	public String toString()
+	{
+		return "input " + this.file + " byte " + this.offset;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the start of the input
+	static final InputPosition START = new InputPosition(0, 0);
+
+	// index of the file in the -i list, 0 for stdin
+	final int file;
+
+	// bytes of the file before this position
+	final long offset;
+}
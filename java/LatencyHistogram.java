@@ -0,0 +1,125 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.concurrent.atomic.*;
+
+class LatencyHistogram
+{
+	//Concept:
+        //        IS: a histogram of call times in nanoseconds
+        //       HAS: a count per power of two bucket, the total and the
+	//	       largest time recorded
+        //      DOES: records times from many threads at once; reports the
+	//	       count, mean, maximum and approximate percentiles
+        // Implementation: a time t is counted in bucket
+	//	       64 - numberOfLeadingZeros(t), i.e. bucket i holds
+	//	       [2^(i-1), 2^i). Percentiles are reported as the upper
+	//	       bound of their bucket, so they are within a factor of
+	//	       two. Buckets are LongAdders, so recording costs a few
+	//	       uncontended increments and the histogram can stay on
+	//	       in production runs.
+
+	//
+	//methods:
+	//
+
+	void record(long nanos)
+		// Purpose: count one call that took 'nanos'
+	{
+		if(nanos < 0)
+		{
+			nanos = 0;
+		}
+		this.buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+		this.total.add(nanos);
+		this.max.accumulate(nanos);
+	}
+
+	long count()
+	{
+		long n = 0;
+		for(int i = 0; i < this.buckets.length; i++)
+		{
+			n += this.buckets[i].sum();
+		}
+		return n;
+	}
+
+	long meanNanos()
+		// Returns: 0 if nothing has been recorded
+	{
+		long n = count();
+		return n == 0 ? 0 : this.total.sum() / n;
+	}
+
+	long maxNanos()
+	{
+		return this.max.get();
+	}
+
+	long percentileNanos(double p)
+		// Purpose: return the time within which fraction 'p' (0 to 1)
+		//	    of the calls finished
+		// Returns: the upper bound of the bucket holding that call; 0
+		//	    if nothing has been recorded
+	{
+		long[] counts = buckets();
+		long n = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			n += counts[i];
+		}
+		long rank = (long)Math.ceil(p * n);
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= rank && seen > 0)
+			{
+				return i == 0 ? 0 :
+					Math.min((1L << i) - 1, maxNanos());
+			}
+		}
+		return 0;
+	}
+
+	long[] buckets()
+		// Purpose: return a snapshot of the bucket counts
+	{
+		long[] counts = new long[this.buckets.length];
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] = this.buckets[i].sum();
+		}
+		return counts;
+	}
+
+	private static LongAdder[] newBuckets()
+	{
+		LongAdder[] b = new LongAdder[64];
+		for(int i = 0; i < b.length; i++)
+		{
+			b[i] = new LongAdder();
+		}
+		return b;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// calls per bucket; bucket 0 holds calls timed at 0ns
+	private final LongAdder[] buckets = newBuckets();
+
+	// sum of all recorded times
+	private final LongAdder total = new LongAdder();
+
+	// largest recorded time
+	private final LongAccumulator max = new LongAccumulator(
+		new java.util.function.LongBinaryOperator()
+		{
+			public long applyAsLong(long a, long b)
+			{
+				return Math.max(a, b);
+			}
+		}, 0);
+}
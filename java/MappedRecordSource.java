@@ -0,0 +1,273 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+class MappedRecordSource implements RecordSource
+{
+	//Concept:
+        //        IS: a RecordSource over one or more flat files named on
+	//	       the command line (-i)
+        //       HAS: a FileChannel for the file being read and the byte
+	//	       offset of the next unread record in it
+        //      DOES: memory maps each file a chunk at a time, ending every
+	//	       chunk just after a "//" record terminator line, so a
+	//	       chunk always holds whole records
+        // Implementation: only the end of each chunk is searched for here;
+	//	       the records inside a chunk are split out by the worker
+	//	       that takes its batch (see RecordBatch.records()), both
+	//	       with RecordBoundaries.
+	//	       Flat files are ASCII, so bytes become record text
+	//	       through ISO-8859-1, a straight byte to char copy with no
+	//	       charset decoding. A file is closed once its last chunk
+	//	       is mapped, as a mapping does not need its channel,
+	//	       unless --passthrough or giant record outputs may copy
+	//	       records from it with FileChannel.transferTo after the
+	//	       source has moved on (see keepsFiles()); those files
+	//	       stay open until close().
+	//	       A gzip compressed file cannot be mapped; it is read
+	//	       through a ByteStreamRecordSource instead. BGZF files are
+	//	       inflated a block per pool thread (BgzfInputStream);
+	//	       other gzip files by one GZIPInputStream, which at least
+	//	       runs apart from the threads that parse.
+
+	//
+	//constructors
+	//
+
+	MappedRecordSource(List<File> files, int chunkSize, boolean passthrough,
+		ExecutorService inflaters)	// pool for BGZF input
+	{
+		this.files = new ArrayList<File>(files);
+		this.chunkSize = chunkSize;
+		this.passthrough = passthrough;
+		this.inflaters = inflaters;
+	}
+
+	//
+	//methods:
+	//
+
+	public RecordBatch nextBatch(int seq) throws IOException
+	{
+		while(this.compressed != null || this.channel == null ||
+			this.position >= this.size)
+		{
+			if(this.compressed != null)
+			{
+				RecordBatch b = this.compressed.nextBatch(seq);
+				if(b != null)
+				{
+					return b;
+				}
+				this.compressed.close();
+				this.compressed = null;
+			}
+			if(!openNextFile())
+			{
+				return null;
+			}
+		}
+		long end = this.position + this.chunkSize;
+		if(end >= this.size)
+		{
+			end = this.size;
+		}
+		else
+		{
+			end = RecordBoundaries.findRecordEnd(this.channel, end,
+				this.size);
+		}
+		if(end - this.position > Integer.MAX_VALUE)
+		{
+			throw new IOException("Record at byte " + this.position +
+				" of " + this.currentFile + " is larger than " +
+				"2GB and cannot be mapped");
+		}
+		ByteBuffer chunk = this.channel.map(FileChannel.MapMode.READ_ONLY,
+			this.position, end - this.position);
+		RecordBatch batch = new RecordBatch(seq, chunk, this.channel,
+			this.position, this.passthrough, this.giantSize);
+		batch.file = this.fileIndex;
+		this.position = end;
+		return batch;
+	}
+
+	void setRange(long firstStart, long lastEnd)
+		// Purpose: read only from byte 'firstStart' of the first file
+		//	    and, unless 'lastEnd' is -1, up to byte 'lastEnd' of
+		//	    the last, for a Shard
+		// Assumes: both are record boundaries of uncompressed files,
+		//	    and no batch has been read yet
+	{
+		this.firstStart = firstStart;
+		this.lastEnd = lastEnd;
+	}
+
+	void setGiantSize(int giantSize)
+		// Purpose: have records over 'giantSize' bytes split out as
+		//	    giant records (see RecordBatch.splitGiant())
+		// Assumes: no batch has been read yet
+	{
+		this.giantSize = giantSize;
+	}
+
+	boolean keepsFiles()
+		// Purpose: report whether files are kept open until close()
+		//	    for outputs that copy records from them
+	{
+		return this.passthrough || this.giantSize > 0;
+	}
+
+	public InputPosition position()
+	{
+		if(this.fileIndex < 0)
+		{
+			return InputPosition.START;
+		}
+		return new InputPosition(this.fileIndex,
+			this.compressed != null ?
+			this.compressed.position().offset : this.position);
+	}
+
+	public void seek(InputPosition p) throws IOException
+	{
+		for(int i = 0; i < p.file && !this.files.isEmpty(); i++)
+		{
+			this.files.remove(0);
+			this.fileIndex++;
+		}
+		if(!openNextFile())
+		{
+			throw new IOException("Input ended before " + p);
+		}
+		if(this.compressed != null)
+		{
+			this.compressed.seek(new InputPosition(0, p.offset));
+		}
+		else if(p.offset > this.size)
+		{
+			throw new IOException(this.currentFile + " is shorter " +
+				"than at " + p);
+		}
+		else
+		{
+			this.position = p.offset;
+		}
+	}
+
+	public void close() throws IOException
+	{
+		if(this.compressed != null)
+		{
+			this.compressed.close();
+			this.compressed = null;
+		}
+		if(this.channel != null && !keepsFiles())
+		{
+			this.channel.close();
+		}
+		for(int i = 0; i < this.opened.size(); i++)
+		{
+			this.opened.get(i).close();
+		}
+		this.opened.clear();
+		this.channel = null;
+	}
+
+	private boolean openNextFile() throws IOException
+		// Purpose: close the file read so far unless it is kept, and
+		//	    open the next file
+		// Returns: false if there are no more files
+	{
+		if(this.channel != null && !keepsFiles())
+		{
+			this.channel.close();
+		}
+		this.channel = null;
+		if(this.files.isEmpty())
+		{
+			return false;
+		}
+		this.currentFile = this.files.remove(0);
+		this.fileIndex++;
+		this.channel = new RandomAccessFile(this.currentFile, "r").
+			getChannel();
+		this.size = this.channel.size();
+		this.position = this.fileIndex == 0 ? this.firstStart : 0;
+		if(this.files.isEmpty() && this.lastEnd >= 0)
+		{
+			this.size = this.lastEnd;
+		}
+
+		byte[] header = new byte[Bgzf.HEADER_SIZE];
+		int n = this.channel.read(ByteBuffer.wrap(header), 0);
+		if(Bgzf.isGzip(header, n))
+		{
+			InputStream in = new BufferedInputStream(
+				Channels.newInputStream(this.channel), STREAM_BUFFER);
+			in = Bgzf.isBgzf(header, n) ?
+				(InputStream)new BgzfInputStream(in, this.inflaters,
+				INFLATE_WINDOW) :
+				new GZIPInputStream(in, STREAM_BUFFER);
+			this.compressed = new ByteStreamRecordSource(in,
+				this.chunkSize, this.passthrough);
+			this.compressed.setGiantSize(this.giantSize);
+			this.channel = null;
+		}
+		else if(keepsFiles())
+		{
+			this.opened.add(this.channel);
+		}
+		return true;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// default bytes per chunk; a chunk is extended to the end of the
+	// record that crosses this size
+	static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	// buffer size for reading compressed files
+	private static final int STREAM_BUFFER = 1024 * 1024;
+
+	// BGZF blocks inflated ahead of the reader
+	private static final int INFLATE_WINDOW = 64;
+
+	// files not yet opened
+	private List<File> files;
+
+	// see the constructor
+	private int chunkSize;
+	private boolean passthrough;
+	private ExecutorService inflaters;
+
+	// the decompressed records of the current file, if it is gzip
+	private ByteStreamRecordSource compressed;
+
+	// every file kept open so far (see keepsFiles())
+	private List<FileChannel> opened = new ArrayList<FileChannel>();
+
+	// the file being read and its index in the -i list; -1 before
+	// the first file is opened
+	private int fileIndex = -1;
+	private File currentFile;
+	private FileChannel channel;
+	private long size;
+
+	// offset of the next unread record in the current file
+	private long position;
+
+	// see setRange()
+	private long firstStart = 0;
+	private long lastEnd = -1;
+
+	// see setGiantSize(); 0 for none
+	private int giantSize = 0;
+}
@@ -0,0 +1,111 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+class MeteredOutput implements RecordOutput, MeteredOutputMBean
+{
+	//Concept:
+        //        IS: a RecordOutput that counts what passes through it
+        //       HAS: the output location it writes to, record and byte
+	//	       counters
+        //      DOES: hands every write to the wrapped output and counts
+	//	       it, for JMX and the progress line (see FilterMetrics)
+        // Implementation: SeqRecordFilter wraps every output location in
+	//	       one. The counters are LongAdders, so counting is cheap
+	//	       from any thread. A record's size is its text length or,
+	//	       with --passthrough, its input byte count; compressed and
+	//	       directory outputs are counted before compression or
+	//	       file creation.
+
+	//
+	//constructors
+	//
+
+	MeteredOutput(String location, RecordOutput output)
+	{
+		this.location = location;
+		this.output = output;
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+		this.output.write(r);
+		this.records.increment();
+		this.bytes.add(r.size());
+	}
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		this.output.write(records);
+		long n = 0;
+		for(int i = 0; i < records.size(); i++)
+		{
+			n += records.get(i).size();
+		}
+		this.records.add(records.size());
+		this.bytes.add(n);
+	}
+
+	public long sync() throws IOException, InterruptedException
+	{
+		return this.output.sync();
+	}
+
+	public void close() throws IOException, InterruptedException
+	{
+		this.output.close();
+	}
+
+	public String getLocation()
+	{
+		return this.location;
+	}
+
+	public long getRecords()
+	{
+		return this.records.sum();
+	}
+
+	public long getBytes()
+	{
+		return this.bytes.sum();
+	}
+
+	public double getRecordsPerSecond()
+	{
+		return getRecords() / secondsOpen();
+	}
+
+	public double getBytesPerSecond()
+	{
+		return getBytes() / secondsOpen();
+	}
+
+	private double secondsOpen()
+	{
+		return Math.max(System.nanoTime() - this.opened, 1) / 1e9;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private final String location;
+	private final RecordOutput output;
+
+	// System.nanoTime() when the output was opened
+	private final long opened = System.nanoTime();
+
+	// records and bytes written so far
+	private final LongAdder records = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+}
@@ -0,0 +1,28 @@
+package org.jax.mgi.bio.seqfilter;
+
+public interface MeteredOutputMBean
+{
+	//Concept:
+        //        IS: the JMX view of one output location of a running filter
+        //       HAS: see MeteredOutput
+        //      DOES: reports what has been written to the location
+        // Implementation: a standard MBean interface; JMX requires it to be
+	//	       public and named after its implementing class
+
+	String getLocation();
+		// Purpose: the -a, -o or -d path
+
+	long getRecords();
+		// Purpose: records written
+
+	long getBytes();
+		// Purpose: bytes (characters of record text) written
+
+	double getRecordsPerSecond();
+		// Purpose: records written per second since the output was
+		//	    opened
+
+	double getBytesPerSecond();
+		// Purpose: bytes written per second since the output was
+		//	    opened
+}
@@ -0,0 +1,112 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+class OutputStage extends Thread
+{
+	//Concept:
+        //        IS: the writer stage of a FilterPipeline for one output
+	//	       location
+        //       HAS: the output location (a RecordOutput from
+	//	       SeqRecordFilter.seqOutput) and a
+	//	       bounded queue of passing records
+        //      DOES: writes queued records to the output location in the
+	//	       order they were queued
+        // Implementation: the queue is bounded so a slow output blocks the
+	//	       pipeline's dispatcher rather than letting passing
+	//	       records pile up in memory
+
+	//
+	//constructors
+	//
+
+	OutputStage(FilterPipeline pipeline, int index, RecordOutput output)
+	{
+		super("seqfilter-output-" + index);
+		this.pipeline = pipeline;
+		this.output = output;
+		setDaemon(true);
+	}
+
+	//
+	//methods:
+	//
+
+	void put(List<FilteredRecord> records) throws InterruptedException
+		// Purpose: queue 'records' for writing; blocks while the queue
+		//	    is full
+	{
+		this.queue.put(records);
+	}
+
+	void finish() throws InterruptedException
+		// Purpose: queue the end marker; the stage exits once
+		//	    everything queued before it is written
+	{
+		this.queue.put(END);
+	}
+
+	void drain() throws InterruptedException
+		// Purpose: wait until everything queued so far is written
+	{
+		this.queue.put(DRAIN);
+		this.drained.acquire();
+	}
+
+	int queueDepth()
+		// Purpose: report the batches waiting to be written
+	{
+		return this.queue.size();
+	}
+
+	public void run()
+	{
+	    try
+	    {
+		List<FilteredRecord> records;
+		while((records = this.queue.take()) != END)
+		{
+			if(records == DRAIN)
+			{
+				this.drained.release();
+				continue;
+			}
+			this.output.write(records);
+		}
+	    }
+	    catch(Throwable t)
+	    {
+		this.pipeline.fail(t);
+	    }
+	}
+
+	//
+	//instance variables:
+	//
+
+	// batches of passing records queued per output before the
+	// dispatcher blocks
+	private static final int QUEUE_CAPACITY = 4;
+
+	// end marker; compared by identity
+	private static final List<FilteredRecord> END =
+		new ArrayList<FilteredRecord>(0);
+
+	// drain marker; compared by identity
+	private static final List<FilteredRecord> DRAIN =
+		new ArrayList<FilteredRecord>(0);
+
+	// released when a drain marker is reached
+	private Semaphore drained = new Semaphore(0);
+
+	// the pipeline to report failures to
+	private FilterPipeline pipeline;
+
+	// where the records go
+	private RecordOutput output;
+
+	// records waiting to be written
+	private BlockingQueue<List<FilteredRecord>> queue =
+		new ArrayBlockingQueue<List<FilteredRecord>>(QUEUE_CAPACITY);
+}
@@ -0,0 +1,151 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+public class PatternDecider extends SeqDecider
+{
+	//Concept:
+        //        IS: a SeqDecider whose predicate is "field X holds one of
+	//	       these strings", e.g. the organism line holds
+	//	       "Mus musculus" or "Mus spretus", or the keywords hold
+	//	       "EST", for GenBank and SwissProt records
+        //       HAS: a line prefix naming the field, the strings, and the
+	//	       PatternMatcher it is decided with
+        //      DOES: decides true if a line starting with the prefix, or a
+	//	       continuation line after one (whose first
+	//	       prefix.length() characters are blank), holds any of the
+	//	       strings; strings are matched literally, case and
+	//	       spaces included, and never across lines
+        // Implementation: SeqRecordFilter and FilterJob compile the
+	//	       strings of all the PatternDeciders in a run into one
+	//	       PatternMatcher, which finds the matches of every one of
+	//	       them in a single pass over the record's text; the first
+	//	       of them applied to a record makes that pass, and the
+	//	       others read their bit from the record's feature cache.
+	//	       The cost per record so stays near flat as deciders are
+	//	       added, where deciders that each scan the text for their
+	//	       own string cost one scan apiece. A PatternDecider
+	//	       applied outside a run uses a matcher of its own.
+
+	//
+	//constructors
+	//
+
+	public PatternDecider(String name, String linePrefix, String... patterns)
+		// Purpose: Construct a decider named 'name' that is true when
+		//	    a line starting with 'linePrefix' holds one of
+		//	    'patterns'; it requires the section 'linePrefix'
+		//	    opens (see RecordSection), or every section if
+		//	    that is not known, e.g. for "  ORGANISM"
+	{
+		this(name, linePrefix, sectionsOf(linePrefix), patterns);
+	}
+
+	public PatternDecider(String name, String linePrefix,
+		Set<RecordSection> sections, String... patterns)
+		// Purpose: as above, requiring 'sections'; e.g. for the
+		//	    organism, EnumSet.of(RecordSection.HEADER)
+		// Throws: IllegalArgumentException if there are no patterns
+		//	   or one is empty
+	{
+		super(name);
+		if(patterns.length == 0)
+		{
+			throw new IllegalArgumentException("PatternDecider " +
+				name + " has no patterns");
+		}
+		for(int i = 0; i < patterns.length; i++)
+		{
+			if(patterns[i].length() == 0)
+			{
+				throw new IllegalArgumentException(
+					"PatternDecider " + name +
+					" has an empty pattern");
+			}
+		}
+		this.linePrefix = linePrefix;
+		this.sections = EnumSet.copyOf(sections);
+		this.sections.add(RecordSection.HEADER);
+		this.patterns = patterns.clone();
+		this.matcher = PatternMatcher.of(this);
+		this.bit = 0;
+	}
+
+	//
+	//methods:
+	//
+
+	public boolean isA(SeqRecord s)
+	{
+		incrementAllCtr();
+		long[] hits = (long[])feature(s, this.matcher.getKey(),
+			this.matcher);
+		if((hits[this.bit >>> 6] & (1L << this.bit)) != 0)
+		{
+			incrementTrueCtr();
+			return true;
+		}
+		return false;
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: a PatternDecider is: its PatternMatcher is not
+		//	    changed once a run starts
+	{
+		return true;
+	}
+
+	public Set<RecordSection> getRequiredSections()
+	{
+		return EnumSet.copyOf(this.sections);
+	}
+
+	public String getLinePrefix()
+	{
+		return this.linePrefix;
+	}
+
+	public String[] getPatterns()
+	{
+		return this.patterns.clone();
+	}
+
+	void use(PatternMatcher m, int b)
+		// Purpose: decide with 'm', in which this decider is bit 'b'
+		// Assumes: see PatternMatcher.bind()
+	{
+		this.matcher = m;
+		this.bit = b;
+	}
+
+	private static Set<RecordSection> sectionsOf(String linePrefix)
+		// Purpose: the sections a line starting with 'linePrefix' may
+		//	    be in
+	{
+		String keyword = linePrefix.trim();
+		int space = keyword.indexOf(' ');
+		if(space >= 0)
+		{
+			keyword = keyword.substring(0, space);
+		}
+		RecordSection section = linePrefix.startsWith(" ") ? null :
+			RecordSection.forKeyword(keyword);
+		return section == null ? RecordSection.all() :
+			EnumSet.of(section);
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private String linePrefix;
+	private String[] patterns;
+	private Set<RecordSection> sections;
+
+	// the matcher this decider is decided with, and its bit in the
+	// matcher's results; see use()
+	private PatternMatcher matcher;
+	private int bit;
+}
@@ -0,0 +1,360 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class PatternMatcher implements RecordFeature
+{
+	//Concept:
+        //        IS: the strings of every PatternDecider in a run, compiled
+	//	       into one automaton per field
+        //       HAS: a field for each line prefix the deciders look at,
+	//	       each with an Aho-Corasick automaton over the strings
+	//	       wanted in it; a bit for each decider
+        //      DOES: reads a record's text once, runs each field's lines
+	//	       through the field's automaton, and returns the bits of
+	//	       every decider whose field holds one of its strings
+        // Implementation: the automaton of a field is a complete DFA: a
+	//	       table with one row per trie node and one column per
+	//	       character class (each character that occurs in the
+	//	       field's strings is a class, every other character is
+	//	       class 0), built breadth first from the trie and its
+	//	       failure links, so each character of a line costs one
+	//	       table lookup however many strings are wanted. A node's
+	//	       bits are those of the strings that end there or at any
+	//	       node on its failure chain. A match never spans lines.
+	//	       A field's lines are those starting with its prefix and
+	//	       the continuation lines after them, whose first
+	//	       prefix.length() characters are blank, e.g. the lineage
+	//	       lines after "  ORGANISM". The result is a RecordFeature,
+	//	       so the first of the run's PatternDeciders to ask about a
+	//	       record computes the bits for all of them (see
+	//	       SeqDecider.feature()). The tables are only read after
+	//	       construction, so one PatternMatcher serves every thread.
+
+	//
+	//constructors
+	//
+
+	private PatternMatcher(List<PatternDecider> deciders)
+	{
+		this.key = "patterns#" + NEXT_KEY.getAndIncrement();
+		this.words = (deciders.size() + 63) / 64;
+
+		// group the deciders' strings by line prefix
+		Map<String, List<Integer>> byPrefix =
+			new LinkedHashMap<String, List<Integer>>();
+		for(int i = 0; i < deciders.size(); i++)
+		{
+			String prefix = deciders.get(i).getLinePrefix();
+			List<Integer> bits = byPrefix.get(prefix);
+			if(bits == null)
+			{
+				bits = new ArrayList<Integer>();
+				byPrefix.put(prefix, bits);
+			}
+			bits.add(i);
+		}
+		this.fields = new Field[byPrefix.size()];
+		int f = 0;
+		for(Map.Entry<String, List<Integer>> e : byPrefix.entrySet())
+		{
+			this.fields[f++] = new Field(e.getKey(), e.getValue(),
+				deciders, this.words);
+		}
+	}
+
+	//
+	//methods:
+	//
+
+	static PatternMatcher of(PatternDecider d)
+		// Purpose: compile a matcher for 'd' alone, its bit 0
+	{
+		return of(Collections.singletonList(d));
+	}
+
+	static PatternMatcher of(List<PatternDecider> deciders)
+		// Purpose: compile a matcher for 'deciders', decider i its
+		//	    bit i
+	{
+		return new PatternMatcher(deciders);
+	}
+
+	static void bind(List<SeqDecider> deciders)
+		// Purpose: compile one matcher for the PatternDeciders among
+		//	    'deciders' and have each of them use it
+		// Assumes: no decider is being applied while it is bound;
+		//	    SeqRecordFilter and FilterJob bind the deciders of a
+		//	    run before its threads start
+	{
+		List<PatternDecider> patterns = new ArrayList<PatternDecider>();
+		for(int i = 0; i < deciders.size(); i++)
+		{
+			if(deciders.get(i) instanceof PatternDecider)
+			{
+				patterns.add((PatternDecider)deciders.get(i));
+			}
+		}
+		if(patterns.size() < 2)
+		{
+			// a lone decider keeps the matcher it was built with
+			return;
+		}
+		PatternMatcher m = of(patterns);
+		for(int i = 0; i < patterns.size(); i++)
+		{
+			patterns.get(i).use(m, i);
+		}
+	}
+
+	String getKey()
+		// Purpose: the RecordFeatureCache key of this matcher's bits
+	{
+		return this.key;
+	}
+
+	public Object compute(SeqRecord s)
+		// Purpose: the bits of the deciders that match 's'
+		// Returns: a long[], bit i of word i / 64 set when decider i's
+		//	    field holds one of its strings
+	{
+		return match(s.getText());
+	}
+
+	long[] match(String text)
+		// Purpose: see compute()
+	{
+		long[] hits = new long[this.words];
+		boolean[] open = new boolean[this.fields.length];
+		int len = text.length();
+		int pos = 0;
+		while(pos < len)
+		{
+			int end = text.indexOf('\n', pos);
+			if(end < 0)
+			{
+				end = len;
+			}
+			boolean blank = text.charAt(pos) == ' ';
+			for(int f = 0; f < this.fields.length; f++)
+			{
+				Field field = this.fields[f];
+				open[f] = open[f] && blank &&
+					field.continues(text, pos, end) ||
+					text.startsWith(field.prefix, pos);
+				if(open[f])
+				{
+					field.run(text, pos, end, hits);
+				}
+			}
+			pos = end + 1;
+		}
+		return hits;
+	}
+
+	//
+	// one line prefix and the automaton over the strings wanted in its
+	// lines
+	//
+
+	private static class Field
+	{
+		Field(String prefix, List<Integer> bits,
+			List<PatternDecider> deciders, int words)
+		{
+			this.prefix = prefix;
+
+			// the trie: children by (node, character), and the
+			// bits of the strings ending at each node
+			Map<Long, Integer> children = new HashMap<Long, Integer>();
+			List<long[]> out = new ArrayList<long[]>();
+			out.add(null);
+			char max = 0;
+			for(int b = 0; b < bits.size(); b++)
+			{
+				int bit = bits.get(b);
+				String[] strings = deciders.get(bit).getPatterns();
+				for(int p = 0; p < strings.length; p++)
+				{
+					int node = 0;
+					for(int i = 0; i < strings[p].length(); i++)
+					{
+						char c = strings[p].charAt(i);
+						max = (char)Math.max(max, c);
+						Long k = edge(node, c);
+						Integer child = children.get(k);
+						if(child == null)
+						{
+							child = out.size();
+							children.put(k, child);
+							out.add(null);
+						}
+						node = child;
+					}
+					long[] o = out.get(node);
+					if(o == null)
+					{
+						o = new long[words];
+						out.set(node, o);
+					}
+					o[bit >>> 6] |= 1L << bit;
+				}
+			}
+
+			// one class per character used, 0 for all others
+			this.classes = new int[max + 1];
+			int alphabet = 1;
+			for(Long k : children.keySet())
+			{
+				char c = (char)(k.longValue() & 0xFFFF);
+				if(this.classes[c] == 0)
+				{
+					this.classes[c] = alphabet++;
+				}
+			}
+			char[] classChar = new char[alphabet];
+			for(int c = 0; c <= max; c++)
+			{
+				if(this.classes[c] != 0)
+				{
+					classChar[this.classes[c]] = (char)c;
+				}
+			}
+
+			// the DFA, breadth first: a node's missing transitions
+			// are those of its failure node, which is shallower
+			int nodes = out.size();
+			this.alphabet = alphabet;
+			this.next = new int[nodes * alphabet];
+			this.out = new long[nodes][];
+			int[] fail = new int[nodes];
+			int[] queue = new int[nodes];
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = 0;
+			while(head < tail)
+			{
+				int node = queue[head++];
+				long[] o = out.get(node);
+				long[] inherited = this.out[fail[node]];
+				if(node != 0 && inherited != null)
+				{
+					if(o == null)
+					{
+						o = inherited;
+					}
+					else
+					{
+						for(int w = 0; w < words; w++)
+						{
+							o[w] |= inherited[w];
+						}
+					}
+				}
+				this.out[node] = o;
+				for(int a = 1; a < alphabet; a++)
+				{
+					Integer child = children.get(
+						edge(node, classChar[a]));
+					int via = node == 0 ? 0 :
+						this.next[fail[node] * alphabet + a];
+					if(child == null)
+					{
+						this.next[node * alphabet + a] = via;
+					}
+					else
+					{
+						fail[child] = via;
+						this.next[node * alphabet + a] = child;
+						queue[tail++] = child;
+					}
+				}
+			}
+
+			// a continuation line is blank where the prefix is
+			this.continuable = prefix.trim().length() > 0;
+		}
+
+		private static Long edge(int node, char c)
+		{
+			return ((long)node << 16) | c;
+		}
+
+		boolean continues(String text, int start, int end)
+			// Purpose: report whether the line from 'start' to 'end'
+			//	    continues a line of this field
+		{
+			int n = this.prefix.length();
+			if(!this.continuable || end - start < n)
+			{
+				return false;
+			}
+			for(int i = start; i < start + n; i++)
+			{
+				if(text.charAt(i) != ' ')
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void run(String text, int start, int end, long[] hits)
+			// Purpose: set in 'hits' the bits of the strings found in
+			//	    the line from 'start' to 'end'
+		{
+			int[] classes = this.classes;
+			int[] next = this.next;
+			int alphabet = this.alphabet;
+			int state = 0;
+			for(int i = start; i < end; i++)
+			{
+				char c = text.charAt(i);
+				state = next[state * alphabet +
+					(c < classes.length ? classes[c] : 0)];
+				long[] o = this.out[state];
+				if(o != null)
+				{
+					for(int w = 0; w < o.length; w++)
+					{
+						hits[w] |= o[w];
+					}
+				}
+			}
+		}
+
+		// the lines this field is made of start with 'prefix'; false
+		// if it is blank, when no line continues another
+		final String prefix;
+		final boolean continuable;
+
+		// character classes by character, and the number of classes
+		private final int[] classes;
+		private final int alphabet;
+
+		// the DFA: the node after node n reads class a is
+		// next[n * alphabet + a]; node 0 is the root
+		private final int[] next;
+
+		// the bits matched on reaching each node; null if none
+		private final long[][] out;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// makes each matcher's key unique
+	private static final AtomicInteger NEXT_KEY = new AtomicInteger();
+
+	// see getKey()
+	private final String key;
+
+	// longs in a result
+	private final int words;
+
+	// the fields, in the order of their deciders' first appearance
+	private final Field[] fields;
+}
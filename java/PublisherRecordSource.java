@@ -0,0 +1,159 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+class PublisherRecordSource implements RecordSource, Flow.Subscriber<String>
+{
+	//Concept:
+        //        IS: a RecordSource over a Flow.Publisher of record texts,
+	//	       for a FilterJob
+        //       HAS: the subscription, and a queue of records received
+	//	       but not yet handed out
+        //      DOES: subscribes to the publisher and hands out what it
+	//	       publishes in batches of up to FilterPipeline.BATCH_SIZE
+	//	       records
+        // Implementation: demand drives the publisher: READ_AHEAD records
+	//	       are requested on subscribing, and as many more as each
+	//	       batch takes once it is taken, so the queue never holds
+	//	       more than READ_AHEAD records, and a job that falls
+	//	       behind stops requesting. A batch takes the records
+	//	       already queued rather than waiting for a full batch, so
+	//	       a slow publisher's records are not held back. The
+	//	       publisher's completion or error is queued behind its
+	//	       last record; an error is thrown from nextBatch().
+
+	//
+	//constructors
+	//
+
+	PublisherRecordSource()
+	{
+	}
+
+	//
+	//methods:
+	//
+
+	public void onSubscribe(Flow.Subscription s)
+	{
+		if(this.subscription != null)
+		{
+			// one publisher per source
+			s.cancel();
+			return;
+		}
+		this.subscription = s;
+		s.request(READ_AHEAD);
+	}
+
+	public void onNext(String text)
+	{
+		this.queue.add(text);
+	}
+
+	public void onError(Throwable t)
+	{
+		this.failure = t;
+		this.queue.add(END);
+	}
+
+	public void onComplete()
+	{
+		this.queue.add(END);
+	}
+
+	public RecordBatch nextBatch(int seq) throws IOException
+	{
+		if(this.ended)
+		{
+			return null;
+		}
+		String text;
+		try
+		{
+			text = this.queue.take();
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException("Interrupted while " +
+				"waiting for input");
+		}
+		RecordBatch batch = new RecordBatch(seq,
+			FilterPipeline.BATCH_SIZE);
+		while(text != null)
+		{
+			if(text == END)
+			{
+				this.ended = true;
+				break;
+			}
+			batch.records.add(text);
+			if(batch.records.size() == FilterPipeline.BATCH_SIZE)
+			{
+				break;
+			}
+			text = this.queue.poll();
+		}
+		if(this.ended && this.failure != null)
+		{
+			IOException e = new IOException("Input publisher " +
+				"failed: " + this.failure);
+			e.initCause(this.failure);
+			throw e;
+		}
+		if(batch.records.isEmpty())
+		{
+			return null;
+		}
+		if(!this.ended)
+		{
+			this.subscription.request(batch.records.size());
+		}
+		return batch;
+	}
+
+	public InputPosition position()
+		// Returns: null; a publisher has no positions
+	{
+		return null;
+	}
+
+	public void seek(InputPosition p) throws IOException
+	{
+		throw new IOException("Cannot resume a publisher");
+	}
+
+	public void close()
+		// Purpose: cancel the subscription if the publisher has not
+		//	    ended
+	{
+		if(!this.ended && this.subscription != null)
+		{
+			this.ended = true;
+			this.subscription.cancel();
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// records requested ahead of the batches handed out
+	static final int READ_AHEAD = 2 * FilterPipeline.BATCH_SIZE;
+
+	// queued on completion or error; compared by identity
+	private static final String END = new String("end of input");
+
+	// the subscription, once the publisher has called onSubscribe()
+	private volatile Flow.Subscription subscription;
+
+	// records published and not yet handed out, then END
+	private BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+
+	// the publisher's error, if it ended with one
+	private volatile Throwable failure;
+
+	// true once END has been taken, or the subscription cancelled
+	private boolean ended = false;
+}
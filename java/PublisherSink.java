@@ -0,0 +1,224 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+public class PublisherSink implements RecordSink, Flow.Publisher<String>
+{
+	//Concept:
+        //        IS: a RecordSink that republishes the records passing a
+	//	       FilterJob's decider as a Flow.Publisher of record texts
+        //       HAS: one subscriber and its outstanding demand
+        //      DOES: hands each record to the subscriber once it has asked
+	//	       for one, and completes or fails the subscription when
+	//	       the job ends
+        // Implementation: write() waits until the subscriber has demand,
+	//	       so a slow subscriber holds up the job (see RecordSink)
+	//	       and the job reads its input no faster than the
+	//	       subscriber takes its matches. Records written before
+	//	       anyone subscribes wait for the subscriber; a job's end
+	//	       is kept and signalled on subscribing if need be. Once
+	//	       the subscriber cancels, records are dropped. Signals
+	//	       are sent holding a lock of their own, never the one
+	//	       request() takes, so a subscriber may request from
+	//	       onNext(); a failed job's onError() waits for an onNext()
+	//	       in progress and none follows it.
+
+	//
+	//constructors
+	//
+
+	public PublisherSink()
+	{
+	}
+
+	//
+	//methods:
+	//
+
+	public void subscribe(Flow.Subscriber<? super String> s)
+	{
+		boolean first;
+		synchronized(this)
+		{
+			first = this.subscriber == null;
+			if(first)
+			{
+				this.subscriber = s;
+				notifyAll();
+			}
+		}
+		if(!first)
+		{
+			s.onSubscribe(new Flow.Subscription()
+			{
+				public void request(long n)
+				{
+				}
+
+				public void cancel()
+				{
+				}
+			});
+			s.onError(new IllegalStateException(
+				"A PublisherSink has one subscriber"));
+			return;
+		}
+		s.onSubscribe(new Flow.Subscription()
+		{
+			public void request(long n)
+			{
+				PublisherSink.this.request(n);
+			}
+
+			public void cancel()
+			{
+				PublisherSink.this.cancel();
+			}
+		});
+		signalEnd();
+	}
+
+	public void write(String version, String text)
+		throws InterruptedException
+	{
+		Flow.Subscriber<? super String> s;
+		synchronized(this)
+		{
+			while(this.subscriber == null ||
+				(this.demand == 0 && !this.cancelled))
+			{
+				wait();
+			}
+			if(this.cancelled)
+			{
+				return;
+			}
+			this.demand--;
+			s = this.subscriber;
+		}
+		synchronized(this.signalling)
+		{
+			if(!this.endSignalled)
+			{
+				s.onNext(text);
+			}
+		}
+	}
+
+	public void close()
+	{
+		end(null);
+	}
+
+	public void fail(Throwable cause)
+	{
+		end(cause);
+	}
+
+	private void end(Throwable cause)
+		// Purpose: note how the job ended, and tell the subscriber if
+		//	    there is one
+	{
+		synchronized(this)
+		{
+			this.ended = true;
+			this.failure = cause;
+		}
+		signalEnd();
+	}
+
+	private void signalEnd()
+		// Purpose: send onComplete() or onError() once the job has
+		//	    ended and there is a subscriber, once only
+	{
+		Flow.Subscriber<? super String> s;
+		Throwable cause;
+		synchronized(this.signalling)
+		{
+			synchronized(this)
+			{
+				if(!this.ended || this.subscriber == null ||
+					this.endSignalled || this.cancelled)
+				{
+					return;
+				}
+				this.endSignalled = true;
+				s = this.subscriber;
+				cause = this.failure;
+			}
+			if(cause == null)
+			{
+				s.onComplete();
+			}
+			else
+			{
+				s.onError(cause);
+			}
+		}
+	}
+
+	private void request(long n)
+		// Purpose: add 'n' to the subscriber's demand
+		// Notes: a non-positive 'n' cancels the subscription with an
+		//	  IllegalArgumentException, as Flow requires
+	{
+		if(n <= 0)
+		{
+			Flow.Subscriber<? super String> s;
+			synchronized(this)
+			{
+				if(this.cancelled || this.endSignalled)
+				{
+					return;
+				}
+				this.cancelled = true;
+				this.endSignalled = true;
+				s = this.subscriber;
+				notifyAll();
+			}
+			synchronized(this.signalling)
+			{
+				s.onError(new IllegalArgumentException(
+					"request() of " + n + " records"));
+			}
+			return;
+		}
+		synchronized(this)
+		{
+			this.demand = this.demand + n < 0 ? Long.MAX_VALUE :
+				this.demand + n;
+			notifyAll();
+		}
+	}
+
+	private synchronized void cancel()
+	{
+		this.cancelled = true;
+		notifyAll();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the subscriber; null until subscribe()
+	private Flow.Subscriber<? super String> subscriber;
+
+	// records requested and not yet sent
+	private long demand = 0;
+
+	// true once the subscriber cancels
+	private boolean cancelled = false;
+
+	// true once the job has ended, with its failure if it failed; and
+	// true once the subscriber has been told, or sent onError() for a
+	// bad request()
+	private boolean ended = false;
+	private Throwable failure;
+	private volatile boolean endSignalled = false;
+
+	// held while sending onNext(), onComplete() or onError(), so the
+	// subscriber gets one signal at a time
+	private final Object signalling = new Object();
+}
@@ -0,0 +1,286 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class RecordBatch
+{
+	//Concept:
+        //        IS: a run of consecutive input records that travels through
+	//	       the stages of a FilterPipeline as one unit
+        //       HAS: a sequence number giving its position in the input,
+	//	       the record texts or the input chunk holding them, and
+	//	       after deciding, one list of passing records per output
+	//	       location
+        //      DOES: splits its chunk into record texts, and for
+	//	       --passthrough into views of each record's bytes, on
+	//	       first use
+        // Implementation: batching keeps queue hand-offs per record low;
+	//	       the sequence number lets the pipeline restore input
+	//	       order before anything is written. A chunk is split by
+	//	       the worker that takes the batch, so decoding is spread
+	//	       over the worker threads too. A heap chunk is split where
+	//	       it lies; a mapped one is copied into a scratch array
+	//	       each thread keeps for the purpose, rather than a new
+	//	       array the size of the chunk per batch. With a giant
+	//	       size, a chunk is split by splitGiant() instead.
+
+	//
+	//constructors
+	//
+
+	RecordBatch(int seq, int capacity)
+	{
+		this.seq = seq;
+		this.records = new ArrayList<String>(capacity);
+	}
+
+	RecordBatch(
+		int seq,
+		ByteBuffer chunk,	// whole records
+		FileChannel channel,	// the file 'chunk' is mapped from;
+					// null if read from a stream
+		long position,		// offset of 'chunk' in 'channel'
+		boolean keepSpans,	// make a RecordSpan per record
+		int giantSize)		// records over this many bytes
+					// are giant (see splitGiant());
+					// 0 for none
+	{
+		this.seq = seq;
+		this.chunk = chunk;
+		this.channel = channel;
+		this.position = position;
+		this.keepSpans = keepSpans;
+		this.giantSize = giantSize;
+	}
+
+	//
+	//methods:
+	//
+
+	List<String> records()
+		// Purpose: return the record texts of this batch in input order
+	{
+		if(this.records == null && this.chunk != null)
+		{
+			split();
+		}
+		return this.records;
+	}
+
+	List<RecordSpan> spans()
+		// Purpose: return the byte views of the records, parallel to
+		//	    records(); null unless the batch keeps spans or has
+		//	    a giant size, and then null for each record without
+		//	    a view: records not giant, unless keeping spans
+	{
+		records();
+		return this.spans;
+	}
+
+	private void split()
+		// Purpose: split the chunk into record texts and spans
+	{
+		if(this.giantSize > 0)
+		{
+			splitGiant();
+			return;
+		}
+		int len = this.chunk.remaining();
+		byte[] bytes;
+		if(this.chunk.hasArray() && this.chunk.arrayOffset() +
+			this.chunk.position() == 0)
+		{
+			bytes = this.chunk.array();
+		}
+		else
+		{
+			bytes = scratch(len);
+			this.chunk.duplicate().get(bytes, 0, len);
+		}
+		int[] ends = RecordBoundaries.recordEnds(bytes, len);
+
+		this.records = new ArrayList<String>(ends.length);
+		if(this.keepSpans)
+		{
+			this.spans = new ArrayList<RecordSpan>(ends.length);
+		}
+		int start = 0;
+		for(int i = 0; i < ends.length; i++)
+		{
+			this.records.add(new String(bytes, start, ends[i] - start,
+				LATIN1));
+			if(this.keepSpans)
+			{
+				ByteBuffer b = this.chunk.duplicate();
+				b.position(b.position() + start);
+				b.limit(b.position() + ends[i] - start);
+				this.spans.add(new RecordSpan(b.slice().
+					asReadOnlyBuffer(), this.channel,
+					this.channel == null ? -1 :
+					this.position + start, this.file));
+			}
+			start = ends[i];
+		}
+		// spans keep the chunk alive; without them it can go now
+		this.chunk = null;
+	}
+
+	private void splitGiant()
+		// Purpose: split the chunk as split() does, except that a
+		//	    record over 'giantSize' bytes is never copied: its
+		//	    text is only its header (see
+		//	    RecordProjector.headerOf()) and its span is a view
+		//	    of its bytes where they lie, which the outputs
+		//	    write in place of the text
+		// Notes: the chunk is read a window at a time and each other
+		//	  record copied on its own, so no more than 'giantSize'
+		//	  bytes of a record are copied onto the heap
+	{
+		int[] ends = RecordBoundaries.recordEnds(this.chunk);
+		this.records = new ArrayList<String>(ends.length);
+		this.spans = new ArrayList<RecordSpan>(ends.length);
+		int start = 0;
+		for(int i = 0; i < ends.length; i++)
+		{
+			int len = ends[i] - start;
+			ByteBuffer b = this.chunk.duplicate();
+			b.position(b.position() + start);
+			b.limit(b.position() + len);
+			ByteBuffer record = b.slice();
+			boolean giant = len > this.giantSize;
+			if(giant)
+			{
+				this.records.add(RecordProjector.headerOf(record,
+					this.giantSize));
+			}
+			else
+			{
+				byte[] bytes = scratch(len);
+				record.duplicate().get(bytes, 0, len);
+				this.records.add(new String(bytes, 0, len, LATIN1));
+			}
+			this.spans.add(giant || this.keepSpans ?
+				new RecordSpan(record.asReadOnlyBuffer(),
+				this.channel, this.channel == null ? -1 :
+				this.position + start, this.file) : null);
+			start = ends[i];
+		}
+		this.chunk = null;
+	}
+
+	private static byte[] scratch(int len)
+		// Purpose: return this thread's scratch array, grown to at
+		//	    least 'len' bytes; or past MAX_SCRATCH, a new array
+	{
+		if(len > MAX_SCRATCH)
+		{
+			return new byte[len];
+		}
+		byte[] b = SCRATCH.get();
+		if(b == null || b.length < len)
+		{
+			b = new byte[Math.max(len, MappedRecordSource.
+				DEFAULT_CHUNK_SIZE)];
+			SCRATCH.set(b);
+		}
+		return b;
+	}
+
+	boolean isEnd()
+		// Purpose: report whether this batch is the end-of-input marker
+	{
+		return this.end;
+	}
+
+	static RecordBatch end(int seq)
+		// Purpose: create the end-of-input marker that follows the
+		//	    last real batch 'seq' - 1
+	{
+		RecordBatch b = new RecordBatch(seq, 0);
+		b.end = true;
+		return b;
+	}
+
+	static RecordBatch checkpoint(int seq, InputPosition at)
+		// Purpose: create a marker asking the dispatcher to take a
+		//	    checkpoint at 'at', once every batch before 'seq'
+		//	    has been written
+	{
+		RecordBatch b = new RecordBatch(seq, 0);
+		b.checkpointAt = at;
+		b.checkpointTaken = new CountDownLatch(1);
+		return b;
+	}
+
+	boolean isCheckpoint()
+		// Purpose: report whether this batch is a checkpoint marker
+	{
+		return this.checkpointAt != null;
+	}
+
+	//
+	//instance variables:
+	//
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	// each thread's array for copying mapped chunks, and the largest
+	// it keeps; a chunk grown past that for a giant record is copied
+	// into an array of its own
+	private static final ThreadLocal<byte[]> SCRATCH =
+		new ThreadLocal<byte[]>();
+	private static final int MAX_SCRATCH =
+		2 * MappedRecordSource.DEFAULT_CHUNK_SIZE;
+
+	// position of this batch in the input, starting at 0; set by the
+	// source that hands it out
+	int seq;
+
+	// true for the end-of-input marker
+	private boolean end = false;
+
+	// for a checkpoint marker, the input position after the batch
+	// before it, and the latch the reader waits on while the
+	// checkpoint is taken
+	InputPosition checkpointAt;
+	CountDownLatch checkpointTaken;
+
+	// record texts in input order; null until a chunk is split
+	List<String> records;
+
+	// views of the records' bytes, parallel to 'records'
+	private List<RecordSpan> spans;
+
+	// input bytes holding whole records; null once split
+	private ByteBuffer chunk;
+
+	// where the chunk came from; see the constructor
+	private FileChannel channel;
+	private long position;
+	private boolean keepSpans;
+
+	// see the constructor
+	private int giantSize;
+
+	// the index in the -i list of the file the chunk is mapped from,
+	// set by the source that hands it out; -1 for a stream
+	int file = -1;
+
+	// indexed parallel to SeqRecordFilter.decidersForThisFilterRun;
+	// records that passed each decider, in input order
+	List<FilteredRecord>[] passed;
+
+	// with --store, each record's seqid.version and decider results
+	// (bit i for decider i), in input order; see VersionStore. With
+	// --save-decisions, the versions too
+	List<String> versions;
+	long[] results;
+
+	// with --save-decisions, each record's results for the saved
+	// deciders, in input order; see DecisionIndexWriter.decide()
+	long[][] decisions;
+}
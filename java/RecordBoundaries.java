@@ -0,0 +1,359 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+class RecordBoundaries
+{
+	//Concept:
+        //        IS: the finder of record boundaries in flat file bytes
+        //       HAS: nothing
+        //      DOES: finds the "//" terminator lines that end GenBank and
+	//	       SwissProt records, so input can be cut into whole
+	//	       records before any record is parsed: into chunks by
+	//	       MappedRecordSource and ByteStreamRecordSource, into
+	//	       records by RecordBatch, and into shards by Shard
+        // Implementation: a terminator line is a line starting with "//",
+	//	       ended by its '\n'. The forward scans read the bytes 8
+	//	       at a time as little-endian longs and find every '\n'
+	//	       and every '/' in a long with a few arithmetic
+	//	       operations: zeroBytes(x) marks the zero bytes of x
+	//	       exactly, so zeroBytes(x ^ 0x0a0a...) marks the
+	//	       newlines. A '/' just after a newline is a candidate,
+	//	       and is rare, since lines inside a record start with a
+	//	       keyword, a code or a space; only candidates are looked
+	//	       at byte by byte. Lines of a record are never examined
+	//	       one at a time, so the scan runs near memory speed.
+	//	       lastRecordEnd() searches backwards byte by byte, as the
+	//	       last terminator is usually within a record of the end.
+
+	static long findRecordEnd(FileChannel channel, long from, long size)
+		throws IOException
+	{
+	// Purpose: find the end of the first record terminator line that
+	//	    starts at or after byte 'from - 1'
+	// Returns: the offset just past that line's newline, or 'size' if
+	//	    there is no further terminator
+	// Assumes: 0 < 'from' < 'size'
+	// Throws: IOException
+	// Notes: reads with positional reads in small windows rather than
+	//	  mapping, since only a few kilobytes are usually examined
+
+		byte[] window = new byte[SCAN_WINDOW];
+		ByteBuffer buffer = ByteBuffer.wrap(window);
+		// start on the byte before 'from' so a line that begins exactly
+		// at 'from' is found, and first skip to the next line
+		long pos = from - 1;
+		boolean lineStart = false;
+
+		while(pos < size)
+		{
+			buffer.clear();
+			int n = channel.read(buffer, pos);
+			if(n <= 0)
+			{
+				break;
+			}
+			int start = 0;
+			if(!lineStart)
+			{
+				start = indexOfNewline(window, 0, n) + 1;
+				if(start == 0)
+				{
+					pos += n;
+					continue;
+				}
+			}
+			int end = nextRecordEnd(window, start, n);
+			if(end >= 0)
+			{
+				return pos + end;
+			}
+			// go on from the last line, whole, since a terminator
+			// may cross the end of the window
+			int last = lastLineStart(window, start, n);
+			if(last == 0)
+			{
+				pos += n;
+				lineStart = false;
+			}
+			else
+			{
+				pos += last;
+				lineStart = true;
+			}
+		}
+		return size;
+	}
+
+	static int[] recordEnds(byte[] bytes, int len)
+	{
+	// Purpose: find where each record in 'bytes' ends
+	// Returns: the offset just past each record's terminator line, in
+	//	    order; the last is 'len' if the bytes end in an
+	//	    unterminated record
+	// Notes: white space after the last terminator is not a record and
+	//	  is dropped, as SeqRecordSplitter does
+
+		int[] ends = new int[16];
+		int n = 0;
+		int end = 0;
+		while((end = nextRecordEnd(bytes, end, len)) >= 0)
+		{
+			if(n == ends.length)
+			{
+				ends = Arrays.copyOf(ends, 2 * n);
+			}
+			ends[n++] = end;
+		}
+		int start = n == 0 ? 0 : ends[n - 1];
+		if(start < len && !isBlank(bytes, start, len))
+		{
+			if(n == ends.length)
+			{
+				ends = Arrays.copyOf(ends, n + 1);
+			}
+			ends[n++] = len;
+		}
+		return Arrays.copyOf(ends, n);
+	}
+
+	static int[] recordEnds(ByteBuffer chunk)
+	{
+	// Purpose: recordEnds() for the bytes from the position to the limit
+	//	    of 'chunk', which may be mapped
+	// Notes: copies SCAN_WINDOW bytes at a time, never the whole chunk
+
+		byte[] window = new byte[SCAN_WINDOW];
+		ByteBuffer in = chunk.duplicate();
+		int base = in.position();
+		int len = in.remaining();
+		int[] ends = new int[16];
+		int n = 0;
+		int pos = 0;
+		boolean lineStart = true;
+		while(pos < len)
+		{
+			int w = Math.min(SCAN_WINDOW, len - pos);
+			in.position(base + pos);
+			in.get(window, 0, w);
+			int start = 0;
+			if(!lineStart)
+			{
+				start = indexOfNewline(window, 0, w) + 1;
+				if(start == 0)
+				{
+					pos += w;
+					continue;
+				}
+			}
+			int end;
+			while((end = nextRecordEnd(window, start, w)) >= 0)
+			{
+				if(n == ends.length)
+				{
+					ends = Arrays.copyOf(ends, 2 * n);
+				}
+				ends[n++] = pos + end;
+				start = end;
+			}
+			if(pos + w == len)
+			{
+				break;
+			}
+			// as in findRecordEnd()
+			int last = lastLineStart(window, start, w);
+			pos += last == 0 ? w : last;
+			lineStart = last != 0;
+		}
+		int start = n == 0 ? 0 : ends[n - 1];
+		for(int i = start; i < len; i++)
+		{
+			if(chunk.get(base + i) > ' ')
+			{
+				if(n == ends.length)
+				{
+					ends = Arrays.copyOf(ends, n + 1);
+				}
+				ends[n++] = len;
+				break;
+			}
+		}
+		return Arrays.copyOf(ends, n);
+	}
+
+	static int lastRecordEnd(byte[] bytes, int from, int len)
+	{
+	// Purpose: find the end of the last terminator line in 'bytes'
+	//	    between 'from' and 'len'
+	// Returns: the offset just past it, or -1 if there is none
+	// Assumes: 'from' is the start of a line
+
+		// skip the unended last line
+		int i = len - 1;
+		while(i >= from && bytes[i] != '\n')
+		{
+			i--;
+		}
+		while(i >= from)
+		{
+			// bytes[i] ends a line; find where the line starts
+			int nl = i;
+			i--;
+			while(i >= from && bytes[i] != '\n')
+			{
+				i--;
+			}
+			if(nl - (i + 1) >= 2 && bytes[i + 1] == '/' &&
+				bytes[i + 2] == '/')
+			{
+				return nl + 1;
+			}
+		}
+		return -1;
+	}
+
+	static int nextRecordEnd(byte[] bytes, int from, int len)
+	{
+	// Purpose: find the end of the first terminator line in 'bytes'
+	//	    between 'from' and 'len'
+	// Returns: the offset just past its newline, or -1 if there is
+	//	    none, or its newline is not before 'len'
+	// Assumes: 'from' is the start of a line
+
+		int i = from;
+		// 0x80 in the low byte if bytes[i] starts a line
+		long carry = 0x80L;
+		for(; i + 8 <= len; i += 8)
+		{
+			long word = (long)LONGS.get(bytes, i);
+			long newlines = zeroBytes(word ^ NEWLINES);
+			long candidates = ((newlines << 8) | carry) &
+				zeroBytes(word ^ SLASHES);
+			carry = newlines >>> 56;
+			while(candidates != 0)
+			{
+				int at = i + (Long.numberOfTrailingZeros(
+					candidates) >>> 3);
+				int end = terminatorEnd(bytes, at, len);
+				if(end != 0)
+				{
+					return end;
+				}
+				candidates &= candidates - 1;
+			}
+		}
+		boolean lineStart = carry != 0;
+		for(; i < len; i++)
+		{
+			if(lineStart && bytes[i] == '/')
+			{
+				int end = terminatorEnd(bytes, i, len);
+				if(end != 0)
+				{
+					return end;
+				}
+			}
+			lineStart = bytes[i] == '\n';
+		}
+		return -1;
+	}
+
+	private static int terminatorEnd(byte[] bytes, int at, int len)
+		// Purpose: check the line that starts with the '/' at 'at'
+		// Returns: the offset just past its newline if it is a
+		//	    terminator line; -1 if it is but its newline is not
+		//	    before 'len'; 0 if it is not one
+	{
+		if(at + 1 >= len)
+		{
+			return -1;
+		}
+		if(bytes[at + 1] != '/')
+		{
+			return 0;
+		}
+		int nl = indexOfNewline(bytes, at + 2, len);
+		return nl < 0 ? -1 : nl + 1;
+	}
+
+	private static int indexOfNewline(byte[] bytes, int from, int len)
+		// Purpose: find the first '\n' between 'from' and 'len'
+		// Returns: its offset, or -1
+	{
+		int i = from;
+		for(; i + 8 <= len; i += 8)
+		{
+			long newlines = zeroBytes((long)LONGS.get(bytes, i) ^
+				NEWLINES);
+			if(newlines != 0)
+			{
+				return i + (Long.numberOfTrailingZeros(newlines) >>>
+					3);
+			}
+		}
+		for(; i < len; i++)
+		{
+			if(bytes[i] == '\n')
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static int lastLineStart(byte[] bytes, int from, int len)
+		// Purpose: find the start of the last line, whole or not,
+		//	    between 'from' and 'len'
+		// Assumes: 'from' is the start of a line
+	{
+		int i = len - 1;
+		while(i >= from && bytes[i] != '\n')
+		{
+			i--;
+		}
+		return i + 1 < from ? from : i + 1;
+	}
+
+	private static long zeroBytes(long x)
+		// Purpose: mark the zero bytes of 'x'
+		// Returns: 0x80 in each byte that is zero in 'x', 0 elsewhere
+		// Notes: exact, unlike (x - 0x01..) & ~x & 0x80.., which may
+		//	  also mark a 0x01 byte above a zero byte
+	{
+		long t = (x & LOW_SEVEN) + LOW_SEVEN;
+		return ~(t | x | LOW_SEVEN);
+	}
+
+	private static boolean isBlank(byte[] b, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+		{
+			if(b[i] > ' ')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// bytes read at a time when looking for the end of a chunk
+	private static final int SCAN_WINDOW = 64 * 1024;
+
+	// reads 8 bytes of a byte[] as a long, the first byte lowest
+	private static final VarHandle LONGS =
+		MethodHandles.byteArrayViewVarHandle(long[].class,
+		ByteOrder.LITTLE_ENDIAN);
+
+	// a byte repeated in every byte of a long
+	private static final long NEWLINES = 0x0a0a0a0a0a0a0a0aL;
+	private static final long SLASHES = 0x2f2f2f2f2f2f2f2fL;
+	private static final long LOW_SEVEN = 0x7f7f7f7f7f7f7f7fL;
+}
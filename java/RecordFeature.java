@@ -0,0 +1,18 @@
+package org.jax.mgi.bio.seqfilter;
+
+import org.jax.mgi.bio.seqrecord.*;
+
+public interface RecordFeature
+{
+	//Concept:
+        //        IS: one attribute of a sequence record that deciders
+	//	       query, e.g. "is the organism mouse" or "the division"
+        //       HAS: nothing
+        //      DOES: computes the attribute, usually by asking the
+	//	       interrogator of GBSeqDecider or SPSeqDecider
+        // Implementation: see SeqDecider.feature()
+
+	Object compute(SeqRecord s);
+		// Purpose: compute the attribute for 's'
+		// Returns: the attribute value; may be null
+}
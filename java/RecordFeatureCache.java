@@ -0,0 +1,81 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.jax.mgi.bio.seqrecord.*;
+
+class RecordFeatureCache
+{
+	//Concept:
+        //        IS: the attributes computed so far for the record the
+	//	       current thread is processing
+        //       HAS: one key to value map per thread, and the record and
+	//	       record text the values belong to
+        //      DOES: computes each RecordFeature at most once per record,
+	//	       whichever decider asks for it first, and hands the
+	//	       value to every later decider that asks
+        // Implementation: thread confined through a ThreadLocal, like
+	//	       DecisionMemo. The filter calls begin() each time
+	//	       SeqRecord.readText() has loaded a new record; the cache
+	//	       is also cleared if it is asked about a different
+	//	       SeqRecord object than the one it holds values for, or
+	//	       the same one with a different text String, since
+	//	       readText() makes a new one for each record. So an
+	//	       application that reuses one SeqRecord object never gets
+	//	       the previous record's values.
+
+	static void begin()
+		// Purpose: forget the values for the previous record
+	{
+		RecordFeatureCache c = CACHE.get();
+		c.values.clear();
+		c.record = null;
+		c.text = null;
+	}
+
+	static Object get(SeqRecord s, String key, RecordFeature f)
+		// Purpose: return the value of 'f' for 's', computing it if no
+		//	    decider has asked for 'key' since the last begin()
+	{
+		RecordFeatureCache c = CACHE.get();
+		String text = s.getText();
+		if(c.record != s || c.text != text)
+		{
+			// another record, or the same object reloaded
+			c.values.clear();
+			c.record = s;
+			c.text = text;
+		}
+		Object v = c.values.get(key);
+		if(v == null)
+		{
+			v = f.compute(s);
+			c.values.put(key, v == null ? NULL : v);
+			return v;
+		}
+		return v == NULL ? null : v;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// stands in for a computed null in 'values'
+	private static final Object NULL = new Object();
+
+	private static final ThreadLocal<RecordFeatureCache> CACHE =
+		new ThreadLocal<RecordFeatureCache>()
+		{
+			protected RecordFeatureCache initialValue()
+			{
+				return new RecordFeatureCache();
+			}
+		};
+
+	// the record the values were computed for, and its text when they
+	// were; compared by identity
+	private SeqRecord record;
+	private String text;
+
+	// computed values by key
+	private HashMap<String, Object> values = new HashMap<String, Object>();
+}
@@ -0,0 +1,242 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+public class RecordIndex
+{
+	//Concept:
+        //        IS: the accession index of an -a or -o output file written
+	//	       with --index, opened for lookups
+        //       HAS: the index file (the output's name plus ".idx") and
+	//	       the output file
+        //      DOES: finds a record's byte offset and length in the output
+	//	       by its seqid.version with a binary search, and reads
+	//	       the record
+        // Implementation: the index file is a 20 byte header (magic, format
+	//	       version, key width, entry count) followed by fixed width
+	//	       entries sorted by key: the seqid.version as ISO-8859-1
+	//	       bytes padded with zero bytes to the key width, the
+	//	       record's offset in the output (a long) and its length
+	//	       (an int), all big-endian. Fixed width entries let a
+	//	       lookup read entry i directly, so a lookup reads
+	//	       O(log n) entries and the index is never loaded into
+	//	       memory. An accession written more than once has one
+	//	       entry per copy, in output order. Lookups use positional
+	//	       reads, so one RecordIndex may be shared by threads.
+	//	       See RecordIndexWriter for how the file is built.
+
+	//
+	//constructors
+	//
+
+	public RecordIndex(File output) throws IOException
+		// Purpose: open the index of 'output'
+		// Throws: IOException if the index is missing or not an index
+	{
+		this.output = output;
+		this.index = FileChannel.open(indexFile(output).toPath());
+		ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(this.index, h, 0);
+		h.flip();
+		if(h.getInt() != MAGIC || h.getInt() != FORMAT)
+		{
+			this.index.close();
+			throw new IOException(indexFile(output) +
+				" is not a record index");
+		}
+		this.keyWidth = h.getInt();
+		this.count = h.getLong();
+	}
+
+	//
+	//methods:
+	//
+
+	public long size()
+		// Purpose: the number of entries
+	{
+		return this.count;
+	}
+
+	public Entry get(long i) throws IOException
+		// Purpose: return entry 'i' in key order
+		// Assumes: 0 <= 'i' < size()
+	{
+		ByteBuffer b = readEntry(i);
+		int len = this.keyWidth;
+		while(len > 0 && b.get(len - 1) == 0)
+		{
+			len--;
+		}
+		byte[] key = new byte[len];
+		b.get(key);
+		b.position(this.keyWidth);
+		return new Entry(new String(key, LATIN1), b.getLong(), b.getInt());
+	}
+
+	public Entry find(String version) throws IOException
+		// Purpose: look up 'version'
+		// Returns: its first entry in output order, or null if it is
+		//	    not in the index
+	{
+		byte[] key = version.getBytes(LATIN1);
+		if(key.length > this.keyWidth)
+		{
+			return null;
+		}
+		// lower bound: the first entry whose key is not less than 'key'
+		long lo = 0;
+		long hi = this.count;
+		while(lo < hi)
+		{
+			long mid = (lo + hi) >>> 1;
+			if(compare(readEntry(mid), key) < 0)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		if(lo < this.count && compare(readEntry(lo), key) == 0)
+		{
+			return get(lo);
+		}
+		return null;
+	}
+
+	public String read(String version) throws IOException
+		// Purpose: read the record for 'version' from the output
+		// Returns: the record text, or null if it is not in the index
+	{
+		Entry e = find(version);
+		if(e == null)
+		{
+			return null;
+		}
+		FileChannel data = dataChannel();
+		ByteBuffer b = ByteBuffer.allocate(e.length);
+		readFully(data, b, e.offset);
+		return new String(b.array(), 0, e.length, LATIN1);
+	}
+
+	public void close() throws IOException
+	{
+		this.index.close();
+		synchronized(this)
+		{
+			if(this.data != null)
+			{
+				this.data.close();
+			}
+		}
+	}
+
+	public static File indexFile(File output)
+		// Purpose: return the index file of 'output'
+	{
+		return new File(output.getPath() + SUFFIX);
+	}
+
+	private ByteBuffer readEntry(long i) throws IOException
+	{
+		ByteBuffer b = ByteBuffer.allocate(this.keyWidth + 12);
+		readFully(this.index, b, HEADER_SIZE + i * b.capacity());
+		b.flip();
+		return b;
+	}
+
+	private int compare(ByteBuffer entry, byte[] key)
+		// Purpose: compare an entry's key with 'key', padded with
+		//	    zeros, as unsigned bytes
+	{
+		for(int i = 0; i < this.keyWidth; i++)
+		{
+			int a = entry.get(i) & 0xff;
+			int b = i < key.length ? key[i] & 0xff : 0;
+			if(a != b)
+			{
+				return a - b;
+			}
+		}
+		return 0;
+	}
+
+	private synchronized FileChannel dataChannel() throws IOException
+	{
+		if(this.data == null)
+		{
+			this.data = FileChannel.open(this.output.toPath());
+		}
+		return this.data;
+	}
+
+	static void readFully(FileChannel ch, ByteBuffer b, long position)
+		throws IOException
+	{
+		while(b.hasRemaining())
+		{
+			int n = ch.read(b, position);
+			if(n < 0)
+			{
+				throw new EOFException("Unexpected end of file at " +
+					"byte " + position);
+			}
+			position += n;
+		}
+	}
+
+	//
+	// an index entry
+	//
+
+	public static class Entry
+	{
+		Entry(String version, long offset, int length)
+		{
+			this.version = version;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		// seqid.version of the record
+		public final String version;
+
+		// where the record starts in the output, and its bytes
+		public final long offset;
+		public final int length;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// appended to an output's name to name its index
+	public static final String SUFFIX = ".idx";
+
+	// "SQIX" and the format version, at the start of every index
+	static final int MAGIC = 0x53514958;
+	static final int FORMAT = 1;
+
+	// bytes before the first entry
+	static final int HEADER_SIZE = 20;
+
+	// record text is read and written as ISO-8859-1, one char per
+	// byte, so every byte of the input comes out as it went in
+	static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	// see the constructor
+	private File output;
+
+	// the index file, and the output once read() is first called
+	private FileChannel index;
+	private FileChannel data;
+
+	// from the header
+	private int keyWidth;
+	private long count;
+}
@@ -0,0 +1,419 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+class RecordIndexWriter
+{
+	//Concept:
+        //        IS: the builder of a RecordIndex file
+        //       HAS: a run of entries in primitive arrays, and the sorted
+	//	       runs already spilled to temporary files
+        //      DOES: collects (seqid.version, offset, length) entries in
+	//	       output order, and at finish() writes them sorted by
+	//	       seqid.version in the RecordIndex format
+        // Implementation: an external merge sort. Keys are kept as bytes
+	//	       in one growing byte array with an int array of starts,
+	//	       beside long and int arrays of offsets and lengths, so an
+	//	       entry costs its key bytes plus 20 bytes and no objects.
+	//	       Every RUN_ENTRIES entries the run is sorted (a stable
+	//	       merge sort of an index permutation) and written to a
+	//	       temporary file in the RecordIndex format; finish() merges
+	//	       the runs, so memory stays bounded for any number of
+	//	       records. An existing index of an appended (-a) output
+	//	       is merged in as one more run. Ties between equal keys
+	//	       are broken by offset, keeping copies in output order.
+
+	//
+	//constructors
+	//
+
+	RecordIndexWriter(File output, boolean append) throws IOException
+		// Purpose: start the index of 'output'; if 'append' and it
+		//	    already has an index, its entries are kept
+	{
+		this.indexFile = RecordIndex.indexFile(output);
+		this.dir = this.indexFile.getAbsoluteFile().getParentFile();
+		if(append && this.indexFile.exists())
+		{
+			// take it out of the way now; it is merged at finish()
+			File old = tempFile();
+			Files.move(this.indexFile.toPath(), old.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+			this.runs.add(old);
+		}
+		else
+		{
+			Files.deleteIfExists(this.indexFile.toPath());
+		}
+	}
+
+	//
+	//methods:
+	//
+
+	void add(String version, long offset, int length) throws IOException
+		// Purpose: add an entry
+	{
+		byte[] key = (version == null ? "" : version).getBytes(
+			RecordIndex.LATIN1);
+		if(this.count == RUN_ENTRIES)
+		{
+			spill();
+		}
+		if(this.count == this.offsets.length)
+		{
+			int n = Math.min(2 * this.count, RUN_ENTRIES);
+			this.keyStarts = Arrays.copyOf(this.keyStarts, n + 1);
+			this.offsets = Arrays.copyOf(this.offsets, n);
+			this.lengths = Arrays.copyOf(this.lengths, n);
+		}
+		int start = this.keyStarts[this.count];
+		if(start + key.length > this.keys.length)
+		{
+			this.keys = Arrays.copyOf(this.keys,
+				Math.max(2 * this.keys.length, start + key.length));
+		}
+		System.arraycopy(key, 0, this.keys, start, key.length);
+		this.offsets[this.count] = offset;
+		this.lengths[this.count] = length;
+		this.count++;
+		this.keyStarts[this.count] = start + key.length;
+	}
+
+	void finish() throws IOException
+		// Purpose: write the index file and remove the temporary runs
+	{
+		if(this.runs.isEmpty())
+		{
+			writeRun(this.indexFile);
+			return;
+		}
+		if(this.count > 0)
+		{
+			spill();
+		}
+		merge();
+		for(int i = 0; i < this.runs.size(); i++)
+		{
+			Files.deleteIfExists(this.runs.get(i).toPath());
+		}
+		this.runs.clear();
+	}
+
+	private void spill() throws IOException
+		// Purpose: write the current run to a temporary file and start
+		//	    a new one
+	{
+		File f = tempFile();
+		this.runs.add(f);
+		writeRun(f);
+		this.count = 0;
+		this.keyStarts[0] = 0;
+	}
+
+	private void writeRun(File f) throws IOException
+		// Purpose: write the current run, sorted, to 'f'
+	{
+		int[] order = new int[this.count];
+		for(int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		sort(order, new int[order.length], 0, order.length);
+
+		int width = 0;
+		for(int i = 0; i < this.count; i++)
+		{
+			width = Math.max(width, this.keyStarts[i + 1] -
+				this.keyStarts[i]);
+		}
+		DataOutputStream out = open(f, width, this.count);
+		try
+		{
+			for(int i = 0; i < order.length; i++)
+			{
+				int e = order[i];
+				int start = this.keyStarts[e];
+				int len = this.keyStarts[e + 1] - start;
+				writeEntry(out, this.keys, start, len, width,
+					this.offsets[e], this.lengths[e]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void sort(int[] a, int[] tmp, int from, int to)
+		// Purpose: stable merge sort of entry numbers a[from, to) by key
+	{
+		if(to - from < 2)
+		{
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(a, tmp, from, mid);
+		sort(a, tmp, mid, to);
+		if(compareKeys(a[mid - 1], a[mid]) <= 0)
+		{
+			return;
+		}
+		System.arraycopy(a, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for(int k = from; k < to; k++)
+		{
+			if(j >= to || (i < mid && compareKeys(tmp[i], tmp[j]) <= 0))
+			{
+				a[k] = tmp[i++];
+			}
+			else
+			{
+				a[k] = tmp[j++];
+			}
+		}
+	}
+
+	private int compareKeys(int x, int y)
+		// Purpose: compare the keys of entries 'x' and 'y' as unsigned
+		//	    bytes, a shorter key first when one is a prefix of
+		//	    the other, as zero padding sorts them in the file
+	{
+		int xs = this.keyStarts[x];
+		int xl = this.keyStarts[x + 1] - xs;
+		int ys = this.keyStarts[y];
+		int yl = this.keyStarts[y + 1] - ys;
+		int n = Math.min(xl, yl);
+		for(int i = 0; i < n; i++)
+		{
+			int d = (this.keys[xs + i] & 0xff) - (this.keys[ys + i] & 0xff);
+			if(d != 0)
+			{
+				return d;
+			}
+		}
+		return xl - yl;
+	}
+
+	private void merge() throws IOException
+		// Purpose: merge the sorted runs into the index file
+	{
+		PriorityQueue<Run> heads = new PriorityQueue<Run>();
+		int width = 0;
+		long total = 0;
+		try
+		{
+			for(int i = 0; i < this.runs.size(); i++)
+			{
+				Run r = new Run(this.runs.get(i));
+				width = Math.max(width, r.width);
+				total += r.remaining;
+				if(r.next())
+				{
+					heads.add(r);
+				}
+				else
+				{
+					r.close();
+				}
+			}
+			File tmp = tempFile();
+			DataOutputStream out = open(tmp, width, total);
+			try
+			{
+				Run r;
+				while((r = heads.poll()) != null)
+				{
+					writeEntry(out, r.key, 0, r.keyLength, width,
+						r.offset, r.length);
+					if(r.next())
+					{
+						heads.add(r);
+					}
+					else
+					{
+						r.close();
+					}
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+			Files.move(tmp.toPath(), this.indexFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			Run r;
+			while((r = heads.poll()) != null)
+			{
+				r.close();
+			}
+		}
+	}
+
+	static DataOutputStream open(File f, int width, long count)
+		throws IOException
+		// Purpose: create 'f' and write the RecordIndex header
+	{
+		if(width > PAD.length)
+		{
+			throw new IOException("seqid.version longer than " +
+				PAD.length + " characters");
+		}
+		DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(f), BUFFER));
+		out.writeInt(RecordIndex.MAGIC);
+		out.writeInt(RecordIndex.FORMAT);
+		out.writeInt(width);
+		out.writeLong(count);
+		return out;
+	}
+
+	static void writeEntry(DataOutputStream out, byte[] key, int keyStart,
+		int keyLength, int width, long offset, int length)
+		throws IOException
+		// Purpose: write an entry, its key padded to 'width'
+	{
+		out.write(key, keyStart, keyLength);
+		out.write(PAD, 0, width - keyLength);
+		out.writeLong(offset);
+		out.writeInt(length);
+	}
+
+	static void setCount(File f, long count) throws IOException
+		// Purpose: correct the entry count in the header of 'f', for a
+		//	    file whose count was not known when it was opened
+	{
+		RandomAccessFile r = new RandomAccessFile(f, "rw");
+		try
+		{
+			r.seek(12);
+			r.writeLong(count);
+		}
+		finally
+		{
+			r.close();
+		}
+	}
+
+	static int compareKeys(byte[] x, int xl, byte[] y, int yl)
+		// Purpose: compare keys x[0, xl) and y[0, yl) as compareKeys(int,
+		//	    int) does
+	{
+		int n = Math.min(xl, yl);
+		for(int i = 0; i < n; i++)
+		{
+			int d = (x[i] & 0xff) - (y[i] & 0xff);
+			if(d != 0)
+			{
+				return d;
+			}
+		}
+		return xl - yl;
+	}
+
+	private File tempFile() throws IOException
+	{
+		File f = File.createTempFile(this.indexFile.getName() + ".",
+			".run", this.dir);
+		f.deleteOnExit();
+		return f;
+	}
+
+	//
+	// a sorted run being merged
+	//
+
+	static class Run implements Comparable<Run>
+	{
+		Run(File f) throws IOException
+		{
+			this.in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f), BUFFER));
+			if(this.in.readInt() != RecordIndex.MAGIC ||
+				this.in.readInt() != RecordIndex.FORMAT)
+			{
+				this.in.close();
+				throw new IOException(f + " is not a record index");
+			}
+			this.width = this.in.readInt();
+			this.remaining = this.in.readLong();
+			this.key = new byte[this.width];
+		}
+
+		boolean next() throws IOException
+			// Purpose: read the next entry
+			// Returns: false at the end of the run
+		{
+			if(this.remaining == 0)
+			{
+				return false;
+			}
+			this.in.readFully(this.key);
+			this.keyLength = this.width;
+			while(this.keyLength > 0 && this.key[this.keyLength - 1] == 0)
+			{
+				this.keyLength--;
+			}
+			this.offset = this.in.readLong();
+			this.length = this.in.readInt();
+			this.remaining--;
+			return true;
+		}
+
+		public int compareTo(Run o)
+		{
+			int d = compareKeys(this.key, this.keyLength, o.key,
+				o.keyLength);
+			return d != 0 ? d : Long.compare(this.offset, o.offset);
+		}
+
+		void close() throws IOException
+		{
+			this.in.close();
+		}
+
+		private DataInputStream in;
+		int width;
+		long remaining;
+
+		// the current entry
+		byte[] key;
+		int keyLength;
+		long offset;
+		int length;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// entries sorted in memory before a run is spilled
+	static final int RUN_ENTRIES = 1 << 20;
+
+	// zero bytes for padding keys; also the longest key allowed
+	private static final byte[] PAD = new byte[1024];
+
+	// buffer size for reading and writing runs
+	private static final int BUFFER = 256 * 1024;
+
+	// the index being built and the directory for its runs
+	private File indexFile;
+	private File dir;
+
+	// spilled runs, in the order written
+	private List<File> runs = new ArrayList<File>();
+
+	// the current run: entry i's key is keys[keyStarts[i],
+	// keyStarts[i + 1])
+	private int count = 0;
+	private byte[] keys = new byte[64 * 1024];
+	private int[] keyStarts = new int[1024 + 1];
+	private long[] offsets = new long[1024];
+	private int[] lengths = new int[1024];
+}
@@ -0,0 +1,34 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+
+interface RecordOutput
+{
+	//Concept:
+        //        IS: the output location of one decider
+        //       HAS: a file or directory
+        //      DOES: writes the records that pass the decider
+        // Implementation: see AsyncFileOutput (-a, -o), ChannelOutput (-a,
+	//	       -o with --passthrough), BgzfOutput (-a, -o with --bgzf)
+	//	       and DirectoryOutput (-d), and SinkOutput for a
+	//	       FilterJob. SeqRecordFilter wraps each in
+	//	       a MeteredOutput, and -a and -o outputs in an
+	//	       IndexingOutput for --index
+
+	void write(FilteredRecord r) throws IOException, InterruptedException;
+		// Purpose: write one record
+
+	void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException;
+		// Purpose: write records in list order; lets an output combine
+		//	    them into fewer, larger writes
+
+	long sync() throws IOException, InterruptedException;
+		// Purpose: finish every write made so far and force it to
+		//	    disk, for a Checkpoint
+		// Returns: the length of the output file, or -1 for a directory
+
+	void close() throws IOException, InterruptedException;
+		// Purpose: finish all writes and release the output
+}
@@ -0,0 +1,193 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+class RecordProjector
+{
+	//Concept:
+        //        IS: a filter that cuts the record text handed to
+	//	       SeqRecord.readText() down to the sections the run's
+	//	       deciders need
+        //       HAS: the set of sections to keep
+        //      DOES: drops the lines of every other section; the record's
+	//	       original text is still what the outputs receive
+        // Implementation: HEADER lines (including LOCUS, ID and "//") are
+	//	       always kept, as is the ORIGIN or SQ line that opens the
+	//	       sequence, so the parser still sees a well formed, if
+	//	       shorter, record. A line starting with a keyword the
+	//	       projector does not know is kept with its continuation
+	//	       lines. When the sequence is dropped the projector jumps
+	//	       straight from its opening line to the terminator, so
+	//	       the sequence body of a large record is never scanned.
+	//	       Text with nothing to drop is returned as is.
+
+	//
+	//constructors
+	//
+
+	RecordProjector(Set<RecordSection> keep)
+	{
+		this.keep = EnumSet.copyOf(keep);
+		this.keep.add(RecordSection.HEADER);
+	}
+
+	//
+	//methods:
+	//
+
+	static RecordProjector forDeciders(SeqDecider[] deciders, int n)
+		// Purpose: create a projector for the union of the sections
+		//	    the first 'n' deciders require
+		// Returns: the projector, or null if they require every section
+	{
+		Set<RecordSection> union = EnumSet.noneOf(RecordSection.class);
+		for(int i = 0; i < n; i++)
+		{
+			union.addAll(deciders[i].getRequiredSections());
+		}
+		union.add(RecordSection.HEADER);
+		if(union.containsAll(RecordSection.all()))
+		{
+			return null;
+		}
+		return new RecordProjector(union);
+	}
+
+	String project(String text)
+		// Purpose: return 'text' without the lines of the sections
+		//	    this projector does not keep
+	{
+		int len = text.length();
+		StringBuilder out = null;
+		RecordSection current = RecordSection.HEADER;
+		String lastKeyword = "";
+		int pos = 0;
+
+		while(pos < len)
+		{
+			int nl = text.indexOf('\n', pos);
+			int end = nl < 0 ? len : nl + 1;
+			char c = text.charAt(pos);
+			boolean opens = c != ' ' && c != '\t' && c != '\n';
+
+			if(opens)
+			{
+				int k = keywordEnd(text, pos, end);
+				if(k - pos != lastKeyword.length() ||
+					!text.regionMatches(pos, lastKeyword, 0,
+					k - pos))
+				{
+					lastKeyword = text.substring(pos, k);
+					RecordSection s =
+						RecordSection.forKeyword(lastKeyword);
+					current = s == null ? RecordSection.HEADER : s;
+				}
+			}
+
+			boolean kept = this.keep.contains(current) ||
+				(opens && current == RecordSection.SEQUENCE);
+			if(!kept && out == null)
+			{
+				out = new StringBuilder(pos + 256);
+				out.append(text, 0, pos);
+			}
+			else if(kept && out != null)
+			{
+				out.append(text, pos, end);
+			}
+
+			if(opens && current == RecordSection.SEQUENCE &&
+				!this.keep.contains(RecordSection.SEQUENCE))
+			{
+				// skip the sequence body; resume at the terminator
+				int term = text.indexOf("\n//", end - 1);
+				if(term >= 0)
+				{
+					if(out == null)
+					{
+						out = new StringBuilder(end + 256);
+						out.append(text, 0, end);
+					}
+					end = term + 1;
+				}
+			}
+			pos = end;
+		}
+		return out == null ? text : out.toString();
+	}
+
+	static String headerOf(ByteBuffer record, int max)
+		// Purpose: return the text of 'record' up to the line that
+		//	    opens its feature table or sequence, ended with a
+		//	    "//" line, for a record too large to parse whole
+		//	    (see SeqRecordFilter --giant-records)
+		// Notes: reads at most 'max' bytes of 'record', so a record
+		//	  without features or sequence is cut at the last whole
+		//	  line before them
+	{
+		int base = record.position();
+		int len = Math.min(record.remaining(), max);
+		int pos = 0;
+		while(pos < len)
+		{
+			int nl = pos;
+			while(nl < len && record.get(base + nl) != '\n')
+			{
+				nl++;
+			}
+			if(nl == len)
+			{
+				break;
+			}
+			byte c = record.get(base + pos);
+			if(c != ' ' && c != '\t' && c != '\n')
+			{
+				int k = pos;
+				while(k < nl && record.get(base + k) > ' ')
+				{
+					k++;
+				}
+				byte[] keyword = new byte[k - pos];
+				for(int i = 0; i < keyword.length; i++)
+				{
+					keyword[i] = record.get(base + pos + i);
+				}
+				RecordSection s = RecordSection.forKeyword(
+					new String(keyword, LATIN1));
+				if(s == RecordSection.FEATURES ||
+					s == RecordSection.SEQUENCE)
+				{
+					break;
+				}
+			}
+			pos = nl + 1;
+		}
+		byte[] header = new byte[pos];
+		ByteBuffer b = record.duplicate();
+		b.get(header);
+		return new String(header, LATIN1) + "//\n";
+	}
+
+	private static int keywordEnd(String text, int pos, int end)
+		// Purpose: find the end of the keyword that starts the line at
+		//	    'pos'
+	{
+		int k = pos;
+		while(k < end && text.charAt(k) > ' ')
+		{
+			k++;
+		}
+		return k;
+	}
+
+	//
+	//instance variables:
+	//
+
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	// sections whose lines are kept
+	private EnumSet<RecordSection> keep;
+}
@@ -0,0 +1,96 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+
+public enum RecordSection
+{
+	//Concept:
+        //        IS: a part of a GenBank or SwissProt record that a decider
+	//	       may need to see
+        //       HAS: the line keywords (GenBank) and line codes
+	//	       (SwissProt) that belong to the part
+        //      DOES: classifies a record line
+        // Implementation: a GenBank line that starts with a keyword opens
+	//	       a section; indented lines continue the section of the
+	//	       last keyword. A SwissProt line belongs to the section of
+	//	       its two letter code; the indented sequence lines follow
+	//	       SQ. LOCUS and ID lines, and the "//" terminator, are
+	//	       HEADER lines, which every projection keeps.
+
+	// identification, description, keywords and organism lines
+	HEADER(new String[] { "LOCUS", "DEFINITION", "ACCESSION", "VERSION",
+		"DBLINK", "KEYWORDS", "SEGMENT", "SOURCE", "PROJECT", "NID",
+		"PID", "//" },
+		new String[] { "ID", "AC", "DT", "DE", "GN", "OS", "OG", "OC",
+		"OX", "OH", "PE", "KW", "//" }),
+
+	// literature references
+	REFERENCES(new String[] { "REFERENCE" },
+		new String[] { "RN", "RP", "RC", "RX", "RG", "RA", "RT",
+		"RL" }),
+
+	// free text comments and database cross references
+	COMMENTS(new String[] { "COMMENT", "PRIMARY" },
+		new String[] { "CC", "DR" }),
+
+	// the feature table
+	FEATURES(new String[] { "FEATURES", "BASE", "CONTIG" },
+		new String[] { "FT" }),
+
+	// the sequence itself
+	SEQUENCE(new String[] { "ORIGIN" }, new String[] { "SQ" });
+
+	//
+	//constructors
+	//
+
+	private RecordSection(String[] genBankKeywords, String[] swissProtCodes)
+	{
+		this.genBankKeywords = genBankKeywords;
+		this.swissProtCodes = swissProtCodes;
+	}
+
+	//
+	//methods:
+	//
+
+	public static Set<RecordSection> all()
+		// Purpose: return a new set of every section
+	{
+		return EnumSet.allOf(RecordSection.class);
+	}
+
+	static RecordSection forKeyword(String keyword)
+		// Purpose: return the section a line starting with 'keyword'
+		//	    opens, or null if 'keyword' is not known
+	{
+		return KEYWORDS.get(keyword);
+	}
+
+	//
+	//instance variables:
+	//
+
+	private final String[] genBankKeywords;
+	private final String[] swissProtCodes;
+
+	// GenBank keywords and SwissProt codes to their sections; the
+	// two vocabularies do not overlap
+	private static final Map<String, RecordSection> KEYWORDS =
+		new HashMap<String, RecordSection>();
+	static
+	{
+		RecordSection[] all = values();
+		for(int i = 0; i < all.length; i++)
+		{
+			for(int j = 0; j < all[i].genBankKeywords.length; j++)
+			{
+				KEYWORDS.put(all[i].genBankKeywords[j], all[i]);
+			}
+			for(int j = 0; j < all[i].swissProtCodes.length; j++)
+			{
+				KEYWORDS.put(all[i].swissProtCodes[j], all[i]);
+			}
+		}
+	}
+}
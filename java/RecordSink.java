@@ -0,0 +1,34 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+public interface RecordSink
+{
+	//Concept:
+        //        IS: where a FilterJob sends the records that pass one of
+	//	       its deciders
+        //       HAS: whatever the application needs: a queue, a socket, a
+	//	       database table, a PublisherSink
+        //      DOES: takes each passing record in input order, then learns
+	//	       how the job ended
+        // Implementation: the job calls write() from one thread at a time.
+	//	       A write() that blocks holds up the job once its bounded
+	//	       queues fill, and so the reading of its input: blocking
+	//	       is how a sink applies backpressure. Exactly one of
+	//	       close() and fail() ends every job the sink is given to.
+
+	void write(String version, String text)
+		throws IOException, InterruptedException;
+		// Purpose: take a record that passed the decider
+		// Assumes: 'version' is the record's seqid.version and 'text'
+		//	    its flat file text, ending with its "//" line
+		// Throws: IOException, which fails the job
+
+	void close() throws IOException;
+		// Purpose: the job read all its input and every passing
+		//	    record has been written
+		// Throws: IOException, which fails the job
+
+	void fail(Throwable cause);
+		// Purpose: the job failed with 'cause'; no more records follow
+}
@@ -0,0 +1,34 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+interface RecordSource
+{
+	//Concept:
+        //        IS: the input side of a filter run
+        //       HAS: one or more GenBank or SwissProt flat file inputs
+        //      DOES: hands out consecutive batches of unparsed records
+        // Implementation: see StreamRecordSource and MappedRecordSource
+
+	RecordBatch nextBatch(int seq) throws IOException;
+		// Purpose: read the next batch of records
+		// Returns: a batch numbered 'seq', or null at end of input
+		// Assumes: called from one thread at a time
+		// Throws: IOException
+
+	InputPosition position();
+		// Purpose: report where the next batch will start
+		// Returns: the position just after the last batch handed out,
+		//	    or null if this source cannot report positions
+
+	void seek(InputPosition p) throws IOException;
+		// Purpose: move to 'p', as reported by position() on an
+		//	    earlier run over the same input, so the next batch
+		//	    starts there
+		// Assumes: no batch has been read yet
+		// Throws: IOException if the input does not reach 'p' or
+		//	   this source cannot seek
+
+	void close() throws IOException;
+		// Purpose: release the input
+}
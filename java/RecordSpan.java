@@ -0,0 +1,63 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.nio.*;
+import java.nio.channels.*;
+
+class RecordSpan
+{
+	//Concept:
+        //        IS: the original bytes of one record in the input
+        //       HAS: a read-only view of the bytes in the input buffer
+	//	       and, for a record in a -i input file, the file's
+	//	       channel, its place in the -i list and the record's
+	//	       offset in it
+        //      DOES: nothing; passthrough outputs write these bytes as
+	//	       they are instead of the parsed record text
+        // Implementation: the view shares the mapped (or read) chunk, so
+	//	       no bytes are copied to make it
+
+	//
+	//constructors
+	//
+
+	RecordSpan(ByteBuffer bytes, FileChannel channel, long position,
+		int file)
+	{
+		this.bytes = bytes;
+		this.channel = channel;
+		this.position = position;
+		this.file = file;
+	}
+
+	//
+	//methods:
+	//
+
+	int length()
+	{
+		return this.bytes.remaining();
+	}
+
+	ByteBuffer bytes()
+		// Purpose: return a view of the bytes with its own position,
+		//	    so several outputs can write the record at once
+	{
+		return this.bytes.duplicate();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the record's bytes, position to limit
+	private final ByteBuffer bytes;
+
+	// the input file and the record's offset in it; null and -1 when
+	// the input is a stream
+	final FileChannel channel;
+	final long position;
+
+	// the input file's index in the -i list; -1 when the input is a
+	// stream
+	final int file;
+}
@@ -0,0 +1,145 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+class RecordTextReader extends BufferedReader
+{
+	//Concept:
+        //        IS: a BufferedReader over the text of one record at a time,
+	//	       reused for every record a thread loads into its
+	//	       SeqRecord
+        //       HAS: the current record's text and a position in it
+        //      DOES: serves the text to SeqRecord.readText() as a
+	//	       BufferedReader over a StringReader would, with the same
+	//	       lines and characters
+        // Implementation: SeqRecord.readText() takes a BufferedReader, and
+	//	       a new one per record allocates its 8K character buffer
+	//	       (16KB) and a StringReader every time, more than most
+	//	       records' own text. This reader reads straight from the
+	//	       String instead and is set to the next record's text,
+	//	       so loading a record allocates only the lines
+	//	       readText() asks for. Line ends are "\n", "\r" or
+	//	       "\r\n", as for BufferedReader. Not thread safe: each
+	//	       thread that loads records has its own.
+
+	//
+	//constructors
+	//
+
+	RecordTextReader()
+	{
+		// the smallest buffer; every read is overridden
+		super(Reader.nullReader(), 1);
+	}
+
+	//
+	//methods:
+	//
+
+	RecordTextReader set(String text)
+		// Purpose: read 'text' from its start
+		// Returns: this reader
+	{
+		this.text = text;
+		this.length = text.length();
+		this.pos = 0;
+		this.mark = 0;
+		return this;
+	}
+
+	public int read()
+	{
+		return this.pos < this.length ? this.text.charAt(this.pos++) :
+			-1;
+	}
+
+	public int read(char[] cbuf, int off, int len)
+	{
+		if(len == 0)
+		{
+			return 0;
+		}
+		if(this.pos >= this.length)
+		{
+			return -1;
+		}
+		int n = Math.min(len, this.length - this.pos);
+		this.text.getChars(this.pos, this.pos + n, cbuf, off);
+		this.pos += n;
+		return n;
+	}
+
+	public String readLine()
+	{
+		if(this.pos >= this.length)
+		{
+			return null;
+		}
+		int end = this.pos;
+		char c = 0;
+		while(end < this.length)
+		{
+			c = this.text.charAt(end);
+			if(c == '\n' || c == '\r')
+			{
+				break;
+			}
+			end++;
+		}
+		String line = this.text.substring(this.pos, end);
+		if(end < this.length)
+		{
+			end++;
+			if(c == '\r' && end < this.length &&
+				this.text.charAt(end) == '\n')
+			{
+				end++;
+			}
+		}
+		this.pos = end;
+		return line;
+	}
+
+	public long skip(long n)
+	{
+		long k = Math.max(0, Math.min(n, this.length - this.pos));
+		this.pos += (int)k;
+		return k;
+	}
+
+	public boolean ready()
+	{
+		return this.pos < this.length;
+	}
+
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	public void mark(int readAheadLimit)
+	{
+		this.mark = this.pos;
+	}
+
+	public void reset()
+	{
+		this.pos = this.mark;
+	}
+
+	public void close()
+		// Notes: the reader stays usable; set() starts the next record
+	{
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the record being read, its length, the next character's index,
+	// and the index mark() saved
+	private String text = "";
+	private int length = 0;
+	private int pos = 0;
+	private int mark = 0;
+}
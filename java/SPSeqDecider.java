@@ -9,8 +9,10 @@ public abstract class  SPSeqDecider extends SeqDecider
 	//	      seqRecords
 	//	      Concrete subclasses of this class must
         //            define an isA method - see superclass
-        //       HAS: a SwissProt interrogator object that can be used by the 
-	//	      isA methoud to determine if a predicate is true
+        //       HAS: a SwissProt interrogator object per thread that can be
+	//	      used by the isA methoud to determine if a predicate is
+	//	      true (see interrogator()). See
+	//	      GBSeqDecider for sharing interrogator results
         //      DOES: see superclass
         // Implementation:
 	
@@ -24,10 +26,36 @@ public abstract class  SPSeqDecider extends SeqDecider
 		super(s);
 	}
 	
+	//
+	//methods:
+	//
+
+	protected static SPSeqInterrogator interrogator()
+		// Purpose: return the calling thread's own interrogator
+		// Notes: every worker thread of a run, and every FilterDaemon
+		//	  job, gets its own, so a decider that queries this one
+		//	  rather than 'si' may return true from isThreadSafe()
+	{
+		return INTERROGATOR.get();
+	}
+
 	//
 	//instance variables:
 	//
 
-	// determines if a predicate is true.
+	// determines if a predicate is true. Shared by every thread, so
+	// deciders that use it are applied one at a time (see
+	// SeqDecider.isThreadSafe()); kept for deciders written before
+	// interrogator()
 	protected static SPSeqInterrogator si = new SPSeqInterrogator();
+
+	// see interrogator()
+	private static final ThreadLocal<SPSeqInterrogator> INTERROGATOR =
+		new ThreadLocal<SPSeqInterrogator>()
+		{
+			protected SPSeqInterrogator initialValue()
+			{
+				return new SPSeqInterrogator();
+			}
+		};
 }
@@ -1,5 +1,7 @@
 package org.jax.mgi.bio.seqfilter;
 
+import java.util.*;
+import java.util.concurrent.atomic.*;
 import org.jax.mgi.bio.seqrecord.*;
 
 public abstract class SeqDecider
@@ -14,7 +16,13 @@ public abstract class SeqDecider
         //             2) total records for which the predicate is true
         //      DOES: Determines whether the predicate is true for a sequence  
 	//             record, maintains counters described in "HAS" above
-        // Implementation:
+	//	       gives subclasses a per record cache of attributes
+	//	       shared by all deciders (see feature())
+        // Implementation: the counters are LongAdders, which spread
+	//	       increments over per-thread cells, so they count
+	//	       correctly from many threads at once and do not wrap at
+	//	       2^31. That makes the counters safe, not isA: see
+	//	       isThreadSafe()
 
 	//
 	//constructors 
@@ -40,17 +48,70 @@ public abstract class SeqDecider
 		// Throws: nothing
 		// Notes:
 
+	public Set<RecordSection> getRequiredSections()
+		// Purpose: report the record sections isA looks at
+		// Returns: every section; subclasses that look at fewer
+		//	    should override, e.g. a decider on the organism
+		//	    returns EnumSet.of(RecordSection.HEADER)
+		// Notes: when no decider in a run needs a section,
+		//	  SeqRecordFilter leaves it out of the text it parses
+		//	  (see RecordProjector); the outputs still get whole
+		//	  records
+	{
+		return RecordSection.all();
+	}
+
+	public boolean isThreadSafe()
+		// Purpose: report whether isA may be applied to different
+		//	    records from several threads at the same time
+		// Returns: false; a subclass may return true if its isA uses
+		//	    only state that is not changed after construction,
+		//	    feature(), and interrogators of the calling thread's
+		//	    own (see GBSeqDecider.interrogator())
+		// Notes: with --threads, and in FilterJob and FilterDaemon,
+		//	  the deciders that return false are applied one at a
+		//	  time, under a lock they all share, since they may
+		//	  share the static interrogators GBSeqDecider.si and
+		//	  SPSeqDecider.si; those that return true are applied
+		//	  by every worker at once
+	{
+		return false;
+	}
+
+	@Deprecated
 	public int getAllCtr()
 		// Purpose: return the counter for total records processed
+		// Returns: the count, or Integer.MAX_VALUE once it is larger
+		// Notes: kept for applications compiled against the int
+		//	  counters; use getAllCount()
 	{
-		return allCtr;
+		return (int)Math.min(getAllCount(), Integer.MAX_VALUE);
 	}
 
+	@Deprecated
 	public int getTrueCtr()
 		// Purpose: return counter for records for which the predicate 
 		// is true
+		// Returns: the count, or Integer.MAX_VALUE once it is larger
+		// Notes: see getAllCtr(); use getTrueCount()
 	{
-		return trueCtr;
+		return (int)Math.min(getTrueCount(), Integer.MAX_VALUE);
+	}
+
+	public long getAllCount()
+		// Purpose: return the number of records processed
+		// Notes: a snapshot; increments made while it is taken may
+		//	  or may not be included
+	{
+		return allCtr.sum();
+	}
+
+	public long getTrueCount()
+		// Purpose: return the number of records for which the
+		//	    predicate is true
+		// Notes: a snapshot, see getAllCount()
+	{
+		return trueCtr.sum();
 	}
 	
 	public String getName( )
@@ -60,17 +121,66 @@ public abstract class SeqDecider
         }
 
 	// only sublclasses may access protected methods	
+	protected static Object feature(SeqRecord s, String key,
+		RecordFeature f)
+		// Purpose: return attribute 'key' of 's', computing it with 'f'
+		//	    only if no decider has asked for 'key' since 's'
+		//	    was loaded
+		// Assumes: every decider that uses 'key' means the same
+		//	    attribute by it; a run reads one record format, so
+		//	    GenBank and SwissProt deciders never share a record
+		// Notes: lets deciders that query the same interrogator
+		//	  attribute share one evaluation per record, e.g.
+		//	  feature(s, "gb:organism", new RecordFeature() {
+		//	      public Object compute(SeqRecord r) {
+		//	          return ...interrogator() query... ; } });
+		//	  When deciders are applied outside SeqRecordFilter,
+		//	  cached values are dropped when a different SeqRecord
+		//	  object is queried, or a reused one has been loaded
+		//	  again by readText() (see RecordFeatureCache)
+	{
+		return RecordFeatureCache.get(s, key, f);
+	}
+
+	protected static boolean booleanFeature(SeqRecord s, String key,
+		RecordFeature f)
+		// Purpose: feature() for attributes that are Booleans
+	{
+		return Boolean.TRUE.equals(RecordFeatureCache.get(s, key, f));
+	}
+
+	public static void recordLoaded()
+		// Purpose: tell the deciders on this thread that their
+		//	    SeqRecord has been loaded with a new record, so
+		//	    cached attributes and the results of deciders
+		//	    applied through a DeciderExpression no longer apply
+		// Notes: a reload by readText() is noticed without it; the
+		//	  filter calls it as each record is read
+	{
+		RecordFeatureCache.begin();
+		DecisionMemo.begin();
+	}
+
 	protected void incrementAllCtr()
 		// Purpose: increment counter for total records processed
 	{
-		allCtr = allCtr + 1;
+		allCtr.increment();
 	}
 	
 	protected void incrementTrueCtr()
 		// Purpose: increment counter for records for which the 
 		// predicate is true
 	{
-		trueCtr = trueCtr + 1;
+		trueCtr.increment();
+	}
+
+	void addCounts(long all, long trueCount)
+		// Purpose: add counts carried over from an earlier run, when
+		//	    a run resumes from a Checkpoint, or found from saved
+		//	    decisions (see DecisionIndex)
+	{
+		allCtr.add(all);
+		trueCtr.add(trueCount);
 	}
 
 	//	
@@ -78,10 +188,13 @@ public abstract class SeqDecider
 	//
 	
 	// total records processed
-	private int allCtr = 0;
+	private final LongAdder allCtr = new LongAdder();
 
 	// number of records for which the predicate is true
-	private int trueCtr = 0;
+	private final LongAdder trueCtr = new LongAdder();
+
+	// time taken by each call of isA made through DecisionMemo
+	final LatencyHistogram latency = new LatencyHistogram();
 	
 	// This decider's name
 	protected String name;
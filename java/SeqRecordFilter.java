@@ -1,11 +1,12 @@
 package org.jax.mgi.bio.seqfilter;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 //import org.apache.regexp.*;
 import gnu.getopt.*;
 import org.jax.mgi.bio.seqrecord.*;
-import org.jax.mgi.shr.unix.*;
 
 public class SeqRecordFilter
 {
@@ -50,8 +51,10 @@ public class SeqRecordFilter
 		this.log = new BufferedWriter(new FileWriter(
 			logName, true));
 
-		// create a reader for stdin
-		this.in = new BufferedReader(new InputStreamReader(System.in));
+		// create a reader for stdin; ISO-8859-1, as -i files are
+		// read, so the outputs write every byte back as it came
+		this.in = new BufferedReader(new InputStreamReader(System.in,
+			RecordIndex.LATIN1));
 
 		//DEBUG
 		//this.in = new BufferedReader(new FileReader("/data/seqdbs/blast/gb.build/gb_mouse.seq"));
@@ -88,6 +91,29 @@ public class SeqRecordFilter
 		this(deciders, args, System.getProperty("LOG"), sr);
 	}
 
+	SeqRecordFilter(
+		SeqDecider[] deciders, // All possible Decider objects for this
+				       // filter
+		String[] args,	       // command line arguments (see getArgs()
+				       // method header)
+		Writer log,	       // the job's log
+		SeqRecord sr)	       // sequence record object
+		throws IOException, InterruptedException
+	{
+	// Purpose: creates a filter for a FilterDaemon job, which reads -i
+	//	    files only and reports its errors by throwing them
+	// Throws: IOException if 'args' is in error or has no -i input, or
+	//	   an output location cannot be opened; InterruptedException
+
+		this.decidersForThisFilterRun = new SeqDecider[deciders.length];
+		this.log = new BufferedWriter(log);
+		// the daemon's stdin is not the job's
+		this.in = new BufferedReader(new StringReader(""));
+		this.daemonJob = true;
+		this.seqRec = sr;
+		this.parseArgs(deciders, args);
+	}
+
 	//
 	// methods
 	//
@@ -120,6 +146,7 @@ public class SeqRecordFilter
 	//           sequences passing a decider will be written. Note:
 	//           'args' may map 1 to all deciders listed in 'sd'
 	//		e.g. --deciderName <-d|-o|-a> outputLocation
+	//		  or --expr expression <-d|-o|-a> outputLocation
 	//
 	//           where:
 	//		-) deciderName is a decider supported by the app using
@@ -133,6 +160,140 @@ public class SeqRecordFilter
 	//                     decider will be written to one file
 	//		-) outputLocation is full path to output location for
 	//                 deciderName (file or directory)
+	//		-) expression combines deciders from 'sd' by name with
+	//		     AND, OR, NOT and parentheses, e.g.
+	//		     --expr "mouse AND EST AND NOT patent"
+	//		     see DeciderExpression. An expression may also
+	//		     name the accession lists given before it with
+	//		     --accessions
+	//	3) 'args' may also contain these filter options, which must
+	//	     not come between a decider and its outputLocation
+	//		--threads n
+	//		   parse and decide records with n worker threads
+	//		   (see go()). Default is 1, the single threaded loop
+	//		-i inputFile
+	//		   read records from inputFile instead of stdin. May
+	//		   be repeated; files are read in the order given.
+	//		   Input files are memory mapped and split into chunks
+	//		   of whole records, which worker threads decode in
+	//		   parallel. gzip files are decompressed as they are
+	//		   read; BGZF files on all cores. inputFile may be a
+	//		   glob in its last path element, e.g.
+	//		   -i '/data/gbrod*.seq.gz', matching files taken in
+	//		   name order. With more than one input file, several
+	//		   files are read at once (see FanInRecordSource); the
+	//		   outputs still get records in -i order unless
+	//		   --unordered is given
+	//		--inputs listFile
+	//		   as -i for each line of listFile, a path or glob;
+	//		   blank lines and lines starting with '#' are skipped
+	//		--unordered
+	//		   write records to the outputs in the order they are
+	//		   decided rather than in input order, so files read
+	//		   at once are not held up behind one another. Not
+	//		   with --checkpoint
+	//		--passthrough
+	//		   write each passing record's original input bytes
+	//		   rather than the text of the parsed SeqRecord.
+	//		   Records from -i files are then copied to -a and -o
+	//		   files with FileChannel.transferTo
+	//		--bgzf
+	//		   write -a and -o files BGZF compressed (gzip
+	//		   compatible), compressing on all cores
+	//		--progress seconds
+	//		   write a progress line (records and bytes read,
+	//		   queue depths, decider latency, output rates) to the
+	//		   log every 'seconds'; 0 for none. Default is 60.
+	//		   The same metrics are published as JMX MBeans
+	//		   (see FilterMetrics)
+	//		--index
+	//		   with each -a and -o file write an index of the
+	//		   seqid.version, offset and length of every record in
+	//		   it, named file.idx (see RecordIndex). Not with
+	//		   --bgzf
+	//		--accessions name=file
+	//		   define a decider 'name', true for records whose
+	//		   seqid.version or any seqid is in 'file', for use
+	//		   in the --expr options after it, e.g.
+	//		     --accessions curated=load.aset
+	//		     --expr "mouse AND NOT curated" -o out
+	//		   'file' is a set file made by AccessionSet.build(),
+	//		   which is memory mapped, or a list of ids, one per
+	//		   line, which is hashed into a temporary set file
+	//		   (see AccessionSet)
+	//		--store dir
+	//		   keep each record's seqid.version and decider
+	//		   results in the version store 'dir' (see
+	//		   VersionStore), and skip the records whose version
+	//		   is already there: only new and changed records are
+	//		   parsed, decided and written. The deciders must be
+	//		   the same, in the same order, as the run that wrote
+	//		   the store, or every record is decided again
+	//		--withdrawn file
+	//		   with --store, write the seqid.versions in the store
+	//		   that this run's input no longer has to 'file', with
+	//		   the deciders each had passed, and drop them from the
+	//		   store
+	//		--checkpoint file
+	//		   as the run starts and every --checkpoint-every
+	//		   seconds (default 300), save the input position,
+	//		   output file lengths and decider counters to 'file'
+	//		   (see Checkpoint).
+	//		   'file' is removed when the run completes
+	//		--resume
+	//		   with --checkpoint, if 'file' exists, cut the -a and
+	//		   -o files back to their checkpoint lengths and go on
+	//		   from the checkpoint's input position, instead of
+	//		   starting over. The command line must be the same as
+	//		   the checkpointed run's
+	//		--shard k/N --shard-dir dir
+	//		   filter only the k'th of N slices of the -i input
+	//		   (see Shard), writing the -a and -o outputs to
+	//		   files in dir/shard-k rather than their own paths;
+	//		   -d outputs are written to their directories as
+	//		   usual. The N shards, each run with the same
+	//		   command line but k, may run at the same time on
+	//		   different hosts sharing 'dir'
+	//		--merge-shards N --shard-dir dir
+	//		   once all N shards have completed, write their -a
+	//		   and -o outputs to the -a and -o files, as a single
+	//		   run would have, log their combined counts, and
+	//		   remove them from 'dir'. Takes the command line of
+	//		   the shards, less -i, --inputs and --shard; reads
+	//		   no input
+	//		--giant-records mb
+	//		   decide each record larger than 'mb' megabytes from
+	//		   the lines before its feature table and sequence,
+	//		   and write its input bytes to the outputs, as with
+	//		   --passthrough, without it ever being held in memory
+	//		   whole: from -i files the bytes are mapped, from a
+	//		   stream they go to a temporary file. Peak memory
+	//		   then depends on 'mb', not the largest record, e.g.
+	//		   for chromosome and WGS master records. The deciders
+	//		   must not need the features or sequence (see
+	//		   SeqDecider.getRequiredSections())
+	//		--save-decisions dir
+	//		   also apply every decider the application offers,
+	//		   named on the command line or not, to every record,
+	//		   and save in 'dir' a compressed bitmap of the
+	//		   records each one passed, with every record's input
+	//		   file, offset, length and seqid.version (see
+	//		   DecisionIndexWriter). Implies --passthrough.
+	//		   Requires uncompressed -i files; not with --unordered
+	//		--decisions dir
+	//		   answer the deciders and --expr expressions of this
+	//		   run from the bitmaps a --save-decisions run saved
+	//		   in 'dir' from the same, unchanged, -i files, and
+	//		   copy the passing records' input bytes to the
+	//		   outputs as --passthrough does. No record is parsed
+	//		   or decided, and only the passing records are read.
+	//		   Every decider named must have been saved; an
+	//		   --accessions set cannot be. Not with --checkpoint
+	//		--dirfanout n
+	//		   spread the files of every -d directory over n levels
+	//		   of hashed subdirectories, 256 per level, e.g. with
+	//		   n = 2 a record is written to dir/3f/a0/seqid.version.
+	//		   Default is 0, all files directly in the directory
 	//
 	//	//
 	//	// optstring syntax:
@@ -144,6 +305,7 @@ public class SeqRecordFilter
 	//	a: = required argument is a file - open it in append mode
 	//	o: = required argument is a file - open file in overwrite mode
 	//	d: = required argument is a directory
+	//	i: = required argument is an input file
 	//
 	//	All opts return an integer value, short opts return their
  	//        ascii integer value, longopts return their assigned integer
@@ -151,8 +313,35 @@ public class SeqRecordFilter
 
 	    try
 	    {
+		parseArgs(sd, args);
+	    }
+	    catch(IOException e1)
+            {
+                System.err.println("IOException in SeqRecordFilter.getArgs(): "
+                    + e1.getMessage());
+		System.exit(1);
+            }
+	    catch(InterruptedException e2)
+	    {
+		System.err.println(
+		    "InterruptedException in SeqRecordFilter.getArgs(): "
+                    + e2.getMessage());
+		System.exit(1);
+	    }
+	}
+
+	void parseArgs(
+		SeqDecider[] sd, // see getArgs()
+		String[] args)
+		throws IOException, InterruptedException
+	{
+	// Purpose: getArgs() for a caller that handles its own errors
+	//	    (see FilterDaemon)
+	// Throws: IOException if 'args' is in error or an output location
+	//	   cannot be opened; InterruptedException
+
 		// a String containing a description of the valid (short) optns
-		String optstring = "-:a:o:d:";
+		String optstring = "-:a:o:d:i:";
 
 		/* long options are defined by an array of "LongOpt" objects.
 		 the LongOpt constructor takes four params
@@ -168,12 +357,56 @@ public class SeqRecordFilter
 		*/
 		// Dynamically create the list of long options based on the full
 		// set of deciders for this filter
-		LongOpt[] longopts =  new LongOpt[sd.length];
+		LongOpt[] longopts =  new LongOpt[sd.length + 21];
 		for (int i = 0; i < sd.length; i++)
 		{
 			longopts[i] = new LongOpt(sd[i].getName(),
 				LongOpt.NO_ARGUMENT, null, 2);
 		}
+		// filter options follow the deciders; each returns its own
+		// integer
+		longopts[sd.length] = new LongOpt("threads",
+			LongOpt.REQUIRED_ARGUMENT, null, 3);
+		longopts[sd.length + 1] = new LongOpt("dirfanout",
+			LongOpt.REQUIRED_ARGUMENT, null, 4);
+		longopts[sd.length + 2] = new LongOpt("expr",
+			LongOpt.REQUIRED_ARGUMENT, null, 5);
+		longopts[sd.length + 3] = new LongOpt("passthrough",
+			LongOpt.NO_ARGUMENT, null, 6);
+		longopts[sd.length + 4] = new LongOpt("bgzf",
+			LongOpt.NO_ARGUMENT, null, 7);
+		longopts[sd.length + 5] = new LongOpt("progress",
+			LongOpt.REQUIRED_ARGUMENT, null, 8);
+		longopts[sd.length + 6] = new LongOpt("checkpoint",
+			LongOpt.REQUIRED_ARGUMENT, null, 9);
+		longopts[sd.length + 7] = new LongOpt("checkpoint-every",
+			LongOpt.REQUIRED_ARGUMENT, null, 10);
+		longopts[sd.length + 8] = new LongOpt("resume",
+			LongOpt.NO_ARGUMENT, null, 11);
+		longopts[sd.length + 9] = new LongOpt("index",
+			LongOpt.NO_ARGUMENT, null, 12);
+		longopts[sd.length + 10] = new LongOpt("store",
+			LongOpt.REQUIRED_ARGUMENT, null, 13);
+		longopts[sd.length + 11] = new LongOpt("withdrawn",
+			LongOpt.REQUIRED_ARGUMENT, null, 14);
+		longopts[sd.length + 12] = new LongOpt("accessions",
+			LongOpt.REQUIRED_ARGUMENT, null, 15);
+		longopts[sd.length + 13] = new LongOpt("unordered",
+			LongOpt.NO_ARGUMENT, null, 16);
+		longopts[sd.length + 14] = new LongOpt("inputs",
+			LongOpt.REQUIRED_ARGUMENT, null, 17);
+		longopts[sd.length + 15] = new LongOpt("shard",
+			LongOpt.REQUIRED_ARGUMENT, null, 18);
+		longopts[sd.length + 16] = new LongOpt("shard-dir",
+			LongOpt.REQUIRED_ARGUMENT, null, 19);
+		longopts[sd.length + 17] = new LongOpt("merge-shards",
+			LongOpt.REQUIRED_ARGUMENT, null, 20);
+		longopts[sd.length + 18] = new LongOpt("giant-records",
+			LongOpt.REQUIRED_ARGUMENT, null, 21);
+		longopts[sd.length + 19] = new LongOpt("save-decisions",
+			LongOpt.REQUIRED_ARGUMENT, null, 22);
+		longopts[sd.length + 20] = new LongOpt("decisions",
+			LongOpt.REQUIRED_ARGUMENT, null, 23);
 
 		/* create a Getopt object passing it:
 		   1) Error message for logging
@@ -190,6 +423,7 @@ public class SeqRecordFilter
 
 		int c;		// the option returned from g.getopt()
 		String arg;	// the arg returned from g.getOptarg()
+		String shardArg = null;	// --shard, read once all are known
 
 		//get command line options in order, run them through the switch
 		while((c = g.getopt()) != -1)
@@ -217,11 +451,9 @@ public class SeqRecordFilter
 				    if(sd[i].getName().trim().equals(
 					longopts[g.getLongind()].getName() ))
 			       	    {
-					this.decidersForThisFilterRun[
-					    this.deciderCtr] = sd[i];
-
+					// add the Decider object and
 					// increment the Decider object count
-					this.deciderCtr++;
+					addDecider(sd[i]);
 
 					// we have a Decider
 					haveDecider = true;
@@ -242,6 +474,234 @@ public class SeqRecordFilter
 			        break;
 			    }
 
+			case 3:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--threads found between a decider " +
+					"and its output location");
+			    }
+			    this.workerCount = parsePositiveInt("threads",
+				g.getOptarg());
+			    break;
+
+			case 5:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+                                	"Command line args out of order." +
+					" No writer for last decider");
+			    }
+			    addDecider(DeciderExpression.compile(
+				g.getOptarg(), expressionDeciders(sd)));
+			    haveDecider = true;
+			    break;
+
+			case 15:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--accessions found between a " +
+					"decider and its output location");
+			    }
+			    addAccessionSet(g.getOptarg(), sd);
+			    break;
+
+			case 6:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--passthrough found between a " +
+					"decider and its output location");
+			    }
+			    this.passthrough = true;
+			    break;
+
+			case 7:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--bgzf found between a " +
+					"decider and its output location");
+			    }
+			    this.bgzf = true;
+			    break;
+
+			case 12:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--index found between a decider " +
+					"and its output location");
+			    }
+			    this.index = true;
+			    break;
+
+			case 18:
+			case 19:
+			case 20:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): --" +
+					longopts[g.getLongind()].getName() +
+					" found between a decider " +
+					"and its output location");
+			    }
+			    if(c == 18)
+			    {
+				shardArg = g.getOptarg();
+			    }
+			    else if(c == 19)
+			    {
+				this.shardDir = new File(g.getOptarg());
+			    }
+			    else
+			    {
+				this.mergeShards = parsePositiveInt(
+					"merge-shards", g.getOptarg());
+			    }
+			    break;
+
+			case 13:
+			case 14:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): --" +
+					longopts[g.getLongind()].getName() +
+					" found between a decider " +
+					"and its output location");
+			    }
+			    if(c == 13)
+			    {
+				this.storeDir = g.getOptarg();
+			    }
+			    else
+			    {
+				this.withdrawnFile = g.getOptarg();
+			    }
+			    break;
+
+			case 9:
+			case 10:
+			case 11:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): --" +
+					longopts[g.getLongind()].getName() +
+					" found between a decider " +
+					"and its output location");
+			    }
+			    if(c == 9)
+			    {
+				this.checkpointFile = g.getOptarg();
+			    }
+			    else if(c == 10)
+			    {
+				this.checkpointEvery = parsePositiveInt(
+					"checkpoint-every", g.getOptarg());
+			    }
+			    else
+			    {
+				this.resume = true;
+			    }
+			    break;
+
+			case 8:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--progress found between a decider " +
+					"and its output location");
+			    }
+			    this.progressSeconds = parseInt("progress",
+				g.getOptarg(), 0, 86400);
+			    break;
+
+			case 21:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--giant-records found between a " +
+					"decider and its output location");
+			    }
+			    this.giantSize = parseInt("giant-records",
+				g.getOptarg(), 1, 2047) * 1024 * 1024;
+			    break;
+
+			case 22:
+			case 23:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): --" +
+					longopts[g.getLongind()].getName() +
+					" found between a decider " +
+					"and its output location");
+			    }
+			    if(c == 22)
+			    {
+				this.saveDecisionsDir = g.getOptarg();
+			    }
+			    else
+			    {
+				this.decisionsDir = g.getOptarg();
+			    }
+			    break;
+
+			case 4:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"--dirfanout found between a decider " +
+					"and its output location");
+			    }
+			    this.dirFanout = parseInt("dirfanout",
+				g.getOptarg(), 0, 4);
+			    break;
+
+			case 'i':
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): " +
+					"-i found between a decider " +
+					"and its output location");
+			    }
+			    addInputs(g.getOptarg());
+			    break;
+
+			case 16:
+			case 17:
+			    if(haveDecider == true)
+			    {
+				throw new IOException(
+					"Error in getargs(): --" +
+					longopts[g.getLongind()].getName() +
+					" found between a decider " +
+					"and its output location");
+			    }
+			    if(c == 16)
+			    {
+				this.unordered = true;
+			    }
+			    else
+			    {
+				addInputList(g.getOptarg());
+			    }
+			    break;
+
 			case 'a':
 			    if(haveDecider == false)
 			    {
@@ -255,11 +715,10 @@ public class SeqRecordFilter
 				// get arg (an output filename) for this option
 				arg = g.getOptarg();
 
-				// open the file in append mode and place it in
+				// note the file for append mode and place it in
 				// the seqOutput Vector parallel to its decider
 				// in the decidersForThisFilterRun array
-				this.seqOutput.add(new
-                                	BufferedLargeFileWriter(arg, true));
+				this.seqOutput.add(new OutputLocation('a', arg));
 				// we are now expecting a Decider
 				haveDecider = false;
 
@@ -279,10 +738,9 @@ public class SeqRecordFilter
                                 // get arg (an output filename) for this option
 				arg = g.getOptarg();
 
-				// open the file in overwrite mode and place it
+				// note the file for overwrite mode and place it
                                 // in the seqOutput Vector
-                                this.seqOutput.add(new
-					BufferedLargeFileWriter(arg, false));
+                                this.seqOutput.add(new OutputLocation('o', arg));
 
 				// we are now expecting a Decider
 				haveDecider = false;
@@ -302,8 +760,8 @@ public class SeqRecordFilter
 				// get arg (and output directory for this option
                                 arg = g.getOptarg();
 
-				// Create a File object, add to seqOutput Vector
-				this.seqOutput.add(new File(arg));
+				// note the directory, add to seqOutput Vector
+				this.seqOutput.add(new OutputLocation('d', arg));
 
 				// we are now expecting a Decider
                                 haveDecider = false;
@@ -335,30 +793,183 @@ public class SeqRecordFilter
 				c + " its value is: " + g.getOptarg());
 		    }
 		}
-	    }
-	    catch(IOException e1)
-            {
-                System.err.println("IOException in SeqRecordFilter.getArgs(): "
-                    + e1.getMessage());
-		System.exit(1);
-            }
-	    catch(InterruptedException e2)
-	    {
-		System.err.println(
-		    "InterruptedException in SeqRecordFilter.getArgs(): "
-                    + e2.getMessage());
-		System.exit(1);
-	    }
+
+		if(this.daemonJob && this.inputFiles.size() == 0 &&
+			this.mergeShards == 0)
+		{
+			throw new IOException("Error in getargs(): " +
+				"a daemon job requires -i or --inputs");
+		}
+
+		if(shardArg != null || this.mergeShards > 0)
+		{
+			checkShardOptions(shardArg);
+		}
+		if(shardArg != null)
+		{
+			this.shard = Shard.parse(shardArg, this.shardDir);
+			this.shard.prepare();
+			selectShardInput();
+		}
+
+		for(int i = 0; i < this.seqOutput.size(); i++)
+		{
+			OutputLocation loc = (OutputLocation)this.seqOutput.get(i);
+			if(this.shard != null && loc.mode != 'd')
+			{
+				// written to the shard directory, to be
+				// merged later
+				loc = new OutputLocation('o',
+					this.shard.outputFile(i).getPath());
+				this.seqOutput.set(i, loc);
+			}
+			this.outputPaths.add(loc.path);
+		}
+
+		if(this.index && this.bgzf)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--index cannot be used with --bgzf");
+		}
+
+		if(this.unordered && this.checkpointFile != null)
+		{
+			// there is no one input position to resume from
+			throw new IOException("Error in getargs(): " +
+				"--unordered cannot be used with --checkpoint");
+		}
+
+		// load the checkpoint to resume from, if any
+		if(this.resume && this.checkpointFile == null)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--resume requires --checkpoint");
+		}
+		if(this.checkpointFile != null)
+		{
+			this.checkpoint = new Checkpoint(
+				new File(this.checkpointFile),
+				this.checkpointEvery);
+			if(this.resume && this.checkpoint.load())
+			{
+				this.checkpoint.verify(this.inputFiles,
+					this.outputPaths,
+					DeciderExpression.withMembers(
+					this.decidersForThisFilterRun,
+					this.deciderCtr));
+				if(this.index)
+				{
+					// the records before the checkpoint
+					// would be missing from the index
+					throw new IOException(
+						"Error in getargs(): " +
+						"cannot resume a run with " +
+						"--index");
+				}
+				this.resumed = true;
+			}
+		}
+
+		if(this.withdrawnFile != null && this.storeDir == null)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--withdrawn requires --store");
+		}
+		if(this.storeDir != null)
+		{
+			if(this.resumed)
+			{
+				// the records seen before the checkpoint would
+				// be missing from the store
+				throw new IOException("Error in getargs(): " +
+					"cannot resume a run with --store");
+			}
+			this.store = new VersionStore(new File(this.storeDir),
+				this.decidersForThisFilterRun, this.deciderCtr);
+		}
+
+		if(this.saveDecisionsDir != null || this.decisionsDir != null)
+		{
+			checkDecisionOptions();
+		}
+		if(this.saveDecisionsDir != null)
+		{
+			// the records' input bytes give their offsets
+			this.passthrough = true;
+			this.decisionWriter = new DecisionIndexWriter(
+				new File(this.saveDecisionsDir), this.inputFiles,
+				Arrays.asList(sd));
+		}
+		if(this.decisionsDir != null)
+		{
+			this.decisions = new DecisionIndex(
+				new File(this.decisionsDir));
+			this.decisions.verify(this.inputFiles);
+			this.decisions.check(DeciderExpression.withMembers(
+				this.decidersForThisFilterRun, this.deciderCtr));
+			// the outputs copy the records' input bytes
+			this.passthrough = true;
+		}
+
+		if(this.giantSize > 0)
+		{
+			checkGiantDeciders();
+		}
+
+		// now that all options are known, open each output location,
+		// counting what is written to it. A merge writes its -a and -o
+		// files itself (see mergeShards()) and has no -d records
+		for(int i = 0; this.mergeShards == 0 &&
+			i < this.seqOutput.size(); i++)
+		{
+			OutputLocation loc = (OutputLocation)this.seqOutput.get(i);
+			boolean append = loc.mode == 'a';
+			if(this.resumed && loc.mode != 'd')
+			{
+				// drop what was written after the checkpoint
+				truncate(loc.path,
+					this.checkpoint.getOutputLength(i));
+				append = true;
+			}
+			RecordOutput out = openOutput(loc, append);
+			if(this.index && loc.mode != 'd')
+			{
+				out = new IndexingOutput(loc.path, append, out);
+			}
+			this.seqOutput.set(i, new MeteredOutput(loc.path, out));
+		}
 	}
 
 	public void go()
 	{
-	// Purpose: Reads sequence records
+	// Purpose: Reads sequence records from the -i input files, or
+	//	      stdin if there are none
 	//	    For each record read:
 	//	      if a Decider is true write the record using the
 	//	      corresponding writer
 	//	    Logs total number of records processed and number of
 	//	      records written by each writer
+	//	    If --threads is greater than 1, records are parsed and
+	//	      decided by that many worker threads (see FilterPipeline);
+	//	      file outputs still receive records in input order
+	//	    Record sections that no decider requires are left out of
+	//	      the text parsed into seqRec (see RecordProjector);
+	//	      outputs still receive whole records
+	//	    While it runs, progress is logged every --progress seconds
+	//	      and published through JMX (see FilterMetrics)
+	//	    With --store, records whose version is in the
+	//	      VersionStore are skipped, and the store is brought up to
+	//	      date once the outputs are closed
+	//	    With --checkpoint, a Checkpoint is taken as the run starts
+	//	      and every --checkpoint-every seconds; with --resume the
+	//	      run starts from the last one
+	//	    With --shard, only the shard's slice of the input is read;
+	//	      with --merge-shards, no input is read and the shards'
+	//	      outputs are merged instead (see Shard)
+	//	    With --save-decisions, every decider's results are saved
+	//	      for later runs; with --decisions, no input is parsed and
+	//	      the passing records are found from the saved results
+	//	      (see DecisionIndex)
         // Returns: nothing
         // Assumes: the constructors have initialized all readers and writers,
 	//	    a sequence record object, and created Decider and
@@ -377,51 +988,7 @@ public class SeqRecordFilter
 	// Throws: nothing
 	    try
 	    {
-		// track time elapsed for this filter run
-		long totalRunTimeMinutes = 0;
-		long stopTime = 0;
-		long startTime = System.currentTimeMillis();
-
-		// priming read of a sequence record
-		this.seqRec.readText(this.in);
-
-		// seqRec.getLine() returns the last line that it read when
-		// reading itself. If it returns null the last line of the last
-		// sequence record has been read.
-		while(this.seqRec.getLine() != null)
-		{
-			processRecord();
-			// read the next record
-			this.seqRec.readText(this.in);
-		}
-		// process last record
-		processRecord();
-		// Capture the stop time of this filter
-		stopTime = System.currentTimeMillis();
-
-		// Figure the run time of this filter and log it
-                totalRunTimeMinutes = ((stopTime - startTime) / 1000);
-                this.logGeneral("Total runtime in seconds: " +
-			new Long(totalRunTimeMinutes).toString() + "\n");
-
-		// log statistics from this filter run (see the method for info)
-		logStats();
-
-		// close all open readers and writers
-                this.in.close();
-                this.log.close();
-
-		// if seqOutput contains a writer (not a dir),  close it
-		for(int i = 0; i < this.deciderCtr; i++)
-		{
-			if(this.seqOutput.get(i) instanceof
-					BufferedLargeFileWriter)
-			{
-				((BufferedLargeFileWriter)(
-					this.seqOutput.get(i))).close();
-			}
-		}
-
+		run();
 	    }
             catch(IOException e1)
             {
@@ -444,9 +1011,629 @@ public class SeqRecordFilter
 
 	}
 
-	private void processRecord()
+	void run() throws IOException, InterruptedException
 	{
-	// Purpose: Apply all deciders to this.seqRec. Write sequences passing
+	// Purpose: go() for a caller that handles its own errors (see
+	//	    FilterDaemon)
+	// Throws: IOException if reading, deciding or writing fails; the
+	//	   outputs are then closed as they stand.
+	//	   InterruptedException
+
+	    boolean completed = false;
+	    FilterMetrics metrics = null;
+	    try
+	    {
+		// track time elapsed for this filter run
+		long totalRunTimeMinutes = 0;
+		long stopTime = 0;
+		long startTime = System.currentTimeMillis();
+
+		if(this.mergeShards > 0)
+		{
+			// the shards have done the filtering
+			mergeShards();
+			this.log.close();
+			completed = true;
+			return;
+		}
+		if(this.shard != null)
+		{
+			this.logGeneral("Shard " + this.shard + ": " +
+				this.inputFiles + ", from byte " +
+				this.shardStart + " of the first" +
+				(this.shardEnd < 0 ? "" : " to byte " +
+				this.shardEnd + " of the last"));
+		}
+
+		// parse only the record sections the deciders need
+		List<SeqDecider> applied = appliedDeciders();
+		this.projector = RecordProjector.forDeciders(
+			applied.toArray(new SeqDecider[applied.size()]),
+			applied.size());
+
+		// match the strings of all PatternDeciders in one pass
+		PatternMatcher.bind(applied);
+
+		// the outputs opened by getArgs()
+		Vector<RecordOutput> outputs = new Vector<RecordOutput>();
+		for(int i = 0; i < this.seqOutput.size(); i++)
+		{
+			outputs.add((RecordOutput)this.seqOutput.get(i));
+		}
+
+		metrics = new FilterMetrics(
+			this.decidersForThisFilterRun, this.deciderCtr,
+			outputs, this.workerCount);
+		metrics.start(this.log, this.progressSeconds);
+
+		if(this.checkpoint != null)
+		{
+			List<SeqDecider> used = DeciderExpression.withMembers(
+				this.decidersForThisFilterRun, this.deciderCtr);
+			if(this.resumed)
+			{
+				this.checkpoint.restoreCounts(used);
+				this.logGeneral("Resuming from checkpoint " +
+					this.checkpoint.getFile() + " at " +
+					this.checkpoint.getPosition());
+			}
+			this.checkpoint.start(this.inputFiles, outputs,
+				this.outputPaths, used, this.resumed ?
+				this.checkpoint.getPosition() : startPosition());
+		}
+
+		if(this.decisions != null)
+		{
+			// every record was decided by an earlier run
+			answerFromDecisions(metrics);
+		}
+		else if(this.workerCount > 1)
+		{
+			RecordSource source = openRecordSource();
+			new FilterPipeline(this.seqRec,
+				this.decidersForThisFilterRun, this.deciderCtr,
+				outputs, this.projector,
+				this.workerCount, metrics,
+				this.checkpoint, this.store,
+				this.decisionWriter, !this.unordered).run(source);
+			source.close();
+		}
+		else if(this.inputFiles.size() > 0 || this.shard != null ||
+			this.passthrough || this.giantSize > 0 ||
+			this.projector != null || this.checkpoint != null ||
+			this.store != null)
+		{
+			RecordSource source = openRecordSource();
+			RecordBatch batch;
+			for(int seq = 0; (batch = source.nextBatch(seq)) != null;
+				seq++)
+			{
+				List<String> records = batch.records();
+				List<RecordSpan> spans = batch.spans();
+				for(int i = 0; i < records.size(); i++)
+				{
+					String text = records.get(i);
+					RecordSpan span = spans == null ? null :
+					    spans.get(i);
+					metrics.recordsRead(1, span != null ?
+					    span.length() : text.length());
+					this.currentVersion = null;
+					if(this.store != null)
+					{
+					    // skip records written by an earlier run
+					    this.currentVersion =
+						VersionStore.versionOf(text);
+					    long stored = this.currentVersion == null ?
+						-1 : this.store.unchanged(
+						this.currentVersion);
+					    if(stored >= 0)
+					    {
+						this.store.seen(this.currentVersion,
+						    stored);
+						continue;
+					    }
+					}
+					this.seqRec.readText(this.recordReader.set(
+					    this.projector == null ?
+						text : this.projector.project(text)));
+					this.currentText = text;
+					this.currentSpan = span;
+					decideRecord();
+				}
+				if(this.checkpoint != null &&
+					this.checkpoint.due())
+				{
+					this.checkpoint.write(source.position());
+				}
+			}
+			this.currentText = null;
+			this.currentSpan = null;
+			source.close();
+		}
+		else
+		{
+			// priming read of a sequence record
+			this.seqRec.readText(this.in);
+
+			// seqRec.getLine() returns the last line that it read
+			// when reading itself. If it returns null the last line
+			// of the last sequence record has been read.
+			while(this.seqRec.getLine() != null)
+			{
+				metrics.recordsRead(1,
+					this.seqRec.getText().length());
+				decideRecord();
+				// read the next record
+				this.seqRec.readText(this.in);
+			}
+			// process last record
+			metrics.recordsRead(1, this.seqRec.getText().length());
+			decideRecord();
+		}
+		// Capture the stop time of this filter
+		stopTime = System.currentTimeMillis();
+		metrics.stop();
+
+		// Figure the run time of this filter and log it
+                totalRunTimeMinutes = ((stopTime - startTime) / 1000);
+                this.logGeneral("Total runtime in seconds: " +
+			new Long(totalRunTimeMinutes).toString() + "\n");
+
+		// log statistics from this filter run (see the method for info)
+		logStats();
+
+		// close all open readers and writers
+                this.in.close();
+		closeOutputs();
+		if(this.decisions != null)
+		{
+			this.decisions.close();
+		}
+
+		// the shard's outputs are complete; it can be merged
+		if(this.shard != null)
+		{
+			this.shard.saveCounts(DeciderExpression.withMembers(
+				this.decidersForThisFilterRun, this.deciderCtr));
+		}
+
+		// the outputs are complete; record what they hold
+		if(this.store != null)
+		{
+			this.store.finish(this.withdrawnFile);
+			this.logGeneral("Version store " + this.storeDir +
+				": " + this.store.getStored() + " accessions, " +
+				this.store.getWithdrawn() + " withdrawn");
+		}
+		// the outputs are complete; keep the decisions for later runs
+		if(this.decisionWriter != null)
+		{
+			this.decisionWriter.finish();
+			this.logGeneral("Saved decisions of " +
+				this.decisionWriter.getDeciders().size() +
+				" deciders for " +
+				this.decisionWriter.getRecords() + " records to " +
+				this.saveDecisionsDir);
+		}
+                this.log.close();
+
+		// the run is complete; there is nothing to resume
+		if(this.checkpoint != null)
+		{
+			this.checkpoint.delete();
+		}
+		completed = true;
+	    }
+	    finally
+	    {
+		if(metrics != null)
+		{
+			metrics.stop();
+		}
+		if(!completed)
+		{
+			abandonOutputs();
+		}
+	    }
+	}
+
+	private void addDecider(SeqDecider d)
+	{
+	// Purpose: Appends 'd' to decidersForThisFilterRun, growing the
+	//	    array if expressions have filled it
+
+		if(this.deciderCtr == this.decidersForThisFilterRun.length)
+		{
+			this.decidersForThisFilterRun = Arrays.copyOf(
+				this.decidersForThisFilterRun,
+				this.deciderCtr + 4);
+		}
+		this.decidersForThisFilterRun[this.deciderCtr] = d;
+		this.deciderCtr++;
+	}
+
+	private SeqDecider[] expressionDeciders(SeqDecider[] sd)
+	{
+	// Purpose: Returns the deciders an --expr may name: those in 'sd'
+	//	    and the --accessions sets given so far
+
+		SeqDecider[] all = Arrays.copyOf(sd,
+			sd.length + this.accessionSets.size());
+		for(int i = 0; i < this.accessionSets.size(); i++)
+		{
+			all[sd.length + i] = this.accessionSets.get(i);
+		}
+		return all;
+	}
+
+	private void addAccessionSet(String arg, SeqDecider[] sd)
+		throws IOException
+	{
+	// Purpose: Defines the decider given by --accessions name=file
+	// Throws: IOException if 'arg' is not name=file, the name is taken
+	//	   or the file cannot be read
+
+		int eq = arg.indexOf('=');
+		if(eq <= 0 || eq == arg.length() - 1)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--accessions requires name=file, found: " + arg);
+		}
+		String name = arg.substring(0, eq).trim();
+		SeqDecider[] known = expressionDeciders(sd);
+		for(int i = 0; i < known.length; i++)
+		{
+			if(known[i].getName().trim().equals(name))
+			{
+				throw new IOException("Error in getargs(): " +
+					"--accessions " + name + " names an " +
+					"existing decider");
+			}
+		}
+		AccessionSetDecider d = new AccessionSetDecider(name,
+			new File(arg.substring(eq + 1)));
+		this.accessionSets.add(d);
+		this.logGeneral("Accession set " + name + ": " +
+			d.getSet().size() + " ids from " + arg.substring(eq + 1));
+	}
+
+	private void addInputs(String path) throws IOException
+	{
+	// Purpose: Adds the -i file 'path', or the files matching it if
+	//	    its last element is a glob, in name order
+	// Throws: IOException if a glob matches no file
+
+		File f = new File(path);
+		String name = f.getName();
+		if(name.indexOf('*') < 0 && name.indexOf('?') < 0 &&
+			name.indexOf('[') < 0 && name.indexOf('{') < 0)
+		{
+			this.inputFiles.add(f);
+			return;
+		}
+		File dir = f.getParentFile() == null ? new File(".") :
+			f.getParentFile();
+		final PathMatcher m = FileSystems.getDefault().getPathMatcher(
+			"glob:" + name);
+		File[] matched = dir.listFiles(new FileFilter()
+			{
+				public boolean accept(File c)
+				{
+					return c.isFile() &&
+						m.matches(c.toPath().getFileName());
+				}
+			});
+		if(matched == null || matched.length == 0)
+		{
+			throw new IOException("Error in getargs(): " +
+				"no input files match " + path);
+		}
+		Arrays.sort(matched);
+		for(int i = 0; i < matched.length; i++)
+		{
+			this.inputFiles.add(f.getParentFile() == null ?
+				new File(matched[i].getName()) : matched[i]);
+		}
+	}
+
+	private void addInputList(String listFile) throws IOException
+	{
+	// Purpose: Adds the input files named in 'listFile' (--inputs)
+	// Throws: IOException if it cannot be read
+
+		BufferedReader in = new BufferedReader(new FileReader(listFile));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.length() > 0 && line.charAt(0) != '#')
+				{
+					addInputs(line);
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void checkShardOptions(String shardArg) throws IOException
+	{
+	// Purpose: Checks the options given with --shard or --merge-shards
+	// Throws: IOException if they cannot be used together
+
+		if(this.shardDir == null)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--shard and --merge-shards require --shard-dir");
+		}
+		if(shardArg != null && this.mergeShards > 0)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--shard cannot be used with --merge-shards");
+		}
+		if(shardArg != null && this.inputFiles.size() == 0)
+		{
+			// stdin cannot be divided
+			throw new IOException("Error in getargs(): " +
+				"--shard requires -i or --inputs");
+		}
+		if(this.mergeShards > 0 && (this.inputFiles.size() > 0 ||
+			this.checkpointFile != null))
+		{
+			throw new IOException("Error in getargs(): " +
+				"--merge-shards reads no input; it cannot be " +
+				"used with -i, --inputs or --checkpoint");
+		}
+		if(this.storeDir != null || this.index)
+		{
+			// each shard would see only its own records
+			throw new IOException("Error in getargs(): " +
+				"--store and --index cannot be used with " +
+				"--shard or --merge-shards");
+		}
+	}
+
+	private void selectShardInput() throws IOException
+	{
+	// Purpose: Cuts inputFiles down to the files of this shard's slice,
+	//	    noting where in the first it starts and where in the
+	//	    last it ends
+	// Throws: IOException if an input file cannot be read
+
+		InputPosition[] range = this.shard.range(this.inputFiles);
+		InputPosition from = range[0];
+		InputPosition to = range[1];
+		int last = to.offset == 0 ? to.file : to.file + 1;
+		this.inputFiles = from.file < last ? new ArrayList<File>(
+			this.inputFiles.subList(from.file, last)) :
+			new ArrayList<File>();
+		this.shardStart = from.offset;
+		this.shardEnd = to.offset == 0 ? -1 : to.offset;
+	}
+
+	private void mergeShards() throws IOException
+	{
+	// Purpose: Writes the -a and -o outputs of the --merge-shards
+	//	    shards to their files, logs the shards' combined
+	//	    counters, and removes the shards' files
+	// Throws: IOException if a shard has not completed
+
+		// check every shard before writing anything
+		Shard.addCounts(this.shardDir, this.mergeShards,
+			DeciderExpression.withMembers(
+			this.decidersForThisFilterRun, this.deciderCtr));
+		for(int i = 0; i < this.seqOutput.size(); i++)
+		{
+			OutputLocation loc = (OutputLocation)this.seqOutput.get(i);
+			if(loc.mode != 'd')
+			{
+				Shard.mergeOutput(this.shardDir, this.mergeShards,
+					i, loc.path, loc.mode == 'a');
+			}
+		}
+		this.logGeneral("Merged " + this.mergeShards + " shards from " +
+			this.shardDir + "\n");
+		logStats();
+		Shard.remove(this.shardDir, this.mergeShards,
+			this.seqOutput.size());
+	}
+
+	private RecordSource openRecordSource() throws IOException
+	{
+	// Purpose: Creates the source of records for the pipeline or the
+	//	    -i input loop
+	// Returns: a MappedRecordSource over one -i file, a
+	//	    FanInRecordSource over several, limited to the shard's
+	//	    slice with --shard, or if there are none a source over
+	//	    stdin: a ByteStreamRecordSource for --passthrough,
+	//	    --checkpoint or --giant-records, otherwise a
+	//	    StreamRecordSource. When resuming, the source is at the
+	//	    checkpoint's position
+	// Throws: IOException if the input does not reach the checkpoint
+
+		RecordSource source;
+		if(this.inputFiles.size() > 1)
+		{
+			FanInRecordSource fanIn = new FanInRecordSource(
+				this.inputFiles, CODEC_THREADS, !this.unordered,
+				MappedRecordSource.DEFAULT_CHUNK_SIZE,
+				this.passthrough, codecPool());
+			fanIn.setRange(this.shardStart, this.shardEnd);
+			fanIn.setGiantSize(this.giantSize);
+			source = fanIn;
+		}
+		else if(this.inputFiles.size() > 0 || this.shard != null)
+		{
+			// a shard's slice may hold no files
+			MappedRecordSource mapped = new MappedRecordSource(
+				this.inputFiles,
+				MappedRecordSource.DEFAULT_CHUNK_SIZE,
+				this.passthrough, codecPool());
+			mapped.setRange(this.shardStart, this.shardEnd);
+			mapped.setGiantSize(this.giantSize);
+			source = mapped;
+		}
+		else if(this.passthrough || this.checkpoint != null ||
+			this.giantSize > 0)
+		{
+			// a checkpoint needs byte positions, giant records
+			// their bytes
+			ByteStreamRecordSource stream = new ByteStreamRecordSource(
+				System.in, STDIN_BLOCK_SIZE, this.passthrough);
+			stream.setGiantSize(this.giantSize);
+			source = stream;
+		}
+		else
+		{
+			source = new StreamRecordSource(this.in);
+		}
+		InputPosition at = this.resumed ?
+			this.checkpoint.getPosition() : null;
+		if(at != null && (at.file != 0 || at.offset != this.shardStart))
+		{
+			// a checkpoint taken as the run started needs no
+			// seek; an empty shard has nothing to seek in
+			source.seek(at);
+		}
+		return source;
+	}
+
+	private InputPosition startPosition()
+		// Purpose: where the run's input starts: the start of the
+		//	    first file, or for a shard, where its slice starts
+	{
+		return new InputPosition(0, this.shardStart);
+	}
+
+	private RecordOutput openOutput(OutputLocation loc, boolean append)
+		throws IOException, InterruptedException
+	{
+	// Purpose: Opens the output location given by -a, -o or -d
+	// Returns: an AsyncFileOutput, a BgzfOutput for --bgzf, a
+	//	    ChannelOutput for --passthrough, or a DirectoryOutput
+	// Throws: IOException, InterruptedException
+
+		if(loc.mode == 'd')
+		{
+			return new DirectoryOutput(new File(loc.path),
+				this.dirFanout, DirectoryOutput.DEFAULT_WRITERS);
+		}
+		if(this.bgzf)
+		{
+			return new BgzfOutput(loc.path, append,
+				codecPool(), 2 * CODEC_THREADS);
+		}
+		if(this.passthrough)
+		{
+			return new ChannelOutput(loc.path, append);
+		}
+		return new AsyncFileOutput(loc.path, append);
+	}
+
+	private static void truncate(String path, long length)
+		throws IOException
+	{
+	// Purpose: Cuts the file 'path' back to 'length' bytes
+	// Throws: IOException if it is shorter than that
+
+		RandomAccessFile f = new RandomAccessFile(path, "rw");
+		try
+		{
+			if(f.length() < length)
+			{
+				throw new IOException(path + " is shorter than at " +
+					"the checkpoint (" + f.length() + " < " +
+					length + " bytes)");
+			}
+			f.setLength(length);
+		}
+		finally
+		{
+			f.close();
+		}
+	}
+
+	private synchronized ExecutorService codecPool()
+	{
+	// Purpose: Returns the thread pool shared by BGZF input and output,
+	//	    creating it on first use
+	// Notes: its threads are daemons, so an unused pool does not keep
+	//	  the JVM alive
+
+		if(this.codecPool == null)
+		{
+			this.codecPool = Executors.newFixedThreadPool(
+				CODEC_THREADS, new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+					{
+						Thread t = new Thread(r,
+							"seqfilter-codec");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return this.codecPool;
+	}
+
+	void closeOutputs() throws IOException, InterruptedException
+	{
+	// Purpose: Closes each output writer, and waits for each output
+	//	    directory's writes to finish
+	// Throws: IOException, InterruptedException
+
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			((RecordOutput)this.seqOutput.get(i)).close();
+		}
+		if(this.codecPool != null)
+		{
+			this.codecPool.shutdown();
+		}
+	}
+
+	void abandonOutputs()
+	{
+	// Purpose: Closes the outputs of a run that has failed, as far as
+	//	    they will close, so a FilterDaemon does not keep their
+	//	    files and threads
+	// Notes: errors are ignored; the run's own error is reported
+
+		for(int i = 0; i < this.seqOutput.size(); i++)
+		{
+			if(!(this.seqOutput.get(i) instanceof RecordOutput))
+			{
+				continue;
+			}
+			try
+			{
+				((RecordOutput)this.seqOutput.get(i)).close();
+			}
+			catch(IOException e)
+			{
+				// as it stands
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if(this.codecPool != null)
+		{
+			this.codecPool.shutdownNow();
+		}
+	}
+
+	// package access so the benchmarks can time it per record
+	void processRecord()
+	{
+	// Purpose: Apply all deciders to this.seqRec. Write sequences passing
 	//           decider(s) to the decider's outputLocation
         // Returns: nothing
         // Assumes: the constructors have initialized all readers and writers,
@@ -463,33 +1650,62 @@ public class SeqRecordFilter
 
 	    try
 	    {
+		decideRecord();
+	    }
+	    catch(InterruptedException e2)
+            {
+                System.err.println(
+                    "InterruptedException in SeqRecordFilter.processRecord(): "
+                    + e2.getMessage());
+                System.exit(1);
+            }
+	    catch (IOException e3)
+	    {
+		System.err.println(
+		    "IOException in SeqRecordFilter.processRecord(): "
+		    + e3.getMessage());
+		System.exit(1);
+	    }
+	}
+
+	private void decideRecord() throws IOException, InterruptedException
+	{
+	// Purpose: processRecord() for run(), which handles its errors
+	// Throws: IOException, InterruptedException
+
+		// a new record; no decider has seen it yet
+		SeqDecider.recordLoaded();
+
+		// the record as handed to the outputs; made once when the
+		// first decider passes it
+		FilteredRecord passed = null;
+
+		// with --store, bit i is set if decider i passes the record
+		long results = 0;
+
 	        // loop through the Deciders for this filter run
             	for(int i = 0; i < this.deciderCtr; i++)
             	{
                     // if Decider returns true for seqRec
-                    if(this.decidersForThisFilterRun[i].isA(
+                    if(DecisionMemo.isA(this.decidersForThisFilterRun[i],
                             this.seqRec) == true)
                     {
-			// if seqOutput[i] is type File then we write
-			// the seqRec text to its own file
-			if(this.seqOutput.get(i) instanceof File)
-			{
-			    // write text to a new file named seqIdVersion in
-			    // the output directory for the decider
-			    this.singleSeqWriter = new
-			        BufferedLargeFileWriter(
-			   	    ((File)(this.seqOutput.get(i))).getPath() +
-				    File.separator +
-				    this.seqRec.getVersion(), false);
-			    this.singleSeqWriter.write(this.seqRec.getText());
-			    this.singleSeqWriter.close();
-			}
-			// then it is a writer, simply write
-			else
+			results |= 1L << i;
+
+			// with --passthrough, or for a giant record, the
+			// record's input bytes are written, otherwise its
+			// text. A directory output
+			// writes it to a new file named seqIdVersion
+			if(passed == null)
 			{
-			    ((BufferedLargeFileWriter)this.seqOutput.get(i)).
-                                write(this.seqRec.getText());
+			    passed = this.currentSpan != null ?
+				new FilteredRecord(this.seqRec.getVersion(),
+				    null, this.currentSpan) :
+				new FilteredRecord(this.seqRec.getVersion(),
+				    this.projector != null ? this.currentText :
+				    this.seqRec.getText(), null);
 			}
+			((RecordOutput)this.seqOutput.get(i)).write(passed);
 		    }
 		    // DEBUG
 		    //else
@@ -497,21 +1713,60 @@ public class SeqRecordFilter
 		    //	System.out.println((this.seqRec.getSeqIds()).get(0));
 		    //}
 		}
-	    }
-	    catch(InterruptedException e2)
-            {
-                System.err.println(
-                    "InterruptedException in SeqRecordFilter.processRecord(): "
-                    + e2.getMessage());
-                System.exit(1);
-            }
-	    catch (IOException e3)
-	    {
-		System.err.println(
-		    "InterruptedException in SeqRecordFilter.processRecord(): "
-		    + e3.getMessage());
-		System.exit(1);
-	    }
+		if(this.store != null)
+		{
+		    this.store.seen(this.currentVersion != null ?
+			this.currentVersion : this.seqRec.getVersion(), results);
+		}
+		if(this.decisionWriter != null)
+		{
+		    this.decisionWriter.add(this.currentSpan,
+			this.seqRec.getVersion(),
+			this.decisionWriter.decide(this.seqRec));
+		}
+	}
+
+	private void answerFromDecisions(FilterMetrics metrics)
+		throws IOException, InterruptedException
+	{
+	// Purpose: Writes the records each decider passes, found from the
+	//	    --decisions bitmaps rather than by reading the input
+	// Effects: adds the records passed to each decider's counters, as
+	//	    if it had decided every saved record
+	// Throws: IOException, InterruptedException
+
+		int records = this.decisions.size();
+		DecisionBitmap[] passed = new DecisionBitmap[this.deciderCtr];
+		DecisionBitmap any = new DecisionBitmap();
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			passed[i] = this.decisions.decide(
+				this.decidersForThisFilterRun[i]);
+			this.decidersForThisFilterRun[i].addCounts(records,
+				passed[i].cardinality());
+			any = any.or(passed[i]);
+		}
+
+		// the next record each decider passes
+		int[] next = new int[this.deciderCtr];
+		for(int i = 0; i < this.deciderCtr; i++)
+		{
+			next[i] = passed[i].nextSetBit(0);
+		}
+		for(int r = any.nextSetBit(0); r >= 0; r = any.nextSetBit(r + 1))
+		{
+			// one FilteredRecord serves every output
+			FilteredRecord rec = this.decisions.record(r);
+			metrics.recordsRead(1, rec.size());
+			for(int i = 0; i < this.deciderCtr; i++)
+			{
+				if(next[i] == r)
+				{
+					((RecordOutput)this.seqOutput.get(i)).write(rec);
+					next[i] = passed[i].nextSetBit(r + 1);
+				}
+			}
+		}
 	}
 
 	private void logStats() throws IOException
@@ -529,15 +1784,171 @@ public class SeqRecordFilter
 				"\n");
 			this.log.write("    Total records: ");
 			this.log.write(
-				this.decidersForThisFilterRun[i].getAllCtr() +
+				this.decidersForThisFilterRun[i].getAllCount() +
 				"\n");
 			this.log.write(
 				"    Records for this filter: ");
 			this.log.write(
-				this.decidersForThisFilterRun[i].getTrueCtr() +
+				this.decidersForThisFilterRun[i].getTrueCount() +
 				 "\n");
+			if(this.decidersForThisFilterRun[i] instanceof
+				DeciderExpression)
+			{
+				this.log.write("    Final evaluation order: ");
+				this.log.write(((DeciderExpression)
+					this.decidersForThisFilterRun[i]).
+					getEvaluationOrder() + "\n");
+			}
+			if(this.store != null)
+			{
+				this.log.write("    Unchanged records for " +
+					"this filter: " +
+					this.store.getUnchangedPasses(i) + "\n");
+			}
 			this.log.write("\n");
 		}
+		if(this.store != null)
+		{
+			this.log.write("Unchanged records skipped: " +
+				this.store.getUnchanged() + "\n");
+			if(!this.store.hasResults())
+			{
+				this.log.write("    (the store was written by " +
+					"other deciders; every record was " +
+					"decided)\n");
+			}
+			this.log.write("\n");
+		}
+	}
+
+	private void checkGiantDeciders() throws IOException
+	{
+	//
+	// Purpose: check that a giant record's header is all the deciders
+	//	    need
+	// Throws: IOException if a decider needs the features or sequence
+
+		List<SeqDecider> applied = appliedDeciders();
+		for(int i = 0; i < applied.size(); i++)
+		{
+			Set<RecordSection> needs = applied.get(i).
+				getRequiredSections();
+			if(needs.contains(RecordSection.FEATURES) ||
+				needs.contains(RecordSection.SEQUENCE))
+			{
+				throw new IOException("Error in getargs(): " +
+					"--giant-records decides records from " +
+					"their headers, but " +
+					applied.get(i).getName() +
+					" needs their features or sequence");
+			}
+		}
+	}
+
+	private List<SeqDecider> appliedDeciders()
+	{
+	//
+	// Purpose: Lists every decider applied to a record: the run's
+	//	    deciders and those their expressions name (see
+	//	    DeciderExpression.withMembers()), and with
+	//	    --save-decisions every decider it saves
+
+		List<SeqDecider> applied = DeciderExpression.withMembers(
+			this.decidersForThisFilterRun, this.deciderCtr);
+		if(this.decisionWriter != null)
+		{
+			List<SeqDecider> saved = this.decisionWriter.getDeciders();
+			for(int i = 0; i < saved.size(); i++)
+			{
+				if(!applied.contains(saved.get(i)))
+				{
+					applied.add(saved.get(i));
+				}
+			}
+		}
+		return applied;
+	}
+
+	private void checkDecisionOptions() throws IOException
+	{
+	//
+	// Purpose: Checks the options given with --save-decisions or
+	//	    --decisions
+	// Throws: IOException if they cannot be used together
+
+		if(this.saveDecisionsDir != null && this.decisionsDir != null)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--save-decisions cannot be used with --decisions");
+		}
+		if(this.inputFiles.size() == 0)
+		{
+			// records are found again by their offsets
+			throw new IOException("Error in getargs(): " +
+				"--save-decisions and --decisions require -i " +
+				"or --inputs");
+		}
+		if(this.storeDir != null || this.shard != null ||
+			this.mergeShards > 0)
+		{
+			// some records would not be decided, or not be in
+			// the input
+			throw new IOException("Error in getargs(): " +
+				"--save-decisions and --decisions cannot be used " +
+				"with --store, --shard or --merge-shards");
+		}
+		if(this.saveDecisionsDir != null && this.unordered)
+		{
+			// the records are numbered in input order
+			throw new IOException("Error in getargs(): " +
+				"--save-decisions cannot be used with --unordered");
+		}
+		if(this.saveDecisionsDir != null && this.resumed)
+		{
+			// the records before the checkpoint would be missing
+			throw new IOException("Error in getargs(): " +
+				"cannot resume a run with --save-decisions");
+		}
+		if(this.decisionsDir != null && this.checkpointFile != null)
+		{
+			throw new IOException("Error in getargs(): " +
+				"--decisions cannot be used with --checkpoint");
+		}
+	}
+
+	private static int parsePositiveInt(String option, String value)
+		throws IOException
+	{
+	//
+	// Purpose: Parses 'value', the argument of --'option'
+	// Throws: IOException if 'value' is not a positive integer
+
+		return parseInt(option, value, 1, Integer.MAX_VALUE);
+	}
+
+	private static int parseInt(String option, String value, int min,
+		int max) throws IOException
+	{
+	//
+	// Purpose: Parses 'value', the argument of --'option'
+	// Throws: IOException if 'value' is not an integer from 'min' to
+	//	   'max'
+
+		try
+		{
+			int n = Integer.parseInt(value.trim());
+			if(n >= min && n <= max)
+			{
+				return n;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// reported below
+		}
+		throw new IOException("Error in getargs(): --" + option +
+			" requires an integer from " + min + " to " + max +
+			", found: " + value);
 	}
 
 	private void logGeneral(String s) throws IOException
@@ -568,16 +1979,131 @@ public class SeqRecordFilter
 	// the input file reader object
 	private BufferedReader in;
 
+	// input files given with -i; when empty records are read from 'in'
+	private List<File> inputFiles = new ArrayList<File>();
+
+	// number of threads that parse and decide records (--threads)
+	private int workerCount = 1;
+
+	// levels of hashed subdirectories under each -d directory
+	// (--dirfanout)
+	private int dirFanout = 0;
+
 	// Decider objects for deciders requested on the command line
 	private SeqDecider[] decidersForThisFilterRun;
 
-	// Vector holds filewriters or directories which correspond, by index,
-	// to 'decidersForThisFilterRun'
-	private Vector seqOutput = new Vector();
+	// Vector holds RecordOutputs which correspond, by index, to
+	// 'decidersForThisFilterRun'. While getArgs() parses it holds the
+	// OutputLocations they will be opened from
+	private Vector<Object> seqOutput = new Vector<Object>();
+
+	// true to write records' input bytes (--passthrough)
+	private boolean passthrough = false;
+
+	// the input bytes of the record in seqRec when passing through,
+	// or when it is a giant record
+	private RecordSpan currentSpan;
+
+	// records over this many bytes are giant (--giant-records); 0 for
+	// none
+	private int giantSize = 0;
+
+	// cuts records down to the sections the deciders need before they
+	// are parsed; null when the deciders need every section
+	private RecordProjector projector;
+
+	// the unprojected text of the record in seqRec when projecting
+	private String currentText;
+
+	// loads each -i record into seqRec
+	private RecordTextReader recordReader = new RecordTextReader();
+
+	// true to index -a and -o files (--index)
+	private boolean index = false;
+
+	// --checkpoint file, --checkpoint-every seconds and --resume
+	private String checkpointFile;
+	private int checkpointEvery = Checkpoint.DEFAULT_EVERY_SECONDS;
+	private boolean resume = false;
+
+	// takes checkpoints; null without --checkpoint
+	private Checkpoint checkpoint;
 
-	// used when a decider's output location is a directory. This writer
-	// is reused to write individual files for each sequence passing that
-	// decider to that directory
-	private BufferedLargeFileWriter singleSeqWriter;
+	// true if this run goes on from a loaded checkpoint
+	private boolean resumed = false;
+
+	// true to write records in the order they are decided (--unordered)
+	private boolean unordered = false;
+
+	// deciders defined by --accessions
+	private List<AccessionSetDecider> accessionSets =
+		new ArrayList<AccessionSetDecider>();
+
+	// --store directory and --withdrawn file
+	private String storeDir;
+	private String withdrawnFile;
+
+	// the version store; null without --store
+	private VersionStore store;
+
+	// --save-decisions and --decisions directories
+	private String saveDecisionsDir;
+	private String decisionsDir;
+
+	// saves this run's decisions; null without --save-decisions
+	private DecisionIndexWriter decisionWriter;
+
+	// decisions saved by an earlier run; null without --decisions
+	private DecisionIndex decisions;
+
+	// seqid.version of the record being processed, when found without
+	// parsing it (see VersionStore.versionOf())
+	private String currentVersion;
+
+	// --shard-dir, and the shard this run filters; null without --shard
+	private File shardDir;
+	private Shard shard;
+
+	// where the shard's slice starts in its first input file, and ends
+	// in its last (-1 for the end of the file); see Shard
+	private long shardStart = 0;
+	private long shardEnd = -1;
+
+	// --merge-shards N; 0 without it
+	private int mergeShards = 0;
+
+	// true for a FilterDaemon job, which has no stdin
+	private boolean daemonJob = false;
+
+	// the -a, -o and -d paths, parallel to seqOutput
+	private List<String> outputPaths = new ArrayList<String>();
+
+	// seconds between progress lines in the log; 0 for none
+	private int progressSeconds = FilterMetrics.DEFAULT_PROGRESS_SECONDS;
+
+	// true to write -a and -o files BGZF compressed (--bgzf)
+	private boolean bgzf = false;
+
+	// threads that inflate BGZF input and deflate BGZF output
+	private ExecutorService codecPool;
+	private static final int CODEC_THREADS =
+		Runtime.getRuntime().availableProcessors();
+
+	// bytes read from stdin at a time by --passthrough runs
+	private static final int STDIN_BLOCK_SIZE = 4 * 1024 * 1024;
+
+	// an output location named on the command line
+	private static class OutputLocation
+	{
+		OutputLocation(char mode, String path)
+		{
+			this.mode = mode;
+			this.path = path;
+		}
+
+		// 'a', 'o' or 'd'
+		final char mode;
+		final String path;
+	}
 
 }
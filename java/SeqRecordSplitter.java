@@ -0,0 +1,79 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+public class SeqRecordSplitter
+{
+	//Concept:
+        //        IS: an object that splits a GenBank or SwissProt flat file
+	//	       stream into the text of its individual sequence records
+	//	       without parsing them
+        //       HAS: a reader for the flat file stream
+        //      DOES: returns the text of each record, up to and including
+	//	       its "//" terminator line, in input order
+        // Implementation: lines are read with BufferedReader.readLine() and
+	//	       rejoined with "\n", so the text handed to
+	//	       SeqRecord.readText() is the same line sequence it would
+	//	       have read from the stream itself
+
+	//
+	//constructors
+	//
+
+	public SeqRecordSplitter(BufferedReader in)
+		// Purpose: Construct a splitter reading from 'in'
+	{
+		this.in = in;
+	}
+
+	//
+	//methods:
+	//
+
+	public String nextRecord() throws IOException
+		// Purpose: read the text of the next sequence record
+		// Returns: the record text, or null at end of input
+		// Assumes: nothing
+		// Effects: reads lines from the input stream
+		// Throws: IOException
+		// Notes: text after the last terminator that contains only
+		//	  white space is not a record and is discarded
+	{
+		StringBuffer text = new StringBuffer(INITIAL_RECORD_SIZE);
+		boolean haveContent = false;
+		String line;
+
+		while((line = this.in.readLine()) != null)
+		{
+			text.append(line).append('\n');
+			if(line.trim().length() > 0)
+			{
+				haveContent = true;
+			}
+			if(line.startsWith(TERMINATOR))
+			{
+				return text.toString();
+			}
+		}
+		// end of input; return an unterminated last record if any
+		if(haveContent)
+		{
+			return text.toString();
+		}
+		return null;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the line that ends every GenBank and SwissProt record
+	public static final String TERMINATOR = "//";
+
+	// starting capacity of the record text buffer; most records are
+	// a few kilobytes
+	private static final int INITIAL_RECORD_SIZE = 8192;
+
+	// the flat file stream
+	private BufferedReader in;
+}
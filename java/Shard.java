@@ -0,0 +1,346 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+class Shard
+{
+	//Concept:
+        //        IS: one of N slices of a filter run's -i input, so the run
+	//	       can be split across processes or machines (--shard k/N)
+	//	       and put back together (--merge-shards N)
+        //       HAS: its number k (1 to N), N, and the shard directory
+	//	       shared by all the shards of the run
+        //      DOES: finds its slice of the input; names the files its -a
+	//	       and -o outputs are written to in the shard directory;
+	//	       saves its decider counters there when it completes, and
+	//	       reads them back for the merge
+        // Implementation: the -i files are taken as one stream of bytes,
+	//	       T long, and shard k gets from boundary((k - 1) * T / N)
+	//	       to boundary(k * T / N), where boundary(g) is the start
+	//	       of the first record at or after byte g. The shards are
+	//	       therefore disjoint and cover the input, and each is a
+	//	       contiguous run of records in input order, so the -a and
+	//	       -o outputs of a single run are the shards' outputs one
+	//	       after the other. A gzip file cannot be entered part way,
+	//	       so it belongs whole to the shard its first byte falls
+	//	       in. -d outputs are written straight to their directories,
+	//	       since the shards write different files. Each shard's
+	//	       directory is dir/shard-k; its counters are saved last,
+	//	       so their presence shows the shard completed.
+
+	//
+	//constructors
+	//
+
+	Shard(int index, int count, File dir)
+	{
+		this.index = index;
+		this.count = count;
+		this.dir = dir;
+	}
+
+	//
+	//methods:
+	//
+
+	static Shard parse(String arg, File dir) throws IOException
+	{
+	// Purpose: read the argument of --shard, "k/N"
+	// Throws: IOException unless 1 <= k <= N
+
+		int slash = arg.indexOf('/');
+		try
+		{
+			if(slash > 0)
+			{
+				int k = Integer.parseInt(arg.substring(0, slash).trim());
+				int n = Integer.parseInt(arg.substring(slash + 1).trim());
+				if(k >= 1 && k <= n)
+				{
+					return new Shard(k, n, dir);
+				}
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			// reported below
+		}
+		throw new IOException("Error in getargs(): --shard requires " +
+			"k/N with 1 <= k <= N, found: " + arg);
+	}
+
+	InputPosition[] range(List<File> files) throws IOException
+	{
+	// Purpose: find this shard's slice of 'files'
+	// Returns: its start and end, as positions in 'files'; an end at
+	//	    offset 0 of file i ends the slice with file i - 1
+	// Throws: IOException
+
+		long[] starts = new long[files.size() + 1];
+		for(int i = 0; i < files.size(); i++)
+		{
+			starts[i + 1] = starts[i] + files.get(i).length();
+		}
+		long total = starts[files.size()];
+		return new InputPosition[] {
+			boundary(files, starts, total * (this.index - 1) / this.count),
+			boundary(files, starts, total * this.index / this.count) };
+	}
+
+	File outputFile(int i)
+		// Purpose: the file output 'i' (-a or -o) is written to
+	{
+		return outputFile(this.dir, this.index, i);
+	}
+
+	static File outputFile(File dir, int index, int i)
+	{
+		return new File(shardDir(dir, index), "output-" + i);
+	}
+
+	void prepare() throws IOException
+		// Purpose: create this shard's directory, removing what an
+		//	    earlier attempt left in it
+	{
+		File d = shardDir(this.dir, this.index);
+		if(!d.isDirectory() && !d.mkdirs())
+		{
+			throw new IOException("Cannot create " + d);
+		}
+		Files.deleteIfExists(statsFile(this.dir, this.index).toPath());
+	}
+
+	void saveCounts(List<SeqDecider> deciders) throws IOException
+		// Purpose: save the counters of 'deciders' (the run's deciders
+		//	    and the members of its expressions), marking the
+		//	    shard complete
+	{
+		Properties p = new Properties();
+		p.setProperty("shard", this.index + "/" + this.count);
+		p.setProperty("deciders", String.valueOf(deciders.size()));
+		for(int i = 0; i < deciders.size(); i++)
+		{
+			SeqDecider d = deciders.get(i);
+			p.setProperty("decider." + i, d.getName());
+			p.setProperty("decider." + i + ".all",
+				String.valueOf(d.getAllCount()));
+			p.setProperty("decider." + i + ".true",
+				String.valueOf(d.getTrueCount()));
+		}
+		File f = statsFile(this.dir, this.index);
+		File tmp = new File(f.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try
+		{
+			p.store(out, "SeqRecordFilter shard counters");
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(tmp.toPath(), f.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	static void addCounts(File dir, int count, List<SeqDecider> deciders)
+		throws IOException
+	{
+	// Purpose: add the saved counters of every shard to 'deciders', as
+	//	    passed to saveCounts()
+	// Throws: IOException if a shard has not completed or was run with
+	//	   other deciders
+
+		int n = deciders.size();
+		long[][] all = new long[count][n];
+		long[][] trues = new long[count][n];
+		for(int k = 1; k <= count; k++)
+		{
+			File f = statsFile(dir, k);
+			if(!f.exists())
+			{
+				throw new IOException("Shard " + k + "/" + count +
+					" has not completed: no " + f);
+			}
+			Properties p = new Properties();
+			InputStream in = new FileInputStream(f);
+			try
+			{
+				p.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			if(!(k + "/" + count).equals(
+				p.getProperty("shard")) ||
+				!String.valueOf(n).equals(
+				p.getProperty("deciders")))
+			{
+				throw new IOException(f + " is not shard " + k +
+					"/" + count + " of this run");
+			}
+			for(int i = 0; i < n; i++)
+			{
+				String name = deciders.get(i).getName();
+				if(!name.equals(
+					p.getProperty("decider." + i)))
+				{
+					throw new IOException("Shard " + k + " ran " +
+						"decider " + p.getProperty("decider." +
+						i) + ", not " + name);
+				}
+				try
+				{
+					all[k - 1][i] = Long.parseLong(p.getProperty(
+						"decider." + i + ".all"));
+					trues[k - 1][i] = Long.parseLong(p.getProperty(
+						"decider." + i + ".true"));
+				}
+				catch(NumberFormatException e)
+				{
+					throw new IOException(f + " is not a shard " +
+						"counter file");
+				}
+			}
+		}
+		// every shard checks out; now count
+		for(int k = 0; k < count; k++)
+		{
+			for(int i = 0; i < n; i++)
+			{
+				deciders.get(i).addCounts(all[k][i], trues[k][i]);
+			}
+		}
+	}
+
+	static void mergeOutput(File dir, int count, int i, String path,
+		boolean append) throws IOException
+	{
+	// Purpose: write the shards' files for output 'i' one after the
+	//	    other to 'path', appending or overwriting
+	// Throws: IOException
+
+		FileChannel out = FileChannel.open(Paths.get(path),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			append ? StandardOpenOption.APPEND :
+			StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			for(int k = 1; k <= count; k++)
+			{
+				FileChannel in = FileChannel.open(
+					outputFile(dir, k, i).toPath());
+				try
+				{
+					long size = in.size();
+					long done = 0;
+					while(done < size)
+					{
+						done += in.transferTo(done, size - done,
+							out);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			out.force(false);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	static void remove(File dir, int count, int outputs)
+		throws IOException
+		// Purpose: delete the shards' files once they are merged
+	{
+		for(int k = 1; k <= count; k++)
+		{
+			for(int i = 0; i < outputs; i++)
+			{
+				Files.deleteIfExists(outputFile(dir, k, i).toPath());
+			}
+			Files.deleteIfExists(statsFile(dir, k).toPath());
+			Files.deleteIfExists(shardDir(dir, k).toPath());
+		}
+	}
+
+	int getIndex()
+	{
+		return this.index;
+	}
+
+	int getCount()
+	{
+		return this.count;
+	}
+
+	public String toString()
+	{
+		return this.index + "/" + this.count;
+	}
+
+	private static InputPosition boundary(List<File> files, long[] starts,
+		long g) throws IOException
+		// Purpose: find the start of the first record at or after byte
+		//	    'g' of the input; see the class comment
+	{
+		int i = 0;
+		while(i < files.size() && starts[i + 1] <= g)
+		{
+			i++;
+		}
+		if(i == files.size() || g == starts[i])
+		{
+			return new InputPosition(i, 0);
+		}
+		FileChannel ch = FileChannel.open(files.get(i).toPath());
+		try
+		{
+			byte[] header = new byte[Bgzf.HEADER_SIZE];
+			int n = ch.read(ByteBuffer.wrap(header), 0);
+			long size = ch.size();
+			if(Bgzf.isGzip(header, n))
+			{
+				return new InputPosition(i + 1, 0);
+			}
+			long end = RecordBoundaries.findRecordEnd(ch,
+				g - starts[i], size);
+			return end >= size ? new InputPosition(i + 1, 0) :
+				new InputPosition(i, end);
+		}
+		finally
+		{
+			ch.close();
+		}
+	}
+
+	private static File shardDir(File dir, int index)
+	{
+		return new File(dir, "shard-" + index);
+	}
+
+	private static File statsFile(File dir, int index)
+	{
+		return new File(shardDir(dir, index), "counters.properties");
+	}
+
+	//
+	//instance variables:
+	//
+
+	// this is shard 'index' of 'count', numbered from 1
+	private int index;
+	private int count;
+
+	// the shard directory (--shard-dir)
+	private File dir;
+}
@@ -0,0 +1,79 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+
+class SinkOutput implements RecordOutput
+{
+	//Concept:
+        //        IS: the output location of one of a FilterJob's deciders
+        //       HAS: the application's RecordSink
+        //      DOES: hands each passing record to the sink, and tells it
+	//	       how the job ended
+        // Implementation: a FilterJob never passes records through as
+	//	       bytes, so every record has its text
+
+	//
+	//constructors
+	//
+
+	SinkOutput(RecordSink sink)
+	{
+		this.sink = sink;
+	}
+
+	//
+	//methods:
+	//
+
+	public void write(FilteredRecord r)
+		throws IOException, InterruptedException
+	{
+		this.sink.write(r.version, r.text);
+	}
+
+	public void write(List<FilteredRecord> records)
+		throws IOException, InterruptedException
+	{
+		for(int i = 0; i < records.size(); i++)
+		{
+			write(records.get(i));
+		}
+	}
+
+	public long sync()
+		// Returns: -1; a sink has no length
+	{
+		return -1;
+	}
+
+	public void close() throws IOException
+	{
+		if(!this.ended)
+		{
+			this.ended = true;
+			this.sink.close();
+		}
+	}
+
+	void fail(Throwable cause)
+		// Purpose: tell the sink the job failed, unless it has been
+		//	    told how the job ended already
+	{
+		if(!this.ended)
+		{
+			this.ended = true;
+			this.sink.fail(cause);
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// see the constructor
+	private RecordSink sink;
+
+	// true once close() or fail() has reached the sink
+	private boolean ended = false;
+}
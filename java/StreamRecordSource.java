@@ -0,0 +1,77 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+
+class StreamRecordSource implements RecordSource
+{
+	//Concept:
+        //        IS: a RecordSource over a character stream such as stdin
+        //       HAS: a SeqRecordSplitter
+        //      DOES: splits the stream into record texts, FilterPipeline.
+	//	       BATCH_SIZE records per batch
+        // Implementation: the splitting is sequential; only parsing and
+	//	       deciding of the batches can be spread over threads
+
+	//
+	//constructors
+	//
+
+	StreamRecordSource(BufferedReader in)
+	{
+		this.in = in;
+		this.splitter = new SeqRecordSplitter(in);
+	}
+
+	//
+	//methods:
+	//
+
+	public RecordBatch nextBatch(int seq) throws IOException
+	{
+		if(this.next == null)
+		{
+			this.next = this.splitter.nextRecord();
+		}
+		if(this.next == null)
+		{
+			return null;
+		}
+		RecordBatch batch = new RecordBatch(seq,
+			FilterPipeline.BATCH_SIZE);
+		while(this.next != null &&
+			batch.records.size() < FilterPipeline.BATCH_SIZE)
+		{
+			batch.records.add(this.next);
+			this.next = this.splitter.nextRecord();
+		}
+		return batch;
+	}
+
+	public InputPosition position()
+		// Returns: null; characters are counted, not bytes
+	{
+		return null;
+	}
+
+	public void seek(InputPosition p) throws IOException
+	{
+		throw new IOException("Cannot resume a character stream; " +
+			"read stdin as bytes");
+	}
+
+	public void close() throws IOException
+	{
+		this.in.close();
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the stream
+	private BufferedReader in;
+	private SeqRecordSplitter splitter;
+
+	// a record read ahead to detect the end of input
+	private String next;
+}
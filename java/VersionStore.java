@@ -0,0 +1,538 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+class VersionStore
+{
+	//Concept:
+        //        IS: the on-disk record of the accessions an incremental
+	//	       filter run (--store) has seen, for skipping records
+	//	       that have not changed since the last run
+        //       HAS: a directory holding versions.idx, each accession's
+	//	       last seen version and the results of the run's deciders
+	//	       for it, and store.properties, the names of those
+	//	       deciders
+        //      DOES: answers whether a seqid.version is unchanged, and if
+	//	       so with which deciders it passed; collects the
+	//	       accessions this run sees; at finish() writes the new
+	//	       store and optionally reports the accessions that were
+	//	       not seen (withdrawn)
+        // Implementation: versions.idx is in the RecordIndex format, keyed
+	//	       by accession, with the decider results as the long (bit
+	//	       i for decider i) and the version number as the int.
+	//	       Every FENCE_EVERY'th key is held in memory, so a lookup
+	//	       is a binary search of the fences and one positional read
+	//	       of a block of entries; the store itself is never loaded.
+	//	       Lookups may come from several threads. Seen accessions
+	//	       go to a RecordIndexWriter, which sorts them on disk;
+	//	       finish() merges them with the old store in one pass.
+	//	       Stored results are used only if the run's deciders have
+	//	       the same names in the same order as when they were
+	//	       stored; otherwise every record is decided again.
+
+	//
+	//constructors
+	//
+
+	VersionStore(File dir, SeqDecider[] deciders, int deciderCtr)
+		throws IOException
+		// Purpose: open the store in 'dir', creating the directory if
+		//	    need be, for a run with these deciders
+		// Throws: IOException if there are more than 63 deciders or the
+		//	   store cannot be read
+	{
+		if(deciderCtr > 63)
+		{
+			throw new IOException("--store supports at most 63 " +
+				"deciders");
+		}
+		if(!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Cannot create " + dir);
+		}
+		this.dir = dir;
+		this.names = new ArrayList<String>();
+		for(int i = 0; i < deciderCtr; i++)
+		{
+			this.names.add(deciders[i].getName());
+		}
+		this.unchangedPasses = new LongAdder[deciderCtr];
+		for(int i = 0; i < deciderCtr; i++)
+		{
+			this.unchangedPasses[i] = new LongAdder();
+		}
+
+		File props = new File(dir, PROPERTIES);
+		File versions = new File(dir, VERSIONS);
+		if(props.exists() && versions.exists())
+		{
+			Properties p = new Properties();
+			InputStream in = new FileInputStream(props);
+			try
+			{
+				p.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			this.storedNames = Arrays.asList(
+				p.getProperty("deciders", "").split("\t", -1));
+			this.resultsValid = this.storedNames.equals(this.names);
+			openVersions(versions);
+		}
+		this.seen = new RecordIndexWriter(new File(dir, SEEN), false);
+	}
+
+	//
+	//methods:
+	//
+
+	long unchanged(String version) throws IOException
+	{
+	// Purpose: look up 'version' in the store
+	// Returns: the decider results stored for it, if the store has
+	//	    this accession at this version and results for this run's
+	//	    deciders; otherwise -1
+	// Effects: counts the unchanged records
+
+		if(this.count == 0 || !this.resultsValid)
+		{
+			return -1;
+		}
+		byte[] key = accession(version).getBytes(RecordIndex.LATIN1);
+		if(key.length > this.keyWidth)
+		{
+			return -1;
+		}
+
+		// the block that would hold 'key' starts at the last fence
+		// not greater than it
+		int lo = 0;
+		int hi = this.fences.length;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(compare(this.fences[mid], 0, key) <= 0)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		if(lo == 0)
+		{
+			return -1;
+		}
+		long first = (long)(lo - 1) * FENCE_EVERY;
+		int n = (int)Math.min(FENCE_EVERY, this.count - first);
+		int size = this.keyWidth + 12;
+		ByteBuffer block = ByteBuffer.allocate(n * size);
+		RecordIndex.readFully(this.store, block,
+			RecordIndex.HEADER_SIZE + first * size);
+		byte[] b = block.array();
+
+		lo = 0;
+		hi = n;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int c = compare(b, mid * size, key);
+			if(c == 0)
+			{
+				int at = mid * size + this.keyWidth;
+				if(block.getInt(at + 8) != versionNumber(version))
+				{
+					return -1;
+				}
+				long results = block.getLong(at);
+				this.unchanged.increment();
+				for(int i = 0; i < this.unchangedPasses.length; i++)
+				{
+					if((results & (1L << i)) != 0)
+					{
+						this.unchangedPasses[i].increment();
+					}
+				}
+				return results;
+			}
+			if(c < 0)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		return -1;
+	}
+
+	void seen(String version, long results) throws IOException
+		// Purpose: note that this run saw 'version', with these decider
+		//	    results
+		// Assumes: called from one thread at a time, in input order
+	{
+		if(version == null)
+		{
+			return;
+		}
+		this.seen.add(accession(version), results,
+			versionNumber(version));
+	}
+
+	void finish(String withdrawnFile) throws IOException
+	{
+	// Purpose: replace the store with one holding every accession seen
+	//	    by this run, and those in the old store that were not
+	//	    seen unless 'withdrawnFile' is given or the old store was
+	//	    written by other deciders
+	// Effects: if 'withdrawnFile' is not null, writes the accessions
+	//	    in the old store that this run did not see to it, one
+	//	    seqid.version per line followed by a tab and the
+	//	    deciders it passed, and leaves them out of the new store
+	// Throws: IOException
+
+		this.seen.finish();
+		File seenFile = RecordIndex.indexFile(new File(this.dir, SEEN));
+		File versions = new File(this.dir, VERSIONS);
+		File tmp = new File(this.dir, VERSIONS + ".new");
+		if(this.store != null)
+		{
+			this.store.close();
+			this.store = null;
+		}
+
+		Latest s = new Latest(new RecordIndexWriter.Run(seenFile));
+		RecordIndexWriter.Run o = versions.exists() ?
+			new RecordIndexWriter.Run(versions) : null;
+		Writer withdrawn = withdrawnFile == null ? null :
+			new BufferedWriter(new FileWriter(withdrawnFile));
+		int width = Math.max(s.run.width, o == null ? 0 : o.width);
+		DataOutputStream out = RecordIndexWriter.open(tmp, width, 0);
+		long written = 0;
+		try
+		{
+			boolean haveS = s.next();
+			boolean haveO = o != null && o.next();
+			while(haveS || haveO)
+			{
+				int c = !haveO ? -1 : !haveS ? 1 : RecordIndexWriter.
+					compareKeys(s.key, s.keyLength, o.key, o.keyLength);
+				if(c > 0 && withdrawn != null)
+				{
+					writeWithdrawn(withdrawn, o);
+					this.withdrawn++;
+				}
+				else if(c > 0 && this.resultsValid)
+				{
+					RecordIndexWriter.writeEntry(out, o.key, 0,
+						o.keyLength, width, o.offset, o.length);
+					written++;
+				}
+				else if(c > 0)
+				{
+					// its results are for the old deciders; it
+					// is decided again when next seen
+				}
+				else
+				{
+					RecordIndexWriter.writeEntry(out, s.key, 0,
+						s.keyLength, width, s.offset, s.length);
+					written++;
+				}
+				if(c <= 0)
+				{
+					haveS = s.next();
+				}
+				if(c >= 0)
+				{
+					haveO = o.next();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+			s.run.close();
+			if(o != null)
+			{
+				o.close();
+			}
+			if(withdrawn != null)
+			{
+				withdrawn.close();
+			}
+		}
+		RecordIndexWriter.setCount(tmp, written);
+		Files.move(tmp.toPath(), versions.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+		Files.delete(seenFile.toPath());
+		this.stored = written;
+
+		Properties p = new Properties();
+		p.setProperty("deciders", String.join("\t", this.names));
+		p.setProperty("accessions", String.valueOf(written));
+		File propsTmp = new File(this.dir, PROPERTIES + ".new");
+		OutputStream pout = new FileOutputStream(propsTmp);
+		try
+		{
+			p.store(pout, "SeqRecordFilter version store");
+		}
+		finally
+		{
+			pout.close();
+		}
+		Files.move(propsTmp.toPath(), new File(this.dir,
+			PROPERTIES).toPath(), StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	long getUnchanged()
+		// Purpose: records skipped as unchanged so far
+	{
+		return this.unchanged.sum();
+	}
+
+	long getUnchangedPasses(int i)
+		// Purpose: unchanged records that had passed decider 'i'
+	{
+		return this.unchangedPasses[i].sum();
+	}
+
+	long getWithdrawn()
+		// Purpose: accessions reported withdrawn by finish()
+	{
+		return this.withdrawn;
+	}
+
+	long getStored()
+		// Purpose: accessions in the store written by finish()
+	{
+		return this.stored;
+	}
+
+	boolean hasResults()
+		// Purpose: report whether the stored results can be used; true
+		//	    for a new store
+	{
+		return this.resultsValid;
+	}
+
+	static String versionOf(String text)
+	{
+	// Purpose: find the seqid.version of a GenBank record without
+	//	    parsing it
+	// Returns: the first word of its VERSION line, or null if it has
+	//	    none (e.g. a SwissProt record)
+	// Notes: the same value GBSeqRecord.getVersion() returns
+
+		int at = text.startsWith("VERSION") ? 0 :
+			text.indexOf("\nVERSION") + 1;
+		if(at <= 0 && !text.startsWith("VERSION"))
+		{
+			return null;
+		}
+		int i = at + "VERSION".length();
+		int len = text.length();
+		while(i < len && text.charAt(i) == ' ')
+		{
+			i++;
+		}
+		int start = i;
+		while(i < len && text.charAt(i) > ' ')
+		{
+			i++;
+		}
+		return i > start ? text.substring(start, i) : null;
+	}
+
+	static String accession(String version)
+		// Purpose: the seqid part of 'version', before the last '.'
+	{
+		int dot = version.lastIndexOf('.');
+		return dot < 0 || versionNumber(version) == 0 ? version :
+			version.substring(0, dot);
+	}
+
+	static int versionNumber(String version)
+		// Returns: the number after the last '.', or 0 if there is none
+	{
+		int dot = version.lastIndexOf('.');
+		if(dot < 0)
+		{
+			return 0;
+		}
+		try
+		{
+			return Integer.parseInt(version.substring(dot + 1));
+		}
+		catch(NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	private void openVersions(File versions) throws IOException
+		// Purpose: open versions.idx and read its fences
+	{
+		this.store = FileChannel.open(versions.toPath());
+		ByteBuffer h = ByteBuffer.allocate(RecordIndex.HEADER_SIZE);
+		RecordIndex.readFully(this.store, h, 0);
+		h.flip();
+		if(h.getInt() != RecordIndex.MAGIC ||
+			h.getInt() != RecordIndex.FORMAT)
+		{
+			throw new IOException(versions + " is not a version store");
+		}
+		this.keyWidth = h.getInt();
+		this.count = h.getLong();
+
+		int size = this.keyWidth + 12;
+		this.fences = new byte[(int)((this.count + FENCE_EVERY - 1) /
+			FENCE_EVERY)][];
+		ByteBuffer key = ByteBuffer.allocate(this.keyWidth);
+		for(int i = 0; i < this.fences.length; i++)
+		{
+			key.clear();
+			RecordIndex.readFully(this.store, key,
+				RecordIndex.HEADER_SIZE + (long)i * FENCE_EVERY * size);
+			this.fences[i] = key.array().clone();
+		}
+	}
+
+	private int compare(byte[] b, int from, byte[] key)
+		// Purpose: compare the zero padded key at b[from] with 'key'
+	{
+		for(int i = 0; i < this.keyWidth; i++)
+		{
+			int x = b[from + i] & 0xff;
+			int y = i < key.length ? key[i] & 0xff : 0;
+			if(x != y)
+			{
+				return x - y;
+			}
+		}
+		return 0;
+	}
+
+	private void writeWithdrawn(Writer w, RecordIndexWriter.Run o)
+		throws IOException
+		// Purpose: report the old store's entry 'o' as withdrawn
+	{
+		w.write(new String(o.key, 0, o.keyLength, RecordIndex.LATIN1));
+		if(o.length != 0)
+		{
+			w.write("." + o.length);
+		}
+		w.write("\t");
+		String sep = "";
+		for(int i = 0; i < this.storedNames.size(); i++)
+		{
+			if((o.offset & (1L << i)) != 0)
+			{
+				w.write(sep + this.storedNames.get(i));
+				sep = ",";
+			}
+		}
+		w.write("\n");
+	}
+
+	//
+	// the seen accessions, one entry per accession
+	//
+
+	private static class Latest
+	{
+		// Purpose: read a sorted run of seen accessions, skipping to the
+		//	    last of the entries for each accession, its latest
+		//	    sighting in input order
+
+		Latest(RecordIndexWriter.Run run) throws IOException
+		{
+			this.run = run;
+			this.key = new byte[run.width];
+			this.ahead = run.next();
+		}
+
+		boolean next() throws IOException
+			// Purpose: move to the next accession
+			// Returns: false at the end
+		{
+			if(!this.ahead)
+			{
+				return false;
+			}
+			do
+			{
+				System.arraycopy(this.run.key, 0, this.key, 0,
+					this.run.keyLength);
+				this.keyLength = this.run.keyLength;
+				this.offset = this.run.offset;
+				this.length = this.run.length;
+				this.ahead = this.run.next();
+			}
+			while(this.ahead && RecordIndexWriter.compareKeys(this.key,
+				this.keyLength, this.run.key, this.run.keyLength) == 0);
+			return true;
+		}
+
+		// the run, and whether it holds an entry not yet taken
+		RecordIndexWriter.Run run;
+		private boolean ahead;
+
+		// the current accession's entry
+		byte[] key;
+		int keyLength;
+		long offset;
+		int length;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// files in the store directory
+	private static final String VERSIONS = "versions.idx";
+	private static final String PROPERTIES = "store.properties";
+	private static final String SEEN = "seen";
+
+	// one key in this many is held in memory
+	private static final int FENCE_EVERY = 128;
+
+	// see the constructor
+	private File dir;
+
+	// this run's decider names, and those the store was written with
+	private List<String> names;
+	private List<String> storedNames = Collections.<String>emptyList();
+
+	// false if the store holds results for other deciders
+	private boolean resultsValid = true;
+
+	// versions.idx, its key width, entry count and fences; the channel
+	// is null and the count 0 if there is no store yet
+	private FileChannel store;
+	private int keyWidth;
+	private long count = 0;
+	private byte[][] fences;
+
+	// accessions seen by this run
+	private RecordIndexWriter seen;
+
+	// records found unchanged, and how many of them passed each decider
+	private final LongAdder unchanged = new LongAdder();
+	private LongAdder[] unchangedPasses;
+
+	// counts from finish()
+	private long withdrawn = 0;
+	private long stored = 0;
+}
@@ -0,0 +1,221 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class AccessionSetTest
+{
+	//Concept:
+        //        IS: unit tests of AccessionSet
+        //       HAS: a seeded random number generator, and the temporary
+	//	       lists and set files the tests write
+        //      DOES: builds sets from lists of random ids, with and
+	//	       without a Bloom filter, and checks their size and every
+	//	       lookup against a HashSet of the same ids, for ids in
+	//	       the set and many more that are not
+        // Implementation: ids are drawn from a small alphabet and are
+	//	       short, so many share prefixes and lengths, and tables
+	//	       small enough that probes run into each other
+
+	@After
+	public void removeFiles()
+	{
+		for(int i = 0; i < this.files.size(); i++)
+		{
+			this.files.get(i).delete();
+		}
+	}
+
+	@Test
+	public void matchesHashSetForRandomIds() throws Exception
+	{
+		int[] counts = { 0, 1, 7, 8, 9, 100, 5000, 60000 };
+		for(int c = 0; c < counts.length; c++)
+		{
+			Set<String> ids = new HashSet<String>();
+			List<String> lines = new ArrayList<String>();
+			for(int i = 0; i < counts[c]; i++)
+			{
+				String id = randomId();
+				ids.add(id);
+				lines.add(randomLine(id));
+			}
+			File list = list(lines);
+			for(int b = 0; b < 2; b++)
+			{
+				boolean bloom = b == 1;
+				File f = file(AccessionSet.SUFFIX);
+				AccessionSet.build(list, f, bloom);
+				check(counts[c] + " ids, bloom " + bloom, ids,
+					AccessionSet.open(f));
+			}
+		}
+	}
+
+	@Test
+	public void findsNothingThatIsNotAnId() throws Exception
+	{
+		File list = list(Arrays.asList("A1", "  B2\tjunk words",
+			"# C3", "", "   ", "A1", "D4 "));
+		File f = file(AccessionSet.SUFFIX);
+		AccessionSet.build(list, f, true);
+		AccessionSet s = AccessionSet.open(f);
+		assertEquals(3, s.size());
+		assertTrue(s.contains("A1"));
+		assertTrue(s.contains("B2"));
+		assertTrue(s.contains("D4"));
+		assertFalse(s.contains("C3"));
+		assertFalse(s.contains("# C3"));
+		assertFalse(s.contains("junk"));
+		assertFalse(s.contains("a1"));
+		assertFalse(s.contains("A"));
+		assertFalse(s.contains(""));
+		assertFalse(s.contains(null));
+	}
+
+	@Test
+	public void holdsIdsOf255Characters() throws Exception
+	{
+		char[] c = new char[255];
+		Arrays.fill(c, 'Q');
+		String longest = new String(c);
+		File f = file(AccessionSet.SUFFIX);
+		AccessionSet.build(list(Arrays.asList(longest, "A1")), f, false);
+		AccessionSet s = AccessionSet.open(f);
+		assertTrue(s.contains(longest));
+		assertFalse(s.contains(longest.substring(1)));
+		assertFalse(s.contains(longest + "Q"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsIdsLongerThan255Characters() throws Exception
+	{
+		char[] c = new char[256];
+		Arrays.fill(c, 'Q');
+		AccessionSet.build(list(Arrays.asList("A1", new String(c))),
+			file(AccessionSet.SUFFIX), true);
+	}
+
+	@Test
+	public void loadsAListOrASetFile() throws Exception
+	{
+		File list = list(Arrays.asList("A1", "B2"));
+		File f = file(AccessionSet.SUFFIX);
+		AccessionSet.build(list, f, false);
+		assertTrue(AccessionSet.isSetFile(f));
+		assertFalse(AccessionSet.isSetFile(list));
+		assertFalse(AccessionSet.isSetFile(list(
+			new ArrayList<String>())));
+
+		AccessionSet fromSet = AccessionSet.load(f);
+		assertEquals(f, fromSet.getFile());
+		AccessionSet fromList = AccessionSet.load(list);
+		assertTrue(fromList.getFile().exists());
+		this.files.add(fromList.getFile());
+		for(AccessionSet s : Arrays.asList(fromSet, fromList))
+		{
+			assertEquals(2, s.size());
+			assertTrue(s.contains("A1"));
+			assertTrue(s.contains("B2"));
+			assertFalse(s.contains("C3"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesToOpenWhatIsNotASet() throws Exception
+	{
+		AccessionSet.open(list(Arrays.asList("A1")));
+	}
+
+	private void check(String what, Set<String> ids, AccessionSet s)
+		// Purpose: check that 's' holds 'ids' and nothing else
+	{
+		assertEquals(what + ": size", ids.size(), s.size());
+		for(String id : ids)
+		{
+			assertTrue(what + ": " + id, s.contains(id));
+		}
+		for(int i = 0; i < 4 * ids.size() + 1000; i++)
+		{
+			String id = randomId();
+			assertEquals(what + ": " + id, ids.contains(id),
+				s.contains(id));
+		}
+		assertFalse(what + ": empty", s.contains(""));
+		assertFalse(what + ": null", s.contains(null));
+	}
+
+	private String randomId()
+	{
+		StringBuilder s = new StringBuilder();
+		int len = 1 + this.random.nextInt(8);
+		for(int i = 0; i < len; i++)
+		{
+			s.append(ALPHABET.charAt(this.random.nextInt(
+				ALPHABET.length())));
+		}
+		return s.toString();
+	}
+
+	private String randomLine(String id)
+		// Purpose: a line of a list that holds 'id'
+	{
+		switch(this.random.nextInt(4))
+		{
+		case 0:
+			return " " + id;
+		case 1:
+			return id + "\tjunk";
+		default:
+			return id;
+		}
+	}
+
+	private File list(List<String> lines) throws IOException
+		// Purpose: a list of ids holding 'lines', and comments
+	{
+		File f = file(".txt");
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+			new FileOutputStream(f), RecordIndex.LATIN1));
+		try
+		{
+			if(lines.size() > 0)
+			{
+				out.println("# a list of ids");
+				out.println();
+			}
+			for(int i = 0; i < lines.size(); i++)
+			{
+				out.println(lines.get(i));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		return f;
+	}
+
+	private File file(String suffix) throws IOException
+		// Purpose: a temporary file, removed after the test
+	{
+		File f = File.createTempFile("accessions", suffix);
+		this.files.add(f);
+		return f;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the characters of random ids
+	private static final String ALPHABET = "ABXY0129._";
+
+	// the files the test made
+	private List<File> files = new ArrayList<File>();
+
+	// the same ids on every run
+	private Random random = new Random(20240101L);
+}
@@ -0,0 +1,161 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class AsyncFileOutputTest
+{
+	//Concept:
+        //        IS: unit tests of AsyncFileOutput
+        //       HAS: the temporary output file the tests write
+        //      DOES: reads record text as the stdin reader does, writes
+	//	       it, and checks that the file holds the bytes read,
+	//	       every byte value among them; checks that text the
+	//	       output cannot write unchanged is refused, not rewritten
+
+	@Before
+	public void createFile() throws IOException
+	{
+		this.file = File.createTempFile("output", ".gb");
+	}
+
+	@After
+	public void removeFile()
+	{
+		this.file.delete();
+	}
+
+	@Test
+	public void writesEveryByteAsItWasRead() throws Exception
+	{
+		ByteArrayOutputStream in = new ByteArrayOutputStream();
+		// UTF-8 "caf\u00e9 \u2192", and every byte value
+		in.write(new byte[] { 'c', 'a', 'f', (byte)0xc3, (byte)0xa9, ' ',
+			(byte)0xe2, (byte)0x86, (byte)0x92, '\n' });
+		for(int b = 0; b < 256; b++)
+		{
+			in.write(b);
+		}
+		in.write('\n');
+		// a record longer than an output buffer
+		Random random = new Random(20240101L);
+		byte[] big = new byte[3 * 1024 * 1024 + 17];
+		random.nextBytes(big);
+		in.write(big);
+		byte[] bytes = in.toByteArray();
+
+		// read as SeqRecordFilter reads stdin
+		Reader reader = new InputStreamReader(
+			new ByteArrayInputStream(bytes), RecordIndex.LATIN1);
+		StringBuilder text = new StringBuilder();
+		char[] c = new char[4096];
+		int n;
+		while((n = reader.read(c)) > 0)
+		{
+			text.append(c, 0, n);
+		}
+
+		AsyncFileOutput out = new AsyncFileOutput(this.file.getPath(),
+			false);
+		out.write(new FilteredRecord("A1.1", text.substring(0, 10),
+			null));
+		out.write(Arrays.asList(
+			new FilteredRecord("A2.1", text.substring(10, 267), null),
+			new FilteredRecord("A3.1", text.substring(267), null)));
+		out.close();
+		assertArrayEquals(bytes, Files.readAllBytes(this.file.toPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesTextItCannotWriteUnchanged() throws Exception
+	{
+		AsyncFileOutput out = new AsyncFileOutput(this.file.getPath(),
+			false);
+		try
+		{
+			out.write(new FilteredRecord("A1.1", "caf\u00e9 \u2192\n",
+				null));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	@Test
+	public void failsRatherThanWaitOnAnInterruptedWriter() throws Exception
+	{
+		final AsyncFileOutput out = new AsyncFileOutput(
+			this.file.getPath(), false);
+		Thread writer = null;
+		Set<Thread> threads = Thread.getAllStackTraces().keySet();
+		for(Thread t : threads)
+		{
+			if(t.getName().equals("seqfilter-writer " +
+				this.file.getPath()))
+			{
+				writer = t;
+			}
+		}
+		assertNotNull(writer);
+		writer.interrupt();
+		writer.join();
+
+		// more than every buffer, then a sync() and close()
+		final char[] c = new char[1024 * 1024];
+		Arrays.fill(c, 'x');
+		final List<Exception> thrown = new ArrayList<Exception>();
+		Thread caller = new Thread()
+		{
+			public void run()
+			{
+				String text = new String(c);
+				for(int i = 0; i < 3; i++)
+				{
+					try
+					{
+						if(i == 0)
+						{
+							for(int k = 0; k < 20; k++)
+							{
+								out.write(new FilteredRecord(
+									"A1.1", text, null));
+							}
+						}
+						else if(i == 1)
+						{
+							out.sync();
+						}
+						else
+						{
+							out.close();
+						}
+					}
+					catch(Exception e)
+					{
+						thrown.add(e);
+					}
+				}
+			}
+		};
+		caller.start();
+		caller.join(10000);
+		assertFalse("caller still waiting", caller.isAlive());
+		assertEquals(3, thrown.size());
+		for(int i = 0; i < thrown.size(); i++)
+		{
+			assertTrue(thrown.get(i).toString(),
+				thrown.get(i) instanceof IOException);
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the output file
+	private File file;
+}
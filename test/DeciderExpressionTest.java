@@ -0,0 +1,160 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DeciderExpressionTest
+{
+	//Concept:
+        //        IS: unit tests of DeciderExpression
+        //       HAS: two deciders that look for a string in a record's text
+        //      DOES: compiles expressions over them and applies them to
+	//	       records the way an application outside SeqRecordFilter
+	//	       would
+        // Implementation: the deciders count their own calls, so the
+	//	       tests can see that a decider is applied once per record
+
+	@Test
+	public void appliesDecidersToEachNewRecordObject() throws Exception
+	{
+		DeciderExpression e = DeciderExpression.compile(
+			"mouse AND NOT est", this.deciders);
+		assertTrue(e.isA(record(MOUSE)));
+		assertFalse(e.isA(record(HUMAN)));
+		assertFalse(e.isA(record(MOUSE_EST)));
+		assertTrue(e.isA(record(MOUSE)));
+	}
+
+	@Test
+	public void appliesDecidersToEachLoadOfOneRecordObject()
+		throws Exception
+	{
+		DeciderExpression e = DeciderExpression.compile(
+			"mouse && !est", this.deciders);
+		SeqRecord rec = new GBSeqRecord();
+		String[] texts = { MOUSE, HUMAN, MOUSE_EST, MOUSE };
+		boolean[] expected = { true, false, false, true };
+		for(int i = 0; i < texts.length; i++)
+		{
+			load(rec, texts[i]);
+			SeqDecider.recordLoaded();
+			assertEquals("record " + i, expected[i], e.isA(rec));
+		}
+	}
+
+	@Test
+	public void appliesDecidersToEachReadOfAReusedRecordObject()
+		throws Exception
+	{
+		// as the single threaded filter loop reuses its seqRec,
+		// without calling recordLoaded()
+		DeciderExpression e = DeciderExpression.compile(
+			"mouse && !est", this.deciders);
+		SeqRecord rec = new GBSeqRecord();
+		String[] texts = { MOUSE, HUMAN, MOUSE_EST, MOUSE, MOUSE };
+		boolean[] expected = { true, false, false, true, true };
+		for(int i = 0; i < texts.length; i++)
+		{
+			load(rec, texts[i]);
+			assertEquals("record " + i, expected[i], e.isA(rec));
+			assertEquals("record " + i + " again", expected[i],
+				e.isA(rec));
+			assertEquals(i + 1, this.mouse.getAllCount());
+		}
+	}
+
+	@Test
+	public void appliesADeciderOncePerRecord() throws Exception
+	{
+		DeciderExpression e = DeciderExpression.compile(
+			"mouse OR (est AND mouse)", this.deciders);
+		assertFalse(e.isA(record(HUMAN_EST)));
+		assertEquals(1, this.mouse.getAllCount());
+		assertEquals(1, this.est.getAllCount());
+		assertTrue(e.isA(record(MOUSE_EST)));
+		assertEquals(2, this.mouse.getAllCount());
+		assertEquals(1, this.est.getAllCount());
+	}
+
+	@Test
+	public void honoursPrecedenceAndParentheses() throws Exception
+	{
+		assertTrue(DeciderExpression.compile("est OR NOT mouse AND " +
+			"NOT est", this.deciders).isA(record(HUMAN)));
+		assertFalse(DeciderExpression.compile("(est OR NOT mouse) " +
+			"AND est", this.deciders).isA(record(HUMAN)));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnknownDeciders() throws Exception
+	{
+		DeciderExpression.compile("mouse AND rat", this.deciders);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnbalancedParentheses() throws Exception
+	{
+		DeciderExpression.compile("(mouse OR est", this.deciders);
+	}
+
+	private static SeqRecord record(String text) throws Exception
+		// Purpose: a new SeqRecord loaded with 'text'
+	{
+		SeqRecord rec = new GBSeqRecord();
+		load(rec, text);
+		return rec;
+	}
+
+	private static void load(SeqRecord rec, String text)
+		throws Exception
+	{
+		rec.readText(new BufferedReader(new StringReader(text)));
+	}
+
+	//
+	// a decider that is true when the record's text holds a string
+	//
+
+	private static class Contains extends SeqDecider
+	{
+		Contains(String name, String contains)
+		{
+			super(name);
+			this.contains = contains;
+		}
+
+		public boolean isA(SeqRecord s)
+		{
+			incrementAllCtr();
+			if(s.getText().indexOf(this.contains) >= 0)
+			{
+				incrementTrueCtr();
+				return true;
+			}
+			return false;
+		}
+
+		private String contains;
+	}
+
+	//
+	//instance variables:
+	//
+
+	private static final String MOUSE = "LOCUS       A1\n" +
+		"VERSION     A1.1\n  ORGANISM  Mus musculus\n//\n";
+	private static final String HUMAN = "LOCUS       A2\n" +
+		"VERSION     A2.1\n  ORGANISM  Homo sapiens\n//\n";
+	private static final String MOUSE_EST = "LOCUS       A3\n" +
+		"VERSION     A3.1\nKEYWORDS    EST.\n" +
+		"  ORGANISM  Mus musculus\n//\n";
+	private static final String HUMAN_EST = "LOCUS       A4\n" +
+		"VERSION     A4.1\nKEYWORDS    EST.\n" +
+		"  ORGANISM  Homo sapiens\n//\n";
+
+	private SeqDecider mouse = new Contains("mouse", "Mus musculus");
+	private SeqDecider est = new Contains("est", "KEYWORDS    EST");
+	private SeqDecider[] deciders = { this.mouse, this.est };
+}
@@ -0,0 +1,234 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DecisionBitmapTest
+{
+	//Concept:
+        //        IS: unit tests of DecisionBitmap
+        //       HAS: a seeded random number generator
+        //      DOES: checks sets and the results of every operation
+	//	       against java.util.BitSet, for random sets and for sets
+	//	       whose containers sit either side of ARRAY_MAX, where
+	//	       they turn from arrays into bitmaps and back
+        // Implementation: every set checked is also written and read
+	//	       back, and the copy checked the same way
+
+	@Test
+	public void matchesBitSetForRandomSets() throws Exception
+	{
+		for(int t = 0; t < 60; t++)
+		{
+			int size = this.random.nextInt(5) == 0 ?
+				this.random.nextInt(100) :
+				this.random.nextInt(4 * BLOCK);
+			BitSet x = randomSet(size);
+			BitSet y = randomSet(size);
+			DecisionBitmap bx = bitmap(x);
+			DecisionBitmap by = bitmap(y);
+			check("set", x, bx);
+
+			BitSet e = (BitSet)x.clone();
+			e.and(y);
+			check("and", e, bx.and(by));
+			e = (BitSet)x.clone();
+			e.or(y);
+			check("or", e, bx.or(by));
+			e = (BitSet)x.clone();
+			e.andNot(y);
+			check("andNot", e, bx.andNot(by));
+			e = (BitSet)x.clone();
+			e.flip(0, size);
+			check("complement", e, bx.complement(size));
+
+			// the operands are left as they were
+			check("set after", x, bx);
+			check("other set after", y, by);
+		}
+	}
+
+	@Test
+	public void addsEitherSideOfArrayMax() throws Exception
+	{
+		int[] counts = { DecisionBitmap.ARRAY_MAX - 1,
+			DecisionBitmap.ARRAY_MAX, DecisionBitmap.ARRAY_MAX + 1,
+			BLOCK };
+		for(int i = 0; i < counts.length; i++)
+		{
+			// the container after the first, spread over it
+			BitSet s = new BitSet();
+			for(int k = 0; k < counts[i]; k++)
+			{
+				s.set(BLOCK + (int)((long)k * BLOCK / counts[i]));
+			}
+			check(counts[i] + " ordinals", s, bitmap(s));
+		}
+	}
+
+	@Test
+	public void turnsBitmapResultsBackIntoArrays() throws Exception
+	{
+		// two bitmap containers whose intersection and difference
+		// are small enough for arrays, and whose union is not
+		BitSet x = new BitSet();
+		BitSet y = new BitSet();
+		x.set(0, 3 * DecisionBitmap.ARRAY_MAX / 2);
+		y.set(DecisionBitmap.ARRAY_MAX, 5 * DecisionBitmap.ARRAY_MAX / 2);
+		DecisionBitmap bx = bitmap(x);
+		DecisionBitmap by = bitmap(y);
+
+		BitSet e = (BitSet)x.clone();
+		e.and(y);
+		check("and", e, bx.and(by));
+		e = (BitSet)x.clone();
+		e.andNot(y);
+		check("andNot", e, bx.andNot(by));
+		e = (BitSet)x.clone();
+		e.or(y);
+		check("or", e, bx.or(by));
+
+		// a result that empties a container drops it
+		check("empty", new BitSet(), bx.andNot(bx));
+		assertEquals(4, bx.andNot(bx).serializedSize());
+	}
+
+	@Test
+	public void turnsArrayUnionsIntoBitmaps() throws Exception
+	{
+		// two arrays that together hold more than ARRAY_MAX
+		BitSet x = new BitSet();
+		BitSet y = new BitSet();
+		for(int i = 0; i < DecisionBitmap.ARRAY_MAX; i++)
+		{
+			x.set(2 * i);
+			y.set(2 * i + 1);
+		}
+		BitSet e = (BitSet)x.clone();
+		e.or(y);
+		check("or", e, bitmap(x).or(bitmap(y)));
+	}
+
+	@Test
+	public void makesRangesAndComplements() throws Exception
+	{
+		int[] sizes = { 0, 1, 63, 64, BLOCK - 1, BLOCK, BLOCK + 1,
+			3 * BLOCK + 17 };
+		for(int i = 0; i < sizes.length; i++)
+		{
+			BitSet all = new BitSet();
+			all.set(0, sizes[i]);
+			check("range " + sizes[i], all,
+				DecisionBitmap.range(sizes[i]));
+			check("complement of none " + sizes[i], all,
+				new DecisionBitmap().complement(sizes[i]));
+			check("complement of all " + sizes[i], new BitSet(),
+				DecisionBitmap.range(sizes[i]).complement(sizes[i]));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsWhatIsNotABitmap() throws Exception
+	{
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(b);
+		out.writeInt(2);
+		out.writeChar(5);
+		out.writeInt(1);
+		out.writeChar(0);
+		// keys must increase
+		out.writeChar(5);
+		out.writeInt(1);
+		out.writeChar(0);
+		DecisionBitmap.read(new DataInputStream(
+			new ByteArrayInputStream(b.toByteArray())));
+	}
+
+	private BitSet randomSet(int size)
+		// Purpose: a set of ordinals below 'size' whose containers
+		//	    are each empty, sparse, either side of ARRAY_MAX,
+		//	    dense or full
+	{
+		double[] densities = { 0, 0.001, 0.03, 0.0624, 0.0626, 0.5,
+			0.999, 1 };
+		BitSet s = new BitSet();
+		for(int key = 0; (long)key * BLOCK < size; key++)
+		{
+			double d = densities[this.random.nextInt(
+				densities.length)];
+			int end = (int)Math.min(size, (long)(key + 1) * BLOCK);
+			for(int x = key * BLOCK; x < end; x++)
+			{
+				if(this.random.nextDouble() < d)
+				{
+					s.set(x);
+				}
+			}
+		}
+		return s;
+	}
+
+	private static DecisionBitmap bitmap(BitSet s)
+		// Purpose: a DecisionBitmap of the ordinals in 's'
+	{
+		DecisionBitmap b = new DecisionBitmap();
+		for(int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i + 1))
+		{
+			b.add(i);
+		}
+		return b;
+	}
+
+	private void check(String what, BitSet expected, DecisionBitmap b)
+		throws IOException
+		// Purpose: check that 'b' holds the ordinals in 'expected',
+		//	    and so does the copy of it written and read back
+	{
+		checkSame(what, expected, b);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		b.write(out);
+		out.flush();
+		assertEquals(what + ": size", b.serializedSize(), bytes.size());
+		checkSame(what + " read back", expected, DecisionBitmap.read(
+			new DataInputStream(new ByteArrayInputStream(
+			bytes.toByteArray()))));
+	}
+
+	private void checkSame(String what, BitSet expected, DecisionBitmap b)
+	{
+		assertEquals(what + ": cardinality", expected.cardinality(),
+			b.cardinality());
+		int i = expected.nextSetBit(0);
+		int j = b.nextSetBit(0);
+		while(true)
+		{
+			assertEquals(what + ": next ordinal", i, j);
+			if(i < 0)
+			{
+				break;
+			}
+			i = expected.nextSetBit(i + 1);
+			j = b.nextSetBit(j + 1);
+		}
+		for(int k = 0; k < 100; k++)
+		{
+			int from = this.random.nextInt(expected.length() + BLOCK);
+			assertEquals(what + ": next from " + from,
+				expected.nextSetBit(from), b.nextSetBit(from));
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// ordinals per container
+	private static final int BLOCK = 1 << 16;
+
+	// the same sets on every run
+	private Random random = new Random(20240101L);
+}
@@ -0,0 +1,94 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DirectoryOutputTest
+{
+	//Concept:
+        //        IS: unit tests of DirectoryOutput
+        //       HAS: the temporary directory the tests write
+        //      DOES: writes records with several writers and checks each
+	//	       file holds the bytes its record was read from, that the
+	//	       last record of a version wins, and that text the output
+	//	       cannot write unchanged is refused, not rewritten
+
+	@Before
+	public void createDir() throws IOException
+	{
+		this.dir = Files.createTempDirectory("output").toFile();
+	}
+
+	@After
+	public void removeDir() throws IOException
+	{
+		File[] files = this.dir.listFiles();
+		for(int i = 0; i < files.length; i++)
+		{
+			files[i].delete();
+		}
+		this.dir.delete();
+	}
+
+	@Test
+	public void writesEachVersionsLastRecordAsItWasRead() throws Exception
+	{
+		// UTF-8 "caf\u00e9 \u2192", and every byte value
+		byte[] bytes = new byte[266];
+		byte[] utf8 = { 'c', 'a', 'f', (byte)0xc3, (byte)0xa9, ' ',
+			(byte)0xe2, (byte)0x86, (byte)0x92, '\n' };
+		System.arraycopy(utf8, 0, bytes, 0, utf8.length);
+		for(int b = 0; b < 256; b++)
+		{
+			bytes[utf8.length + b] = (byte)b;
+		}
+		String text = new String(bytes, RecordIndex.LATIN1);
+
+		DirectoryOutput out = new DirectoryOutput(this.dir, 0, 4);
+		for(int i = 0; i < 200; i++)
+		{
+			out.write(new FilteredRecord("A" + i % 20 + ".1",
+				i + "\n", null));
+		}
+		out.write(new FilteredRecord("A7.1", text, null));
+		out.write(new FilteredRecord(null, "no version\n", null));
+		out.close();
+
+		assertEquals(21, this.dir.listFiles().length);
+		assertArrayEquals(bytes, read("A7.1"));
+		assertEquals("199\n", new String(read("A19.1"),
+			RecordIndex.LATIN1));
+		assertEquals("no version\n", new String(read("null"),
+			RecordIndex.LATIN1));
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesTextItCannotWriteUnchanged() throws Exception
+	{
+		DirectoryOutput out = new DirectoryOutput(this.dir, 0, 2);
+		try
+		{
+			out.write(new FilteredRecord("A1.1", "caf\u00e9 \u2192\n",
+				null));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private byte[] read(String name) throws IOException
+	{
+		return Files.readAllBytes(new File(this.dir, name).toPath());
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the output directory
+	private File dir;
+}
@@ -0,0 +1,194 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class PatternMatcherTest
+{
+	//Concept:
+        //        IS: unit tests of PatternMatcher
+        //       HAS: a seeded random number generator, and a reference
+	//	       matcher that looks for each string with indexOf()
+        //      DOES: checks a matcher for one decider and a matcher for
+	//	       many against the reference, for hand-written cases and
+	//	       for random deciders and texts over a small alphabet,
+	//	       where strings overlap and share prefixes and suffixes,
+	//	       so a wrong failure link shows
+        // Implementation: the reference splits the text into lines and
+	//	       follows each decider's field, its prefix lines and
+	//	       their continuation lines, one line at a time
+
+	@Test
+	public void findsStringsThroughFailureLinks()
+	{
+		// each match needs a failure link out of a longer string
+		check(decider("", "abcd", "bce"), "abce", true);
+		check(decider("", "aab"), "aaab", true);
+		check(decider("", "abab", "bac"), "ababac", true);
+		check(decider("", "abc", "c"), "abd c", true);
+		check(decider("", "abcd"), "abcabcabd", false);
+
+		// one string inside another
+		check(decider("", "b"), "abc", true);
+		check(decider("", "abcde", "bcd"), "xbcdx", true);
+	}
+
+	@Test
+	public void looksOnlyInItsField()
+	{
+		PatternDecider d = decider("  ORGANISM", "Mus");
+		check(d, "  ORGANISM  Mus musculus\n", true);
+		check(d, "DEFINITION  Mus\n  ORGANISM  Homo\n", false);
+		// a continuation line
+		check(d, "  ORGANISM  Homo\n            Mus\n", true);
+		// the field ends at the first line that is not blank
+		check(d, "  ORGANISM  Homo\nREFERENCE\n            Mus\n", false);
+		// a match does not span lines
+		check(d, "  ORGANISM  M\n            us\n", false);
+
+		// a field whose prefix is blank has no continuation lines
+		PatternDecider e = decider("   ", "Mus");
+		check(e, "   Homo\n   Mus\n", true);
+		check(e, "x\n   Homo\nMus\n", false);
+	}
+
+	@Test
+	public void matchesReferenceForRandomDeciders()
+	{
+		String[] prefixes = { "", "a", "ab", " a", "b c" };
+		for(int t = 0; t < 1000; t++)
+		{
+			int n = 1 + this.random.nextInt(t % 10 == 0 ? 150 : 10);
+			List<PatternDecider> deciders =
+				new ArrayList<PatternDecider>();
+			for(int i = 0; i < n; i++)
+			{
+				String[] strings = new String[1 +
+					this.random.nextInt(3)];
+				for(int j = 0; j < strings.length; j++)
+				{
+					strings[j] = randomText("abcabc  \u0394", 1 +
+						this.random.nextInt(4));
+				}
+				deciders.add(decider(prefixes[this.random.nextInt(
+					prefixes.length)], strings));
+			}
+			PatternMatcher m = PatternMatcher.of(deciders);
+
+			for(int k = 0; k < 10; k++)
+			{
+				String text = randomText("ab c\n\u0394",
+					this.random.nextInt(200));
+				long[] hits = m.match(text);
+				for(int i = 0; i < n; i++)
+				{
+					PatternDecider d = deciders.get(i);
+					boolean expected = reference(d, text);
+					assertEquals(d.getLinePrefix() + " " +
+						Arrays.toString(d.getPatterns()) +
+						" in [" + text + "]", expected,
+						(hits[i >>> 6] & (1L << i)) != 0);
+					if(k == 0)
+					{
+						check(d, text, expected);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void setsTheBitOfEachDeciderPastTheFirstWord()
+	{
+		List<PatternDecider> deciders = new ArrayList<PatternDecider>();
+		for(int i = 0; i < 70; i++)
+		{
+			deciders.add(decider(i % 2 == 0 ? "KEYWORDS" : "  ORGANISM",
+				"k" + i + ";"));
+		}
+		long[] hits = PatternMatcher.of(deciders).match(
+			"KEYWORDS    k4; k69; k68;\n  ORGANISM  k69;\n");
+		assertEquals(2, hits.length);
+		assertEquals(1L << 4, hits[0]);
+		assertEquals((1L << 4) | (1L << 5), hits[1]);
+	}
+
+	private static void check(PatternDecider d, String text,
+		boolean expected)
+		// Purpose: check a matcher for 'd' alone, and the reference
+	{
+		String what = Arrays.toString(d.getPatterns()) + " in [" +
+			text + "]";
+		assertEquals(what + ": reference", expected, reference(d, text));
+		assertEquals(what, expected,
+			PatternMatcher.of(d).match(text)[0] != 0);
+	}
+
+	private static PatternDecider decider(String prefix,
+		String... strings)
+	{
+		return new PatternDecider("d", prefix,
+			EnumSet.of(RecordSection.HEADER), strings);
+	}
+
+	private String randomText(String alphabet, int len)
+	{
+		StringBuilder s = new StringBuilder();
+		for(int i = 0; i < len; i++)
+		{
+			s.append(alphabet.charAt(this.random.nextInt(
+				alphabet.length())));
+		}
+		return s.toString();
+	}
+
+	private static boolean reference(PatternDecider d, String text)
+		// Purpose: report whether a line of the field of 'd' holds one
+		//	    of its strings
+	{
+		String prefix = d.getLinePrefix();
+		boolean continuable = prefix.trim().length() > 0;
+		String[] lines = text.split("\n", -1);
+		boolean open = false;
+		for(int i = 0; i < lines.length; i++)
+		{
+			String line = lines[i];
+			open = open && continuable && isBlank(line,
+				prefix.length()) || line.startsWith(prefix);
+			for(int j = 0; open && j < d.getPatterns().length; j++)
+			{
+				if(line.indexOf(d.getPatterns()[j]) >= 0)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isBlank(String line, int n)
+		// Purpose: report whether the first 'n' characters of 'line'
+		//	    are spaces
+	{
+		if(line.length() < n)
+		{
+			return false;
+		}
+		for(int i = 0; i < n; i++)
+		{
+			if(line.charAt(i) != ' ')
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//
+	//instance variables:
+	//
+
+	// the same deciders and texts on every run
+	private Random random = new Random(20240101L);
+}
@@ -0,0 +1,254 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RecordBoundariesTest
+{
+	//Concept:
+        //        IS: unit tests of RecordBoundaries
+        //       HAS: a seeded random number generator, and a reference
+	//	       scanner that looks at one byte at a time
+        //      DOES: checks every scan against the reference, for
+	//	       hand-written edge cases and for random bytes drawn from
+	//	       the few that matter: '/', '\n', white space, and the
+	//	       bytes one bit away from '/' and '\n' ('.' and '\v'),
+	//	       which a word-at-a-time scan that is not exact would
+	//	       mistake for them
+        // Implementation: the reference follows a line state machine: a
+	//	       line that starts with "//" and has its '\n' ends a
+	//	       record
+
+	@Test
+	public void findsTerminatorsInEdgeCases() throws Exception
+	{
+		String[] cases = { "", "//\n", "//", "a\n//\n", "a\n//",
+			"a\n/x/\n//x\n", "a\n /\n", "//\n//\n", "a//\n//\n",
+			"1234567\n//\n", "12345678//\n//\n", "123456\n//\n\n  \n",
+			"a\n//\nb", "./\n/./\n/.\n.//\n//.\n", "\u000b/\n\u000b\n//\n",
+			"x\n\n\n\n\n\n\n//\n", "/\n/\n/\n/\n//" };
+		for(int i = 0; i < cases.length; i++)
+		{
+			checkAll("case " + i, cases[i].getBytes("ISO-8859-1"));
+		}
+	}
+
+	@Test
+	public void matchesReferenceForRandomBytes() throws Exception
+	{
+		for(int t = 0; t < 20000; t++)
+		{
+			int len = this.random.nextInt(t % 100 == 0 ? 3000 : 60);
+			checkAll("random " + t, randomBytes(len));
+		}
+	}
+
+	@Test
+	public void findsRecordEndsInChunksLargerThanAWindow()
+		throws Exception
+	{
+		byte[] b = records(400 * 1024);
+		assertArrayEquals(referenceEnds(b, b.length),
+			RecordBoundaries.recordEnds(b, b.length));
+		assertArrayEquals(referenceEnds(b, b.length),
+			RecordBoundaries.recordEnds(ByteBuffer.wrap(b)));
+
+		// a chunk that starts part way into a buffer
+		ByteBuffer chunk = ByteBuffer.wrap(b);
+		chunk.position(5);
+		byte[] tail = Arrays.copyOfRange(b, 5, b.length);
+		assertArrayEquals(referenceEnds(tail, tail.length),
+			RecordBoundaries.recordEnds(chunk));
+	}
+
+	@Test
+	public void findsTheFirstRecordEndInAFile() throws Exception
+	{
+		byte[] b = records(400 * 1024);
+		File f = File.createTempFile("boundaries", ".gb");
+		try
+		{
+			Files.write(f.toPath(), b);
+			FileChannel ch = FileChannel.open(f.toPath());
+			try
+			{
+				for(int k = 0; k < 3000; k++)
+				{
+					long from = 1 + this.random.nextInt(
+						b.length - 1);
+					assertEquals("from " + from,
+						referenceFind(b, from),
+						RecordBoundaries.findRecordEnd(ch,
+						from, b.length));
+				}
+			}
+			finally
+			{
+				ch.close();
+			}
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	private void checkAll(String what, byte[] bytes) throws IOException
+		// Purpose: check every scan of 'bytes', some of it followed by
+		//	    bytes the scans must not look at
+	{
+		int len = bytes.length;
+		byte[] b = Arrays.copyOf(bytes, len + this.random.nextInt(9));
+		for(int i = len; i < b.length; i++)
+		{
+			b[i] = ALPHABET[this.random.nextInt(ALPHABET.length)];
+		}
+
+		assertArrayEquals(what + ": recordEnds", referenceEnds(b, len),
+			RecordBoundaries.recordEnds(b, len));
+		assertArrayEquals(what + ": recordEnds of a buffer",
+			referenceEnds(b, len), RecordBoundaries.recordEnds(
+			ByteBuffer.wrap(b, 0, len).slice()));
+
+		int from = len == 0 ? 0 : this.random.nextInt(len + 1);
+		while(from > 0 && b[from - 1] != '\n')
+		{
+			from--;
+		}
+		int[] ends = referenceEnds(b, from, len);
+		assertEquals(what + ": nextRecordEnd from " + from,
+			ends.length == 0 ? -1 : ends[0],
+			RecordBoundaries.nextRecordEnd(b, from, len));
+		assertEquals(what + ": lastRecordEnd from " + from,
+			ends.length == 0 ? -1 : ends[ends.length - 1],
+			RecordBoundaries.lastRecordEnd(b, from, len));
+	}
+
+	private byte[] randomBytes(int len)
+	{
+		byte[] b = new byte[len];
+		for(int i = 0; i < len; i++)
+		{
+			b[i] = ALPHABET[this.random.nextInt(ALPHABET.length)];
+		}
+		return b;
+	}
+
+	private byte[] records(int size) throws IOException
+		// Purpose: about 'size' bytes of lines of varied length, with
+		//	    terminator lines and near misses among them
+	{
+		StringBuilder s = new StringBuilder();
+		while(s.length() < size)
+		{
+			int n = this.random.nextInt(300);
+			for(int i = 0; i < n; i++)
+			{
+				s.append(this.random.nextInt(40) == 0 ? '\n' : 'x');
+			}
+			int r = this.random.nextInt(15);
+			s.append(r < 3 ? "\n//\n" : r < 8 ? "\n/x/\n" : "\n./\n");
+		}
+		return s.toString().getBytes("ISO-8859-1");
+	}
+
+	//
+	// the reference scanner
+	//
+
+	private static int[] referenceEnds(byte[] b, int len)
+		// Purpose: what recordEnds() should return
+	{
+		int[] ends = referenceEnds(b, 0, len);
+		int start = ends.length == 0 ? 0 : ends[ends.length - 1];
+		for(int i = start; i < len; i++)
+		{
+			if(b[i] > ' ')
+			{
+				ends = Arrays.copyOf(ends, ends.length + 1);
+				ends[ends.length - 1] = len;
+				break;
+			}
+		}
+		return ends;
+	}
+
+	private static int[] referenceEnds(byte[] b, int from, int len)
+		// Purpose: the end of each terminator line between 'from',
+		//	    the start of a line, and 'len'
+	{
+		List<Integer> ends = new ArrayList<Integer>();
+		int state = LINE_START;
+		for(int i = from; i < len; i++)
+		{
+			state = next(state, b[i]);
+			if(state == ENDED)
+			{
+				ends.add(i + 1);
+				state = LINE_START;
+			}
+		}
+		int[] a = new int[ends.size()];
+		for(int i = 0; i < a.length; i++)
+		{
+			a[i] = ends.get(i);
+		}
+		return a;
+	}
+
+	private static long referenceFind(byte[] b, long from)
+		// Purpose: what findRecordEnd() should return
+	{
+		// the line holding byte 'from - 1' is skipped
+		int state = IN_LINE;
+		for(long i = from - 1; i < b.length; i++)
+		{
+			state = next(state, b[(int)i]);
+			if(state == ENDED)
+			{
+				return i + 1;
+			}
+		}
+		return b.length;
+	}
+
+	private static int next(int state, byte b)
+	{
+		switch(state)
+		{
+		case LINE_START:
+			return b == '/' ? ONE_SLASH : b == '\n' ? LINE_START :
+				IN_LINE;
+		case ONE_SLASH:
+			return b == '/' ? TERMINATOR : b == '\n' ? LINE_START :
+				IN_LINE;
+		case TERMINATOR:
+			return b == '\n' ? ENDED : TERMINATOR;
+		default:
+			return b == '\n' ? LINE_START : IN_LINE;
+		}
+	}
+
+	//
+	//instance variables:
+	//
+
+	// states of the reference scanner
+	private static final int LINE_START = 0;
+	private static final int ONE_SLASH = 1;
+	private static final int TERMINATOR = 2;
+	private static final int IN_LINE = 3;
+	private static final int ENDED = 4;
+
+	// the bytes random input is made of
+	private static final byte[] ALPHABET = { '/', '/', '\n', '\n', ' ',
+		'a', '.', 0x0b, '\r' };
+
+	// the same bytes on every run
+	private Random random = new Random(20240101L);
+}
@@ -0,0 +1,114 @@
+package org.jax.mgi.bio.seqfilter;
+
+import java.io.*;
+import org.jax.mgi.bio.seqrecord.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RecordFeatureCacheTest
+{
+	//Concept:
+        //        IS: unit tests of RecordFeatureCache, through
+	//	       SeqDecider.feature()
+        //       HAS: two deciders that share a feature, the organism line
+	//	       of a record, and count how often it is computed
+        //      DOES: applies them to records the way an application
+	//	       outside SeqRecordFilter would, without calling
+	//	       SeqDecider.recordLoaded()
+
+	@Test
+	public void computesAFeatureOncePerRecord() throws Exception
+	{
+		SeqRecord rec = record(MOUSE);
+		assertTrue(this.mouse.isA(rec));
+		assertFalse(this.human.isA(rec));
+		assertEquals(1, this.computed);
+
+		rec = record(HUMAN);
+		assertFalse(this.mouse.isA(rec));
+		assertTrue(this.human.isA(rec));
+		assertEquals(2, this.computed);
+	}
+
+	@Test
+	public void computesAFeatureForEachReadOfAReusedRecordObject()
+		throws Exception
+	{
+		SeqRecord rec = new GBSeqRecord();
+		String[] texts = { MOUSE, HUMAN, HUMAN, MOUSE };
+		for(int i = 0; i < texts.length; i++)
+		{
+			load(rec, texts[i]);
+			assertEquals("record " + i, texts[i] == MOUSE,
+				this.mouse.isA(rec));
+			assertEquals("record " + i, texts[i] == HUMAN,
+				this.human.isA(rec));
+			assertEquals(i + 1, this.computed);
+		}
+	}
+
+	private static SeqRecord record(String text) throws Exception
+		// Purpose: a new SeqRecord loaded with 'text'
+	{
+		SeqRecord rec = new GBSeqRecord();
+		load(rec, text);
+		return rec;
+	}
+
+	private static void load(SeqRecord rec, String text)
+		throws Exception
+	{
+		rec.readText(new BufferedReader(new StringReader(text)));
+	}
+
+	//
+	// a decider that is true when the record's organism line holds a
+	// string
+	//
+
+	private class Organism extends SeqDecider
+	{
+		Organism(String name, String organism)
+		{
+			super(name);
+			this.organism = organism;
+		}
+
+		public boolean isA(SeqRecord s)
+		{
+			String line = (String)feature(s, "test:organism",
+				organismLine);
+			return line != null && line.indexOf(this.organism) >= 0;
+		}
+
+		private String organism;
+	}
+
+	//
+	//instance variables:
+	//
+
+	private static final String MOUSE = "LOCUS       A1\n" +
+		"VERSION     A1.1\n  ORGANISM  Mus musculus\n//\n";
+	private static final String HUMAN = "LOCUS       A2\n" +
+		"VERSION     A2.1\n  ORGANISM  Homo sapiens\n//\n";
+
+	// times the organism line has been found
+	private int computed = 0;
+
+	// finds a record's organism line
+	private RecordFeature organismLine = new RecordFeature()
+	{
+		public Object compute(SeqRecord s)
+		{
+			RecordFeatureCacheTest.this.computed++;
+			String text = s.getText();
+			int at = text.indexOf("  ORGANISM");
+			return at < 0 ? null : text.substring(at,
+				text.indexOf('\n', at));
+		}
+	};
+
+	private SeqDecider mouse = new Organism("mouse", "Mus musculus");
+	private SeqDecider human = new Organism("human", "Homo sapiens");
+}